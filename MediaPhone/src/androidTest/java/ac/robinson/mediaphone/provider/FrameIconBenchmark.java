@@ -0,0 +1,172 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.IOUtilities;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the time taken and the Java heap allocated to render a frame icon from a full-sized camera image, both when
+ * the image has to be decoded and when the saved icon-sized copy can be used instead. Results are logged and reported as
+ * instrumentation status (e.g., run with `adb shell am instrument -w -e class ...FrameIconBenchmark`). Bitmap pixel data
+ * is on the Java heap only on API 23 to 25 - on later versions these figures cover the renderer's other allocations.
+ */
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 23) // for the allocation counter
+public class FrameIconBenchmark {
+
+	private static final String LOG_TAG = "FrameIconBenchmark";
+
+	private static final int IMAGE_WIDTH = 4032; // a typical 12 megapixel camera image
+	private static final int IMAGE_HEIGHT = 3024;
+	private static final int WARM_UP_ICONS = 3;
+	private static final int MEASURED_ICONS = 20;
+
+	private Resources mResources;
+	private ContentResolver mContentResolver;
+	private FrameItem mFrame;
+	private MediaItem mImage;
+
+	@Before
+	public void createImageFrame() throws IOException {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		assumeTrue("Storage is not available", MediaPhone.DIRECTORY_STORAGE != null);
+		mResources = context.getResources();
+		mContentResolver = context.getContentResolver();
+
+		// a frame that is not in the database (so is never shown), with an image that has no EXIF thumbnail
+		mFrame = new FrameItem(MediaPhoneProvider.getNewInternalId(), 1);
+		mImage = new MediaItem(mFrame.getInternalId(), "jpg", MediaPhoneProvider.TYPE_IMAGE_BACK);
+		Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+		Paint paint = new Paint();
+		paint.setShader(
+				new LinearGradient(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT, 0xff2060a0, 0xffe0a040, Shader.TileMode.CLAMP));
+		new Canvas(image).drawPaint(paint);
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(mImage.getFile());
+			image.compress(Bitmap.CompressFormat.JPEG, 90, outputStream);
+		} finally {
+			IOUtilities.closeStream(outputStream);
+			image.recycle();
+		}
+		MediaManager.addMedia(mContentResolver, mImage);
+		assertNotNull(MediaManager.updateMediaMetadata(mContentResolver, mImage));
+	}
+
+	@After
+	public void deleteImageFrame() {
+		if (mImage != null) {
+			MediaManager.deleteMediaFromBackgroundTask(mContentResolver, mImage.getInternalId());
+		}
+		if (mFrame != null) {
+			IOUtilities.deleteRecursive(mFrame.getStorageDirectory());
+		}
+	}
+
+	@Test
+	public void renderDecodedImage() {
+		measure("decoded image", true);
+	}
+
+	@Test
+	public void renderSavedIconSource() {
+		measure("saved icon source", false);
+	}
+
+	private void measure(String name, boolean deleteIconSource) {
+		final int iconWidth = mResources.getDimensionPixelSize(R.dimen.frame_icon_width);
+		final int iconHeight = mResources.getDimensionPixelSize(R.dimen.frame_icon_height);
+		for (int i = 0; i < WARM_UP_ICONS; i++) {
+			renderIcon(deleteIconSource).recycle(); // the first render also creates this thread's renderer
+		}
+
+		long elapsedTime = 0;
+		long allocatedBytes = 0;
+		for (int i = 0; i < MEASURED_ICONS; i++) {
+			if (deleteIconSource) {
+				FrameIconRenderer.deleteIconSource(mImage); // not timed - only the render itself is measured
+			}
+			final long startBytes = getAllocatedBytes();
+			final long startTime = SystemClock.elapsedRealtimeNanos();
+			Bitmap icon = renderIcon(false);
+			elapsedTime += SystemClock.elapsedRealtimeNanos() - startTime;
+			allocatedBytes += getAllocatedBytes() - startBytes;
+
+			assertEquals(iconWidth, icon.getWidth());
+			assertEquals(iconHeight, icon.getHeight());
+			icon.recycle();
+		}
+
+		final double millisecondsPerIcon = elapsedTime / (MEASURED_ICONS * 1000000d);
+		final long bytesPerIcon = allocatedBytes / MEASURED_ICONS;
+		Log.i(LOG_TAG, "Rendering from " + name + ": " + String.format(Locale.US, "%.2f", millisecondsPerIcon) +
+				" ms and " + bytesPerIcon + " bytes allocated per icon (" + MEASURED_ICONS + " icons)");
+
+		Bundle results = new Bundle();
+		results.putDouble(name + " ms per icon", millisecondsPerIcon);
+		results.putLong(name + " bytes allocated per icon", bytesPerIcon);
+		InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+	}
+
+	private Bitmap renderIcon(boolean deleteIconSource) {
+		if (deleteIconSource) {
+			FrameIconRenderer.deleteIconSource(mImage);
+		}
+		Bitmap icon = mFrame.loadIcon(mResources, mContentResolver,
+				new BitmapUtilities.CacheTypeContainer(MediaPhone.ICON_CACHE_TYPE), false);
+		assertNotNull(icon);
+		return icon;
+	}
+
+	private static long getAllocatedBytes() {
+		return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+	}
+}
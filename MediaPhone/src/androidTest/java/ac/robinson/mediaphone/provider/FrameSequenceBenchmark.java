@@ -0,0 +1,127 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time taken by the frame neighbour and following-frame queries as narratives grow from 10 to 10,000 frames.
+ * The neighbour queries and a following-frames cursor that is only read as far as its first row should take much the same
+ * time at every size; loading all following frame ids necessarily grows with the number of frames. Results are logged and
+ * reported as instrumentation status (e.g., run with `adb shell am instrument -w -e class ...FrameSequenceBenchmark`).
+ */
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 17) // for the elapsed time in nanoseconds
+public class FrameSequenceBenchmark {
+
+	private static final String LOG_TAG = "FrameSequenceBenchmark";
+
+	private static final int WARM_UP_QUERIES = 5;
+	private static final int MEASURED_QUERIES = 50;
+
+	private TestNarrative mTestNarrative;
+
+	@After
+	public void deleteNarrative() {
+		if (mTestNarrative != null) {
+			mTestNarrative.delete();
+		}
+	}
+
+	@Test
+	public void queryTenFrames() {
+		measure(10);
+	}
+
+	@Test
+	public void queryOneHundredFrames() {
+		measure(100);
+	}
+
+	@Test
+	public void queryOneThousandFrames() {
+		measure(1000);
+	}
+
+	@Test
+	public void queryTenThousandFrames() {
+		measure(10000);
+	}
+
+	private void measure(final int frameCount) {
+		mTestNarrative = new TestNarrative(frameCount);
+		mTestNarrative.save();
+		final ContentResolver contentResolver = mTestNarrative.mContentResolver;
+		final FrameItem firstFrame = mTestNarrative.mFrames.get(0);
+		final FrameItem middleFrame = mTestNarrative.mFrames.get(frameCount / 2);
+
+		Bundle results = new Bundle();
+		measureQuery(results, frameCount, "previous frame id",
+				() -> assertNotNull(FramesManager.findPreviousFrameId(contentResolver, middleFrame)));
+		measureQuery(results, frameCount, "next frame id",
+				() -> assertNotNull(FramesManager.findNextFrameId(contentResolver, middleFrame)));
+		measureQuery(results, frameCount, "following frames cursor (first row)", () -> {
+			try (Cursor c = FramesManager.getFollowingFramesCursor(contentResolver, firstFrame)) {
+				assertNotNull(c);
+				assertTrue(c.moveToNext());
+			}
+		});
+		measureQuery(results, frameCount, "following frame ids", () -> {
+			ArrayList<String> followingIds = FramesManager.getFollowingFrameIds(contentResolver, firstFrame.getInternalId());
+			assertNotNull(followingIds);
+			assertEquals(frameCount - 1, followingIds.size());
+		});
+		InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+	}
+
+	private static void measureQuery(Bundle results, int frameCount, String name, Runnable query) {
+		for (int i = 0; i < WARM_UP_QUERIES; i++) {
+			query.run();
+		}
+
+		final long startTime = SystemClock.elapsedRealtimeNanos();
+		for (int i = 0; i < MEASURED_QUERIES; i++) {
+			query.run();
+		}
+		final double millisecondsPerQuery = (SystemClock.elapsedRealtimeNanos() - startTime) / (MEASURED_QUERIES * 1000000d);
+
+		Log.i(LOG_TAG, "Querying " + name + " in " + frameCount + " frames: " +
+				String.format(Locale.US, "%.3f", millisecondsPerQuery) + " ms per query (" + MEASURED_QUERIES + " queries)");
+		results.putDouble(name + " ms per query (" + frameCount + " frames)", millisecondsPerQuery);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the frame neighbourhood queries (which select by sequence id range rather than loading the whole narrative),
+ * and that frames allocated positions in the middle or at the start of a narrative are inserted where expected.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameSequenceTest {
+
+	private static final int FRAME_COUNT = 5;
+
+	private TestNarrative mTestNarrative;
+	private ArrayList<FrameItem> mFrames; // in narrative order, including any inserted
+	private ContentResolver mContentResolver;
+
+	@Before
+	public void createNarrative() {
+		mTestNarrative = new TestNarrative(FRAME_COUNT);
+		mTestNarrative.save();
+		mFrames = mTestNarrative.mFrames;
+		mContentResolver = mTestNarrative.mContentResolver;
+	}
+
+	@After
+	public void deleteNarrative() {
+		if (mTestNarrative != null) {
+			mTestNarrative.delete();
+		}
+	}
+
+	@Test
+	public void followingFrameIds() {
+		assertEquals(mTestNarrative.getFrameIds(2, FRAME_COUNT), FramesManager.getFollowingFrameIds(mContentResolver,
+				mFrames.get(1).getInternalId()));
+		assertEquals(Collections.emptyList(), FramesManager.getFollowingFrameIds(mContentResolver,
+				mFrames.get(FRAME_COUNT - 1).getInternalId()));
+		assertNull(FramesManager.getFollowingFrameIds(mContentResolver, MediaPhoneProvider.getNewInternalId()));
+	}
+
+	@Test
+	public void followingFramesCursorCanStopEarly() {
+		try (Cursor c = FramesManager.getFollowingFramesCursor(mContentResolver, mFrames.get(0))) {
+			assertNotNull(c);
+			final int columnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
+			assertTrue(c.moveToNext());
+			assertEquals(mFrames.get(1).getInternalId(), c.getString(columnIndex));
+			assertTrue(c.moveToNext());
+			assertEquals(mFrames.get(2).getInternalId(), c.getString(columnIndex));
+		}
+	}
+
+	@Test
+	public void previousAndNextFrameIds() {
+		assertNull(FramesManager.findPreviousFrameId(mContentResolver, mFrames.get(0)));
+		assertEquals(mFrames.get(1).getInternalId(), FramesManager.findPreviousFrameId(mContentResolver,
+				mFrames.get(2)));
+		assertEquals(mFrames.get(3).getInternalId(), FramesManager.findNextFrameId(mContentResolver, mFrames.get(2)));
+		assertNull(FramesManager.findNextFrameId(mContentResolver, mFrames.get(FRAME_COUNT - 1)));
+	}
+
+	@Test
+	public void deletedFramesAreSkipped() {
+		FrameItem deletedFrame = mFrames.get(2);
+		deletedFrame.setDeleted(true);
+		assertTrue(FramesManager.updateFrame(mContentResolver, deletedFrame));
+
+		assertEquals(mFrames.get(3).getInternalId(), FramesManager.findNextFrameId(mContentResolver, mFrames.get(1)));
+		assertEquals(mFrames.get(1).getInternalId(), FramesManager.findPreviousFrameId(mContentResolver,
+				mFrames.get(3)));
+		ArrayList<String> followingIds = FramesManager.getFollowingFrameIds(mContentResolver,
+				mFrames.get(0).getInternalId());
+		assertNotNull(followingIds);
+		assertFalse(followingIds.contains(deletedFrame.getInternalId()));
+		assertEquals(FRAME_COUNT - 2, followingIds.size());
+	}
+
+	@Test
+	public void framesInsertedBetweenNeighbours() {
+		final int insertCount = 3;
+		final String insertAfterId = mFrames.get(1).getInternalId();
+		final int[] sequenceIds = FramesManager.allocateNarrativeSequenceIds(mTestNarrative.mResources, mContentResolver,
+				mTestNarrative.mNarrative.getInternalId(), insertAfterId, insertCount);
+		assertNotNull(sequenceIds);
+		assertEquals(insertCount, sequenceIds.length);
+		int previousSequenceId = mFrames.get(1).getNarrativeSequenceId();
+		for (int sequenceId : sequenceIds) {
+			assertTrue(sequenceId > previousSequenceId);
+			previousSequenceId = sequenceId;
+		}
+		assertTrue(previousSequenceId < mFrames.get(2).getNarrativeSequenceId());
+
+		mTestNarrative.insertFrames(sequenceIds, 2);
+		assertEquals(mTestNarrative.getFrameIds(2, mFrames.size()), FramesManager.getFollowingFrameIds(mContentResolver,
+				insertAfterId));
+		assertEquals(mFrames.get(2).getInternalId(), FramesManager.findNextFrameId(mContentResolver,
+				FramesManager.findFrameByInternalId(mContentResolver, insertAfterId)));
+	}
+
+	@Test
+	public void framesInsertedAtStart() {
+		final int insertCount = 2;
+		final int[] sequenceIds = FramesManager.allocateNarrativeSequenceIds(mTestNarrative.mResources, mContentResolver,
+				mTestNarrative.mNarrative.getInternalId(), FrameItem.KEY_FRAME_ID_START, insertCount);
+		assertNotNull(sequenceIds);
+		assertEquals(insertCount, sequenceIds.length);
+		assertTrue(sequenceIds[0] >= 0);
+		assertTrue(sequenceIds[1] > sequenceIds[0]);
+
+		mTestNarrative.insertFrames(sequenceIds, 0);
+		assertEquals(mTestNarrative.getFrameIds(0, mFrames.size()),
+				FramesManager.findFrameIdsByParentId(mContentResolver, mTestNarrative.mNarrative.getInternalId()));
+		assertNull(FramesManager.findPreviousFrameId(mContentResolver,
+				FramesManager.findFrameByInternalId(mContentResolver, mFrames.get(0).getInternalId())));
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import ac.robinson.mediaphone.MediaPhone;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the media of a whole narrative, fetched at once for playback and export, matches what the per-frame
+ * queries return, and that the playback timeline calculated from it (and restored from a saved plan) is exactly as
+ * expected.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NarrativeMediaTest {
+
+	// frame 0 has an image that spans frame 1; frame 1 has audio that spans frames 2 and 3; frame 4 has text that spans
+	// frame 5, which has its own image; frames 0 to 3 have their own text, and the text on frame 2 has a user-set duration
+	private static final int FRAME_COUNT = 6;
+	private static final int SPANNING_IMAGE_FRAME = 0;
+	private static final int SPANNING_IMAGE_END_FRAME = 1;
+	private static final int SPANNING_AUDIO_FRAME = 1;
+	private static final int SPANNING_AUDIO_END_FRAME = 3;
+	private static final int SPANNING_TEXT_FRAME = 4;
+	private static final int SPANNING_TEXT_END_FRAME = 5;
+	private static final int TIMED_TEXT_FRAME = 2;
+	private static final int IMAGE_FRAME = 5;
+
+	private static final int AUDIO_DURATION = 9000;
+	private static final int TEXT_DURATION = 2000;
+	private static final int IMAGE_ADJUSTMENT = 100; // a typical crossfade overlap
+
+	private TestNarrative mTestNarrative;
+	private MediaItem mSpanningImage;
+	private MediaItem mSpanningAudio;
+	private MediaItem mSpanningText;
+	private MediaItem mImage;
+	private final MediaItem[] mFrameText = new MediaItem[SPANNING_TEXT_FRAME];
+
+	@Before
+	public void createNarrative() {
+		mTestNarrative = new TestNarrative(FRAME_COUNT);
+		mSpanningImage = mTestNarrative.addMedia(SPANNING_IMAGE_FRAME, MediaPhoneProvider.TYPE_IMAGE_BACK, true);
+		mSpanningAudio = mTestNarrative.addMedia(SPANNING_AUDIO_FRAME, MediaPhoneProvider.TYPE_AUDIO, true);
+		mSpanningAudio.setDurationMilliseconds(AUDIO_DURATION);
+		mSpanningText = mTestNarrative.addMedia(SPANNING_TEXT_FRAME, MediaPhoneProvider.TYPE_TEXT, true);
+		mImage = mTestNarrative.addMedia(IMAGE_FRAME, MediaPhoneProvider.TYPE_IMAGE_BACK, false);
+		for (int i = 0; i < mFrameText.length; i++) {
+			mFrameText[i] = mTestNarrative.addMedia(i, MediaPhoneProvider.TYPE_TEXT, false);
+		}
+		mFrameText[TIMED_TEXT_FRAME].setDurationMilliseconds(TEXT_DURATION);
+		mTestNarrative.save();
+
+		extendSpan(mSpanningImage, SPANNING_IMAGE_END_FRAME);
+		extendSpan(mSpanningAudio, SPANNING_AUDIO_END_FRAME);
+		extendSpan(mSpanningText, SPANNING_TEXT_END_FRAME);
+	}
+
+	@After
+	public void deleteNarrative() {
+		if (mTestNarrative != null) {
+			mTestNarrative.delete();
+		}
+	}
+
+	@Test
+	public void batchInsertAddsFramesInOrder() {
+		assertEquals(mTestNarrative.getFrameIds(0, FRAME_COUNT),
+				FramesManager.findFrameIdsByParentId(mTestNarrative.mContentResolver, getNarrativeId()));
+		assertEquals(mTestNarrative.mMedia.size(), countNarrativeMedia());
+	}
+
+	@Test
+	public void narrativeMediaMatchesFrameQueries() {
+		HashMap<String, ArrayList<String>> linkedParentIds = new HashMap<>();
+		HashMap<String, ArrayList<MediaItem>> narrativeMedia =
+				MediaManager.findMediaByNarrativeId(mTestNarrative.mContentResolver, getNarrativeId(), linkedParentIds);
+
+		for (int i = 0; i < FRAME_COUNT; i++) {
+			final String frameId = mTestNarrative.getFrameId(i);
+			ArrayList<MediaItem> frameMedia = narrativeMedia.get(frameId);
+			assertEquals("Media of frame " + i,
+					getMediaIds(MediaManager.findMediaByParentId(mTestNarrative.mContentResolver, frameId)),
+					getMediaIds(frameMedia != null ? frameMedia : new ArrayList<>()));
+		}
+
+		assertEquals(mTestNarrative.getFrameIds(SPANNING_IMAGE_FRAME + 1, SPANNING_IMAGE_END_FRAME + 1),
+				linkedParentIds.get(mSpanningImage.getInternalId()));
+		assertEquals(mTestNarrative.getFrameIds(SPANNING_AUDIO_FRAME + 1, SPANNING_AUDIO_END_FRAME + 1),
+				linkedParentIds.get(mSpanningAudio.getInternalId()));
+		assertEquals(mTestNarrative.getFrameIds(SPANNING_TEXT_FRAME + 1, SPANNING_TEXT_END_FRAME + 1),
+				linkedParentIds.get(mSpanningText.getInternalId()));
+		assertEquals(new HashSet<>(Arrays.asList(mSpanningImage.getInternalId(), mSpanningAudio.getInternalId(),
+				mSpanningText.getInternalId())), linkedParentIds.keySet());
+	}
+
+	@Test
+	public void playbackContentWithoutImageAdjustment() {
+		final int minimumDuration = MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION;
+		final int[] frameStartTimes = getFrameStartTimes();
+		final int narrativeDuration = frameStartTimes[FRAME_COUNT - 1] + minimumDuration;
+
+		PlaybackNarrativeDescriptor descriptor = new PlaybackNarrativeDescriptor(0);
+		ArrayList<PlaybackMediaHolder> content = getPlaybackContent(descriptor);
+		assertEquals(8, content.size());
+		assertMedia(content.get(0), mSpanningImage, frameStartTimes[0], frameStartTimes[2], 0, 0, 0, 1);
+		assertMedia(content.get(1), mFrameText[0], frameStartTimes[0], frameStartTimes[1], 0, 0, 0);
+		assertMedia(content.get(2), mSpanningAudio, frameStartTimes[1], frameStartTimes[1] + AUDIO_DURATION, 0, 0, 1, 2, 3);
+		assertMedia(content.get(3), mFrameText[1], frameStartTimes[1], frameStartTimes[2], 0, 0, 1);
+		assertMedia(content.get(4), mFrameText[2], frameStartTimes[2], frameStartTimes[3], 0, 0, 2);
+		assertMedia(content.get(5), mFrameText[3], frameStartTimes[3], frameStartTimes[4], 0, 0, 3);
+		assertMedia(content.get(6), mSpanningText, frameStartTimes[4], narrativeDuration, 0, 0, 4, 5);
+		assertMedia(content.get(7), mImage, frameStartTimes[5], narrativeDuration, 0, 0, 5);
+
+		assertDescriptor(descriptor, frameStartTimes, narrativeDuration);
+	}
+
+	@Test
+	public void playbackContentWithImageAdjustment() {
+		final int minimumDuration = MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION;
+		final int[] frameStartTimes = getFrameStartTimes();
+		final int narrativeDuration = frameStartTimes[FRAME_COUNT - 1] + minimumDuration;
+
+		// images overlap the following item by the adjustment, except where they are followed by text (which they end
+		// with), or are preceded by text (which they start with); the last frame's items stay visible for an extra 1ms
+		PlaybackNarrativeDescriptor descriptor = new PlaybackNarrativeDescriptor(IMAGE_ADJUSTMENT);
+		ArrayList<PlaybackMediaHolder> content = getPlaybackContent(descriptor);
+		assertEquals(8, content.size());
+		assertMedia(content.get(0), mSpanningImage, frameStartTimes[0], frameStartTimes[2], IMAGE_ADJUSTMENT, 0, 0, 1);
+		assertMedia(content.get(1), mFrameText[0], frameStartTimes[0], frameStartTimes[1], 0, 0, 0);
+		assertMedia(content.get(2), mSpanningAudio, frameStartTimes[1], frameStartTimes[1] + AUDIO_DURATION, 0, 0, 1, 2, 3);
+		assertMedia(content.get(3), mFrameText[1], frameStartTimes[1], frameStartTimes[2], 0, 0, 1);
+		assertMedia(content.get(4), mFrameText[2], frameStartTimes[2], frameStartTimes[3], 0, 0, 2);
+		assertMedia(content.get(5), mFrameText[3], frameStartTimes[3], frameStartTimes[4], 0, 0, 3);
+		assertMedia(content.get(6), mSpanningText, frameStartTimes[4], narrativeDuration, 0, -1, 4, 5);
+		assertMedia(content.get(7), mImage, frameStartTimes[5], narrativeDuration, 0, -1, 5);
+
+		assertDescriptor(descriptor, frameStartTimes, narrativeDuration);
+	}
+
+	@Test
+	public void playbackContentRestoredFromSavedPlan() {
+		ArrayList<PlaybackMediaHolder> calculatedContent = getPlaybackContent(new PlaybackNarrativeDescriptor(IMAGE_ADJUSTMENT));
+		PlaybackNarrativeDescriptor descriptor = new PlaybackNarrativeDescriptor(IMAGE_ADJUSTMENT);
+		ArrayList<PlaybackMediaHolder> savedContent = getPlaybackContent(descriptor);
+
+		assertEquals(calculatedContent.size(), savedContent.size());
+		for (int i = 0, n = calculatedContent.size(); i < n; i++) {
+			assertEquals(calculatedContent.get(i).toString(), savedContent.get(i).toString());
+		}
+		assertDescriptor(descriptor, getFrameStartTimes(),
+				getFrameStartTimes()[FRAME_COUNT - 1] + MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION);
+	}
+
+	/**
+	 * Frames without a duration of their own last for the minimum frame duration, except those that the spanning audio
+	 * covers, which share the part of its duration that the frame with timed text does not use
+	 */
+	private static int[] getFrameStartTimes() {
+		final int minimumDuration = MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION;
+		final int sharedAudioDuration = (AUDIO_DURATION - TEXT_DURATION) / 2;
+		final int[] frameDurations = new int[]{
+				minimumDuration, sharedAudioDuration, TEXT_DURATION, sharedAudioDuration, minimumDuration, minimumDuration
+		};
+		final int[] frameStartTimes = new int[FRAME_COUNT];
+		for (int i = 1; i < FRAME_COUNT; i++) {
+			frameStartTimes[i] = frameStartTimes[i - 1] + frameDurations[i - 1];
+		}
+		return frameStartTimes;
+	}
+
+	private ArrayList<PlaybackMediaHolder> getPlaybackContent(PlaybackNarrativeDescriptor descriptor) {
+		return mTestNarrative.load()
+				.getPlaybackContent(mTestNarrative.mContentResolver, mTestNarrative.getFrameId(TIMED_TEXT_FRAME), descriptor);
+	}
+
+	private void assertMedia(PlaybackMediaHolder holder, MediaItem media, int startTime, int endTime, int playbackOffsetStart,
+							 int playbackOffsetEnd, int... spanningFrames) {
+		final String message = holder.toString();
+		assertEquals(message, media.getInternalId(), holder.mMediaItemId);
+		assertEquals(message, media.getType(), holder.mMediaType);
+		assertEquals(message, media.getFile().getAbsolutePath(), holder.mMediaPath);
+		assertEquals(message, mTestNarrative.getFrameId(spanningFrames[0]), holder.mParentFrameId);
+		assertEquals(message, startTime, holder.getStartTime(false));
+		assertEquals(message, endTime, holder.getEndTime(false));
+		assertEquals(message, playbackOffsetStart, holder.getPlaybackOffsetStart());
+		assertEquals(message, playbackOffsetEnd, holder.getPlaybackOffsetEnd());
+
+		ArrayList<String> spanningFrameIds = new ArrayList<>();
+		for (int frame : spanningFrames) {
+			spanningFrameIds.add(mTestNarrative.getFrameId(frame));
+		}
+		assertEquals(message, spanningFrameIds, holder.mSpanningFrameIds);
+	}
+
+	private void assertDescriptor(PlaybackNarrativeDescriptor descriptor, int[] frameStartTimes, int narrativeDuration) {
+		LinkedHashMap<Integer, String> expectedTimeToFrameMap = new LinkedHashMap<>();
+		for (int i = 0; i < FRAME_COUNT; i++) {
+			expectedTimeToFrameMap.put(frameStartTimes[i], mTestNarrative.getFrameId(i));
+		}
+		assertEquals(new ArrayList<>(expectedTimeToFrameMap.entrySet()),
+				new ArrayList<>(descriptor.mTimeToFrameMap.entrySet()));
+		assertEquals(frameStartTimes[TIMED_TEXT_FRAME], descriptor.mNarrativeStartTime);
+		assertEquals(narrativeDuration, descriptor.mNarrativeDuration);
+	}
+
+	private void extendSpan(MediaItem media, int endFrame) {
+		assertTrue(MediaManager.extendMediaSpan(mTestNarrative.mContentResolver, media.getInternalId(),
+				mTestNarrative.getFrameId(endFrame)));
+	}
+
+	private String getNarrativeId() {
+		return mTestNarrative.mNarrative.getInternalId();
+	}
+
+	private int countNarrativeMedia() {
+		int count = 0;
+		for (FrameItem frame : mTestNarrative.mFrames) {
+			count += MediaManager.countMediaByParentId(mTestNarrative.mContentResolver, frame.getInternalId(), false);
+		}
+		return count;
+	}
+
+	private static ArrayList<String> getMediaIds(ArrayList<MediaItem> media) {
+		ArrayList<String> mediaIds = new ArrayList<>();
+		for (MediaItem mediaItem : media) {
+			mediaIds.add(mediaItem.getInternalId());
+		}
+		return mediaIds;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import ac.robinson.mediaphone.MediaPhone;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a narrative's revision (which invalidates saved playback plans) changes only when its content does, and
+ * only once for each batch of changes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NarrativeRevisionTest {
+
+	private static final int FRAME_COUNT = 5;
+	private static final int SPANNING_AUDIO_FRAME = 1; // the audio item belongs to this frame...
+	private static final int SPANNING_AUDIO_END_FRAME = 3; // ...and spans up to and including this one
+
+	private TestNarrative mTestNarrative;
+	private MediaItem mSpanningAudio;
+
+	@Before
+	public void createNarrative() {
+		mTestNarrative = new TestNarrative(FRAME_COUNT);
+		mSpanningAudio = mTestNarrative.addMedia(SPANNING_AUDIO_FRAME, MediaPhoneProvider.TYPE_AUDIO, true);
+		mTestNarrative.save();
+		assertTrue(MediaManager.extendMediaSpan(mTestNarrative.mContentResolver, mSpanningAudio.getInternalId(),
+				mTestNarrative.getFrameId(SPANNING_AUDIO_END_FRAME)));
+	}
+
+	@After
+	public void deleteNarrative() {
+		if (mTestNarrative != null) {
+			mTestNarrative.delete();
+		}
+	}
+
+	@Test
+	public void batchInsertIncrementsRevisionOnce() {
+		final int initialRevision = getRevision();
+
+		// two frames, each with text, in a single batch
+		ArrayList<FrameItem> newFrames = new ArrayList<>();
+		ArrayList<MediaItem> newMedia = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			FrameItem frame = new FrameItem(mTestNarrative.mNarrative.getInternalId(),
+					(FRAME_COUNT + i) * mTestNarrative.mSequenceIncrement);
+			newFrames.add(frame);
+			newMedia.add(new MediaItem(frame.getInternalId(), MediaPhone.EXTENSION_TEXT_FILE, MediaPhoneProvider.TYPE_TEXT));
+		}
+		mTestNarrative.mFrames.addAll(newFrames);
+		mTestNarrative.mMedia.addAll(newMedia);
+		assertTrue(FramesManager.addFramesWithMedia(mTestNarrative.mContentResolver, newFrames, newMedia));
+
+		assertEquals(initialRevision + 1, getRevision());
+	}
+
+	@Test
+	public void revisionChangesOnlyWithContent() {
+		final int initialRevision = getRevision();
+		assertTrue(FramesManager.updateFrame(mTestNarrative.mContentResolver, mTestNarrative.mFrames.get(0))); // no changes
+		assertEquals(initialRevision, getRevision());
+
+		assertTrue(MediaManager.extendMediaSpan(mTestNarrative.mContentResolver, mSpanningAudio.getInternalId(),
+				mTestNarrative.getFrameId(SPANNING_AUDIO_END_FRAME + 1)));
+		assertTrue(getRevision() > initialRevision);
+	}
+
+	private int getRevision() {
+		return mTestNarrative.load().getRevision();
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+
+import java.util.ArrayList;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.util.IOUtilities;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * A narrative fixture for instrumented tests: frames (and any media added to them) are created in memory, inserted in one
+ * batch by {@link #save()}, and removed by {@link #delete()}, along with their files and any saved playback plan. Tests
+ * that use this class are skipped when storage is not available, as frames and media need their storage directories.
+ */
+final class TestNarrative {
+
+	final Resources mResources;
+	final ContentResolver mContentResolver;
+	final int mSequenceIncrement;
+
+	final NarrativeItem mNarrative;
+	final ArrayList<FrameItem> mFrames = new ArrayList<>(); // in narrative order, including any inserted later
+	final ArrayList<MediaItem> mMedia = new ArrayList<>();
+
+	TestNarrative(int frameCount) {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		assumeTrue("Storage is not available", MediaPhone.DIRECTORY_STORAGE != null);
+		mResources = context.getResources();
+		mContentResolver = context.getContentResolver();
+		mSequenceIncrement = mResources.getInteger(R.integer.frame_narrative_sequence_increment);
+
+		mNarrative = new NarrativeItem(NarrativesManager.getNextNarrativeExternalId(mContentResolver));
+		for (int i = 0; i < frameCount; i++) {
+			mFrames.add(new FrameItem(mNarrative.getInternalId(), i * mSequenceIncrement));
+		}
+	}
+
+	/**
+	 * Add a media item to the frame at the given position - the item is not inserted until {@link #save()} is called
+	 */
+	MediaItem addMedia(int frame, int type, boolean spanFrames) {
+		final String extension;
+		switch (type) {
+			case MediaPhoneProvider.TYPE_AUDIO:
+				extension = MediaPhone.EXTENSION_AUDIO_FILE;
+				break;
+			case MediaPhoneProvider.TYPE_TEXT:
+				extension = MediaPhone.EXTENSION_TEXT_FILE;
+				break;
+			default:
+				extension = MediaPhone.EXTENSION_PHOTO_FILE;
+				break;
+		}
+		MediaItem media = new MediaItem(mFrames.get(frame).getInternalId(), extension, type);
+		media.setSpanFrames(spanFrames);
+		mMedia.add(media);
+		return media;
+	}
+
+	/**
+	 * Insert the narrative and all of its frames and media in a single batch, as when importing a narrative
+	 */
+	void save() {
+		assertTrue(FramesManager.addFramesWithMedia(mContentResolver, new ArrayList<>(mFrames), mMedia, mNarrative));
+	}
+
+	/**
+	 * Insert new frames at the given sequence ids into the saved narrative, recording them from position onwards in
+	 * {@link #mFrames}
+	 */
+	void insertFrames(int[] sequenceIds, int position) {
+		ArrayList<FrameItem> newFrames = new ArrayList<>();
+		for (int sequenceId : sequenceIds) {
+			newFrames.add(new FrameItem(mNarrative.getInternalId(), sequenceId));
+		}
+		mFrames.addAll(position, newFrames);
+		assertTrue(FramesManager.addFramesWithMedia(mContentResolver, newFrames, new ArrayList<>()));
+	}
+
+	/**
+	 * @return the narrative as currently saved in the database (e.g., to check its revision)
+	 */
+	NarrativeItem load() {
+		return NarrativesManager.findNarrativeByInternalId(mContentResolver, mNarrative.getInternalId());
+	}
+
+	String getFrameId(int frame) {
+		return mFrames.get(frame).getInternalId();
+	}
+
+	ArrayList<String> getFrameIds(int start, int end) {
+		ArrayList<String> frameIds = new ArrayList<>();
+		for (int i = start; i < end; i++) {
+			frameIds.add(getFrameId(i));
+		}
+		return frameIds;
+	}
+
+	void delete() {
+		for (MediaItem media : mMedia) {
+			MediaManager.deleteMediaFromBackgroundTask(mContentResolver, media.getInternalId());
+		}
+		for (FrameItem frame : mFrames) {
+			FramesManager.deleteFrameFromBackgroundTask(mContentResolver, frame.getInternalId());
+			IOUtilities.deleteRecursive(frame.getStorageDirectory());
+		}
+		NarrativesManager.deleteNarrativeFromBackgroundTask(mContentResolver, mNarrative.getInternalId());
+		PlaybackPlanCache.deletePlan(mNarrative.getInternalId());
+	}
+}
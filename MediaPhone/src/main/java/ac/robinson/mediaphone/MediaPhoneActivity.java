@@ -36,6 +36,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Point;
@@ -63,6 +64,7 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.animation.Animation;
@@ -82,6 +84,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ac.robinson.mediaphone.activity.FrameEditorActivity;
 import ac.robinson.mediaphone.activity.NarrativeBrowserActivity;
@@ -92,11 +99,15 @@ import ac.robinson.mediaphone.activity.TemplateBrowserActivity;
 import ac.robinson.mediaphone.importing.ImportedFileParser;
 import ac.robinson.mediaphone.provider.FrameItem;
 import ac.robinson.mediaphone.provider.FramesManager;
+import ac.robinson.mediaphone.provider.ImageRotation;
 import ac.robinson.mediaphone.provider.MediaItem;
 import ac.robinson.mediaphone.provider.MediaManager;
+import ac.robinson.mediaphone.provider.MediaMetadata;
 import ac.robinson.mediaphone.provider.MediaPhoneProvider;
 import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
+import ac.robinson.mediaphone.provider.PlaybackPlanCache;
+import ac.robinson.mediaphone.provider.ScreenImageDecoder;
 import ac.robinson.mediautilities.FrameMediaContainer;
 import ac.robinson.mediautilities.HTMLUtilities;
 import ac.robinson.mediautilities.MOVUtilities;
@@ -126,13 +137,15 @@ import androidx.core.content.res.ResourcesCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
-import androidx.exifinterface.media.ExifInterface;
 
 public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 	private static final int PERMISSION_EXPORT_STORAGE = 100;
 	private static final int PERMISSION_POST_NOTIFICATIONS = 101;
 
+	private static final int MEDIA_IMPORT_THREADS = 4; // number of selected items to copy at once when importing
+	private static final String EXPORT_IMAGES_SUFFIX = "-images"; // the directory for upright copies of exported images
+
 	private ImportFramesTask mImportFramesTask;
 	private ProgressDialog mImportFramesProgressDialog;
 	private boolean mImportFramesDialogShown = false;
@@ -192,7 +205,9 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
         }
 
 		UIUtilities.setPixelDithering(window);
-		checkDirectoriesExist();
+		long phaseStart = StartupTimings.begin();
+		checkStorageDirectoriesExist(); // the bluetooth observer is configured in loadAllPreferences, below
+		StartupTimings.end("check directories (" + getClass().getSimpleName() + ")", phaseStart);
 
 		Object retained = getLastCustomNonConfigurationInstance();
 		if (retained instanceof Object[] retainedTasks) {
@@ -215,7 +230,27 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			}
 		}
 
+		phaseStart = StartupTimings.begin();
 		loadAllPreferences(); // must do this before loading so that, e.g., audio knows high/low setting before setup
+		StartupTimings.end("load preferences (" + getClass().getSimpleName() + ")", phaseStart);
+
+		// on a cold start, the application waits for the first screen to be drawn before doing any deferred setup
+		try {
+			final MediaPhoneApplication application = (MediaPhoneApplication) getApplication();
+			if (!application.isStartupComplete()) {
+				final View decorView = window.getDecorView();
+				decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+					@Override
+					public boolean onPreDraw() {
+						decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+						decorView.post(application::onFirstActivityDrawn); // posted so it runs once this frame is drawn
+						return true;
+					}
+				});
+			}
+		} catch (ClassCastException e) {
+			// see configureBluetoothObserver - deferred setup is then run immediately instead (see runAfterStartup)
+		}
 	}
 
 	@Override
@@ -648,8 +683,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 						// to avoid errors in copying (e.g., any future attribute additions), we fully replace the existing item,
 						String destinationMediaId = destinationMedia.getInternalId();
-						MediaManager.deleteMediaFromBackgroundTask(contentResolver, destinationMediaId);
-						MediaManager.deleteMediaLinks(contentResolver, destinationMediaId); // for safety (should not be any)
+						MediaManager.deleteMediaFromBackgroundTask(contentResolver, destinationMediaId); // also removes any span
 
 						// the new media item uses the same ID as the one we are replacing
 						final MediaItem newMedia = MediaItem.fromExisting(selectedSourceMedia, destinationMediaId,
@@ -701,8 +735,12 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		SharedPreferences mediaPhoneSettings = PreferenceManager.getDefaultSharedPreferences(MediaPhoneActivity.this);
 		Resources res = getResources();
 
-		// bluetooth observer
-		configureBluetoothObserver(mediaPhoneSettings, res);
+		// bluetooth observer (binding the importing service isn't needed to show the first screen, so can wait)
+		runAfterStartup("configure bluetooth observer", () -> {
+			if (!isFinishing()) {
+				configureBluetoothObserver(mediaPhoneSettings, res);
+			}
+		});
 
 		// importing confirmation
 		boolean confirmImporting = res.getBoolean(R.bool.default_confirm_importing);
@@ -795,7 +833,39 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		}
 	}
 
+	/**
+	 * Run initialiser on the UI thread once startup has finished (i.e., after the first screen has been drawn), or now if
+	 * it already has - for activity setup that is not needed to show the first screen
+	 */
+	protected void runAfterStartup(String phase, Runnable initialiser) {
+		runAfterStartup(phase, true, initialiser);
+	}
+
+	/**
+	 * As {@link #runAfterStartup(String, Runnable)}, but the initialiser runs on a background thread if uiThread is
+	 * false
+	 */
+	protected void runAfterStartup(String phase, boolean uiThread, Runnable initialiser) {
+		try {
+			((MediaPhoneApplication) getApplication()).runAfterStartup(phase, uiThread, initialiser);
+		} catch (ClassCastException e) {
+			// see configureBluetoothObserver
+			if (uiThread) {
+				initialiser.run();
+			} else {
+				new Thread(initialiser).start();
+			}
+		}
+	}
+
 	public void checkDirectoriesExist() {
+		if (checkStorageDirectoriesExist()) {
+			// bluetooth directory availability may have changed if we're calling from an SD card availability notification
+			configureBluetoothObserver(PreferenceManager.getDefaultSharedPreferences(MediaPhoneActivity.this), getResources());
+		}
+	}
+
+	private boolean checkStorageDirectoriesExist() {
 
 		// nothing will work, and previously saved files will not load
 		if (MediaPhone.DIRECTORY_STORAGE == null) {
@@ -806,7 +876,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				homeIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 				startActivity(homeIntent);
 				Log.d(DebugUtilities.getLogTag(this), "Couldn't open storage directory - clearing top to exit");
-				return;
+				return false;
 			}
 
 			SharedPreferences mediaPhoneSettings = getSharedPreferences(MediaPhone.APPLICATION_NAME, Context.MODE_PRIVATE);
@@ -818,7 +888,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					}
 					Log.d(DebugUtilities.getLogTag(this), "Couldn't open storage directory (SD card) - exiting");
 					finish();
-					return;
+					return false;
 				}
 			}
 
@@ -827,7 +897,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			}
 			Log.d(DebugUtilities.getLogTag(this), "Couldn't open storage directory - exiting");
 			finish();
-			return;
+			return false;
 		}
 
 		// thumbnail cache won't work, but not really fatal (thumbnails will be loaded into memory on demand)
@@ -839,9 +909,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		if (MediaPhone.DIRECTORY_TEMP == null) {
 			Log.d(DebugUtilities.getLogTag(this), "Temporary directory not found - will warn before narrative export");
 		}
-
-		// bluetooth directory availability may have changed if we're calling from an SD card availability notification
-		configureBluetoothObserver(PreferenceManager.getDefaultSharedPreferences(MediaPhoneActivity.this), getResources());
+		return true;
 	}
 
 	protected void onBluetoothServiceRegistered() {
@@ -864,14 +932,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			return; // error - no filename
 		}
 
-		// get the imported file object
+		// get the imported file object (BluetoothObserver has already checked, on its own thread, that we can access it)
 		final File importedFile = new File(importedFileName);
-		if (!importedFile.canRead() || !importedFile.canWrite()) {
-			if (MediaPhone.IMPORT_DELETE_AFTER_IMPORTING) {
-				importedFile.delete(); // error - probably won't work, but might as well try; doesn't throw, so is okay
-			}
-			return;
-		}
 
 		final int messageType = msg.what;
 		switch (messageType) {
@@ -919,18 +981,34 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 	}
 
 	private void importFiles(int type, File receivedFile) {
+		// parsing happens in the import task's background thread - start a new task or add to existing
+		if (mImportFramesTask != null) {
+			mImportFramesTask.addNarrativeToParse(type, receivedFile);
+		} else {
+			mImportFramesTask = new ImportFramesTask(MediaPhoneActivity.this);
+			mImportFramesTask.addNarrativeToParse(type, receivedFile);
+			mImportFramesTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+		}
+	}
+
+	/**
+	 * Parse a received narrative file and add its narrative to the database (but not its frames). Run on a background
+	 * thread; the returned frames should be imported via {@link ImportedFileParser#importNarrativeFrame}.
+	 */
+	private static ArrayList<FrameMediaContainer> parseNarrativeFile(Resources res, ContentResolver contentResolver,
+																	 int type, File receivedFile) {
 		ArrayList<FrameMediaContainer> narrativeFrames = null;
-		int sequenceIncrement = getResources().getInteger(R.integer.frame_narrative_sequence_increment);
+		int sequenceIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
 
 		switch (type) {
 			case MediaUtilities.MSG_RECEIVED_COMPLETE_SMIL_FILE:
-				narrativeFrames = ImportedFileParser.importSMILNarrative(getContentResolver(), receivedFile, sequenceIncrement);
+				narrativeFrames = ImportedFileParser.importSMILNarrative(contentResolver, receivedFile, sequenceIncrement);
 				break;
 
 			case MediaUtilities.MSG_RECEIVED_HTML_FILE:
 				// UIUtilities.showToast(MediaPhoneActivity.this, R.string.html_feature_coming_soon);
 				// TODO: will we ever realistically implement this?
-				narrativeFrames = ImportedFileParser.importHTMLNarrative(getContentResolver(), receivedFile, sequenceIncrement);
+				narrativeFrames = ImportedFileParser.importHTMLNarrative(contentResolver, receivedFile, sequenceIncrement);
 				break;
 
 			case MediaUtilities.MSG_RECEIVED_MOV_FILE:
@@ -940,8 +1018,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			default:
 				break;
 		}
-
-		importFrames(narrativeFrames);
+		return narrativeFrames;
 	}
 
 	private void importFrames(ArrayList<FrameMediaContainer> narrativeFrames) {
@@ -969,6 +1046,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		// all frames imported - remove the reference, but start a new thread for any narratives/frames added since we started
 		HashSet<String> additionalNarratives = null;
 		ArrayList<FrameMediaContainer> newFrames = null;
+		ArrayList<ImportFramesTask.NarrativeFile> newNarratives = null;
 		if (mImportFramesTask != null) {
 			if (mImportFramesTask.getFramesSize() > 0) {
 				// convert from the Collections.SynchronizedArrayList we receive - needs synchronization when iterating
@@ -977,6 +1055,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					newFrames = new ArrayList<>(importedFrames);
 				}
 			}
+			newNarratives = mImportFramesTask.getNarrativesToParse();
 			additionalNarratives = mImportFramesTask.getAdditionalNarratives();
 			mImportFramesTask = null;
 		}
@@ -992,9 +1071,16 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		}
 		mImportFramesProgressDialog = null;
 
-		// import any frames that were queued after we finished
-		if (newFrames != null) {
-			importFrames(newFrames);
+		// import any frames (or parse any narratives) that were queued after we finished
+		if (newFrames != null || (newNarratives != null && !newNarratives.isEmpty())) {
+			if (newFrames != null) {
+				importFrames(newFrames);
+			}
+			if (newNarratives != null) {
+				for (ImportFramesTask.NarrativeFile narrativeFile : newNarratives) {
+					importFiles(narrativeFile.mType, narrativeFile.mFile);
+				}
+			}
 		} else {
 			if (additionalNarratives != null && !additionalNarratives.isEmpty()) {
 				return; // additional narratives will get imported automatically, as long as we don't exit the observer here...
@@ -1022,7 +1108,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 	}
 
 	/**
-	 * Inserts a frame after the one containing this media item, and returns the new frame's internal id
+	 * Inserts a frame after the one containing this media item, and returns the new frame's internal id (or null if the
+	 * frame could not be inserted)
 	 */
 	protected String insertFrameAfterMedia(MediaItem existingMedia) {
 		String insertAfterId = existingMedia.getParentId();
@@ -1038,25 +1125,32 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		final String newFrameId = newFrame.getInternalId();
 		FramesManager.addFrame(getResources(), contentResolver, newFrame, false); // must add before calculating seq id
 
-		// get and update any inherited media
-		ArrayList<MediaItem> inheritedMedia = MediaManager.findMediaByParentId(contentResolver, insertAfterId);
-		for (final MediaItem media : inheritedMedia) {
-			if (media.getSpanFrames()) {
-				MediaManager.addMediaLink(contentResolver, newFrameId, media.getInternalId());
-			}
-		}
-
 		// get and update the required narrative sequence id
 		final int narrativeSequenceId = FramesManager.adjustNarrativeSequenceIds(getResources(), contentResolver, narrativeId,
 				insertAfterId);
+		if (narrativeSequenceId < 0) {
+			FramesManager.deleteFrameFromBackgroundTask(contentResolver, newFrameId); // no position available
+			return null;
+		}
 		newFrame.setNarrativeSequenceId(narrativeSequenceId);
 		FramesManager.updateFrame(contentResolver, newFrame);
 
+		// get and update any inherited media (spans are resolved by position, so this must be after setting the sequence id)
+		ArrayList<MediaItem> inheritedMedia = MediaManager.findMediaByParentId(contentResolver, insertAfterId);
+		for (final MediaItem media : inheritedMedia) {
+			if (media.getSpanFrames()) {
+				MediaManager.extendMediaSpan(contentResolver, media.getInternalId(), newFrameId);
+			}
+		}
+
 		return newFrameId;
 	}
 
 	/**
 	 * Switch from one frame to another. Will call onBackPressed() on the calling activity
+	 *
+	 * @param buttonId   0 to switch to newFrameId; or R.id.menu_previous_frame / R.id.menu_next_frame to switch to the
+	 *                   previous or next frame (if newFrameId is not null it is assumed to be that frame's id)
 	 */
 	protected boolean switchFrames(String currentFrameId, int buttonId, String newFrameId) {
 		if (currentFrameId == null) {
@@ -1064,31 +1158,29 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		}
 		ContentResolver contentResolver = getContentResolver();
 		FrameItem currentFrame = FramesManager.findFrameByInternalId(contentResolver, currentFrameId);
-		ArrayList<String> narrativeFrameIds = FramesManager.findFrameIdsByParentId(contentResolver, currentFrame.getParentId());
-		int currentPosition = narrativeFrameIds.indexOf(currentFrameId);
-		int newFramePosition = -1;
+		String targetFrameId = null;
 		int inAnimation = R.anim.slide_in_from_right;
 		int outAnimation = R.anim.slide_out_to_left;
 		if (buttonId == 0) {
-			newFramePosition = narrativeFrameIds.indexOf(newFrameId);
-			if (currentPosition < newFramePosition) {
-				inAnimation = R.anim.slide_in_from_left;
-				outAnimation = R.anim.slide_out_to_right;
+			FrameItem newFrame = FramesManager.findFrameByInternalId(contentResolver, newFrameId);
+			if (newFrame != null && !newFrame.getDeleted() && newFrame.getParentId().equals(currentFrame.getParentId())) {
+				targetFrameId = newFrameId;
+				if (currentFrame.getNarrativeSequenceId() < newFrame.getNarrativeSequenceId()) {
+					inAnimation = R.anim.slide_in_from_left;
+					outAnimation = R.anim.slide_out_to_right;
+				}
 			}
 		} else if (buttonId == R.id.menu_previous_frame) {
-			if (currentPosition > 0) {
-				newFramePosition = currentPosition - 1;
-			}
+			targetFrameId = newFrameId != null ? newFrameId :
+					FramesManager.findPreviousFrameId(contentResolver, currentFrame);
 			inAnimation = R.anim.slide_in_from_left;
 			outAnimation = R.anim.slide_out_to_right;
 		} else if (buttonId == R.id.menu_next_frame) {
-			if (currentPosition < narrativeFrameIds.size() - 1) {
-				newFramePosition = currentPosition + 1;
-			}
+			targetFrameId = newFrameId != null ? newFrameId : FramesManager.findNextFrameId(contentResolver, currentFrame);
 		}
-		if (newFramePosition >= 0) {
+		if (targetFrameId != null) {
 			final Intent nextPreviousFrameIntent = new Intent(MediaPhoneActivity.this, FrameEditorActivity.class);
-			nextPreviousFrameIntent.putExtra(getString(R.string.extra_internal_id), narrativeFrameIds.get(newFramePosition));
+			nextPreviousFrameIntent.putExtra(getString(R.string.extra_internal_id), targetFrameId);
 
 			// this allows us to prevent showing first activity launch hints repeatedly
 			nextPreviousFrameIntent.putExtra(getString(R.string.extra_switched_frames), true);
@@ -1184,10 +1276,11 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 	}
 
 	/**
-	 * Removes the link to the media item with mediaId from startFrameId and all frames following - used when replacing
-	 * a linked media item with a new item
+	 * Removes the media item with mediaId from startFrameId and all frames following - used when replacing a spanning
+	 * media item with a new item. The database is updated in the background; onSpanEnded (if not null) is run on the UI
+	 * thread once the item no longer applies to startFrameId, so that it can be replaced.
 	 */
-	protected void endLinkedMediaItem(final String mediaId, final String startFrameId) {
+	protected void endLinkedMediaItem(final String mediaId, final String startFrameId, final Runnable onSpanEnded) {
 		// because database access can take time, we need to do db and icon updates in the same thread
 		runQueuedBackgroundTask(new BackgroundRunnable() {
 			@Override
@@ -1202,44 +1295,42 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 			@Override
 			public void run() {
-				// we only need the parent ids of frames after (not including) the current one
+				// the frames after (not including) the current one that currently inherit this item
 				ContentResolver contentResolver = getContentResolver();
-				ArrayList<String> narrativeFrameIds = FramesManager.getFollowingFrameIds(contentResolver, startFrameId, false);
-				if (narrativeFrameIds == null) {
+				final ArrayList<String> linkedFrameIds = MediaManager.findLinkedParentIdsByMediaId(contentResolver,
+						mediaId);
+				final int startIndex = linkedFrameIds.indexOf(startFrameId);
+
+				// ending the span is a single update - there's no need to update the current frame's icon because if they
+				// do edit we'll update automatically; if they don't then we'll have to undo all these changes...
+				if (startIndex >= 0) {
+					MediaManager.endMediaSpanBefore(contentResolver, mediaId, startFrameId);
+				}
+				if (onSpanEnded != null) {
+					runOnUiThread(onSpanEnded);
+				}
+
+				final FrameItem startFrame = FramesManager.findFrameByInternalId(contentResolver, startFrameId);
+				if (startIndex < 0 || startFrame == null) {
+					return; // this frame doesn't inherit the item, so there is nothing else to update
+				}
+				final List<String> followingFrameIds = linkedFrameIds.subList(startIndex + 1, linkedFrameIds.size());
+				if (followingFrameIds.isEmpty()) {
 					return;
 				}
 
-				// hold a list of icons to update, so we only can do database manipulation first
+				// queue updating icons for changed frames; remove frames now blank
+				HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+						startFrame.getParentId(), null);
 				ArrayList<String> iconsToUpdate = new ArrayList<>();
-
-				// now remove the media link from all of these frames - we do this way rather than just selecting links
-				// because links are not ordered TODO: could join select with frames table, ordering by sequence id?
-				for (final String frameId : narrativeFrameIds) {
-					boolean mediaFound = false;
-
-					// need to check all following frames until we find one that doesn't link to this item
-					ArrayList<String> frameMedia = MediaManager.findLinkedMediaIdsByParentId(contentResolver, frameId);
-					for (String media : frameMedia) {
-						if (mediaId.equals(media)) {
-							mediaFound = true;
-							break;
-						}
-					}
-
-					// remove the media link and queue updating icons for changed frames; remove frames now blank
-					if (mediaFound) {
-						MediaManager.deleteMediaLink(contentResolver, frameId, mediaId);
-
-						if (MediaManager.countMediaByParentId(contentResolver, frameId, false) > 0) {
-							iconsToUpdate.add(frameId);
-						} else {
-							// don't allow frames that don't have any normal (i.e., non-linked media) - set deleted
-							FrameItem frameToDelete = FramesManager.findFrameByInternalId(contentResolver, frameId);
-							frameToDelete.setDeleted(true);
-							FramesManager.updateFrame(contentResolver, frameToDelete);
-						}
+				for (final String frameId : followingFrameIds) {
+					if (hasOwnMedia(narrativeMedia.get(frameId), frameId)) {
+						iconsToUpdate.add(frameId);
 					} else {
-						break;
+						// don't allow frames that don't have any normal (i.e., non-linked media) - set deleted
+						FrameItem frameToDelete = FramesManager.findFrameByInternalId(contentResolver, frameId);
+						frameToDelete.setDeleted(true);
+						FramesManager.updateFrame(contentResolver, frameToDelete);
 					}
 				}
 
@@ -1247,11 +1338,21 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				FramesManager.reloadFrameIcons(getResources(), contentResolver, iconsToUpdate);
 			}
 		});
+	}
 
-		// the current media item is a special case - we do it separately because we don't want to accidentally delete
-		// the frame if its only current content is the inherited item; there's also no need to update the icon because
-		// if they do edit we'll update automatically; if they don't then we'll have to undo all these changes...
-		MediaManager.deleteMediaLink(getContentResolver(), startFrameId, mediaId);
+	/**
+	 * @param frameMedia all of a frame's media, as returned by {@link MediaManager#findMediaByNarrativeId} (may be null)
+	 * @return Whether the frame has any media of its own (i.e., not just media inherited from previous frames)
+	 */
+	private static boolean hasOwnMedia(ArrayList<MediaItem> frameMedia, String frameId) {
+		if (frameMedia != null) {
+			for (MediaItem media : frameMedia) {
+				if (frameId.equals(media.getParentId())) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -1269,10 +1370,11 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		// first get a list of the frames that could need updating
 		ContentResolver contentResolver = getContentResolver();
 		FrameItem parentFrame = FramesManager.findFrameByInternalId(contentResolver, startFrameId);
-		final ArrayList<String> narrativeFrameIds = FramesManager.getFollowingFrameIds(contentResolver, parentFrame, true);
+		final ArrayList<String> narrativeFrameIds = FramesManager.getFollowingFrameIds(contentResolver, parentFrame);
 		if (narrativeFrameIds == null) {
 			return; // no frames found - error; won't be able to update anything
 		}
+		final String narrativeId = parentFrame.getParentId();
 
 		// and a list of icons that we will need to update
 		// this also fixes an issue where database conflicts were occurring (random quits) in the task thread
@@ -1297,13 +1399,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			ImageCacheUtilities.setLoadingIcon(FrameItem.getCacheId(frameId));
 		}
 
-		// save loading things twice if we can - get the previous frame and its media
-		final String previousFrameId;
-		if (!narrativeFrameIds.isEmpty()) {
-			previousFrameId = narrativeFrameIds.remove(0);
-		} else {
-			previousFrameId = null;
-		}
+		// get the previous frame (null if startFrameId is the first frame) and its media
+		final String previousFrameId = FramesManager.findPreviousFrameId(contentResolver, parentFrame);
 
 		// get inherited media (items from the previous frame that span multiple frames)
 		final ArrayList<MediaItem> inheritedMedia = new ArrayList<>();
@@ -1321,16 +1418,11 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		// updated by the time we return, and may not show in the frame editor - to deal with this we propagate the
 		// current frame's media first, on the UI thread, but only for the type of deletedMediaItem (no others apply)
 		if (deletedMediaItem != null) {
-			// link the previous frame's media of this item's type (if not currently linked)
+			// extend the previous frame's media of this item's type (has no effect if it already reaches this frame)
 			int mediaType = deletedMediaItem.getType();
-			if (previousFrameId != null) {
-				ArrayList<String> currentMedia = MediaManager.findLinkedMediaIdsByParentId(contentResolver, startFrameId);
-				// need to compare with existing links so we don't re-add audio when deleting one
-				for (MediaItem media : inheritedMedia) {
-					final String mediaId = media.getInternalId();
-					if (media.getType() == mediaType && !currentMedia.contains(mediaId)) {
-						MediaManager.addMediaLink(contentResolver, startFrameId, mediaId);
-					}
+			for (MediaItem media : inheritedMedia) {
+				if (media.getType() == mediaType) {
+					MediaManager.extendMediaSpan(contentResolver, media.getInternalId(), startFrameId);
 				}
 			}
 		}
@@ -1350,7 +1442,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			@Override
 			public void run() {
 
-				// first, delete the media items as requested
+				// first, delete the media items as requested, and end their spans
 				ContentResolver contentResolver = getContentResolver();
 				if (frameMediaItemsToDelete != null) {
 					for (String mediaId : frameMediaItemsToDelete) {
@@ -1359,8 +1451,12 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 							deletedMedia.setDeleted(true);
 							MediaManager.updateMedia(contentResolver, deletedMedia);
 						}
+						MediaManager.clearMediaSpan(contentResolver, mediaId);
 					}
 				}
+				if (deletedMediaItem != null) {
+					MediaManager.clearMediaSpan(contentResolver, deletedMediaItem.getInternalId());
+				}
 
 				// if we're removing a frame's media, we need to add the current frame to propagate media to (in this
 				// case, startFrameId is the frame after the deleted frame, rather than the frame media is removed from)
@@ -1375,24 +1471,31 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					return;
 				}
 
-				// now remove previously propagated media and propagate media from earlier frames
+				// load all of the narrative's media at once, rather than querying each frame in turn
+				HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+						narrativeId, null);
+
+				// now remove previously propagated media and find how far media from earlier frames should propagate
 				boolean deletedMediaComplete = false;
+				HashMap<String, String> newSpanEnds = new HashMap<>();
 				iconsToUpdate.add(0, startFrameId); // always update the current icon (first for better appearance)
 				for (final String frameId : narrativeFrameIds) {
+					ArrayList<MediaItem> frameMedia = narrativeMedia.get(frameId);
 
 					// update icons to remove this media item from its propagated frames
 					if (!deletedMediaComplete) {
 						// delete frames that are now blank
 						if (iconsToUpdate.contains(frameId)) {
-							if (MediaManager.countMediaByParentId(contentResolver, frameId, false) <= 0) {
+							if (!hasOwnMedia(frameMedia, frameId)) {
 								// don't allow frames that don't have any normal (i.e., non-linked media) - set deleted
 								iconsToUpdate.remove(frameId); // no need to update this icon any more - will not exist
 								FrameItem frameToDelete = FramesManager.findFrameByInternalId(contentResolver, frameId);
 								frameToDelete.setDeleted(true);
 								FramesManager.updateFrame(contentResolver, frameToDelete);
+								continue; // nothing can be propagated to a deleted frame
 							}
 						} else {
-							// we've reached the end of spanning media if there's no link to a frame
+							// we've reached the end of spanning media if the frame didn't inherit it
 							deletedMediaComplete = true;
 						}
 					}
@@ -1400,49 +1503,19 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					// need to check all following frames until we find those with media of this type
 					if (!inheritedMedia.isEmpty()) {
 						// check this frame's media for collisions with spanning items
-						// no inherited items needed (we allow only one spanning audio item per frame to avoid overcomplexity)
-						ArrayList<MediaItem> frameMedia = MediaManager.findMediaByParentId(contentResolver, frameId, false);
 						ArrayList<MediaItem> mediaToRemove = new ArrayList<>();
-						int audioCount = 0;
-						boolean hasSpanningAudio = false;
-						for (MediaItem existingMedia : frameMedia) {
-							if (existingMedia.getType() == MediaPhoneProvider.TYPE_AUDIO) {
-								audioCount += 1;
-								if (existingMedia.getSpanFrames()) {
-									hasSpanningAudio = true;
-									break;
-								}
-							}
-						}
 						for (final MediaItem newMedia : inheritedMedia) {
-							int currentType = newMedia.getType();
-							if (currentType == MediaPhoneProvider.TYPE_AUDIO &&
-									(audioCount >= MediaPhone.MAX_AUDIO_ITEMS || hasSpanningAudio)) {
-								mediaToRemove.add(newMedia); // spanning audio or >= max stops spanning - finished item
+							if (MediaManager.frameMediaEndsSpan(frameMedia, frameId, newMedia.getType())) {
+								mediaToRemove.add(newMedia); // finished item
 							} else {
-								for (MediaItem existingMedia : frameMedia) {
-									if (existingMedia.getType() == currentType) {
-										mediaToRemove.add(newMedia); // any other media always overrides spanning - item done
-									}
-								}
+								newSpanEnds.put(newMedia.getInternalId(), frameId);
 							}
 						}
 						inheritedMedia.removeAll(mediaToRemove);
 
-						// any media still in the propagated list should be added to this frame
-						if (!inheritedMedia.isEmpty()) {
-							ArrayList<String> currentInheritedMedia = MediaManager.findLinkedMediaIdsByParentId(contentResolver,
-									frameId);
-							// need to compare with existing links so we don't re-add existing ones
-							for (MediaItem propagatedMedia : inheritedMedia) {
-								final String propagatedMediaId = propagatedMedia.getInternalId();
-								if (!currentInheritedMedia.contains(propagatedMediaId)) {
-									MediaManager.addMediaLink(contentResolver, frameId, propagatedMediaId);
-								}
-							}
-							if (!iconsToUpdate.contains(frameId)) { // only add items we haven't already queued
-								iconsToUpdate.add(frameId);
-							}
+						// any media still in the propagated list will be extended to this frame
+						if (!inheritedMedia.isEmpty() && !iconsToUpdate.contains(frameId)) {
+							iconsToUpdate.add(frameId); // only add items we haven't already queued
 						}
 
 					} else if (deletedMediaComplete) {
@@ -1450,17 +1523,12 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					}
 				}
 
-				// remove all links to the deleted media items
-				if (deletedMediaItem != null) {
-					MediaManager.deleteMediaLinks(contentResolver, deletedMediaItem.getInternalId());
-				}
-				if (frameMediaItemsToDelete != null) {
-					for (String mediaLink : frameMediaItemsToDelete) {
-						MediaManager.deleteMediaLinks(contentResolver, mediaLink);
-					}
+				// extending each propagated item is a single update, regardless of how many frames it now spans
+				for (Map.Entry<String, String> spanEnd : newSpanEnds.entrySet()) {
+					MediaManager.extendMediaSpan(contentResolver, spanEnd.getKey(), spanEnd.getValue());
 				}
 
-				// finally, update icons for changed frames (must be done last so the links no longer exist)
+				// finally, update icons for changed frames (must be done last so the spans are up to date)
 				FramesManager.reloadFrameIcons(getResources(), contentResolver, iconsToUpdate);
 			}
 		});
@@ -1497,16 +1565,27 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				ArrayList<String> iconsToUpdate;
 				ContentResolver contentResolver = getContentResolver();
 
+				FrameItem parentFrame = FramesManager.findFrameByInternalId(contentResolver, parentId);
+				if (parentFrame == null) {
+					return; // nothing we can do - the media item's frame no longer exists
+				}
+				String narrativeId = parentFrame.getParentId();
+
 				if (isFrameSpanning) {
 
 					// TODO: here we need to inherit previous audio when turning spanning off - combine this function
 					//  with inheritMediaAndDeleteItemLinks?
 
-					// get the known links to this media item and check the frames contain other media; remove if not
+					// get the frames that inherit this media item, then end its span (a single update)
 					iconsToUpdate = MediaManager.findLinkedParentIdsByMediaId(contentResolver, mediaId);
+					MediaManager.clearMediaSpan(contentResolver, mediaId);
+
+					// check the frames contain other media; remove if not
+					HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+							narrativeId, null);
 					ArrayList<String> removedIcons = new ArrayList<>();
 					for (final String frameId : iconsToUpdate) {
-						if (MediaManager.countMediaByParentId(contentResolver, frameId, false) <= 0) {
+						if (!hasOwnMedia(narrativeMedia.get(frameId), frameId)) {
 							// don't allow frames that don't have any normal (i.e., non-linked media) - set deleted
 							FrameItem frameToDelete = FramesManager.findFrameByInternalId(contentResolver, frameId);
 							frameToDelete.setDeleted(true);
@@ -1516,58 +1595,35 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					}
 					iconsToUpdate.removeAll(removedIcons);
 
-					// delete all links to this media item
-					MediaManager.deleteMediaLinks(contentResolver, mediaId);
-
 				} else {
 
 					iconsToUpdate = new ArrayList<>();
-					ArrayList<String> narrativeFrameIds = FramesManager.getFollowingFrameIds(contentResolver, parentId, false);
-					if (narrativeFrameIds == null) {
-						return; // nothing we can do - we have no frame ids to propagate to, so can't enable spanning
-					}
 
-					// turn this item into a frame-spanning media item by extending it to other frames
-					for (String frameId : narrativeFrameIds) {
-						// need to add this media to all following frames until one that already has media of this type
-						ArrayList<MediaItem> frameMedia = MediaManager.findMediaByParentId(contentResolver, frameId, false);
-						// no inherited items needed (now allow only one spanning audio item per frame)
-						boolean mediaFound = false;
-						if (mediaType == MediaPhoneProvider.TYPE_AUDIO) {
-							int audioCount = 0;
-							boolean hasSpanningAudio = false;
-							for (MediaItem existingMedia : frameMedia) {
-								if (existingMedia.getType() == MediaPhoneProvider.TYPE_AUDIO) {
-									audioCount += 1;
-									if (existingMedia.getSpanFrames()) {
-										hasSpanningAudio = true;
-										break;
-									}
-								}
-							}
-							if (audioCount >= MediaPhone.MAX_AUDIO_ITEMS || hasSpanningAudio) {
-								mediaFound = true; // over max audio items stops spanning - finished item
-							}
-						} else {
-							for (MediaItem media : frameMedia) {
-								if (media.getType() == mediaType) {
-									mediaFound = true; // any other media overrides spanning - item done
-									break;
-								}
-							}
+					// turn this item into a frame-spanning media item by extending it to following frames until one that
+					// already has media of this type, then apply the new span as a single update - we stream the following
+					// frames because spanning usually stops long before the end of the narrative
+					HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+							narrativeId, null);
+					try (Cursor c = FramesManager.getFollowingFramesCursor(contentResolver, parentFrame)) {
+						if (c == null) {
+							return; // nothing we can do - we have no frame ids to propagate to, so can't enable spanning
 						}
-						if (!mediaFound) {
-							// add a linked media element and update the icon of the frame in question
-							MediaManager.addMediaLink(contentResolver, frameId, mediaId);
+						final int columnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
+						while (c.moveToNext()) {
+							final String frameId = c.getString(columnIndex);
+							if (MediaManager.frameMediaEndsSpan(narrativeMedia.get(frameId), frameId, mediaType)) {
+								break;
+							}
 							ImageCacheUtilities.setLoadingIcon(FrameItem.getCacheId(frameId)); // for better ui flow
 							iconsToUpdate.add(frameId);
-						} else {
-							break;
 						}
 					}
+					if (!iconsToUpdate.isEmpty()) {
+						MediaManager.extendMediaSpan(contentResolver, mediaId, iconsToUpdate.get(iconsToUpdate.size() - 1));
+					}
 				}
 
-				// finally, update icons for changed frames (must be done last so the link no longer exists)
+				// finally, update icons for changed frames (must be done last so the span is up to date)
 				FramesManager.reloadFrameIcons(getResources(), contentResolver, iconsToUpdate);
 			}
 		});
@@ -1626,6 +1682,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					mImportSucceeded = importMediaCallback.importMedia(currentMediaItem, selectedSingleItem);
 					if (mImportSucceeded) {
 						MediaManager.updateMedia(getContentResolver(), currentMediaItem);
+						MediaManager.updateMediaMetadata(getContentResolver(), currentMediaItem);
+						ScreenImageDecoder.createScreenDerivative(getResources(), getContentResolver(), currentMediaItem);
 					}
 				}
 			});
@@ -1661,44 +1719,116 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 				@Override
 				public void run() {
-					Resources resources = getResources();
-					ContentResolver contentResolver = getContentResolver();
+					final Resources resources = getResources();
+					final ContentResolver contentResolver = getContentResolver();
+
+					// the first item goes to the current frame; subsequent items go to new frames
+					// TODO: could prompt whether to add to subsequent existing frames or create new ones
+					final ArrayList<FrameItem> newFrames = new ArrayList<>(selectedItemCount - 1);
+					final ArrayList<MediaItem> newMediaItems = new ArrayList<>(selectedItemCount);
+					newMediaItems.add(currentMediaItem);
+					for (int i = 1; i < selectedItemCount; i++) {
+						FrameItem newFrame = new FrameItem(narrativeId, -1);
+						newFrames.add(newFrame);
+						newMediaItems.add(new MediaItem(newFrame.getInternalId(), "TEMP", -1));
+					}
 
-					String insertAfterFrame = startAfterFrameId;
+					// copy all items in parallel - most of the time is spent waiting for the providers' I/O
+					// see: https://commonsware.com/blog/2016/03/15/how-consume-content-uri.html
+					final ExecutorService importExecutor = Executors.newFixedThreadPool(
+							Math.min(MEDIA_IMPORT_THREADS, selectedItemCount));
+					final ArrayList<Callable<Boolean>> importTasks = new ArrayList<>(selectedItemCount);
 					for (int i = 0; i < selectedItemCount; i++) {
-						// see: https://commonsware.com/blog/2016/03/15/how-consume-content-uri.html
+						final MediaItem mediaItem = newMediaItems.get(i);
 						final Uri currentItemUri = selectedMultipleItems.getItemAt(i).getUri();
-						if (i == 0) {
-							// the first item goes to the current frame
-							if (importMediaCallback.importMedia(currentMediaItem, currentItemUri)) {
-								MediaManager.updateMedia(contentResolver, currentMediaItem);
-							} else {
-								mImportSucceeded = false; // an error occurred
+						importTasks.add(() -> importMediaCallback.importMedia(mediaItem, currentItemUri));
+					}
+					final boolean[] importResults = new boolean[selectedItemCount];
+					try {
+						List<Future<Boolean>> importFutures = importExecutor.invokeAll(importTasks);
+						for (int i = 0; i < selectedItemCount; i++) {
+							try {
+								importResults[i] = importFutures.get(i).get();
+							} catch (ExecutionException e) {
+								importResults[i] = false;
 							}
-						} else {
-							// subsequent items go to new frames
-							// TODO: could prompt whether to add to subsequent existing frames or create new ones
-							FrameItem newFrame = new FrameItem(narrativeId, -1);
-							MediaItem newMediaItem = new MediaItem(newFrame.getInternalId(), "TEMP", -1);
-
-							if (importMediaCallback.importMedia(newMediaItem, currentItemUri)) {
-								MediaManager.addMedia(contentResolver, newMediaItem);
+						}
+					} catch (InterruptedException e) {
+						importExecutor.shutdownNow();
+						deleteFrameFiles(newFrames);
+						mImportSucceeded = false;
+						return;
+					}
+					importExecutor.shutdown();
 
-								// insert the new frame, moving subsequent items aside
-								// TODO: moving could be much more efficient (i.e., once) with some refactoring
-								FramesManager.addFrame(getResources(), contentResolver, newFrame, false);
-								int narrativeSequenceId = FramesManager.adjustNarrativeSequenceIds(resources, contentResolver,
-										narrativeId, insertAfterFrame);
-								newFrame.setNarrativeSequenceId(narrativeSequenceId);
+					if (importResults[0]) {
+						MediaManager.updateMedia(contentResolver, currentMediaItem);
+						MediaManager.updateMediaMetadata(contentResolver, currentMediaItem);
+						ScreenImageDecoder.createScreenDerivative(resources, contentResolver, currentMediaItem);
+					} else {
+						mImportSucceeded = false; // an error occurred
+					}
 
-								// update the frame with its new location and icon
-								FramesManager.updateFrame(resources, contentResolver, newFrame, true);
+					// allocate positions for all successfully imported items at once, then insert them together
+					final ArrayList<FrameItem> importedFrames = new ArrayList<>(newFrames.size());
+					final ArrayList<MediaItem> importedMediaItems = new ArrayList<>(newFrames.size());
+					final ArrayList<FrameItem> failedFrames = new ArrayList<>();
+					for (int i = 1; i < selectedItemCount; i++) {
+						if (importResults[i]) {
+							importedFrames.add(newFrames.get(i - 1));
+							importedMediaItems.add(newMediaItems.get(i));
+						} else {
+							failedFrames.add(newFrames.get(i - 1));
+							mImportSucceeded = false; // an error occurred
+						}
+					}
+					deleteFrameFiles(failedFrames); // including any partially copied media
+					if (importedFrames.isEmpty()) {
+						return;
+					}
 
-								insertAfterFrame = newFrame.getInternalId();
-							} else {
-								mImportSucceeded = false; // an error occurred
-							}
+					final int[] narrativeSequenceIds = FramesManager.allocateNarrativeSequenceIds(resources, contentResolver,
+							narrativeId, startAfterFrameId, importedFrames.size());
+					if (narrativeSequenceIds == null) {
+						deleteFrameFiles(importedFrames); // no positions available
+						mImportSucceeded = false;
+						return;
+					}
+					for (int i = 0, n = importedFrames.size(); i < n; i++) {
+						final FrameItem frame = importedFrames.get(i);
+						frame.setNarrativeSequenceId(narrativeSequenceIds[i]);
+						ImageCacheUtilities.setLoadingIcon(frame.getCacheId()); // so the frame list doesn't load it itself
+					}
+					if (!FramesManager.addFramesWithMedia(contentResolver, importedFrames, importedMediaItems)) {
+						for (FrameItem frame : importedFrames) {
+							ImageCacheUtilities.deleteCachedIcon(frame.getCacheId());
+						}
+						deleteFrameFiles(importedFrames);
+						mImportSucceeded = false;
+						return;
+					}
+					final ArrayList<String> changedFrameIds = FramesManager.endReplacedMediaSpans(contentResolver,
+							importedFrames);
+
+					// record metadata and create icons in the background, refreshing the frame list once all icons exist;
+					// one at a time, as decoding several large images at once risks running out of memory
+					final ExecutorService iconExecutor = Executors.newSingleThreadExecutor();
+					iconExecutor.execute(() -> {
+						for (int i = 0, n = importedFrames.size(); i < n; i++) {
+							final MediaItem mediaItem = importedMediaItems.get(i);
+							MediaManager.updateMediaMetadata(contentResolver, mediaItem);
+							ScreenImageDecoder.createScreenDerivative(resources, contentResolver, mediaItem);
+							FramesManager.reloadFrameIcon(resources, contentResolver, importedFrames.get(i), true);
 						}
+						FramesManager.reloadFrameIcons(resources, contentResolver, changedFrameIds);
+						contentResolver.notifyChange(FrameItem.CONTENT_URI, null);
+					});
+					iconExecutor.shutdown(); // the queued icon task will still complete
+				}
+
+				private void deleteFrameFiles(ArrayList<FrameItem> frames) {
+					for (FrameItem frame : frames) {
+						IOUtilities.deleteRecursive(frame.getStorageDirectory());
 					}
 				}
 			});
@@ -1979,6 +2109,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 							@Override
 							public void run() {
+								orientExportImages(contentList, exportName);
 								setData(HTMLUtilities.generateNarrativeHTML(getResources(),
 										new File(MediaPhone.DIRECTORY_TEMP, exportName + MediaUtilities.HTML_FILE_EXTENSION),
 										contentList, settings));
@@ -2005,6 +2136,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 							@Override
 							public void run() {
+								orientExportImages(contentList, exportName);
 								ArrayList<Uri> SMILFiles = SMILUtilities.generateNarrativeSMIL(getResources(),
 										new File(MediaPhone.DIRECTORY_TEMP, exportName + MediaUtilities.SMIL_FILE_EXTENSION),
 										contentList, settings);
@@ -2049,30 +2181,20 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		float maxWidth = 0;
 		float maxHeight = 0;
 
+		final ContentResolver contentResolver = getContentResolver();
+		HashMap<String, MediaMetadata> narrativeMetadata = null;
 		for (FrameMediaContainer frame : contentList) {
 			if (frame.mImagePath != null) {
-				int orientation = BitmapUtilities.getImageOrientation(frame.mImagePath);
-				BitmapFactory.Options imageDimensions = BitmapUtilities.getImageDimensions(frame.mImagePath);
-				switch (orientation) { // notes below are from ExifInterface source
-					case ExifInterface.ORIENTATION_UNDEFINED: // here we just assume that its natural orientation is correct
-					case ExifInterface.ORIENTATION_NORMAL:
-					case ExifInterface.ORIENTATION_FLIP_HORIZONTAL: // left right reversed mirror
-					case ExifInterface.ORIENTATION_ROTATE_180:
-					case ExifInterface.ORIENTATION_FLIP_VERTICAL: // upside down mirror
-						maxWidth = Math.max(maxWidth, imageDimensions.outWidth);
-						maxHeight = Math.max(maxHeight, imageDimensions.outHeight);
-						break;
-
-					// flipped about top-left <--> bottom-right axis
-					case ExifInterface.ORIENTATION_TRANSPOSE:
-					case ExifInterface.ORIENTATION_ROTATE_90: // rotate 90 cw to right it
-						// flipped about top-right <--> bottom-left axis
-					case ExifInterface.ORIENTATION_TRANSVERSE:
-					case ExifInterface.ORIENTATION_ROTATE_270: // rotate 270 to right it
-						maxWidth = Math.max(maxWidth, imageDimensions.outHeight);
-						maxHeight = Math.max(maxHeight, imageDimensions.outWidth);
-						break;
+				if (narrativeMetadata == null) {
+					narrativeMetadata = MediaManager.findMediaMetadataByNarrativeId(contentResolver, frame.mParentId);
 				}
+				final MediaMetadata imageMetadata = findImageMetadata(contentResolver, narrativeMetadata,
+						new File(frame.mImagePath));
+				if (imageMetadata == null) {
+					continue;
+				}
+				maxWidth = Math.max(maxWidth, imageMetadata.getOrientedWidth());
+				maxHeight = Math.max(maxHeight, imageMetadata.getOrientedHeight());
 			}
 		}
 
@@ -2086,6 +2208,64 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		return new Point(Math.round(maxWidth / scaleFactor), Math.round(maxHeight / scaleFactor));
 	}
 
+	/**
+	 * Image dimensions and orientation are normally already stored, so we only need to read files whose entries are
+	 * missing or out of date (rather than parsing the headers and EXIF data of every image in the narrative)
+	 *
+	 * @param narrativeMetadata The stored metadata of the narrative's media; updated with any entries that are read
+	 * @return The image's metadata, or null if it could not be read
+	 */
+	private static MediaMetadata findImageMetadata(ContentResolver contentResolver,
+												   HashMap<String, MediaMetadata> narrativeMetadata, File imageFile) {
+		final String mediaId = IOUtilities.removeExtension(imageFile.getName()); // files are named by media id
+		MediaMetadata imageMetadata = narrativeMetadata.get(mediaId);
+		if (imageMetadata == null || !imageMetadata.isCurrent(imageFile)) {
+			MediaItem imageItem = MediaManager.findMediaByInternalId(contentResolver, mediaId);
+			imageMetadata = imageItem == null ? null : MediaManager.getMediaMetadata(contentResolver, imageItem);
+			if (imageMetadata != null) {
+				narrativeMetadata.put(mediaId, imageMetadata); // spanning images are repeated in every frame
+			}
+		}
+		return imageMetadata;
+	}
+
+	/**
+	 * Rotating an image may only change its EXIF orientation (see {@link ImageRotation}), but HTML and SMIL exports copy
+	 * image files as they are, and not every viewer (or the movie exporters) applies EXIF orientation. Before exporting,
+	 * we therefore replace any image that has an orientation with an upright copy in the export's temporary directory.
+	 * Must not be run on the UI thread.
+	 */
+	private void orientExportImages(ArrayList<FrameMediaContainer> contentList, String exportName) {
+		final ContentResolver contentResolver = getContentResolver();
+		final File outputDirectory = new File(MediaPhone.DIRECTORY_TEMP, exportName + EXPORT_IMAGES_SUFFIX);
+		final int jpegQuality = getResources().getInteger(R.integer.camera_jpeg_save_quality);
+		final HashMap<String, String> orientedPaths = new HashMap<>(); // spanning images are repeated in every frame
+		HashMap<String, MediaMetadata> narrativeMetadata = null;
+		for (FrameMediaContainer frame : contentList) {
+			if (frame.mImagePath == null) {
+				continue;
+			}
+			String orientedPath = orientedPaths.get(frame.mImagePath);
+			if (orientedPath == null) {
+				orientedPath = frame.mImagePath; // unchanged if there is no orientation to apply, or the copy fails
+				if (narrativeMetadata == null) {
+					narrativeMetadata = MediaManager.findMediaMetadataByNarrativeId(contentResolver, frame.mParentId);
+				}
+				final File imageFile = new File(frame.mImagePath);
+				final MediaMetadata imageMetadata = findImageMetadata(contentResolver, narrativeMetadata, imageFile);
+				if (imageMetadata != null && ImageRotation.hasOrientation(imageMetadata)) {
+					final File orientedFile = new File(outputDirectory, imageFile.getName()); // keep the original name
+					if ((outputDirectory.exists() || outputDirectory.mkdirs()) &&
+							ImageRotation.createOrientedCopy(imageFile, imageMetadata, orientedFile, jpegQuality)) {
+						orientedPath = orientedFile.getAbsolutePath();
+					}
+				}
+				orientedPaths.put(frame.mImagePath, orientedPath);
+			}
+			frame.mImagePath = orientedPath;
+		}
+	}
+
 	private void exportMovie(final Map<Integer, Object> settings, final String exportName,
 							 final ArrayList<FrameMediaContainer> contentList) {
 		runExportNarrativesTask(new BackgroundExportRunnable() {
@@ -2103,6 +2283,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 			@Override
 			public void run() {
+				orientExportImages(contentList, exportName);
+
 				// if the user chooses, export text as subtitles (need to do before movie processing as we remove narrative text)
 				SharedPreferences videoSettings = PreferenceManager.getDefaultSharedPreferences(MediaPhoneActivity.this);
 				boolean hasSubtitles = false;
@@ -2375,22 +2557,35 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 	private static class ImportFramesTask extends AsyncTask<FrameMediaContainer, Void, Void> {
 
+		// a received narrative file that has not yet been parsed
+		private static class NarrativeFile {
+			private final int mType;
+			private final File mFile;
+
+			private NarrativeFile(int type, File file) {
+				mType = type;
+				mFile = file;
+			}
+		}
+
 		private MediaPhoneActivity mParentActivity;
 		private boolean mImportTaskCompleted;
 		private final List<FrameMediaContainer> mFrameItems;
+		private final List<NarrativeFile> mNarrativeFiles;
 		private HashSet<String> mAdditionalNarratives;
-		private int mMaximumListLength;
+		private volatile int mMaximumListLength; // only modified while synchronized on mFrameItems
 
 		private ImportFramesTask(MediaPhoneActivity activity) {
 			mParentActivity = activity;
 			mImportTaskCompleted = false;
 			mFrameItems = Collections.synchronizedList(new ArrayList<>());
+			mNarrativeFiles = Collections.synchronizedList(new ArrayList<>());
 			mMaximumListLength = 0;
 		}
 
 		private void addFramesToImport(ArrayList<FrameMediaContainer> newFrames) {
-			mMaximumListLength += newFrames.size();
 			synchronized (mFrameItems) {
+				mMaximumListLength += newFrames.size();
 				mFrameItems.addAll(0, newFrames); // add at the start for better UI (can be seen as they appear)
 			}
 			if (!mParentActivity.isFinishing()) {
@@ -2398,6 +2593,19 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 			}
 		}
 
+		private void addNarrativeToParse(int type, File narrativeFile) {
+			mNarrativeFiles.add(new NarrativeFile(type, narrativeFile));
+			if (!mParentActivity.isFinishing()) {
+				mParentActivity.showDialog(R.id.dialog_importing_in_progress);
+			}
+		}
+
+		private ArrayList<NarrativeFile> getNarrativesToParse() {
+			synchronized (mNarrativeFiles) {
+				return new ArrayList<>(mNarrativeFiles);
+			}
+		}
+
 		private void notifyAdditionalNarrative(String narrativePath) {
 			if (mAdditionalNarratives == null) {
 				mAdditionalNarratives = new HashSet<>();
@@ -2426,14 +2634,45 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 
 		@Override
 		protected Void doInBackground(FrameMediaContainer... framesToImport) {
-			mMaximumListLength += framesToImport.length;
-            Collections.addAll(mFrameItems, framesToImport);
-			boolean framesAvailable = !mFrameItems.isEmpty();
-			while (framesAvailable) {
+			synchronized (mFrameItems) {
+				mMaximumListLength += framesToImport.length;
+				Collections.addAll(mFrameItems, framesToImport);
+			}
+			boolean workAvailable = true;
+			while (workAvailable) {
 				// get resources and content resolver each time in case the activity changes
-				ImportedFileParser.importNarrativeFrame(mParentActivity.getResources(), mParentActivity.getContentResolver(),
-						mFrameItems.remove(0));
-				framesAvailable = !mFrameItems.isEmpty();
+				FrameMediaContainer nextFrame = null;
+				synchronized (mFrameItems) {
+					if (!mFrameItems.isEmpty()) {
+						nextFrame = mFrameItems.remove(0);
+					}
+				}
+
+				if (nextFrame != null) {
+					ImportedFileParser.importNarrativeFrame(mParentActivity.getResources(),
+							mParentActivity.getContentResolver(), nextFrame);
+				} else {
+					// only parse the next narrative once the previous one's frames have all been imported, so we never hold
+					// more than one narrative's frame list in memory, and the frames of each one appear as they are imported
+					NarrativeFile nextNarrative = null;
+					synchronized (mNarrativeFiles) {
+						if (!mNarrativeFiles.isEmpty()) {
+							nextNarrative = mNarrativeFiles.remove(0);
+						}
+					}
+					if (nextNarrative != null) {
+						ArrayList<FrameMediaContainer> narrativeFrames = parseNarrativeFile(mParentActivity.getResources(),
+								mParentActivity.getContentResolver(), nextNarrative.mType, nextNarrative.mFile);
+						if (narrativeFrames != null) {
+							synchronized (mFrameItems) {
+								mMaximumListLength += narrativeFrames.size();
+								mFrameItems.addAll(narrativeFrames);
+							}
+						}
+					}
+				}
+
+				workAvailable = !mFrameItems.isEmpty() || !mNarrativeFiles.isEmpty();
 				publishProgress();
 			}
 
@@ -2738,9 +2977,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					deletedMedia.addAll(MediaManager.findMediaIdsByParentId(contentResolver, frameId, false));
 				}
 
-				// delete the actual media items on disk and the items and any links to them from the database
+				// delete the actual media items on disk and the items themselves from the database
 				int deletedMediaCount = 0;
-				int deletedLinkCount = 0;
 				for (String mediaId : deletedMedia) {
 					final MediaItem mediaToDelete = MediaManager.findMediaByInternalId(contentResolver, mediaId);
 					if (mediaToDelete != null) {
@@ -2752,15 +2990,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 						}
 						MediaManager.deleteMediaFromBackgroundTask(contentResolver, mediaId);
 					}
-
-					// links should have already been removed, but we might as well check for stragglers
-					deletedLinkCount += MediaManager.deleteMediaLinks(contentResolver, mediaId);
 				}
 
-				// remove links marked as deleted
-				ArrayList<String> deletedLinks = MediaManager.findDeletedMediaLinks(contentResolver); // count for debugging only
-				MediaManager.removeDeletedMediaLinks(contentResolver);
-
 				// delete the actual frame items on disk and from the database
 				int deletedFrameCount = 0;
 				for (String frameId : deletedFrames) {
@@ -2780,6 +3011,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				deletedNarratives.removeAll(deletedTemplates);
 				for (String narrativeId : deletedNarratives) {
 					NarrativesManager.deleteNarrativeFromBackgroundTask(contentResolver, narrativeId);
+					PlaybackPlanCache.deletePlan(narrativeId);
 				}
 				for (String templateId : deletedTemplates) {
 					NarrativesManager.deleteTemplateFromBackgroundTask(contentResolver, templateId);
@@ -2789,8 +3021,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				Log.i(DebugUtilities.getLogTag(this),
 						"Media cleanup: removed " + deletedNarratives.size() + "/" + deletedTemplates.size() +
 								" narratives/templates, " + deletedFrames.size() + " (" + deletedFrameCount + ") frames, and " +
-								deletedMedia.size() + " (" + deletedMediaCount + ") media items (" + deletedLinks.size() + "/" +
-								deletedLinkCount + " links)");
+								deletedMedia.size() + " (" + deletedMediaCount + ") media items");
 			}
 		};
 	}
@@ -2828,6 +3059,7 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 				ArrayList<String> fromFiles = new ArrayList<>();
 				ArrayList<String> toFiles = new ArrayList<>();
 				HashMap<String, String> linkedMedia = new HashMap<>();
+				HashMap<String, String> linkedMediaSpanEnds = new HashMap<>();
 				for (FrameItem frame : narrativeFrames) {
 					final FrameItem newFrame = FrameItem.fromExisting(frame, MediaPhoneProvider.getNewInternalId(), toId,
 							newCreationDate);
@@ -2842,19 +3074,19 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					}
 
 					for (MediaItem media : MediaManager.findMediaByParentId(contentResolver, frame.getInternalId())) {
-						// this is a linked item - create a new link rather than copying media
+						// this is an inherited item - extend the copied item's span rather than copying media
 						boolean spanningMedia = media.getSpanFrames();
 						if (spanningMedia && !media.getParentId().equals(frame.getInternalId())) {
 							final String linkedId = linkedMedia.get(media.getInternalId()); // get the new linked id;
 							if (linkedId != null) {
-								MediaManager.addMediaLink(contentResolver, newFrameId, linkedId);
+								linkedMediaSpanEnds.put(linkedId, newFrameId); // frames are in order, so the last is the end
 							}
 						} else {
 							final MediaItem newMedia = MediaItem.fromExisting(media, MediaPhoneProvider.getNewInternalId(),
 									newFrameId, newCreationDate);
 							MediaManager.addMedia(contentResolver, newMedia);
 							if (spanningMedia) {
-								linkedMedia.put(media.getInternalId(), newMedia.getInternalId()); // for copying links
+								linkedMedia.put(media.getInternalId(), newMedia.getInternalId()); // for copying spans
 							}
 							if (updateFirstFrame) {
 								// must always copy the first frame's media
@@ -2881,6 +3113,11 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 					updateFirstFrame = false;
 				}
 
+				// spans are resolved by frame position, so can only be copied once all of the frames have been added
+				for (Map.Entry<String, String> spanEnd : linkedMediaSpanEnds.entrySet()) {
+					MediaManager.extendMediaSpan(contentResolver, spanEnd.getKey(), spanEnd.getValue());
+				}
+
 				if (fromFiles.size() == toFiles.size()) {
 					runImmediateBackgroundTask(getMediaCopierRunnable(fromFiles, toFiles));
 				} else {
@@ -3070,12 +3307,8 @@ public abstract class MediaPhoneActivity extends AppCompatActivity {
 		protected Bitmap doInBackground(String... params) {
 			mImagePath = params[0];
 			Point screenSize = UIUtilities.getScreenSize(getWindowManager());
-			try {
-				return BitmapUtilities.loadAndCreateScaledBitmap(mImagePath, screenSize.x, screenSize.y,
-						BitmapUtilities.ScalingLogic.FIT, true);
-			} catch (Throwable t) {
-				return null; // out of memory...
-			}
+			// failures (e.g., out of memory) are handled and recorded by the decoder
+			return ScreenImageDecoder.decode(mImagePath, screenSize.x, screenSize.y, BitmapUtilities.ScalingLogic.FIT);
 		}
 
 		@Override
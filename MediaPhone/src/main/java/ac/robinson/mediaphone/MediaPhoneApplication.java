@@ -49,7 +49,10 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import ac.robinson.mediaphone.provider.FrameIconCache;
 import ac.robinson.mediautilities.MediaUtilities;
 import ac.robinson.service.ImportingService;
 import ac.robinson.util.DebugUtilities;
@@ -80,6 +83,24 @@ public class MediaPhoneApplication extends MultiDexApplication {
 	// for clients to communicate with the ImportingService
 	private final Messenger mImportingServiceMessenger = new Messenger(new ImportingServiceMessageHandler());
 
+	// setup that the first screen doesn't need is deferred until it has been drawn (UI thread access only)
+	private final ArrayList<DeferredInitialiser> mDeferredInitialisers = new ArrayList<>();
+	private boolean mStartupComplete = false;
+	private final Handler mStartupHandler = new Handler();
+	private ExecutorService mWarmUpExecutor; // created on first use
+
+	private static class DeferredInitialiser {
+		final String mPhase;
+		final boolean mUIThread;
+		final Runnable mInitialiser;
+
+		DeferredInitialiser(String phase, boolean uiThread, Runnable initialiser) {
+			mPhase = phase;
+			mUIThread = uiThread;
+			mInitialiser = initialiser;
+		}
+	}
+
 	// TODO: should we try to work around this method not being called? https://stackoverflow.com/a/60597718/1993220
 	@Override
 	public void onCreate() {
@@ -88,10 +109,74 @@ public class MediaPhoneApplication extends MultiDexApplication {
 		// 	StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder().detectAll().penaltyLog().penaltyDeath().build());
 		// }
 		super.onCreate();
+
+		// directories and parameters are needed by every activity's onCreate, so must be ready immediately
+		long phaseStart = StartupTimings.begin();
 		initialiseDirectories();
+		StartupTimings.end("initialise directories", phaseStart);
+
+		phaseStart = StartupTimings.begin();
 		initialiseParameters();
-		startWatchingExternalStorage();
-		createNotificationChannel();
+		StartupTimings.end("initialise parameters", phaseStart);
+		FrameIconCache.initialise(this);
+
+		// nothing will be notified, and storage changes are very unlikely, before the first screen has been drawn
+		runAfterStartup("watch external storage", false, this::startWatchingExternalStorage);
+		runAfterStartup("create notification channel", false, this::createNotificationChannel);
+		runAfterStartup("update icon generation", false, () -> FrameIconCache.updateGeneration(this));
+	}
+
+	/**
+	 * Run an initialiser that is not needed to show the first screen once that screen has been drawn, or immediately if
+	 * startup has already finished. Must be called from the UI thread.
+	 *
+	 * @param phase       The name to record in {@link StartupTimings} (only recorded when deferred during startup)
+	 * @param uiThread    Whether the initialiser must run on the UI thread; if false it runs on a background thread
+	 * @param initialiser The task to run
+	 */
+	public void runAfterStartup(String phase, boolean uiThread, Runnable initialiser) {
+		DeferredInitialiser deferredInitialiser = new DeferredInitialiser(phase, uiThread, initialiser);
+		if (mStartupComplete) {
+			runDeferredInitialiser(deferredInitialiser, false); // not part of startup, so not timed
+		} else {
+			mDeferredInitialisers.add(deferredInitialiser);
+		}
+	}
+
+	public boolean isStartupComplete() {
+		return mStartupComplete;
+	}
+
+	/**
+	 * Called by {@link MediaPhoneActivity} after its first frame has been drawn - on a cold start, this is when we can
+	 * begin the warm-up stage of running everything that was deferred via {@link #runAfterStartup}
+	 */
+	void onFirstActivityDrawn() {
+		if (mStartupComplete) {
+			return;
+		}
+		mStartupComplete = true;
+		StartupTimings.markFirstDraw();
+		for (DeferredInitialiser deferredInitialiser : mDeferredInitialisers) {
+			runDeferredInitialiser(deferredInitialiser, true);
+		}
+		mDeferredInitialisers.clear();
+	}
+
+	private void runDeferredInitialiser(final DeferredInitialiser deferredInitialiser, boolean recordTiming) {
+		final Runnable timedInitialiser = !recordTiming ? deferredInitialiser.mInitialiser : () -> {
+			long phaseStart = StartupTimings.begin();
+			deferredInitialiser.mInitialiser.run();
+			StartupTimings.endWarmUp(deferredInitialiser.mPhase, phaseStart);
+		};
+		if (deferredInitialiser.mUIThread) {
+			mStartupHandler.post(timedInitialiser); // posted individually so that input can be handled in between
+		} else {
+			if (mWarmUpExecutor == null) {
+				mWarmUpExecutor = Executors.newSingleThreadExecutor();
+			}
+			mWarmUpExecutor.execute(timedInitialiser);
+		}
 	}
 
 	private void initialiseDirectories() {
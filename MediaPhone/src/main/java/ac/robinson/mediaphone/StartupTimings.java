@@ -0,0 +1,127 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import ac.robinson.util.DebugUtilities;
+
+/**
+ * Records how long each phase of a cold start takes: the phases before the first screen is drawn (which the user waits
+ * for), the time of that first draw, and the warm-up phases that {@link MediaPhoneApplication} defers until afterwards.
+ * Phases are logged in debug builds, and (also in debug builds only) summarised on the preferences screen.
+ */
+public final class StartupTimings {
+
+	// process start where known (API 24+); otherwise, when this class is first used (i.e., in Application.onCreate)
+	private static final long sStartTime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ?
+			Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+
+	private static final ArrayList<String> sPhases = new ArrayList<>();
+	private static long sFirstDrawTime = -1; // relative to sStartTime; -1 until the first screen has been drawn
+
+	private StartupTimings() {
+	}
+
+	/**
+	 * @return A timestamp to pass to {@link #end(String, long)} or {@link #endWarmUp(String, long)}
+	 */
+	public static long begin() {
+		return SystemClock.elapsedRealtime();
+	}
+
+	/**
+	 * Record a phase that must complete before the first screen can be drawn. Ignored once that has happened, so that
+	 * activities can call this unconditionally from code that also runs after startup.
+	 */
+	public static void end(String phase, long beginTime) {
+		synchronized (sPhases) {
+			if (sFirstDrawTime < 0) {
+				record(phase, beginTime);
+			}
+		}
+	}
+
+	/**
+	 * Record a phase that was deferred until after the first screen was drawn. Only the phases deferred during startup
+	 * are recorded - {@link MediaPhoneApplication#runAfterStartup} does not time initialisers that are added later, so
+	 * that the list of phases does not grow for as long as the application runs.
+	 */
+	public static void endWarmUp(String phase, long beginTime) {
+		synchronized (sPhases) {
+			record(phase, beginTime);
+		}
+	}
+
+	static void markFirstDraw() {
+		synchronized (sPhases) {
+			if (sFirstDrawTime < 0) {
+				sFirstDrawTime = SystemClock.elapsedRealtime() - sStartTime;
+				sPhases.add(String.format(Locale.US, "%6d ms  first screen drawn", sFirstDrawTime));
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(sPhases), "First screen drawn " + sFirstDrawTime + " ms after startup");
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The time (in milliseconds since startup) at which the first screen was drawn, or -1 if it has not been
+	 */
+	public static long getFirstDrawTime() {
+		synchronized (sPhases) {
+			return sFirstDrawTime;
+		}
+	}
+
+	/**
+	 * @return One line per recorded phase (in the order they finished): the time since startup at which the phase began,
+	 * its name, its duration and whether it ran on the UI thread - or an empty string if nothing has been recorded
+	 */
+	public static String getSummary() {
+		synchronized (sPhases) {
+			StringBuilder summary = new StringBuilder();
+			for (String phase : sPhases) {
+				if (summary.length() > 0) {
+					summary.append('\n');
+				}
+				summary.append(phase);
+			}
+			return summary.toString();
+		}
+	}
+
+	private static void record(String phase, long beginTime) {
+		final long duration = SystemClock.elapsedRealtime() - beginTime;
+		final boolean uiThread = Looper.myLooper() == Looper.getMainLooper();
+		String entry = String.format(Locale.US, "%6d ms  %s: %d ms%s", beginTime - sStartTime, phase, duration,
+				uiThread ? " (UI thread)" : "");
+		sPhases.add(entry);
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(phase), "Startup phase " + entry.trim());
+		}
+	}
+}
@@ -857,15 +857,18 @@ public class AudioActivity extends MediaPhoneActivity {
 		final MediaItem audioMediaItem = MediaManager.findMediaByInternalId(getContentResolver(), mMediaItemInternalId);
 		if (audioMediaItem != null && audioMediaItem.getFile().length() > 0) {
 			final String newFrameId = insertFrameAfterMedia(audioMediaItem);
-			final Intent addAudioIntent = new Intent(AudioActivity.this, AudioActivity.class);
-			addAudioIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
-			if (mContinueRecordingAfterSplit) {
-				addAudioIntent.putExtra(getString(R.string.extra_start_recording_audio), mContinueRecordingAfterSplit);
-			}
-			if (mFrameSpanningPrevented) {
-				addAudioIntent.putExtra(getString(R.string.extra_prevent_frame_spanning), true);
+			if (newFrameId != null) {
+				final Intent addAudioIntent = new Intent(AudioActivity.this, AudioActivity.class);
+				addAudioIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
+				if (mContinueRecordingAfterSplit) {
+					addAudioIntent.putExtra(getString(R.string.extra_start_recording_audio),
+							mContinueRecordingAfterSplit);
+				}
+				if (mFrameSpanningPrevented) {
+					addAudioIntent.putExtra(getString(R.string.extra_prevent_frame_spanning), true);
+				}
+				startActivity(addAudioIntent);
 			}
-			startActivity(addAudioIntent);
 
 			onBackPressed();
 		} else {
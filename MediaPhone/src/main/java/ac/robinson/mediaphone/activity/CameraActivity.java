@@ -38,12 +38,15 @@ import android.hardware.Camera;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -62,12 +65,15 @@ import android.widget.RelativeLayout.LayoutParams;
 
 import java.io.File;
 import java.io.InputStream;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.MediaPhoneActivity;
 import ac.robinson.mediaphone.R;
 import ac.robinson.mediaphone.provider.FrameItem;
+import ac.robinson.mediaphone.provider.FramesManager;
+import ac.robinson.mediaphone.provider.ImageRotation;
 import ac.robinson.mediaphone.provider.MediaItem;
 import ac.robinson.mediaphone.provider.MediaManager;
 import ac.robinson.mediaphone.provider.MediaPhoneProvider;
@@ -77,6 +83,7 @@ import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.CameraUtilities;
 import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.IOUtilities;
+import ac.robinson.util.ImageCacheUtilities;
 import ac.robinson.util.UIUtilities;
 import ac.robinson.view.AnimateDrawable;
 import ac.robinson.view.CenteredImageTextButton;
@@ -103,6 +110,27 @@ public class CameraActivity extends MediaPhoneActivity {
 	private boolean mCameraErrorOccurred = false;
 	private Boolean mSavingInProgress = false; // Boolean for synchronization
 	private boolean mBackPressedDuringPhoto = false;
+	private CameraCapturePipeline.Capture mPendingCapture; // the picture the camera is currently producing data for
+	private CameraCapturePipeline.Callback mPendingCaptureCallback;
+	private byte[] mPendingCaptureBuffer; // the buffer the pending preview frame will be captured into (may be null)
+	private long mPendingCaptureTime; // when the pending burst picture was requested (uptime milliseconds)
+
+	// burst capture: the first picture replaces this frame's image; each following picture is saved into a new frame,
+	// and the new frames are added to the narrative in batches as their pictures are saved (see addBurstFrames)
+	private static final int BURST_RETRY_DELAY = 50; // milliseconds to wait if the previous picture is still pending
+	private static final int BURST_FRAME_TIMEOUT = 2000; // milliseconds after which a preview frame will never arrive
+	private final Handler mBurstHandler = new Handler(Looper.getMainLooper());
+	private boolean mBurstActive = false; // true until all of the burst's pictures have been requested from the camera
+	private int mBurstRemaining; // pictures not yet requested from the camera
+	private int mBurstOutstanding; // pictures requested from the camera but not yet saved
+	private int mBurstSaved;
+	private int mBurstFailed;
+	private long mBurstNextCaptureTime;
+	private String mBurstNarrativeId;
+	private volatile String mBurstInsertAfterFrameId; // updated by the background tasks that add each batch of frames
+	private final HashMap<String, FrameItem> mBurstPendingFrames = new HashMap<>(); // new frames, by their media's id
+	private final ArrayList<FrameItem> mBurstSavedFrames = new ArrayList<>(); // saved, but not yet added to narrative
+	private final ArrayList<MediaItem> mBurstSavedMedia = new ArrayList<>();
 
 	private OrientationEventListener mOrientationEventListener;
 	private boolean mStopImageRotationAnimation;
@@ -115,6 +143,8 @@ public class CameraActivity extends MediaPhoneActivity {
 	private String mCameraShutterSoundPath = null;
 	private boolean mCapturePreviewFrame = false;
 	private boolean mAddToMediaLibrary = false;
+	private int mBurstPictureCount = 10;
+	private float mBurstPictureInterval = 1; // seconds
 
 	private enum DisplayMode {
 		DISPLAY_PICTURE, TAKE_PICTURE
@@ -232,6 +262,9 @@ public class CameraActivity extends MediaPhoneActivity {
 			}
 		};
 
+		// holding down the camera button takes a burst of pictures (one per frame) - e.g., for time-lapse sequences
+		findViewById(R.id.button_take_picture).setOnLongClickListener(v -> startBurstCapture());
+
 		// load the media itself
 		loadMediaContainer();
 	}
@@ -260,10 +293,17 @@ public class CameraActivity extends MediaPhoneActivity {
 	protected void onPause() {
 		super.onPause();
 		mOrientationEventListener.disable();
+		stopBurstCapture();
+		abandonPendingBurstCapture(); // the camera is about to be released, so this picture will never arrive
 		releaseCamera();
 	}
 
 	private void handleBackPressed() {
+		if (mBurstActive) {
+			stopBurstCapture(); // pictures already taken will still be saved
+			return;
+		}
+
 		synchronized (mSavingInProgress) {
 			if (mSavingInProgress) { // don't let them exit mid-way through saving
 				mBackPressedDuringPhoto = true;
@@ -364,9 +404,11 @@ public class CameraActivity extends MediaPhoneActivity {
 			final MediaItem imageMediaItem = MediaManager.findMediaByInternalId(getContentResolver(), mMediaItemInternalId);
 			if (imageMediaItem != null && imageMediaItem.getFile().length() > 0) {
 				final String newFrameId = insertFrameAfterMedia(imageMediaItem);
-				final Intent addImageIntent = new Intent(CameraActivity.this, CameraActivity.class);
-				addImageIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
-				startActivity(addImageIntent);
+				if (newFrameId != null) {
+					final Intent addImageIntent = new Intent(CameraActivity.this, CameraActivity.class);
+					addImageIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
+					startActivity(addImageIntent);
+				}
 
 				onBackPressed();
 			} else {
@@ -406,6 +448,26 @@ public class CameraActivity extends MediaPhoneActivity {
 
 		mAddToMediaLibrary = mediaPhoneSettings.getBoolean(getString(R.string.key_pictures_to_media),
 				getResources().getBoolean(R.bool.default_pictures_to_media));
+
+		mBurstPictureCount = Math.round(getFloatPreference(mediaPhoneSettings, R.string.key_burst_picture_count,
+				R.dimen.default_burst_picture_count));
+		mBurstPictureInterval = getFloatPreference(mediaPhoneSettings, R.string.key_burst_picture_interval,
+				R.dimen.default_burst_picture_interval);
+	}
+
+	private float getFloatPreference(SharedPreferences mediaPhoneSettings, int keyId, int defaultValueId) {
+		TypedValue resourceValue = new TypedValue();
+		getResources().getValue(defaultValueId, resourceValue, true);
+		float value;
+		try {
+			value = mediaPhoneSettings.getFloat(getString(keyId), resourceValue.getFloat());
+			if (value <= 0) {
+				throw new NumberFormatException();
+			}
+		} catch (Exception e) {
+			value = resourceValue.getFloat();
+		}
+		return value;
 	}
 
 	@Override
@@ -763,147 +825,324 @@ public class CameraActivity extends MediaPhoneActivity {
 	};
 
 	// only used when taking a picture rather than capturing a preview frame
-	private final Camera.PictureCallback mPictureJpegCallback = (imageData, c) -> new SavePreviewFrameTask().executeOnExecutor(
-			AsyncTask.THREAD_POOL_EXECUTOR, imageData);
+	private final Camera.PictureCallback mPictureJpegCallback = (imageData, c) -> submitCapture(imageData, false);
 
 	// see: http://stackoverflow.com/questions/6469019/
-	private final Camera.PreviewCallback mPreviewFrameCallback =
-			(imageData, camera) -> new SavePreviewFrameTask().executeOnExecutor(
-			AsyncTask.THREAD_POOL_EXECUTOR, imageData);
+	private final Camera.PreviewCallback mPreviewFrameCallback = (imageData, camera) -> submitCapture(imageData,
+			imageData != null && imageData == mPendingCaptureBuffer);
+
+	/**
+	 * Record everything needed to save the picture that is about to be taken, as it is when the shutter is pressed (so
+	 * that saving never needs to wait for the UI thread)
+	 */
+	private CameraCapturePipeline.Capture createCapture(boolean capturePreviewFrame, MediaItem newMediaItem) {
+		CameraView.CameraImageConfiguration pictureConfig;
+		try {
+			pictureConfig = capturePreviewFrame ? mCameraView.getPreviewConfiguration() :
+					mCameraView.getPictureConfiguration();
+		} catch (Exception e) {
+			// most likely the camera is being released - default to JPEG format
+			pictureConfig = new CameraView.CameraImageConfiguration();
+			pictureConfig.imageFormat = ImageFormat.JPEG;
+		}
 
-	// TODO: move to normal queued/immediate background task?
-	private class SavePreviewFrameTask extends AsyncTask<byte[], Void, Boolean> {
+		// correct for screen and camera display rotation
+		// TODO: this is still not right all the time (though slightly mitigated by new rotation UI option)
+		int rotation = CameraUtilities.getPreviewOrientationDegrees(mScreenOrientation, mDisplayOrientation,
+				mCameraConfiguration.usingFrontCamera);
+		rotation = (rotation + mScreenOrientation) % 360;
 
-		@Override
-		protected Boolean doInBackground(byte[]... params) {
-			byte[] data = params[0];
-			if (data == null) {
-				if (MediaPhone.DEBUG) {
-					Log.d(DebugUtilities.getLogTag(this), "SavePreviewFrameTask: data is null");
-				}
-				return false;
+		if (newMediaItem != null) {
+			return new CameraCapturePipeline.Capture(newMediaItem, pictureConfig, rotation,
+					mCameraConfiguration.usingFrontCamera, mJpegSaveQuality);
+		}
+		return new CameraCapturePipeline.Capture(mMediaItemInternalId, pictureConfig, rotation,
+				mCameraConfiguration.usingFrontCamera, mJpegSaveQuality);
+	}
+
+	private void submitCapture(byte[] imageData, boolean pooledData) {
+		final CameraCapturePipeline.Capture capture = mPendingCapture;
+		final CameraCapturePipeline.Callback callback = mPendingCaptureCallback;
+		mPendingCapture = null;
+		mPendingCaptureBuffer = null;
+		if (capture == null) {
+			return; // a stray frame - the capture it was for has already been handled
+		}
+		if (!CameraCapturePipeline.submit(getContentResolver(), capture, imageData, pooledData, callback)) {
+			callback.onCaptureSaved(capture, false);
+		}
+	}
+
+	private void playShutterSound() {
+		// use media player (rather than sound pool) so we can access the system media files
+		MediaPlayer shutterSoundPlayer = new MediaPlayer(); // so that we can set the stream type
+		shutterSoundPlayer.setAudioStreamType(AudioManager.STREAM_NOTIFICATION);
+		// volume is a percentage of *current*, rather than maximum, so this is unnecessary
+		// shutterSoundPlayer.setVolume(volume, volume);
+		shutterSoundPlayer.setOnCompletionListener(MediaPlayer::release);
+		try {
+			shutterSoundPlayer.setDataSource(CameraActivity.this, Uri.parse(mCameraShutterSoundPath));
+			shutterSoundPlayer.prepare();
+			shutterSoundPlayer.start();
+		} catch (Throwable ignored) {
+		}
+	}
+
+	private void onSavingCompleted() {
+		onBackPressed();
+
+		synchronized (mSavingInProgress) {
+			mSavingInProgress = false;
+			if (mBackPressedDuringPhoto) {
+				mBackPressedDuringPhoto = false;
+				onBackPressed(); // second press doesn't really work, but don't want pressing back while saving
 			}
+		}
+	}
 
-			ContentResolver contentResolver = getContentResolver();
-			MediaItem imageMediaItem = MediaManager.findMediaByInternalId(contentResolver, mMediaItemInternalId);
-			if (imageMediaItem != null) {
-				// TODO: if replacing an imported non-jpeg with a photo, this will leave the old file in place - delete
-				imageMediaItem.setFileExtension(MediaPhone.EXTENSION_PHOTO_FILE);
-				imageMediaItem.setType(mCameraConfiguration.usingFrontCamera ? MediaPhoneProvider.TYPE_IMAGE_FRONT :
-						MediaPhoneProvider.TYPE_IMAGE_BACK);
-				MediaManager.updateMedia(contentResolver, imageMediaItem);
-
-				final CameraView.CameraImageConfiguration[] pictureConfig = new CameraView.CameraImageConfiguration[1];
-				// if we fail below, most likely still saving during onDestroy - default to JPEG format
-				pictureConfig[0] = new CameraView.CameraImageConfiguration();
-				pictureConfig[0].imageFormat = ImageFormat.JPEG;
-				if (mCameraView != null) {
-					final Semaphore mutex = new Semaphore(0);
-					runOnUiThread(() -> {
-						try {
-							if (mCapturePreviewFrame || mCameraConfiguration.usingFrontCamera) {
-								pictureConfig[0] = mCameraView.getPreviewConfiguration();
-							} else {
-								pictureConfig[0] = mCameraView.getPictureConfiguration();
-							}
-						} catch (Exception ignored) {
-						}
-						mutex.release();
-					});
-					try {
-						mutex.acquire();
-					} catch (InterruptedException ignored) {
-					}
-				}
+	private final CameraCapturePipeline.Callback mCaptureSavedCallback = (capture, saveSucceeded) -> {
+		if (saveSucceeded) {
+			mHasEditedMedia = true;
+			if (mAddToMediaLibrary) {
+				runImmediateBackgroundTask(getMediaLibraryAdderRunnable(capture.getSavedFile().getAbsolutePath(),
+						Environment.DIRECTORY_DCIM));
+			}
 
-				if ((pictureConfig[0].imageFormat == ImageFormat.NV21) || (pictureConfig[0].imageFormat == ImageFormat.YUY2)) {
-					if (MediaPhone.DEBUG) {
-						Log.d(DebugUtilities.getLogTag(this), "Saving NV21/YUY2 to JPEG");
-					}
+			if (mCapturePreviewFrame || mCameraConfiguration.usingFrontCamera) {
+				// have to play the shutter sound manually here, as we're just capturing a preview frame
+				playShutterSound();
+			}
 
-					// correct for screen and camera display rotation
-					// TODO: this is still not right all the time (though slightly mitigated by new rotation UI option)
-					int rotation = CameraUtilities.getPreviewOrientationDegrees(mScreenOrientation, mDisplayOrientation,
-							mCameraConfiguration.usingFrontCamera);
-					rotation = (rotation + mScreenOrientation) % 360;
+		} else {
+			UIUtilities.showToast(CameraActivity.this, R.string.save_picture_failed);
+		}
 
-					if (!BitmapUtilities.saveYUYToJPEG(data, imageMediaItem.getFile(), pictureConfig[0].imageFormat,
-							mJpegSaveQuality, pictureConfig[0].width, pictureConfig[0].height, rotation,
-							mCameraConfiguration.usingFrontCamera)) {
-						return false;
-					}
+		onSavingCompleted();
+	};
 
-				} else if (pictureConfig[0].imageFormat == ImageFormat.JPEG) {
-					if (MediaPhone.DEBUG) {
-						Log.d(DebugUtilities.getLogTag(this), "Directly writing JPEG to storage");
-					}
+	private boolean startBurstCapture() {
+		if (mCameraView == null || mDisplayMode != DisplayMode.TAKE_PICTURE || mBurstActive || mBurstOutstanding > 0) {
+			return false;
+		}
+		synchronized (mSavingInProgress) {
+			if (mSavingInProgress) {
+				return false;
+			}
+		}
 
-					if (!BitmapUtilities.saveJPEGToJPEG(data, imageMediaItem.getFile(), mCameraConfiguration.usingFrontCamera)) {
-						return false;
-					}
+		final ContentResolver contentResolver = getContentResolver();
+		final MediaItem imageMediaItem = MediaManager.findMediaByInternalId(contentResolver, mMediaItemInternalId);
+		final FrameItem parentFrame = imageMediaItem == null ? null :
+				FramesManager.findFrameByInternalId(contentResolver, imageMediaItem.getParentId());
+		if (parentFrame == null) {
+			return false;
+		}
 
-				} else {
-					// TODO: do we need to rotate this image?
-					Bitmap rawBitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-					boolean success = false;
-					if (rawBitmap != null) {
-						success = BitmapUtilities.saveBitmap(rawBitmap, Bitmap.CompressFormat.JPEG, mJpegSaveQuality,
-								imageMediaItem.getFile());
-						rawBitmap.recycle();
-					}
-					if (rawBitmap == null || !success) {
-						return false;
-					}
-				}
+		synchronized (mSavingInProgress) {
+			mBackPressedDuringPhoto = false;
+			mSavingInProgress = true;
+		}
+		mBurstActive = true;
+		mBurstRemaining = mBurstPictureCount;
+		mBurstOutstanding = 0;
+		mBurstSaved = 0;
+		mBurstFailed = 0;
+		mBurstNarrativeId = parentFrame.getParentId();
+		mBurstInsertAfterFrameId = parentFrame.getInternalId();
+		mBurstNextCaptureTime = SystemClock.uptimeMillis();
+		getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON); // time-lapse sequences can be long
+
+		UIUtilities.showFormattedToast(CameraActivity.this, R.string.burst_capture_started, mBurstPictureCount,
+				mBurstPictureInterval);
+		captureBurstPicture();
+		return true;
+	}
 
-				mHasEditedMedia = true;
+	private final Runnable mBurstCaptureRunnable = this::captureBurstPicture;
 
-				if (mAddToMediaLibrary) {
-					runImmediateBackgroundTask(
-							getMediaLibraryAdderRunnable(imageMediaItem.getFile().getAbsolutePath(), Environment.DIRECTORY_DCIM));
-				}
-				return true;
+	private void captureBurstPicture() {
+		if (!mBurstActive) {
+			return;
+		}
+		if (mCameraView == null) {
+			stopBurstCapture();
+			return;
+		}
+		if (mPendingCapture != null || !CameraCapturePipeline.canAccept()) {
+			// the previous picture hasn't arrived yet, or too many are still waiting to be saved - try again shortly
+			mBurstHandler.postDelayed(mBurstCaptureRunnable, BURST_RETRY_DELAY);
+			return;
+		}
+
+		// bursts always capture preview frames, as they are much quicker than taking full pictures
+		MediaItem newMediaItem = null;
+		if (mBurstRemaining < mBurstPictureCount) {
+			FrameItem newFrame = new FrameItem(mBurstNarrativeId, -1); // sequence id is allocated when frames are added
+			newMediaItem = new MediaItem(newFrame.getInternalId(), MediaPhone.EXTENSION_PHOTO_FILE,
+					mCameraConfiguration.usingFrontCamera ? MediaPhoneProvider.TYPE_IMAGE_FRONT :
+							MediaPhoneProvider.TYPE_IMAGE_BACK);
+			mBurstPendingFrames.put(newMediaItem.getInternalId(), newFrame);
+		}
+		mPendingCapture = createCapture(true, newMediaItem);
+		mPendingCaptureCallback = mBurstCaptureSavedCallback;
+		mPendingCaptureTime = SystemClock.uptimeMillis();
+		mBurstHandler.removeCallbacks(mBurstFrameTimeoutRunnable);
+		mBurstHandler.postDelayed(mBurstFrameTimeoutRunnable, BURST_FRAME_TIMEOUT);
+		mPendingCaptureBuffer = CameraCapturePipeline.obtainPreviewBuffer(mCameraView.getPreviewBufferSize());
+		mCameraView.capturePreviewFrame(mPreviewFrameCallback, mPendingCaptureBuffer);
+		mBurstRemaining -= 1;
+		mBurstOutstanding += 1;
+
+		if (mBurstRemaining > 0) {
+			mBurstNextCaptureTime += Math.round(mBurstPictureInterval * 1000);
+			mBurstHandler.postAtTime(mBurstCaptureRunnable,
+					Math.max(mBurstNextCaptureTime, SystemClock.uptimeMillis()));
+		} else {
+			mBurstActive = false; // all pictures have been requested - the burst finishes once they have been saved
+		}
+	}
+
+	private void stopBurstCapture() {
+		if (!mBurstActive) {
+			return;
+		}
+		mBurstActive = false;
+		mBurstRemaining = 0;
+		mBurstHandler.removeCallbacks(mBurstCaptureRunnable);
+		if (mBurstOutstanding == 0) {
+			finishBurstCapture();
+		}
+	}
 
+	private final CameraCapturePipeline.Callback mBurstCaptureSavedCallback = (capture, saveSucceeded) -> {
+		mBurstOutstanding -= 1;
+		final FrameItem newFrame = capture.mNewMediaItem == null ? null : mBurstPendingFrames.remove(capture.mMediaId);
+		if (saveSucceeded) {
+			mBurstSaved += 1;
+			if (newFrame == null) {
+				mHasEditedMedia = true; // the first picture, which replaced this frame's image
 			} else {
-				if (MediaPhone.DEBUG) {
-					Log.d(DebugUtilities.getLogTag(this), "Save image failed: no MediaItem to save to");
-				}
-				return false;
+				mBurstSavedFrames.add(newFrame);
+				mBurstSavedMedia.add(capture.mNewMediaItem);
+			}
+			if (mAddToMediaLibrary) {
+				runImmediateBackgroundTask(getMediaLibraryAdderRunnable(capture.getSavedFile().getAbsolutePath(),
+						Environment.DIRECTORY_DCIM));
+			}
+			playShutterSound(); // bursts always capture preview frames, so the camera doesn't play a sound
+		} else {
+			mBurstFailed += 1;
+			if (newFrame != null) {
+				IOUtilities.deleteRecursive(newFrame.getStorageDirectory()); // never added, so won't be cleaned up
 			}
 		}
 
-		protected void onPostExecute(Boolean saveSucceeded) {
-			if (saveSucceeded) {
-				if (mCapturePreviewFrame || mCameraConfiguration.usingFrontCamera) {
-					// have to play the shutter sound manually here, as we're just capturing a preview frame
-					// use media player (rather than sound pool) so we can access the system media files
-					MediaPlayer shutterSoundPlayer = new MediaPlayer(); // so that we can set the stream type
-					shutterSoundPlayer.setAudioStreamType(AudioManager.STREAM_NOTIFICATION);
-					// volume is a percentage of *current*, rather than maximum, so this is unnecessary
-					// shutterSoundPlayer.setVolume(volume, volume);
-					shutterSoundPlayer.setOnCompletionListener(MediaPlayer::release);
-					try {
-						shutterSoundPlayer.setDataSource(CameraActivity.this, Uri.parse(mCameraShutterSoundPath));
-						shutterSoundPlayer.prepare();
-						shutterSoundPlayer.start();
-					} catch (Throwable ignored) {
-					}
-				}
+		if (!mBurstActive && mBurstOutstanding == 0) {
+			finishBurstCapture();
+		} else if (mBurstSavedFrames.size() >= getResources().getInteger(R.integer.camera_burst_batch_size)) {
+			addBurstFrames();
+		}
+	};
 
-			} else {
-				UIUtilities.showToast(CameraActivity.this, R.string.save_picture_failed);
+	// not removed when the burst is stopped, as the last picture may still be pending (its frame is then ignored)
+	private final Runnable mBurstFrameTimeoutRunnable = () -> {
+		if (mPendingCapture != null && mPendingCaptureCallback == mBurstCaptureSavedCallback &&
+				SystemClock.uptimeMillis() - mPendingCaptureTime >= BURST_FRAME_TIMEOUT) {
+			// the camera has stopped delivering preview frames (e.g., after an error), so is unlikely to recover
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(this), "Burst preview frame not received - stopping burst capture");
 			}
+			stopBurstCapture();
+			abandonPendingBurstCapture(); // reported as failed; the burst finishes once any others have been saved
+		}
+	};
 
-			onBackPressed();
+	/**
+	 * Report the burst picture the camera is currently producing data for (if any) as failed, because its preview frame
+	 * will not arrive. If the frame does eventually arrive it is ignored (see submitCapture).
+	 */
+	private void abandonPendingBurstCapture() {
+		if (mPendingCapture != null && mPendingCaptureCallback == mBurstCaptureSavedCallback) {
+			final CameraCapturePipeline.Capture abandonedCapture = mPendingCapture;
+			mPendingCapture = null;
+			mPendingCaptureBuffer = null;
+			mBurstCaptureSavedCallback.onCaptureSaved(abandonedCapture, false);
+		}
+	}
 
-			synchronized (mSavingInProgress) {
-				mSavingInProgress = false;
-				if (mBackPressedDuringPhoto) {
-					mBackPressedDuringPhoto = false;
-					onBackPressed(); // second press doesn't really work, but don't want pressing back while saving
+	/**
+	 * Add the frames of any burst pictures that have been saved to the narrative, in a single transaction and in the
+	 * order they were taken, then create their icons - all in the background, so the camera is never held up
+	 */
+	private void addBurstFrames() {
+		if (mBurstSavedFrames.isEmpty()) {
+			return;
+		}
+		final ArrayList<FrameItem> newFrames = new ArrayList<>(mBurstSavedFrames);
+		final ArrayList<MediaItem> newMediaItems = new ArrayList<>(mBurstSavedMedia);
+		mBurstSavedFrames.clear();
+		mBurstSavedMedia.clear();
+
+		final String narrativeId = mBurstNarrativeId;
+		final Resources resources = getResources();
+		final ContentResolver contentResolver = getContentResolver();
+		runQueuedBackgroundTask(new BackgroundRunnable() {
+			@Override
+			public int getTaskId() {
+				return 0;
+			}
+
+			@Override
+			public boolean getShowDialog() {
+				return false;
+			}
+
+			@Override
+			public void run() {
+				// queued tasks run in order, so each batch is inserted after the previous one
+				final int[] narrativeSequenceIds = FramesManager.allocateNarrativeSequenceIds(resources,
+						contentResolver, narrativeId, mBurstInsertAfterFrameId, newFrames.size());
+				if (narrativeSequenceIds == null) {
+					for (FrameItem frame : newFrames) {
+						IOUtilities.deleteRecursive(frame.getStorageDirectory()); // no positions available
+					}
+					return;
+				}
+				for (int i = 0, n = newFrames.size(); i < n; i++) {
+					final FrameItem frame = newFrames.get(i);
+					frame.setNarrativeSequenceId(narrativeSequenceIds[i]);
+					ImageCacheUtilities.setLoadingIcon(frame.getCacheId()); // so the frame list doesn't load it itself
+				}
+				if (!FramesManager.addFramesWithMedia(contentResolver, newFrames, newMediaItems)) {
+					for (FrameItem frame : newFrames) {
+						ImageCacheUtilities.deleteCachedIcon(frame.getCacheId());
+						IOUtilities.deleteRecursive(frame.getStorageDirectory());
+					}
+					return;
+				}
+				mBurstInsertAfterFrameId = newFrames.get(newFrames.size() - 1).getInternalId();
+				final ArrayList<String> changedFrameIds = FramesManager.endReplacedMediaSpans(contentResolver,
+						newFrames);
+
+				for (int i = 0, n = newFrames.size(); i < n; i++) {
+					MediaManager.updateMediaMetadata(contentResolver, newMediaItems.get(i));
+					FramesManager.reloadFrameIcon(resources, contentResolver, newFrames.get(i), true);
 				}
+				FramesManager.reloadFrameIcons(resources, contentResolver, changedFrameIds);
+				contentResolver.notifyChange(FrameItem.CONTENT_URI, null);
 			}
+		});
+	}
+
+	private void finishBurstCapture() {
+		addBurstFrames();
+		getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+		if (mBurstFailed > 0) {
+			UIUtilities.showToast(CameraActivity.this, R.string.save_picture_failed);
+		} else if (mBurstSaved > 1) {
+			UIUtilities.showFormattedToast(CameraActivity.this, R.string.burst_capture_finished, mBurstSaved);
 		}
+		onSavingCompleted();
 	}
 
 	private void switchToPicture(boolean showPictureHint) {
@@ -1065,7 +1304,12 @@ public class CameraActivity extends MediaPhoneActivity {
 
 		} else if (buttonId == R.id.button_take_picture) {
 			//noinspection StatementWithEmptyBody
-			if (mCameraView != null) {
+			if (mBurstActive) {
+				stopBurstCapture(); // pictures already taken will still be saved
+			} else if (mCameraView != null) {
+				if (!CameraCapturePipeline.canAccept()) {
+					return; // too many pictures are still waiting to be saved - wait for them first
+				}
 				currentButton.setEnabled(false); // don't let them press twice
 				synchronized (mSavingInProgress) {
 					mBackPressedDuringPhoto = false;
@@ -1073,8 +1317,12 @@ public class CameraActivity extends MediaPhoneActivity {
 				}
 
 				// use preview frame capturing for quicker and smaller images (also avoids some corruption issues)
-				if (mCapturePreviewFrame || mCameraConfiguration.usingFrontCamera) {
-					mCameraView.capturePreviewFrame(mPreviewFrameCallback);
+				final boolean capturePreviewFrame = mCapturePreviewFrame || mCameraConfiguration.usingFrontCamera;
+				mPendingCapture = createCapture(capturePreviewFrame, null);
+				mPendingCaptureCallback = mCaptureSavedCallback;
+				if (capturePreviewFrame) {
+					mPendingCaptureBuffer = CameraCapturePipeline.obtainPreviewBuffer(mCameraView.getPreviewBufferSize());
+					mCameraView.capturePreviewFrame(mPreviewFrameCallback, mPendingCaptureBuffer);
 				} else {
 					mCameraView.takePicture(mShutterCallback, null, mPictureJpegCallback);
 				}
@@ -1133,9 +1381,8 @@ public class CameraActivity extends MediaPhoneActivity {
 				currentButtonId == R.id.button_rotate_clockwise ? R.id.button_rotate_anticlockwise : R.id.button_rotate_clockwise;
 		findViewById(otherButtonId).setEnabled(false); // don't let them press the other button
 
-		MediaItem imageMediaItem = MediaManager.findMediaByInternalId(getContentResolver(), mMediaItemInternalId);
+		final MediaItem imageMediaItem = MediaManager.findMediaByInternalId(getContentResolver(), mMediaItemInternalId);
 		if (imageMediaItem != null) {
-			final String imagePath = imageMediaItem.getFile().getAbsolutePath();
 			final boolean rotateAntiClockwise = currentButtonId == R.id.button_rotate_anticlockwise;
 			mHasEditedMedia = true; // so we regenerate the frame's icon
 
@@ -1174,7 +1421,7 @@ public class CameraActivity extends MediaPhoneActivity {
 
 				@Override
 				public void run() {
-					BitmapUtilities.rotateImage(imagePath, rotateAntiClockwise);
+					ImageRotation.rotate(getContentResolver(), imageMediaItem, rotateAntiClockwise, mJpegSaveQuality);
 				}
 			});
 		} else {
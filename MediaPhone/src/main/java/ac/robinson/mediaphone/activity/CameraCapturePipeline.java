@@ -0,0 +1,277 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.activity;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.provider.MediaItem;
+import ac.robinson.mediaphone.provider.MediaManager;
+import ac.robinson.mediaphone.provider.MediaPhoneProvider;
+import ac.robinson.mediaphone.view.CameraView;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+
+/**
+ * Saves pictures taken in {@link CameraActivity}. Captures are encoded one at a time on a single dedicated thread, with
+ * a small bounded queue in front of it: when the queue is full, new captures are refused (see {@link #canAccept()})
+ * rather than piling up large image arrays in memory. Everything needed to save a capture is recorded on the UI thread
+ * when the shutter is pressed, so the encoder never has to wait for the UI thread. Preview frame buffers are pooled, so
+ * that repeated captures can reuse the same memory.
+ */
+final class CameraCapturePipeline {
+
+	private static final int MAX_QUEUED_CAPTURES = 2; // in addition to the capture that is currently being encoded
+	private static final int MAX_POOLED_BUFFERS = MAX_QUEUED_CAPTURES + 1;
+
+	private static final ThreadPoolExecutor sEncoder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(MAX_QUEUED_CAPTURES));
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+	private static final ArrayDeque<byte[]> sBufferPool = new ArrayDeque<>(MAX_POOLED_BUFFERS); // lock on itself
+
+	interface Callback {
+		/**
+		 * Called on the UI thread once a capture has been saved (or has failed to save)
+		 */
+		void onCaptureSaved(Capture capture, boolean saveSucceeded);
+	}
+
+	/**
+	 * A single picture, and everything needed to save it, as it was when the shutter was pressed
+	 */
+	static final class Capture {
+		final String mMediaId;
+		final MediaItem mNewMediaItem; // a new item that is not yet in the database (null to save into mMediaId)
+		final CameraView.CameraImageConfiguration mConfiguration;
+		final int mRotation; // only applied to preview frames (NV21/YUY2); JPEG pictures are rotated by the camera
+		final boolean mFrontCamera;
+		final int mJpegQuality;
+		final long mShutterTime;
+
+		private byte[] mData;
+		private boolean mPooledData;
+		private long mDataTime;
+		private long mEncodeStartTime;
+		private long mWrittenTime;
+		private File mSavedFile;
+
+		Capture(String mediaId, CameraView.CameraImageConfiguration configuration, int rotation, boolean frontCamera,
+				int jpegQuality) {
+			this(mediaId, null, configuration, rotation, frontCamera, jpegQuality);
+		}
+
+		/**
+		 * A capture that is saved into the file of newMediaItem, which the caller must add to the database once saved
+		 * (see {@link Capture#getSavedFile()}) - used for burst capture, where frames are added in batches
+		 */
+		Capture(MediaItem newMediaItem, CameraView.CameraImageConfiguration configuration, int rotation,
+				boolean frontCamera, int jpegQuality) {
+			this(newMediaItem.getInternalId(), newMediaItem, configuration, rotation, frontCamera, jpegQuality);
+		}
+
+		private Capture(String mediaId, MediaItem newMediaItem, CameraView.CameraImageConfiguration configuration,
+						int rotation, boolean frontCamera, int jpegQuality) {
+			mMediaId = mediaId;
+			mNewMediaItem = newMediaItem;
+			mConfiguration = configuration;
+			mRotation = rotation;
+			mFrontCamera = frontCamera;
+			mJpegQuality = jpegQuality;
+			mShutterTime = SystemClock.elapsedRealtime();
+		}
+
+		/**
+		 * @return The file the capture was saved to, or null if it has not (yet) been saved
+		 */
+		File getSavedFile() {
+			return mSavedFile;
+		}
+
+		/**
+		 * @return The time taken from pressing the shutter to the file being written, in milliseconds
+		 */
+		long getCaptureDuration() {
+			return mWrittenTime - mShutterTime;
+		}
+	}
+
+	private CameraCapturePipeline() {
+	}
+
+	/**
+	 * @return Whether a new capture would be accepted right now - if not, the shutter should not be pressed until one
+	 * of the queued captures has been saved
+	 */
+	static boolean canAccept() {
+		return sEncoder.getQueue().remainingCapacity() > 0;
+	}
+
+	/**
+	 * @return A buffer of at least the given size for capturing a preview frame (see
+	 * {@link CameraView#capturePreviewFrame(android.hardware.Camera.PreviewCallback, byte[])}), or null if the size is
+	 * not known; buffers are returned to the pool automatically once their capture has been encoded
+	 */
+	static byte[] obtainPreviewBuffer(int size) {
+		if (size <= 0) {
+			return null;
+		}
+		synchronized (sBufferPool) {
+			byte[] buffer;
+			while ((buffer = sBufferPool.poll()) != null) {
+				if (buffer.length >= size) {
+					return buffer;
+				}
+				// otherwise discard - the preview size has changed (e.g., after switching camera)
+			}
+		}
+		return new byte[size];
+	}
+
+	private static void recycleBuffer(byte[] buffer) {
+		synchronized (sBufferPool) {
+			if (sBufferPool.size() < MAX_POOLED_BUFFERS) {
+				sBufferPool.add(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Queue a capture's image data to be saved
+	 *
+	 * @param data       The image data from the camera
+	 * @param pooledData Whether data came from {@link #obtainPreviewBuffer(int)} (and so can be reused afterwards)
+	 * @return Whether the capture was queued; if false, callback will not be called
+	 */
+	static boolean submit(final ContentResolver contentResolver, final Capture capture, byte[] data, boolean pooledData,
+						  final Callback callback) {
+		capture.mData = data;
+		capture.mPooledData = pooledData;
+		capture.mDataTime = SystemClock.elapsedRealtime();
+		try {
+			sEncoder.execute(() -> {
+				capture.mEncodeStartTime = SystemClock.elapsedRealtime();
+				final boolean saveSucceeded = save(contentResolver, capture);
+				capture.mWrittenTime = SystemClock.elapsedRealtime();
+				if (capture.mPooledData) {
+					recycleBuffer(capture.mData);
+				}
+				capture.mData = null;
+
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(capture), "Capture " + (saveSucceeded ? "saved" : "failed") +
+							" after " + capture.getCaptureDuration() + "ms (camera: " +
+							(capture.mDataTime - capture.mShutterTime) + "ms; queued: " +
+							(capture.mEncodeStartTime - capture.mDataTime) + "ms; encoding: " +
+							(capture.mWrittenTime - capture.mEncodeStartTime) + "ms)");
+				}
+				sMainHandler.post(() -> callback.onCaptureSaved(capture, saveSucceeded));
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			if (pooledData) {
+				recycleBuffer(data);
+			}
+			capture.mData = null;
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(capture), "Capture refused: too many pictures are already being saved");
+			}
+			return false;
+		}
+	}
+
+	private static boolean save(ContentResolver contentResolver, Capture capture) {
+		final byte[] data = capture.mData;
+		if (data == null) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(capture), "Save image failed: data is null");
+			}
+			return false;
+		}
+
+		MediaItem imageMediaItem = capture.mNewMediaItem;
+		if (imageMediaItem == null) {
+			imageMediaItem = MediaManager.findMediaByInternalId(contentResolver, capture.mMediaId);
+			if (imageMediaItem == null) {
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(capture), "Save image failed: no MediaItem to save to");
+				}
+				return false;
+			}
+
+			// TODO: if replacing an imported non-jpeg with a photo, this will leave the old file in place - delete
+			imageMediaItem.setFileExtension(MediaPhone.EXTENSION_PHOTO_FILE);
+			imageMediaItem.setType(
+					capture.mFrontCamera ? MediaPhoneProvider.TYPE_IMAGE_FRONT : MediaPhoneProvider.TYPE_IMAGE_BACK);
+			MediaManager.updateMedia(contentResolver, imageMediaItem);
+		}
+
+		final File imageFile = imageMediaItem.getFile();
+		final CameraView.CameraImageConfiguration configuration = capture.mConfiguration;
+		if (configuration.imageFormat == ImageFormat.NV21 || configuration.imageFormat == ImageFormat.YUY2) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(capture), "Saving NV21/YUY2 to JPEG");
+			}
+			if (!BitmapUtilities.saveYUYToJPEG(data, imageFile, configuration.imageFormat, capture.mJpegQuality,
+					configuration.width, configuration.height, capture.mRotation, capture.mFrontCamera)) {
+				return false;
+			}
+
+		} else if (configuration.imageFormat == ImageFormat.JPEG) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(capture), "Directly writing JPEG to storage");
+			}
+			if (!BitmapUtilities.saveJPEGToJPEG(data, imageFile, capture.mFrontCamera)) {
+				return false;
+			}
+
+		} else {
+			// TODO: do we need to rotate this image?
+			Bitmap rawBitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+			boolean success = false;
+			if (rawBitmap != null) {
+				success = BitmapUtilities.saveBitmap(rawBitmap, Bitmap.CompressFormat.JPEG, capture.mJpegQuality,
+						imageFile);
+				rawBitmap.recycle();
+			}
+			if (!success) {
+				return false;
+			}
+		}
+
+		if (capture.mNewMediaItem == null) { // new items' metadata is recorded when they are added to the database
+			MediaManager.updateMediaMetadata(contentResolver, imageMediaItem);
+		}
+		capture.mSavedFile = imageFile;
+		return true;
+	}
+}
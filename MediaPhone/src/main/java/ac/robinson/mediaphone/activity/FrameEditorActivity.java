@@ -29,6 +29,7 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.PorterDuff;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
@@ -57,7 +58,6 @@ import ac.robinson.mediaphone.provider.MediaManager;
 import ac.robinson.mediaphone.provider.MediaPhoneProvider;
 import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
-import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.IOUtilities;
 import ac.robinson.util.StringUtilities;
 import ac.robinson.util.UIUtilities;
@@ -82,7 +82,10 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 	private boolean mHasEditedMedia = false;
 	private boolean mAddNewFrame = false;
 	private String mReloadImagePath = null;
+	private int mReloadImageType;
 	private boolean mDeleteFrameOnExit = false;
+	private boolean mSwitchingFrames = false;
+	private FramePreloadCache.FrameState mPreloadedFrameState = null; // if present, the image is used in reloadFrameImage
 
 	private final LinkedHashMap<String, Integer> mFrameAudioItems = new LinkedHashMap<>();
 
@@ -145,10 +148,15 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 			}
 
 			// do image loading here so that we know the layout's size for sizing the image
+			int imageSize = getFrameImageSize();
 			if (mReloadImagePath != null) {
-				reloadFrameImage(mReloadImagePath);
+				reloadFrameImage(mReloadImagePath, mReloadImageType, imageSize);
 				mReloadImagePath = null;
 			}
+			mPreloadedFrameState = null;
+
+			// get the previous and next frames ready in the background so that swiping to them is instant
+			FramePreloadCache.preloadNeighbours(FrameEditorActivity.this, mFrameInternalId, imageSize);
 
 			registerForSwipeEvents(); // here to avoid crashing due to double-swiping
 		}
@@ -164,6 +172,9 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 		saveLastEditedFrame(mFrameInternalId);
 
 		cleanupFrameMedia();
+		if (!mSwitchingFrames) {
+			FramePreloadCache.clear(); // leaving the editor - no need to keep preloaded frames
+		}
 
 		setResult(Activity.RESULT_OK);
 		finish();
@@ -225,7 +236,7 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 	public boolean onOptionsItemSelected(MenuItem item) {
 		final int itemId = item.getItemId();
 		if (itemId == R.id.menu_previous_frame || itemId == R.id.menu_next_frame) {
-			switchFrames(mFrameInternalId, itemId, null);
+			switchToNeighbourFrame(itemId == R.id.menu_next_frame);
 			return true;
 		} else if (itemId == R.id.menu_copy_media) {
 			if (MediaManager.countMediaByParentId(getContentResolver(), mFrameInternalId, false) > 0) {
@@ -330,39 +341,33 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 		String nextFrameId = null;
 		if (editedFrame != null &&
 				(MediaManager.countMediaByParentId(contentResolver, mFrameInternalId, false) <= 0 || mDeleteFrameOnExit)) {
-			// need the next frame id for scrolling (but before we update it to be deleted)
-			ArrayList<String> frameIds = FramesManager.findFrameIdsByParentId(contentResolver, editedFrame.getParentId());
+			// need the neighbouring frame ids for scrolling (but before we update it to be deleted)
+			String previousFrameId = FramesManager.findPreviousFrameId(contentResolver, editedFrame);
+			nextFrameId = FramesManager.findNextFrameId(contentResolver, editedFrame);
 
 			// save the next frame's id for updating icons/media; also deal with scrolling - if we're the first/last
 			// frame scroll to ensure frames don't show off screen TODO: do this in the horizontal list view instead
 			// (otherwise, there's no need to scroll - better to leave items in place than scroll to previous or next)
-			int numFrames = frameIds.size();
-			if (numFrames > 1) {
-				int currentFrameIndex = frameIds.indexOf(mFrameInternalId);
-				if (currentFrameIndex == 0) {
-					nextFrameId = frameIds.get(1);
-					saveLastEditedFrame(nextFrameId); // scroll to new first frame after exiting
-				} else if (currentFrameIndex > numFrames - 2) {
-					saveLastEditedFrame(frameIds.get(numFrames - 2)); // scroll to new last frame after exiting
-				} else {
-					nextFrameId = frameIds.get(currentFrameIndex + 1); // just store the frame to start updates from
-				}
+			boolean isOnlyFrame = previousFrameId == null && nextFrameId == null;
+			if (previousFrameId == null && nextFrameId != null) {
+				saveLastEditedFrame(nextFrameId); // scroll to new first frame after exiting
+			} else if (nextFrameId == null && previousFrameId != null) {
+				saveLastEditedFrame(previousFrameId); // scroll to new last frame after exiting
 			}
 
-			// delete this frame and any links from it to media items
+			// delete this frame (any spanning media that ended here will now end at the previous frame)
 			editedFrame.setDeleted(true);
 			FramesManager.updateFrame(contentResolver, editedFrame);
-			MediaManager.deleteMediaLinksByParent(contentResolver, mFrameInternalId);
 
 			// if there's no narrative content remaining after we've been deleted, delete the narrative first for a better
 			// interface experience (doing this means we don't have to wait for the frame icon to disappear)
-			if (numFrames == 1) {
+			if (isOnlyFrame) {
 				NarrativeItem narrativeToDelete = NarrativesManager.findNarrativeByInternalId(contentResolver,
 						editedFrame.getParentId());
 				narrativeToDelete.setDeleted(true);
 				NarrativesManager.updateNarrative(contentResolver, narrativeToDelete);
 
-			} else if (numFrames > 1 && nextFrameId != null) {
+			} else if (nextFrameId != null) {
 				// otherwise we need to delete our media from subsequent frames; always update the next frame's icon
 				ArrayList<String> frameComponents = MediaManager.findMediaIdsByParentId(contentResolver, mFrameInternalId, false);
 				inheritMediaAndDeleteItemLinks(nextFrameId, null, frameComponents);
@@ -405,8 +410,11 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 		mAudioLinkingDrawable = 0;
 		mTextInherited = null;
 
-		// load existing content into buttons (no need to do any of this on new frames)
-		ArrayList<MediaItem> frameComponents = MediaManager.findMediaByParentId(getContentResolver(), mFrameInternalId);
+		// load existing content into buttons (no need to do any of this on new frames) - when swiping between frames the
+		// content will usually have been preloaded in the background, so we can avoid querying on the UI thread
+		mPreloadedFrameState = FramePreloadCache.takeFrameState(mFrameInternalId);
+		ArrayList<MediaItem> frameComponents = mPreloadedFrameState != null ? mPreloadedFrameState.mMedia :
+				MediaManager.findMediaByParentId(getContentResolver(), mFrameInternalId);
 		boolean imageLoaded = false;
 		boolean audioLoaded = false;
 		boolean textLoaded = false;
@@ -418,6 +426,7 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 					(currentType == MediaPhoneProvider.TYPE_IMAGE_BACK || currentType == MediaPhoneProvider.TYPE_IMAGE_FRONT ||
 							currentType == MediaPhoneProvider.TYPE_VIDEO)) {
 				mReloadImagePath = currentItem.getFile().getAbsolutePath();
+				mReloadImageType = currentType;
 				if (spanFrames) {
 					// this was originally going to be done in onDraw of CenteredImageTextButton, but there's a
 					// bizarre bug that causes the canvas to be translated just over 8000 pixels to the left before
@@ -448,8 +457,13 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 				}
 
 			} else if (!textLoaded && currentType == MediaPhoneProvider.TYPE_TEXT) {
-				String textSnippet = IOUtilities.getFileContentSnippet(currentItem.getFile().getAbsolutePath(),
-						getResources().getInteger(R.integer.text_snippet_length));
+				String textSnippet;
+				if (mPreloadedFrameState != null && currentItem.getInternalId().equals(mPreloadedFrameState.mTextMediaId)) {
+					textSnippet = mPreloadedFrameState.mTextSnippet;
+				} else {
+					textSnippet = IOUtilities.getFileContentSnippet(currentItem.getFile().getAbsolutePath(),
+							getResources().getInteger(R.integer.text_snippet_length));
+				}
 				textButton.setText(textSnippet);
 				if (spanFrames) {
 					if (inheritedMedia) {
@@ -505,20 +519,27 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 		} else {
 			narrativeSequenceId = FramesManager.adjustNarrativeSequenceIds(resources, contentResolver, narrativeId,
 					insertAfterId);
-
-			if (insertAfterId != null && !FrameItem.KEY_FRAME_ID_START.equals(insertAfterId)) {
-				// get and update any inherited media
-				ArrayList<MediaItem> inheritedMedia = MediaManager.findMediaByParentId(contentResolver, insertAfterId);
-				for (final MediaItem media : inheritedMedia) {
-					if (media.getSpanFrames()) {
-						MediaManager.addMediaLink(contentResolver, mFrameInternalId, media.getInternalId());
-					}
-				}
+			if (narrativeSequenceId < 0) {
+				FramesManager.deleteFrameFromBackgroundTask(contentResolver, mFrameInternalId); // no position available
+				UIUtilities.showToast(FrameEditorActivity.this, R.string.error_loading_frame_editor);
+				mFrameInternalId = "-1"; // so we exit
+				onBackPressed();
+				return;
 			}
 		}
 
 		newFrame.setNarrativeSequenceId(narrativeSequenceId);
 		FramesManager.updateFrame(contentResolver, newFrame);
+
+		// spans are resolved by frame position, so inherited media can only be extended once the sequence id is set
+		if (!insertNewNarrative && insertAfterId != null && !FrameItem.KEY_FRAME_ID_START.equals(insertAfterId)) {
+			ArrayList<MediaItem> inheritedMedia = MediaManager.findMediaByParentId(contentResolver, insertAfterId);
+			for (final MediaItem media : inheritedMedia) {
+				if (media.getSpanFrames()) {
+					MediaManager.extendMediaSpan(contentResolver, media.getInternalId(), mFrameInternalId);
+				}
+			}
+		}
 	}
 
 	private void reloadAudioButtons() {
@@ -560,17 +581,28 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 		}
 	}
 
-	private void reloadFrameImage(String imagePath) {
+	private int getFrameImageSize() {
 		CenteredImageTextButton cameraButton = findViewById(R.id.button_take_picture_video);
 		Resources resources = getResources();
 		TypedValue resourceValue = new TypedValue();
 		resources.getValue(R.dimen.image_button_fill_percentage, resourceValue, true);
-		int pictureSize = (int) (
-				(resources.getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE ? cameraButton.getWidth() :
-						cameraButton.getHeight()) * resourceValue.getFloat());
-		BitmapDrawable cachedIcon = new BitmapDrawable(resources,
-				BitmapUtilities.loadAndCreateScaledBitmap(imagePath, pictureSize, pictureSize, BitmapUtilities.ScalingLogic.CROP,
-						true));
+		return (int) ((resources.getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE ?
+				cameraButton.getWidth() : cameraButton.getHeight()) * resourceValue.getFloat());
+	}
+
+	private void reloadFrameImage(String imagePath, int imageType, int pictureSize) {
+		CenteredImageTextButton cameraButton = findViewById(R.id.button_take_picture_video);
+		Resources resources = getResources();
+
+		// use the preloaded image if it is the right one (and the right size) - otherwise, decode now
+		Bitmap frameImage;
+		if (mPreloadedFrameState != null && mPreloadedFrameState.mImage != null &&
+				imagePath.equals(mPreloadedFrameState.mImagePath) && mPreloadedFrameState.mImageSize == pictureSize) {
+			frameImage = mPreloadedFrameState.mImage;
+		} else {
+			frameImage = FramePreloadCache.decodeFrameImage(imagePath, imageType, pictureSize);
+		}
+		BitmapDrawable cachedIcon = new BitmapDrawable(resources, frameImage);
 		if (mImageLinkingDrawable != 0) {
 			Drawable[] layers = new Drawable[2];
 			layers[0] = cachedIcon;
@@ -624,12 +656,22 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 
 	@Override
 	protected boolean swipeNext() {
-		return switchFrames(mFrameInternalId, R.id.menu_next_frame, null);
+		return switchToNeighbourFrame(true);
 	}
 
 	@Override
 	protected boolean swipePrevious() {
-		return switchFrames(mFrameInternalId, R.id.menu_previous_frame, null);
+		return switchToNeighbourFrame(false);
+	}
+
+	private boolean switchToNeighbourFrame(boolean next) {
+		// if we've preloaded the neighbouring frames we already know which frame to switch to
+		String neighbourId = FramePreloadCache.getNeighbourId(mFrameInternalId, next);
+		mSwitchingFrames = true; // so that we keep the preloaded frames when this editor exits
+		boolean switched = switchFrames(mFrameInternalId, next ? R.id.menu_next_frame : R.id.menu_previous_frame,
+				neighbourId);
+		mSwitchingFrames = false;
+		return switched;
 	}
 
 	private int getAudioIndex(int buttonId) {
@@ -729,8 +771,8 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 					}
 				});
 				builder.setPositiveButton(R.string.span_media_add_new, (dialog, whichButton) -> {
-					endLinkedMediaItem(mImageInherited, mFrameInternalId); // remove the existing media link
-					editImage(mFrameInternalId);
+					// remove the existing media link, then edit
+					endLinkedMediaItem(mImageInherited, mFrameInternalId, () -> editImage(mFrameInternalId));
 				});
 				AlertDialog alert = builder.create();
 				alert.show();
@@ -757,8 +799,8 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 				});
 				builder.setPositiveButton(R.string.span_media_add_new, (dialog, whichButton) -> {
 					// remove the existing media links and edit a new audio item
-					endLinkedMediaItem(mAudioInherited, mFrameInternalId);
-					editAudio(mFrameInternalId, -1, false); // spanning is now allowed
+					endLinkedMediaItem(mAudioInherited, mFrameInternalId,
+							() -> editAudio(mFrameInternalId, -1, false)); // spanning is now allowed
 				});
 				AlertDialog alert = builder.create();
 				alert.show();
@@ -784,8 +826,7 @@ public class FrameEditorActivity extends MediaPhoneActivity {
 				});
 				builder.setPositiveButton(R.string.span_media_add_new, (dialog, whichButton) -> {
 					// remove the existing media links and edit a new text item
-					endLinkedMediaItem(mTextInherited, mFrameInternalId);
-					editText(mFrameInternalId);
+					endLinkedMediaItem(mTextInherited, mFrameInternalId, () -> editText(mFrameInternalId));
 				});
 				AlertDialog alert = builder.create();
 				alert.show();
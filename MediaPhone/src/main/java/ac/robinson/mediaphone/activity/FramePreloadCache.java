@@ -0,0 +1,287 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.activity;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.mediaphone.provider.FrameItem;
+import ac.robinson.mediaphone.provider.FramesManager;
+import ac.robinson.mediaphone.provider.MediaItem;
+import ac.robinson.mediaphone.provider.MediaManager;
+import ac.robinson.mediaphone.provider.MediaPhoneProvider;
+import ac.robinson.mediaphone.provider.ScreenImageDecoder;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.IOUtilities;
+
+/**
+ * Keeps the frames either side of the one shown in {@link FrameEditorActivity} ready to display, so that swiping between
+ * frames does not need to query the database or decode the new frame's image on the UI thread. Each swipe starts a new
+ * editor, so the cache is shared between instances. States are stamped with the content version at the time they were
+ * loaded (see {@link MediaPhoneProvider#getContentVersion()}) and their media files' modification times, and are
+ * discarded rather than used if anything has changed since then - checking this does not need a database query.
+ */
+final class FramePreloadCache {
+
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+	private static final AtomicInteger sGeneration = new AtomicInteger(); // newer requests supersede older ones
+
+	private static final Object sLock = new Object();
+	private static final HashMap<String, FrameState> sFrameStates = new HashMap<>();
+	private static String sNeighboursFrameId; // the frame whose neighbours are currently known
+	private static Neighbours sNeighbours;
+
+	/**
+	 * The content of a frame, as needed by {@link FrameEditorActivity#loadFrameElements()}
+	 */
+	static final class FrameState {
+		final String mFrameId;
+		final int mContentVersion;
+		final ArrayList<MediaItem> mMedia;
+
+		final String mTextMediaId; // the first text item, whose snippet is preloaded (null if none)
+		final String mTextSnippet;
+		final long mTextModified;
+
+		final String mImagePath; // the first image/video item, which is pre-decoded at mImageSize (null if none)
+		final Bitmap mImage;
+		final int mImageSize;
+		final long mImageModified;
+
+		private FrameState(String frameId, int contentVersion, ArrayList<MediaItem> media, String textMediaId,
+						   String textSnippet, long textModified, String imagePath, Bitmap image, int imageSize,
+						   long imageModified) {
+			mFrameId = frameId;
+			mContentVersion = contentVersion;
+			mMedia = media;
+			mTextMediaId = textMediaId;
+			mTextSnippet = textSnippet;
+			mTextModified = textModified;
+			mImagePath = imagePath;
+			mImage = image;
+			mImageSize = imageSize;
+			mImageModified = imageModified;
+		}
+	}
+
+	private static final class Neighbours {
+		final int mContentVersion;
+		final String mPreviousFrameId;
+		final String mNextFrameId;
+
+		private Neighbours(int contentVersion, String previousFrameId, String nextFrameId) {
+			mContentVersion = contentVersion;
+			mPreviousFrameId = previousFrameId;
+			mNextFrameId = nextFrameId;
+		}
+	}
+
+	private FramePreloadCache() {
+	}
+
+	/**
+	 * Find the neighbours of frameId and load their content (including images decoded at imageSize) in the background,
+	 * replacing any previously preloaded frames. Safe to call repeatedly - superseded requests are abandoned.
+	 */
+	static void preloadNeighbours(Context context, final String frameId, final int imageSize) {
+		if (frameId == null) {
+			return;
+		}
+		final Context applicationContext = context.getApplicationContext();
+		final int generation = sGeneration.incrementAndGet();
+		sExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (generation != sGeneration.get()) {
+					return; // the editor has already moved on to another frame
+				}
+
+				// before querying anything, so that any change made while we are loading discards what we load
+				final int contentVersion = MediaPhoneProvider.getContentVersion();
+				ContentResolver contentResolver = applicationContext.getContentResolver();
+				FrameItem frame = FramesManager.findFrameByInternalId(contentResolver, frameId);
+				if (frame == null) {
+					return;
+				}
+				final String previousFrameId = FramesManager.findPreviousFrameId(contentResolver, frame);
+				final String nextFrameId = FramesManager.findNextFrameId(contentResolver, frame);
+				synchronized (sLock) {
+					sNeighboursFrameId = frameId;
+					sNeighbours = new Neighbours(contentVersion, previousFrameId, nextFrameId);
+
+					// keep any states that are still needed (e.g., the frame we just came from)
+					sFrameStates.keySet().retainAll(Arrays.asList(previousFrameId, nextFrameId));
+				}
+
+				// next first, as forwards is the usual direction when reviewing a narrative
+				final String[] frameIds = { nextFrameId, previousFrameId };
+				for (String neighbourId : frameIds) {
+					if (neighbourId == null || generation != sGeneration.get()) {
+						continue;
+					}
+					synchronized (sLock) {
+						FrameState existing = sFrameStates.get(neighbourId);
+						if (existing != null && existing.mContentVersion == contentVersion &&
+								existing.mImageSize == imageSize) {
+							continue; // already loaded
+						}
+					}
+					FrameState state = loadFrameState(applicationContext, neighbourId, contentVersion, imageSize);
+					synchronized (sLock) {
+						if (generation == sGeneration.get()) {
+							sFrameStates.put(neighbourId, state);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The id of the frame after (or, if next is false, before) frameId, or null if it is not known (in which case
+	 * the caller should look it up itself). Note that null does not mean there is no neighbouring frame.
+	 */
+	static String getNeighbourId(String frameId, boolean next) {
+		final Neighbours neighbours;
+		synchronized (sLock) {
+			if (frameId == null || !frameId.equals(sNeighboursFrameId)) {
+				return null;
+			}
+			neighbours = sNeighbours;
+		}
+		if (neighbours == null || MediaPhoneProvider.getContentVersion() != neighbours.mContentVersion) {
+			return null; // frames may have been added or removed since we loaded
+		}
+		return next ? neighbours.mNextFrameId : neighbours.mPreviousFrameId;
+	}
+
+	/**
+	 * Remove and return the preloaded state of frameId, if it exists and is still valid
+	 *
+	 * @return The frame's state, or null if it has not been loaded or has changed since loading
+	 */
+	static FrameState takeFrameState(String frameId) {
+		final FrameState state;
+		synchronized (sLock) {
+			state = sFrameStates.remove(frameId);
+		}
+		if (state == null) {
+			return null;
+		}
+
+		// any database change to the frame's content changes the content version; files can also be replaced
+		if (MediaPhoneProvider.getContentVersion() != state.mContentVersion ||
+				(state.mTextMediaId != null && getLastModified(state.mMedia, state.mTextMediaId) != state.mTextModified) ||
+				(state.mImagePath != null && new File(state.mImagePath).lastModified() != state.mImageModified)) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(state), "Discarding out of date preloaded frame " + frameId);
+			}
+			return null;
+		}
+		return state;
+	}
+
+	/**
+	 * Abandon any pending preloads and discard preloaded frames (e.g., when the editor is closed)
+	 */
+	static void clear() {
+		sGeneration.incrementAndGet();
+		synchronized (sLock) {
+			sFrameStates.clear();
+			sNeighboursFrameId = null;
+			sNeighbours = null;
+		}
+	}
+
+	private static FrameState loadFrameState(Context context, String frameId, int contentVersion, int imageSize) {
+		ContentResolver contentResolver = context.getContentResolver();
+		ArrayList<MediaItem> frameComponents = MediaManager.findMediaByParentId(contentResolver, frameId);
+
+		// the same items as loadFrameElements displays: the first image and text items
+		String textMediaId = null;
+		String textSnippet = null;
+		long textModified = 0;
+		String imagePath = null;
+		Bitmap image = null;
+		long imageModified = 0;
+		for (MediaItem currentItem : frameComponents) {
+			final int currentType = currentItem.getType();
+			if (imagePath == null &&
+					(currentType == MediaPhoneProvider.TYPE_IMAGE_BACK || currentType == MediaPhoneProvider.TYPE_IMAGE_FRONT ||
+							currentType == MediaPhoneProvider.TYPE_VIDEO)) {
+				File imageFile = currentItem.getFile();
+				imagePath = imageFile.getAbsolutePath();
+				imageModified = imageFile.lastModified();
+				if (imageSize > 0) {
+					image = decodeFrameImage(imagePath, currentType, imageSize);
+					if (image != null) {
+						image.prepareToDraw(); // upload now, rather than on the first draw after swiping
+					}
+				}
+			} else if (textMediaId == null && currentType == MediaPhoneProvider.TYPE_TEXT) {
+				File textFile = currentItem.getFile();
+				textMediaId = currentItem.getInternalId();
+				textModified = textFile.lastModified();
+				textSnippet = IOUtilities.getFileContentSnippet(textFile.getAbsolutePath(),
+						context.getResources().getInteger(R.integer.text_snippet_length));
+			}
+		}
+
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(frameId), "Preloaded frame " + frameId + " (" + frameComponents.size() +
+					" media items; image " + (image != null ? "decoded" : "not decoded") + ")");
+		}
+		return new FrameState(frameId, contentVersion, frameComponents, textMediaId, textSnippet, textModified,
+				imagePath, image, imageSize, imageModified);
+	}
+
+	/**
+	 * Decode a frame's image (or a video's first frame) in the same way for preloaded frames as for those that the editor
+	 * loads itself
+	 */
+	static Bitmap decodeFrameImage(String imagePath, int mediaType, int imageSize) {
+		if (mediaType == MediaPhoneProvider.TYPE_VIDEO) {
+			return BitmapUtilities.loadAndCreateScaledBitmap(imagePath, imageSize, imageSize,
+					BitmapUtilities.ScalingLogic.CROP, true);
+		}
+		return ScreenImageDecoder.decode(imagePath, imageSize, imageSize, BitmapUtilities.ScalingLogic.CROP);
+	}
+
+	private static long getLastModified(ArrayList<MediaItem> media, String mediaId) {
+		for (MediaItem item : media) {
+			if (mediaId.equals(item.getInternalId())) {
+				return item.getFile().lastModified();
+			}
+		}
+		return 0;
+	}
+}
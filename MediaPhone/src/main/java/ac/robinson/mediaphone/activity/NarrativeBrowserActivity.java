@@ -26,6 +26,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
@@ -36,6 +37,7 @@ import android.os.Message;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.view.Gravity;
+import android.view.inputmethod.EditorInfo;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -44,6 +46,8 @@ import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.PopupWindow;
 import android.widget.TextView;
 
@@ -66,12 +70,15 @@ import ac.robinson.mediaphone.BuildConfig;
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.MediaPhoneApplication;
 import ac.robinson.mediaphone.R;
+import ac.robinson.mediaphone.StartupTimings;
 import ac.robinson.mediaphone.provider.FrameAdapter;
 import ac.robinson.mediaphone.provider.FrameItem;
 import ac.robinson.mediaphone.provider.FramesManager;
+import ac.robinson.mediaphone.provider.MediaManager;
 import ac.robinson.mediaphone.provider.NarrativeAdapter;
 import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
+import ac.robinson.mediaphone.provider.TextSearchResult;
 import ac.robinson.mediaphone.provider.UpgradeManager;
 import ac.robinson.mediaphone.view.FrameViewHolder;
 import ac.robinson.mediaphone.view.HorizontalListView;
@@ -138,9 +145,23 @@ public class NarrativeBrowserActivity extends BrowserActivity {
 			mCurrentSelectedNarrativeId = savedInstanceState.getString(getString(R.string.extra_internal_id));
 			mScrollNarrativesToEnd = savedInstanceState.getInt(getString(R.string.extra_start_scrolled_to_end), 0);
 		} else {
-			// initialise preferences on first run, and perform an upgrade if applicable
-			PreferenceManager.setDefaultValues(this, R.xml.preferences, true);
+			// initialise preferences on first run (all preferences are read with fallback defaults, so this is not needed
+			// until the preferences screen is shown - parsing the preferences file can be deferred), then upgrade if needed
+			final Context applicationContext = getApplicationContext();
+			runAfterStartup("set default preferences", false,
+					() -> PreferenceManager.setDefaultValues(applicationContext, R.xml.preferences, true));
+
+			long phaseStart = StartupTimings.begin();
 			UpgradeManager.upgradeApplication(NarrativeBrowserActivity.this);
+			StartupTimings.end("upgrade application", phaseStart);
+
+			// add any spanning media copies left by a database upgrade, then any text that isn't yet searchable (both are
+			// queued after any helper narrative installs from the upgrade)
+			final Resources resources = getResources();
+			final ContentResolver contentResolver = getContentResolver();
+			runAfterStartup("copy span media", false, () -> FramesManager.reloadFrameIcons(resources, contentResolver,
+					MediaManager.copyPendingSpanMedia(contentResolver)));
+			runAfterStartup("update text index", false, () -> MediaManager.updateMissingTextIndexEntries(contentResolver));
 		}
 
 		// some devices don't allow saving to internal app storage without permission (should be implicit, but there is a bug)
@@ -156,7 +177,9 @@ public class NarrativeBrowserActivity extends BrowserActivity {
 					new String[]{ Manifest.permission.WRITE_EXTERNAL_STORAGE }, PERMISSION_INTERNAL_STORAGE_BUG);
 		}
 
+		long phaseStart = StartupTimings.begin();
 		initialiseNarrativesView();
+		StartupTimings.end("initialise narratives view", phaseStart);
 	}
 
 	@Override
@@ -233,6 +256,9 @@ public class NarrativeBrowserActivity extends BrowserActivity {
 		} else if (itemId == R.id.menu_scan_imports) {
 			importNarratives();
 			return true;
+		} else if (itemId == R.id.menu_search_text) {
+			searchNarratives();
+			return true;
 		}
 		return super.onOptionsItemSelected(item);
 	}
@@ -680,6 +706,92 @@ public class NarrativeBrowserActivity extends BrowserActivity {
 		}
 	}
 
+	private void searchNarratives() {
+		AlertDialog.Builder builder = new AlertDialog.Builder(NarrativeBrowserActivity.this);
+		builder.setTitle(R.string.search_text_title);
+
+		int dialogPadding = getResources().getDimensionPixelSize(R.dimen.save_narrative_dialog_padding);
+		LinearLayout layout = new LinearLayout(NarrativeBrowserActivity.this);
+		layout.setOrientation(LinearLayout.VERTICAL);
+		layout.setPadding(dialogPadding, 0, dialogPadding, 0);
+		final EditText searchInput = new EditText(NarrativeBrowserActivity.this);
+		searchInput.setImeOptions(EditorInfo.IME_ACTION_SEARCH);
+		searchInput.setInputType(EditorInfo.TYPE_CLASS_TEXT);
+		searchInput.setMaxLines(1);
+		layout.addView(searchInput);
+		builder.setView(layout);
+
+		builder.setNegativeButton(R.string.button_cancel, null);
+		builder.setPositiveButton(R.string.button_search, (dialog, button) -> {
+			dialog.dismiss();
+			showSearchResults(searchInput.getText().toString());
+		});
+		final AlertDialog searchDialog = builder.create();
+		searchInput.setOnEditorActionListener((v, actionId, event) -> {
+			if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+				searchDialog.dismiss();
+				showSearchResults(searchInput.getText().toString());
+				return true;
+			}
+			return false;
+		});
+		searchDialog.show();
+	}
+
+	private void showSearchResults(final String query) {
+		if (TextUtils.isEmpty(query.trim())) {
+			return;
+		}
+
+		// the index makes searching quick, but it is still a database query, so must not be run on the UI thread
+		final ContentResolver contentResolver = getContentResolver();
+		runQueuedBackgroundTask(new BackgroundRunnable() {
+			@Override
+			public int getTaskId() {
+				return 0;
+			}
+
+			@Override
+			public boolean getShowDialog() {
+				return false;
+			}
+
+			@Override
+			public void run() {
+				final ArrayList<TextSearchResult> results = MediaManager.searchTextMedia(contentResolver, query);
+				runOnUiThread(() -> {
+					if (!isFinishing()) {
+						showSearchResults(query, results);
+					}
+				});
+			}
+		});
+	}
+
+	private void showSearchResults(String query, final ArrayList<TextSearchResult> results) {
+		if (results.isEmpty()) {
+			UIUtilities.showFormattedToast(NarrativeBrowserActivity.this, R.string.search_text_no_results, query.trim());
+			return;
+		}
+
+		final CharSequence[] items = new CharSequence[results.size()];
+		for (int i = 0, n = results.size(); i < n; i++) {
+			TextSearchResult result = results.get(i);
+			items[i] = getString(R.string.search_text_result, result.mNarrativeSequenceId, result.mSnippet);
+		}
+		AlertDialog.Builder builder = new AlertDialog.Builder(NarrativeBrowserActivity.this);
+		builder.setTitle(getResources().getQuantityString(R.plurals.search_text_results_title, results.size(),
+				results.size()));
+		builder.setNegativeButton(R.string.button_cancel, null);
+		builder.setItems(items, (dialog, item) -> {
+			dialog.dismiss();
+			TextSearchResult result = results.get(item);
+			mCurrentSelectedNarrativeId = result.mNarrativeId;
+			editFrame(result.mFrameId); // the browser scrolls to this frame when we return
+		});
+		builder.create().show();
+	}
+
 	private void searchRecursivelyForNarratives(File[] importedFiles, ArrayList<String> processedFiles) {
 		if (importedFiles != null) {
 			// depth-first so we can delete directories on completion
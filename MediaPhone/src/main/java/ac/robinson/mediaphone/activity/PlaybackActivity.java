@@ -36,9 +36,11 @@ import android.media.MediaPlayer.OnPreparedListener;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.Html;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -49,7 +51,6 @@ import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
@@ -60,6 +61,7 @@ import com.larvalabs.svgandroid.SVGParser;
 import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 
 import ac.robinson.mediaphone.BuildConfig;
@@ -75,9 +77,9 @@ import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
 import ac.robinson.mediaphone.provider.PlaybackMediaHolder;
 import ac.robinson.mediaphone.provider.PlaybackNarrativeDescriptor;
+import ac.robinson.mediaphone.view.PlaybackImageSurface;
 import ac.robinson.mediaphone.view.SendToBackRelativeLayout;
 import ac.robinson.mediaphone.view.SystemUiHider;
-import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.IOUtilities;
 import ac.robinson.util.UIUtilities;
@@ -125,12 +127,16 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	// this map holds the start times of every frame (ignoring content that spans multiple frames)
 	private LinkedHashMap<Integer, String> mTimeToFrameMap = new LinkedHashMap<>();
 
+	// the text of each (short) text item, loaded with the narrative so that changing frames doesn't need to read files
+	private HashMap<String, String> mNarrativeTextContent = new HashMap<>();
+
 	private String mNarrativeInternalId = null; // the narrative we're playing
 
 	private int mNarrativeContentIndex = 0; // the next mNarrativeContent item to be processed
 
 	private int mPlaybackPositionMilliseconds = 0; // the current playback time, in milliseconds
 	private int mPlaybackDurationMilliseconds = 0; // the duration of the narrative, in milliseconds
+	private int mPlaybackAdvanceMilliseconds = PLAYBACK_UPDATE_INTERVAL_MILLIS; // the most recent playback time step
 
 	private boolean mFinishedLoadingImages = false; // for tracking image loads, particularly during very short frames
 	private String mCurrentPlaybackImagePath = null; // cached path for avoiding reloads where possible
@@ -138,6 +144,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	private Bitmap mAudioPictureBitmap = null; // cached audio icon for avoiding reloads where possible
 
 	private final ArrayList<CustomMediaPlayer> mMediaPlayers = new ArrayList<>(MAX_AUDIO_ITEMS);
+	private PlaybackAudioEngine mAudioEngine = null; // when available, plays all audio and is the playback clock
 
 	private boolean mPlaying = true; // whether we're currently playing or paused
 	private boolean mStateChanged = false; // whether we must reload/resize as the screen has rotated or state changed
@@ -145,8 +152,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	// UI elements for displaying, caching and animating media
 	private SendToBackRelativeLayout mPlaybackRoot;
 	private LinearLayout mPlaybackControlsWrapper;
-	private ImageView mCurrentPlaybackImage;
-	private ImageView mBackgroundPlaybackImage;
+	private PlaybackImageSurface mPlaybackImageSurface;
 	private AutoResizeTextView mPlaybackText;
 	private AutoResizeTextView mPlaybackTextWithImage;
 	private Animation mFadeOutAnimation;
@@ -227,15 +233,15 @@ public class PlaybackActivity extends MediaPhoneActivity {
 
 		// reload media - no playback delay so we can load immediately
 		mStateChanged = true;
-		mMediaAdvanceHandler.removeCallbacks(mMediaAdvanceRunnable);
-		mMediaAdvanceHandler.post(mMediaAdvanceRunnable);
+		schedulePlaybackAdvance(0);
 	}
 
 	@Override
 	protected void onDestroy() {
 		mHideHandler.removeCallbacks(mHideRunnable);
-		mMediaAdvanceHandler.removeCallbacks(mMediaAdvanceRunnable);
+		cancelPlaybackAdvance();
 		mImageLoadHandler.removeCallbacks(mImageLoadRunnable);
+		mPlaybackImageSurface.release();
 		releasePlayers();
 		super.onDestroy();
 	}
@@ -317,8 +323,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 				startActivityForResult(frameEditorIntent, MediaPhone.R_id_intent_frame_editor);
 
 				// make sure we're not using any out of date images - done here so the ui will have updated before return
-				mCurrentPlaybackImage.setImageDrawable(null);
-				mBackgroundPlaybackImage.setImageDrawable(null);
+				mPlaybackImageSurface.clearImage();
 				resetImagePaths();
 
 				// make sure we return to the current frame
@@ -598,8 +603,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		// keep hold of key UI elements
 		mPlaybackRoot = findViewById(R.id.playback_root);
 		mPlaybackControlsWrapper = findViewById(R.id.playback_controls_wrapper);
-		mCurrentPlaybackImage = findViewById(R.id.playback_image);
-		mBackgroundPlaybackImage = findViewById(R.id.playback_image_background);
+		mPlaybackImageSurface = findViewById(R.id.playback_image);
 		mPlaybackText = findViewById(R.id.playback_text);
 		mPlaybackTextWithImage = findViewById(R.id.playback_text_with_image);
 
@@ -673,6 +677,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		// / 3 for nearer to the end of the animation
 		mFadeOutAnimation = AnimationUtils.loadAnimation(PlaybackActivity.this, android.R.anim.fade_out);
 		mFadeOutAnimationDurationAdjustment = (int) mFadeOutAnimation.getDuration() / 3;
+		mPlaybackImageSurface.setCrossFadeDuration(mFadeOutAnimation.getDuration());
 
 		// make sure that the volume controls always control media volume (rather than ringtone etc.)
 		setVolumeControlStream(AudioManager.STREAM_MUSIC);
@@ -691,8 +696,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 				mSystemUiHider.show();
 			}
 		};
-		mCurrentPlaybackImage.setOnClickListener(systemUIClickHandler);
-		mBackgroundPlaybackImage.setOnClickListener(systemUIClickHandler);
+		mPlaybackImageSurface.setOnClickListener(systemUIClickHandler);
 		mPlaybackText.setOnClickListener(systemUIClickHandler);
 		mPlaybackTextWithImage.setOnClickListener(systemUIClickHandler);
 	}
@@ -736,35 +740,121 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		return super.dispatchTrackballEvent(event);
 	}
 
-	// handler and runnable for scheduling playback advances
+	// handler, runnable and (where supported) vsync callback for scheduling playback advances - rather than polling, we sleep
+	// until the next time at which the timeline changes (an item preloading, starting or ending), and on devices with
+	// Choreographer the advance is run at the start of the next display frame so visual transitions align with vsync
 	private final Handler mMediaAdvanceHandler = new Handler();
-	private final Runnable mMediaAdvanceRunnable = new Runnable() {
-		@Override
-		public void run() {
-			if (!mPlaybackController.isDragging()) {
-				if (mPlaying || mStateChanged) {
-					if (mPlaying) {
-						mPlaybackPositionMilliseconds += Math.min(PLAYBACK_UPDATE_INTERVAL_MILLIS,
-								mPlaybackDurationMilliseconds - mPlaybackPositionMilliseconds);
-					}
-					refreshPlayback();
+	private final Runnable mMediaAdvanceRunnable = this::advancePlayback;
+	private Choreographer.FrameCallback mMediaAdvanceFrameCallback = null; // only used on SDK 16+
+	private long mPlaybackClockTime; // uptime at which mPlaybackPositionMilliseconds was last correct (when not using audio)
+	private boolean mAdvancingPlayback = false; // whether refreshPlayback() was called by advancePlayback()
+
+	private void advancePlayback() {
+		if (!mPlaybackController.isDragging()) {
+			if (mPlaying || mStateChanged) {
+				if (mPlaying) {
+					int newPosition = getLivePlaybackPosition();
+					mPlaybackAdvanceMilliseconds = Math.max(PLAYBACK_UPDATE_INTERVAL_MILLIS,
+							newPosition - mPlaybackPositionMilliseconds);
+					mPlaybackPositionMilliseconds = newPosition;
 				}
-			} else {
-				delayedPlaybackAdvance(); // if dragging we still want to keep playing, just not advancing the timer
+				mPlaybackClockTime = SystemClock.uptimeMillis();
+				mAdvancingPlayback = true;
+				refreshPlayback();
+				mAdvancingPlayback = false;
 			}
+		} else {
+			delayedPlaybackAdvance(); // if dragging we still want to keep playing, just not advancing the timer
 		}
-	};
+	}
 
 	/**
-	 * Schedules a call to refreshPlayback() (via mMediaAdvanceRunnable), cancelling any previously scheduled calls
+	 * @return the current playback position - mPlaybackPositionMilliseconds is only updated when the timeline changes,
+	 * so while playing we add the time since then (or, when it is available, use the audio engine's position, which is
+	 * exactly what is being heard)
 	 */
-	private void delayedPlaybackAdvance() {
-		int delayMillis = Math.min(PLAYBACK_UPDATE_INTERVAL_MILLIS,
+	private int getLivePlaybackPosition() {
+		if (!mPlaying || mPlaybackController.isDragging()) {
+			return mPlaybackPositionMilliseconds;
+		}
+		if (mAudioEngine != null) {
+			return Math.max(mPlaybackPositionMilliseconds,
+					Math.min(mAudioEngine.getPosition(), mPlaybackDurationMilliseconds));
+		}
+		return mPlaybackPositionMilliseconds + (int) Math.min(SystemClock.uptimeMillis() - mPlaybackClockTime,
 				mPlaybackDurationMilliseconds - mPlaybackPositionMilliseconds);
+	}
+
+	/**
+	 * Schedules a call to refreshPlayback() (via advancePlayback()) for the next time the playback state will change,
+	 * cancelling any previously scheduled calls. While dragging or editing timings (when media durations change
+	 * continuously) we fall back to polling every PLAYBACK_UPDATE_INTERVAL_MILLIS; while paused nothing is scheduled,
+	 * as the position only changes when seeking (which refreshes playback itself)
+	 */
+	private void delayedPlaybackAdvance() {
+		final long currentTime = SystemClock.uptimeMillis();
+		if (!mAdvancingPlayback) {
+			mPlaybackClockTime = currentTime; // the position has been set externally (e.g., seeking) - time from now
+		}
+		if (!mPlaying && !mPlaybackController.isDragging()) {
+			cancelPlaybackAdvance();
+			return;
+		}
+
+		int delayMillis;
+		if (!mPlaying || mTimingModeEnabled || mPlaybackController.isDragging() || mNarrativeContent == null) {
+			// we limit the lower bound to 50ms because otherwise we'd overload the message queue and nothing would happen
+			delayMillis = Math.max(Math.min(PLAYBACK_UPDATE_INTERVAL_MILLIS,
+					mPlaybackDurationMilliseconds - mPlaybackPositionMilliseconds), 50);
+		} else {
+			delayMillis = getNextPlaybackEventTime() - mPlaybackPositionMilliseconds -
+					(int) (currentTime - mPlaybackClockTime);
+		}
+		schedulePlaybackAdvance(Math.max(delayMillis, 0));
+	}
+
+	/**
+	 * @return the first time after the current playback position at which an item needs to be preloaded, shown or removed
+	 */
+	private int getNextPlaybackEventTime() {
+		int nextEventTime = mPlaybackDurationMilliseconds;
+		final int currentTime = mPlaybackPositionMilliseconds;
+		for (PlaybackMediaHolder holder : mNarrativeContent) {
+			// content is ordered by (unadjusted) start time, so once an item's earliest event is after the best found so far,
+			// no later item can be earlier
+			if (holder.getStartTime(false) - mFadeOutAnimationDurationAdjustment - PRELOAD_SIZE > nextEventTime) {
+				break;
+			}
+			final int startTime = holder.getStartTime(true);
+			final int endTime = holder.getEndTime(true);
+			if (startTime - PRELOAD_SIZE > currentTime) {
+				nextEventTime = Math.min(nextEventTime, startTime - PRELOAD_SIZE);
+			} else if (startTime > currentTime) {
+				nextEventTime = Math.min(nextEventTime, startTime);
+			} else if (endTime > currentTime) {
+				nextEventTime = Math.min(nextEventTime, endTime);
+			}
+		}
+		return nextEventTime;
+	}
 
-		// we limit the lower bound to 50ms because otherwise we'd overload the message queue and nothing would happen
+	private void schedulePlaybackAdvance(int delayMillis) {
+		cancelPlaybackAdvance();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			if (mMediaAdvanceFrameCallback == null) {
+				mMediaAdvanceFrameCallback = frameTimeNanos -> advancePlayback();
+			}
+			Choreographer.getInstance().postFrameCallbackDelayed(mMediaAdvanceFrameCallback, delayMillis);
+		} else {
+			mMediaAdvanceHandler.postDelayed(mMediaAdvanceRunnable, delayMillis);
+		}
+	}
+
+	private void cancelPlaybackAdvance() {
 		mMediaAdvanceHandler.removeCallbacks(mMediaAdvanceRunnable);
-		mMediaAdvanceHandler.postDelayed(mMediaAdvanceRunnable, Math.max(delayMillis, 50));
+		if (mMediaAdvanceFrameCallback != null) {
+			Choreographer.getInstance().removeFrameCallback(mMediaAdvanceFrameCallback);
+		}
 	}
 
 	// handler and runnable for scheduling loading the full quality image when seeking
@@ -773,10 +863,8 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		@Override
 		public void run() {
 			if (mCurrentPlaybackImagePath != null) {
-				// don't fade in the image here - if we do, we can possibly get a race condition with loading and
-				// fading, resulting in both being shown, one on top of the other; best to just load in place
-				loadScreenSizedImageInBackground(mCurrentPlaybackImage, mCurrentPlaybackImagePath, true,
-						MediaPhoneActivity.FadeType.NONE);
+				// replace the downscaled seeking image in place - a fade here would just look like a flicker
+				mPlaybackImageSurface.showImage(mCurrentPlaybackImagePath, false, false);
 			}
 		}
 	};
@@ -815,6 +903,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		NarrativeItem currentNarrative = NarrativesManager.findNarrativeByInternalId(contentResolver, mNarrativeInternalId);
 		PlaybackNarrativeDescriptor narrativeProperties = new PlaybackNarrativeDescriptor(mFadeOutAnimationDurationAdjustment);
 		mNarrativeContent = currentNarrative.getPlaybackContent(contentResolver, startFrameId, narrativeProperties);
+		mNarrativeTextContent = MediaManager.findInlineTextByNarrativeId(contentResolver, mNarrativeInternalId);
 		mCurrentPlaybackItems.clear();
 
 		// initialise the start time (of the requested frame) and the narrative's duration
@@ -823,8 +912,19 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		mPlaybackDurationMilliseconds = narrativeProperties.mNarrativeDuration;
 		mTimeToFrameMap = narrativeProperties.mTimeToFrameMap;
 
-		// reset and release audio players; a new set will be built up when needed
+		// reset and release audio players; a new set will be built up when needed - where possible, all audio is instead
+		// mixed by a single engine that also acts as the playback clock (MediaCodec-based, so only on newer devices)
 		releasePlayers();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			mAudioEngine = PlaybackAudioEngine.create((AudioManager) getSystemService(AUDIO_SERVICE), mNarrativeContent,
+					mPlaybackPositionMilliseconds, () -> {
+						mMediaController.pause(); // e.g., a phone call - pause the whole narrative, not just its audio
+						mPlaybackController.refreshController();
+					});
+			if (mAudioEngine != null && mPlaying) {
+				mAudioEngine.play();
+			}
+		}
 
 		// initialise the media controller and set up a listener for when manual seek ends
 		mPlaybackController.setMediaPlayerControl(mMediaController);
@@ -933,10 +1033,10 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		if (!itemsRemoved && !itemsAdded) {
 			boolean mustReload = mStateChanged;
 			if (!mustReload) {
-				// media items that we might have missed (started within the time period) need to be loaded
+				// media items that started since the last advance (including exactly now) need to be loaded
 				for (PlaybackMediaHolder holder : mCurrentPlaybackItems) {
 					final int timeDifference = mPlaybackPositionMilliseconds - holder.getStartTime(true);
-					if (timeDifference > 0 && timeDifference <= PLAYBACK_UPDATE_INTERVAL_MILLIS) {
+					if (timeDifference >= 0 && timeDifference < mPlaybackAdvanceMilliseconds) {
 						mustReload = true;
 						break;
 					}
@@ -951,9 +1051,6 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		mStateChanged = false; // if we get here we're reloading, so reset rotation tracking
 
 		// load images and audio before text so we can set up their display/playback at the right times
-		// TODO: there are potential memory issues here - setting an ImageView's drawable doesn't reliably clear the
-		//  memory allocated to the existing drawable - do we need to get the drawables and recycle the bitmaps?
-		//  (if so, need to beware of recycling the audio image bitmap, or just check for isRecycled() on load)
 		PlaybackMediaHolder textItem = null;
 		boolean hasImage = false;
 		boolean hasAudio = false;
@@ -970,18 +1067,10 @@ public class PlaybackActivity extends MediaPhoneActivity {
 					if (mPlaybackController.isDragging()) {
 
 						// while dragging we need to trade off good UI performance against memory usage (could
-						// overflow limit if we just background loaded everything) - instead, load a downscaled
-						// version on the UI thread then update to show the full resolution version after a timeout
+						// overflow limit if we just loaded everything at full quality) - instead, load a downscaled
+						// version (superseding any pending loads) then update to the full resolution version after a timeout
 						if (itemAppliesNow && !holder.mMediaPath.equals(mCurrentPlaybackImagePath)) {
-							cancelLoadingScreenSizedImageInBackground(mCurrentPlaybackImage);
-							Bitmap scaledBitmap = null;
-							try {
-								scaledBitmap = BitmapUtilities.loadAndCreateScaledBitmap(holder.mMediaPath, mScreenSize.x,
-										mScreenSize.y, BitmapUtilities.ScalingLogic.DOWNSCALE, true);
-							} catch (Throwable t) {
-								// out of memory...
-							}
-							mCurrentPlaybackImage.setImageBitmap(scaledBitmap);
+							mPlaybackImageSurface.showImage(holder.mMediaPath, false, true);
 
 							mCurrentPlaybackImagePath = holder.mMediaPath;
 							mBackgroundPlaybackImagePath = null; // any previously cached image will now be wrong
@@ -992,19 +1081,11 @@ public class PlaybackActivity extends MediaPhoneActivity {
 					} else if (itemAppliesNow && mCurrentPlaybackImagePath == null) {
 
 						// if an item applies now and there's nothing stored in the current path it's the first image
-						// - for the first image, it's a better UI experience if loading happens in situ (~250ms)
-						if (holder.mMediaPath.equals(mBackgroundPlaybackImagePath)) {
-							// if the first frame wasn't an image, then we'll have already loaded it in the background
-							swapBackgroundImage();
-						} else {
-							Bitmap scaledBitmap = null;
-							try {
-								scaledBitmap = BitmapUtilities.loadAndCreateScaledBitmap(holder.mMediaPath, mScreenSize.x,
-										mScreenSize.y, BitmapUtilities.ScalingLogic.FIT, true);
-							} catch (Throwable t) { // out of memory...
-							}
-							mCurrentPlaybackImage.setImageBitmap(scaledBitmap);
-						}
+						// - for the first image, it's a better UI experience if loading happens in situ (~250ms); if the
+						// first frame wasn't an image, then we'll have already preloaded it, and it is shown immediately
+						mPlaybackImageSurface.showImage(holder.mMediaPath, false, false);
+						mBackgroundPlaybackImagePath = null;
+						mFinishedLoadingImages = false;
 						mCurrentPlaybackImagePath = holder.mMediaPath;
 
 					} else if (!holder.mMediaPath.equals(mCurrentPlaybackImagePath)) {
@@ -1014,8 +1095,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 						// led to out of memory errors on some devices - just load the normal version instead
 						if (!mFinishedLoadingImages && !holder.mMediaPath.equals(mBackgroundPlaybackImagePath)) {
 							mImageLoadHandler.removeCallbacks(mImageLoadRunnable); // no need to load prev(s) any more
-							loadScreenSizedImageInBackground(mBackgroundPlaybackImage, holder.mMediaPath, true,
-									MediaPhoneActivity.FadeType.NONE);
+							mPlaybackImageSurface.preloadImage(holder.mMediaPath);
 							mBackgroundPlaybackImagePath = holder.mMediaPath;
 							mFinishedLoadingImages = true;
 
@@ -1028,7 +1108,9 @@ public class PlaybackActivity extends MediaPhoneActivity {
 					break;
 
 				case MediaPhoneProvider.TYPE_AUDIO:
-					if (getExistingAudio(holder.mMediaPath) == null) {
+					if (mAudioEngine != null) {
+						hasAudio |= itemAppliesNow; // the engine schedules all audio itself
+					} else if (getExistingAudio(holder.mMediaPath) == null) {
 						CustomMediaPlayer currentMediaPlayer = getEmptyPlayer();
 						if (currentMediaPlayer == null) {
 							// no available audio players - most likely trying to cache too far in advance; ignore
@@ -1090,14 +1172,18 @@ public class PlaybackActivity extends MediaPhoneActivity {
 		// no image content on this frame - remove
 		if (!hasImage && !hasAudio) {
 			mImageLoadHandler.removeCallbacks(mImageLoadRunnable);
-			mCurrentPlaybackImage.setImageDrawable(null);
+			mPlaybackImageSurface.clearImage();
 			mCurrentPlaybackImagePath = null; // the current image is highly likely to be wrong - force reload
 		}
 
 		// load text last so we know whether we've loaded image/audio or not
 		if (textItem != null) {
-			// TODO: currently we load text every time - could check, but this would require loading the file anyway...
-			String textContents = IOUtilities.getFileContents(textItem.mMediaPath).trim();
+			// most text is loaded with the narrative; only longer items need to be read from their files
+			String textContents = mNarrativeTextContent.get(textItem.mMediaItemId);
+			if (textContents == null) {
+				textContents = IOUtilities.getFileContents(textItem.mMediaPath);
+			}
+			textContents = textContents.trim();
 			if (!TextUtils.isEmpty(textContents)) {
 				if (hasImage) {
 					mPlaybackText.setVisibility(View.GONE);
@@ -1106,7 +1192,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 				} else {
 					// this frame is text only, but may be a previously-loaded image in the background; force reload just in case
 					mImageLoadHandler.removeCallbacks(mImageLoadRunnable);
-					mCurrentPlaybackImage.setImageDrawable(null);
+					mPlaybackImageSurface.clearImage();
 					mCurrentPlaybackImagePath = null;
 
 					mPlaybackTextWithImage.setVisibility(View.GONE);
@@ -1132,7 +1218,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 				}
 				mCurrentPlaybackImagePath = String.valueOf(
 						ac.robinson.mediautilities.R.raw.ic_audio_playback); // now the current image
-				mCurrentPlaybackImage.setImageBitmap(mAudioPictureBitmap);
+				mPlaybackImageSurface.showBitmap(mAudioPictureBitmap, false);
 			}
 		}
 
@@ -1323,44 +1409,14 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	}
 
 	private void swapBackgroundImage() {
-		// if the image hasn't yet loaded, it's likely we're playing a narrative with really short frames - to try to
-		// keep up with playback, cancel loading and just show a downscaled version; queuing the full-sized version
-		if (mBackgroundPlaybackImage.getTag() != null) { // presence of a tag indicates that an image is being loaded
-			// TODO: check that this doesn't cause problems on low-capability v14+ devices (e.g., HTC Sensation)
-			cancelLoadingScreenSizedImageInBackground(mBackgroundPlaybackImage);
-			Bitmap scaledBitmap = null;
-			try {
-				scaledBitmap = BitmapUtilities.loadAndCreateScaledBitmap(mBackgroundPlaybackImagePath, mScreenSize.x,
-						mScreenSize.y, BitmapUtilities.ScalingLogic.DOWNSCALE, true);
-			} catch (Throwable t) { // out of memory...
-			}
-			mBackgroundPlaybackImage.setImageBitmap(scaledBitmap);
-
-			// load the full-resolution image, but wait longer here just in case we're loading lots of short frames
-			delayedImageLoad(PLAYBACK_UPDATE_INTERVAL_MILLIS * 5);
-		}
-
-		ImageView temp = mCurrentPlaybackImage;
-		mCurrentPlaybackImage = mBackgroundPlaybackImage;
-		mBackgroundPlaybackImage = temp;
-
-		// the new image should be at the back to fade between frames - use a custom layout for this
-		mPlaybackRoot.sendChildToBack(mCurrentPlaybackImage);
-		mCurrentPlaybackImage.setVisibility(View.VISIBLE);
-
-		// now fade out the old image
-		// TODO: 1) if we've seeked, and swap from a null image before loading, this looks bad; probably a non-problem...
-		// TODO: 2) when swapping between very short frames, faster devices end up loading the subsequent image before the fade
-		//  completes (i.e., images 1, 2, 3 end up being 1, 3 (briefly), 2, 3) - currently this is fixed by cancelling all
-		//  animations as part of loadScreenSizedImageInBackground, and not starting animations if the most recent one was within
-		//  the animation duration, which mostly fixes this but still leaves a small flicker on the first swap... a better way?
-		if (System.currentTimeMillis() - mLastFadeOutAnimationTime > mFadeOutAnimation.getDuration()) {
-			mBackgroundPlaybackImage.startAnimation(mFadeOutAnimation);
-		}
+		// the preloaded image is shown as soon as the surface's render thread has finished decoding it (usually already
+		// done); if we're playing a narrative with really short frames, any images that are superseded before they have
+		// been decoded are skipped, so playback keeps up without ever showing images out of order
+		// TODO: if we've seeked, and swap from a null image before loading, the fade looks bad; probably a non-problem...
+		boolean crossFade = System.currentTimeMillis() - mLastFadeOutAnimationTime > mFadeOutAnimation.getDuration();
+		mPlaybackImageSurface.showImage(mBackgroundPlaybackImagePath, crossFade, false);
 		mLastFadeOutAnimationTime = System.currentTimeMillis();
-		mBackgroundPlaybackImage.setVisibility(View.GONE);
 
-		// mBackgroundPlaybackImage.setImageDrawable(null); // don't do this - transitions look bad
 		mBackgroundPlaybackImagePath = null;
 		mFinishedLoadingImages = false;
 	}
@@ -1418,6 +1474,12 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	 * will be done.
 	 */
 	private void playPreparedAudio(boolean force) {
+		if (mAudioEngine != null) {
+			if (mPlaying) {
+				mAudioEngine.play();
+			}
+			return;
+		}
 		if (mPlaying) {
 			boolean allPrepared = true;
 			boolean hasAudio = false; // if there's no audio we'd still be allPrepared mode otherwise
@@ -1455,6 +1517,10 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	}
 
 	private void seekPlayingAudio() {
+		if (mAudioEngine != null) {
+			mAudioEngine.seekTo(mPlaybackPositionMilliseconds);
+			return;
+		}
 		for (CustomMediaPlayer player : mMediaPlayers) {
 			if (player.mMediaStartTime <= mPlaybackPositionMilliseconds && player.mMediaEndTime > mPlaybackPositionMilliseconds) {
 				if (player.mPlaybackPrepared) {
@@ -1486,6 +1552,10 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	}
 
 	private void pauseAudio() {
+		if (mAudioEngine != null) {
+			mAudioEngine.pause();
+			return;
+		}
 		for (CustomMediaPlayer player : mMediaPlayers) {
 			if (player.mPlaybackPrepared) {
 				try {
@@ -1522,13 +1592,17 @@ public class PlaybackActivity extends MediaPhoneActivity {
 	};
 
 	/**
-	 * Releases all CustomMediaPlayer instances
+	 * Releases all CustomMediaPlayer instances and the audio engine (if present)
 	 */
 	private void releasePlayers() {
 		for (CustomMediaPlayer p : mMediaPlayers) {
 			p.release();
 		}
 		mMediaPlayers.clear();
+		if (mAudioEngine != null) {
+			mAudioEngine.release();
+			mAudioEngine = null;
+		}
 	}
 
 	/**
@@ -1606,7 +1680,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 
 		@Override
 		public int getCurrentPosition() {
-			return mPlaybackPositionMilliseconds;
+			return getLivePlaybackPosition(); // so the seek bar and elapsed time move smoothly between timeline events
 		}
 
 		@Override
@@ -1657,7 +1731,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 			seekPlayingAudio();
 
 			// we call refreshPlayback directly, so must stop any queued playback advances
-			mMediaAdvanceHandler.removeCallbacks(mMediaAdvanceRunnable);
+			cancelPlaybackAdvance();
 			refreshPlayback(mTimingModeEnabled);
 		}
 
@@ -1669,7 +1743,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 
 	private void handleSeekEnd() {
 		// when a drag/seek ends we need to make sure we don't continue reloading any cached images
-		cancelLoadingScreenSizedImageInBackground(mCurrentPlaybackImage);
+		mPlaybackImageSurface.cancelPendingImages();
 		mImageLoadHandler.removeCallbacks(mImageLoadRunnable);
 		resetImagePaths(); // the current and previous cached images are highly likely to be wrong - reload
 
@@ -1683,7 +1757,7 @@ public class PlaybackActivity extends MediaPhoneActivity {
 			mMediaController.pause();
 		}
 
-		mMediaAdvanceHandler.removeCallbacks(mMediaAdvanceRunnable);
+		cancelPlaybackAdvance();
 		refreshPlayback(mTimingModeEnabled);
 	}
 }
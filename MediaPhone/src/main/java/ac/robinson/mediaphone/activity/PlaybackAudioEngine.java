@@ -0,0 +1,616 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.activity;
+
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.provider.MediaPhoneProvider;
+import ac.robinson.mediaphone.provider.PlaybackMediaHolder;
+import ac.robinson.util.DebugUtilities;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Plays all of a narrative's audio items through a single AudioTrack. Each item is decoded (via MediaExtractor and MediaCodec)
+ * and mixed at the exact sample position given by its start time, so back-to-back and spanning audio plays without gaps.
+ * Because the AudioTrack's playback head only advances as audio is actually output, the engine also provides the playback
+ * clock for the rest of the narrative (see {@link #getPosition()}), so images and text stay in step with the audio.
+ * <p>
+ * All AudioTrack and decoder operations happen on the engine's own thread; the public methods just queue requests for it.
+ * Audio focus is held while playing; if it is lost (e.g., to a phone call) the engine's owner is told, so that the whole
+ * narrative can be paused rather than just its audio.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+class PlaybackAudioEngine {
+
+	private static final int OUTPUT_CHANNELS = 2;
+	private static final int BYTES_PER_FRAME = OUTPUT_CHANNELS * 2; // 16-bit stereo
+	private static final int BLOCK_MILLIS = 20; // the amount of audio mixed at once
+	private static final int PRELOAD_MILLIS = 1000; // how far ahead to open decoders so items can start instantly
+	private static final int RESYNC_TOLERANCE_MILLIS = 50; // items further than this from their expected position are seeked
+	private static final long DECODER_TIMEOUT_MICROS = 2000;
+	private static final int MAX_IDLE_DECODER_ATTEMPTS = 4; // per block; a stalled item is then silent until the next
+	private static final int MAX_STALLED_BLOCKS = 50; // give up on items whose decoder stops producing output
+	private static final float DUCKED_VOLUME = 0.2f; // when another app briefly needs to be heard over us
+
+	private final ArrayList<PlaybackMediaHolder> mAudioItems; // read live, as the timing editor can move items
+	private final HashMap<PlaybackMediaHolder, ItemDecoder> mDecoders = new HashMap<>();
+	private final HashSet<PlaybackMediaHolder> mFailedItems = new HashSet<>();
+
+	private final AudioTrack mAudioTrack;
+	private final int mSampleRate;
+	private final int mBlockFrames;
+	private final float[] mMixBuffer;
+	private final ByteBuffer mOutputBuffer;
+
+	private final AudioManager mAudioManager;
+	private final Runnable mFocusLostListener; // called on the UI thread
+	private final AudioManager.OnAudioFocusChangeListener mFocusChangeListener = this::onAudioFocusChange;
+	private Object mFocusRequest; // an AudioFocusRequest on API 26+ (kept as Object so this class loads on API 21)
+	private boolean mHasFocus = false; // UI thread only
+
+	private final Object mLock = new Object();
+	private boolean mReleased = false;
+	private boolean mPlaying = false;
+	private boolean mPlayStateChanged = false;
+	private int mPendingSeekMillis = -1;
+
+	private long mWriteFrame; // the narrative position (in output frames) of the next block to be mixed
+	private int mClockBaseMillis; // the narrative position when the playback head was at mClockBaseHeadPosition
+	private long mClockBaseHeadPosition;
+
+	/**
+	 * Create an engine for the given narrative content, or return null if there is no audio or the device's audio output
+	 * cannot be initialised (in which case callers should fall back to per-item MediaPlayer instances).
+	 *
+	 * @param focusLostListener Called on the UI thread if audio focus is lost (or refused) while playing - the engine's
+	 *                          audio is already paused, but the rest of the narrative should be paused too
+	 */
+	static PlaybackAudioEngine create(AudioManager audioManager, ArrayList<PlaybackMediaHolder> narrativeContent,
+									  int startPositionMillis, Runnable focusLostListener) {
+		ArrayList<PlaybackMediaHolder> audioItems = new ArrayList<>();
+		for (PlaybackMediaHolder holder : narrativeContent) {
+			if (holder.mMediaType == MediaPhoneProvider.TYPE_AUDIO) {
+				audioItems.add(holder);
+			}
+		}
+		if (audioItems.isEmpty()) {
+			return null;
+		}
+		try {
+			return new PlaybackAudioEngine(audioManager, audioItems, startPositionMillis, focusLostListener);
+		} catch (Exception e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(audioItems), "Unable to initialise audio engine: " + e.getLocalizedMessage());
+			}
+			return null;
+		}
+	}
+
+	@SuppressWarnings("deprecation") // AudioTrack.Builder requires API 23; STREAM_MUSIC matches the MediaPlayer fallback
+	private PlaybackAudioEngine(AudioManager audioManager, ArrayList<PlaybackMediaHolder> audioItems,
+								int startPositionMillis, Runnable focusLostListener) {
+		mAudioManager = audioManager;
+		mFocusLostListener = focusLostListener;
+		mAudioItems = audioItems;
+		mSampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+		mBlockFrames = mSampleRate * BLOCK_MILLIS / 1000;
+		mMixBuffer = new float[mBlockFrames * OUTPUT_CHANNELS];
+		mOutputBuffer = ByteBuffer.allocateDirect(mBlockFrames * BYTES_PER_FRAME).order(ByteOrder.nativeOrder());
+		mOutputBuffer.limit(0); // nothing to write yet
+
+		int minBufferSize = AudioTrack.getMinBufferSize(mSampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+				AudioFormat.ENCODING_PCM_16BIT);
+		int bufferSize = Math.max(minBufferSize * 2, mBlockFrames * BYTES_PER_FRAME * 4);
+		mAudioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, mSampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+				AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+		if (mAudioTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+			mAudioTrack.release();
+			throw new IllegalStateException("AudioTrack not initialised");
+		}
+
+		mWriteFrame = millisToFrames(startPositionMillis);
+		mClockBaseMillis = startPositionMillis;
+		mClockBaseHeadPosition = mAudioTrack.getPlaybackHeadPosition() & 0xffffffffL;
+
+		new Thread(this::runMixer, "PlaybackAudioEngine").start(); // releases the track and decoders when finished
+	}
+
+	void play() {
+		if (!requestAudioFocus()) {
+			setPlaying(false);
+			mFocusLostListener.run(); // e.g., during a phone call - don't play over it
+			return;
+		}
+		setPlaying(true);
+	}
+
+	void pause() {
+		setPlaying(false);
+		abandonAudioFocus();
+	}
+
+	@SuppressWarnings("deprecation") // the pre-API 26 versions are needed on older devices
+	private boolean requestAudioFocus() {
+		if (mHasFocus) {
+			return true;
+		}
+		int result;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			if (mFocusRequest == null) {
+				mFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN).setAudioAttributes(
+						new AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_MEDIA)
+								.setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+								.build()).setOnAudioFocusChangeListener(mFocusChangeListener).build();
+			}
+			result = mAudioManager.requestAudioFocus((AudioFocusRequest) mFocusRequest);
+		} else {
+			result = mAudioManager.requestAudioFocus(mFocusChangeListener, AudioManager.STREAM_MUSIC,
+					AudioManager.AUDIOFOCUS_GAIN);
+		}
+		mHasFocus = result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+		return mHasFocus;
+	}
+
+	@SuppressWarnings("deprecation")
+	private void abandonAudioFocus() {
+		if (!mHasFocus) {
+			return;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			mAudioManager.abandonAudioFocusRequest((AudioFocusRequest) mFocusRequest);
+		} else {
+			mAudioManager.abandonAudioFocus(mFocusChangeListener);
+		}
+		mHasFocus = false;
+	}
+
+	private void onAudioFocusChange(int focusChange) {
+		switch (focusChange) {
+			case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+				mAudioTrack.setVolume(DUCKED_VOLUME);
+				break;
+			case AudioManager.AUDIOFOCUS_GAIN:
+				mAudioTrack.setVolume(1);
+				break;
+			case AudioManager.AUDIOFOCUS_LOSS:
+			case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+				pause(); // we don't resume automatically - the narrative may have been left some time ago
+				mFocusLostListener.run();
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void setPlaying(boolean playing) {
+		synchronized (mLock) {
+			if (mPlaying != playing) {
+				mPlaying = playing;
+				mPlayStateChanged = true;
+				mLock.notifyAll();
+			}
+		}
+	}
+
+	void seekTo(int positionMillis) {
+		synchronized (mLock) {
+			mPendingSeekMillis = Math.max(0, positionMillis);
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the narrative position (in milliseconds) of the audio that is currently being heard
+	 */
+	int getPosition() {
+		synchronized (mLock) {
+			if (mPendingSeekMillis >= 0) {
+				return mPendingSeekMillis;
+			}
+			long playedFrames = (mAudioTrack.getPlaybackHeadPosition() & 0xffffffffL) - mClockBaseHeadPosition;
+			return mClockBaseMillis + (int) (Math.max(0, playedFrames) * 1000 / mSampleRate);
+		}
+	}
+
+	/**
+	 * Stop playback and release the engine's resources. Returns immediately - the AudioTrack and decoders are released by
+	 * the engine's own thread once it has finished its current block.
+	 */
+	void release() {
+		abandonAudioFocus();
+		synchronized (mLock) {
+			mReleased = true;
+			mLock.notifyAll();
+		}
+	}
+
+	private long millisToFrames(int millis) {
+		return (long) millis * mSampleRate / 1000;
+	}
+
+	private void runMixer() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO); // gaps are far more noticeable than in video
+		try {
+			while (true) {
+				synchronized (mLock) {
+					if (mReleased) {
+						break;
+					}
+					if (mPendingSeekMillis >= 0) {
+						mAudioTrack.pause();
+						mAudioTrack.flush();
+						mOutputBuffer.limit(0); // discard any partially written block
+						mWriteFrame = millisToFrames(mPendingSeekMillis);
+						mClockBaseHeadPosition = mAudioTrack.getPlaybackHeadPosition() & 0xffffffffL;
+						mClockBaseMillis = mPendingSeekMillis;
+						mPendingSeekMillis = -1;
+						mPlayStateChanged = true; // resume (if playing) after flushing
+					}
+					if (mPlayStateChanged) {
+						if (mPlaying) {
+							mAudioTrack.play();
+						} else {
+							mAudioTrack.pause();
+						}
+						mPlayStateChanged = false;
+					}
+					if (!mPlaying) {
+						mLock.wait();
+						continue;
+					}
+				}
+
+				if (!mOutputBuffer.hasRemaining()) {
+					mixNextBlock();
+				}
+				mAudioTrack.write(mOutputBuffer, mOutputBuffer.remaining(), AudioTrack.WRITE_NON_BLOCKING);
+				if (mOutputBuffer.hasRemaining()) {
+					synchronized (mLock) { // the track's buffer is full - wait for space (or a new request)
+						if (!mReleased && mPendingSeekMillis < 0 && !mPlayStateChanged) {
+							mLock.wait(BLOCK_MILLIS / 2);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException ignored) {
+		} finally {
+			for (ItemDecoder decoder : mDecoders.values()) {
+				decoder.release();
+			}
+			mDecoders.clear();
+			try {
+				mAudioTrack.stop();
+			} catch (IllegalStateException ignored) {
+			}
+			mAudioTrack.release();
+		}
+	}
+
+	private void mixNextBlock() {
+		final long blockStart = mWriteFrame;
+		final long blockEnd = blockStart + mBlockFrames;
+		final long preloadEnd = blockEnd + millisToFrames(PRELOAD_MILLIS);
+		final long resyncTolerance = millisToFrames(RESYNC_TOLERANCE_MILLIS);
+		final float[] mix = mMixBuffer;
+		Arrays.fill(mix, 0);
+
+		for (PlaybackMediaHolder holder : mAudioItems) {
+			if (mFailedItems.contains(holder)) {
+				continue;
+			}
+			final long itemStart = millisToFrames(holder.getStartTime(true));
+			final long itemEnd = millisToFrames(holder.getEndTime(true));
+			ItemDecoder decoder = mDecoders.get(holder);
+
+			if (itemEnd <= blockStart || itemStart >= preloadEnd) {
+				if (decoder != null) { // finished, or a seek/timing edit has moved us away from this item
+					decoder.release();
+					mDecoders.remove(holder);
+				}
+				continue;
+			}
+
+			if (decoder == null) {
+				try {
+					decoder = new ItemDecoder(holder.mMediaPath);
+					mDecoders.put(holder, decoder);
+				} catch (Exception e) {
+					if (MediaPhone.DEBUG) {
+						Log.d(DebugUtilities.getLogTag(this), "Unable to decode " + holder.mMediaPath + ": " + e.getLocalizedMessage());
+					}
+					mFailedItems.add(holder);
+					continue;
+				}
+			}
+			if (itemStart >= blockEnd) {
+				continue; // opened in advance; not yet playing
+			}
+
+			final int mixFrom = (int) (Math.max(itemStart, blockStart) - blockStart);
+			final int mixTo = (int) (Math.min(itemEnd, blockEnd) - blockStart);
+			final long expectedPosition = blockStart + mixFrom - itemStart;
+			try {
+				if (Math.abs(decoder.mOutputPosition - expectedPosition) > resyncTolerance) {
+					decoder.seekTo(expectedPosition * 1000000L / mSampleRate);
+					decoder.mOutputPosition = expectedPosition;
+				}
+				decoder.mixInto(mix, mixFrom, mixTo);
+			} catch (Exception e) {
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(this), "Decoding failed for " + holder.mMediaPath + ": " + e.getLocalizedMessage());
+				}
+				decoder.release();
+				mDecoders.remove(holder);
+				mFailedItems.add(holder);
+			}
+		}
+
+		mOutputBuffer.clear();
+		for (float sample : mix) {
+			mOutputBuffer.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample)));
+		}
+		mOutputBuffer.flip();
+		mWriteFrame = blockEnd;
+	}
+
+	/**
+	 * Decodes a single audio file, resampling and converting it to the engine's output format as it is mixed
+	 */
+	private class ItemDecoder {
+		private final MediaExtractor mExtractor;
+		private final MediaCodec mCodec;
+		private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+		private int mSourceSampleRate;
+		private int mSourceChannels;
+		private int mSourceEncoding = AudioFormat.ENCODING_PCM_16BIT; // 16-bit unless the decoder says otherwise
+		private short[] mConversionBuffer = new short[0]; // for decoders that output floating point samples
+		private boolean mInputEnded = false;
+		private boolean mOutputEnded = false;
+		private long mDiscardUntilMicros = -1; // after seeking, decoded audio before this time is dropped
+		private boolean mStalled = false; // the decoder had no output ready when last asked for more
+		private int mStalledBlocks = 0; // the number of consecutive blocks in which the decoder has stalled
+
+		private short[] mSourceBuffer = new short[0]; // decoded, interleaved source samples
+		private int mSourceFrames = 0;
+		private double mSourcePosition = 0; // fractional frame index into mSourceBuffer
+
+		private long mOutputPosition = 0; // the number of output frames this item has produced so far
+
+		private ItemDecoder(String mediaPath) throws Exception {
+			mExtractor = new MediaExtractor();
+			MediaCodec codec = null;
+			try {
+				mExtractor.setDataSource(mediaPath);
+				MediaFormat format = null;
+				for (int i = 0, n = mExtractor.getTrackCount(); i < n; i++) {
+					MediaFormat trackFormat = mExtractor.getTrackFormat(i);
+					String mimeType = trackFormat.getString(MediaFormat.KEY_MIME);
+					if (mimeType != null && mimeType.startsWith("audio/")) {
+						mExtractor.selectTrack(i);
+						format = trackFormat;
+						break;
+					}
+				}
+				if (format == null) {
+					throw new IllegalArgumentException("No audio track found");
+				}
+				mSourceSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+				mSourceChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+				codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+					format.setInteger(MediaFormat.KEY_PCM_ENCODING, AudioFormat.ENCODING_PCM_16BIT); // a request only
+				}
+				codec.configure(format, null, null, 0);
+				codec.start();
+			} catch (Exception e) {
+				if (codec != null) {
+					codec.release();
+				}
+				mExtractor.release();
+				throw e;
+			}
+			mCodec = codec;
+		}
+
+		private void seekTo(long positionMicros) {
+			mExtractor.seekTo(positionMicros, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+			mCodec.flush();
+			mInputEnded = false;
+			mOutputEnded = false;
+			mDiscardUntilMicros = positionMicros;
+			mSourceFrames = 0;
+			mSourcePosition = 0;
+		}
+
+		/**
+		 * Add this item's next (mixTo - mixFrom) output frames to the mix buffer, at positions mixFrom to mixTo
+		 */
+		private void mixInto(float[] mix, int mixFrom, int mixTo) {
+			final double step = (double) mSourceSampleRate / mSampleRate;
+			for (int frame = mixFrom; frame < mixTo; frame++) {
+				int index = (int) mSourcePosition;
+				if (index + 1 >= mSourceFrames && !fillSourceBuffer(index)) {
+					if (mStalled) {
+						// the mixer can't wait for a slow decoder without starving the track, so this block's audio is
+						// skipped (and discarded once decoded) - the item is then still in step when the decoder catches up
+						mSourcePosition += step * (mixTo - frame);
+					}
+					break; // otherwise, the end of the file - the rest of this item is silent
+				}
+				index = (int) mSourcePosition; // the buffer may have been compacted
+				final double fraction = mSourcePosition - index;
+				final int nextIndex = Math.min(index + 1, mSourceFrames - 1);
+				for (int channel = 0; channel < OUTPUT_CHANNELS; channel++) {
+					final int sourceChannel = Math.min(channel, mSourceChannels - 1); // mono is copied to both channels
+					final float current = mSourceBuffer[index * mSourceChannels + sourceChannel];
+					final float next = mSourceBuffer[nextIndex * mSourceChannels + sourceChannel];
+					mix[frame * OUTPUT_CHANNELS + channel] += (float) (current + (next - current) * fraction);
+				}
+				mSourcePosition += step;
+			}
+			mOutputPosition += mixTo - mixFrom;
+		}
+
+		/**
+		 * Discard source frames before currentIndex and decode until the frames needed for interpolation are available,
+		 * or until the decoder stops producing output (in which case mStalled is set)
+		 *
+		 * @return false if the end of the file has been reached and there is nothing left to play, or if the decoder stalled
+		 */
+		private boolean fillSourceBuffer(int currentIndex) {
+			final int retainedFrames = Math.max(0, mSourceFrames - currentIndex);
+			if (currentIndex > 0 && retainedFrames > 0) {
+				System.arraycopy(mSourceBuffer, currentIndex * mSourceChannels, mSourceBuffer, 0, retainedFrames * mSourceChannels);
+			}
+			mSourcePosition -= Math.min(currentIndex, mSourceFrames);
+			mSourceFrames = retainedFrames;
+
+			mStalled = false;
+			int idleAttempts = 0;
+			while ((int) mSourcePosition + 1 >= mSourceFrames && !mOutputEnded) {
+				final int previousFrames = mSourceFrames;
+				decodeNextBuffer();
+				if (mSourceFrames == previousFrames && ++idleAttempts >= MAX_IDLE_DECODER_ATTEMPTS) {
+					if (++mStalledBlocks > MAX_STALLED_BLOCKS) {
+						throw new IllegalStateException("Decoder stalled"); // item is skipped
+					}
+					mStalled = true;
+					return false;
+				}
+			}
+			mStalledBlocks = 0;
+			return (int) mSourcePosition < mSourceFrames;
+		}
+
+		private void decodeNextBuffer() {
+			if (!mInputEnded) {
+				int inputIndex = mCodec.dequeueInputBuffer(DECODER_TIMEOUT_MICROS);
+				if (inputIndex >= 0) {
+					ByteBuffer inputBuffer = mCodec.getInputBuffer(inputIndex);
+					int sampleSize = inputBuffer != null ? mExtractor.readSampleData(inputBuffer, 0) : -1;
+					if (sampleSize < 0) {
+						mCodec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+						mInputEnded = true;
+					} else {
+						mCodec.queueInputBuffer(inputIndex, 0, sampleSize, mExtractor.getSampleTime(), 0);
+						mExtractor.advance();
+					}
+				}
+			}
+
+			int outputIndex = mCodec.dequeueOutputBuffer(mBufferInfo, DECODER_TIMEOUT_MICROS);
+			if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+				MediaFormat outputFormat = mCodec.getOutputFormat();
+				mSourceSampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+				mSourceChannels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
+						outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)) {
+					mSourceEncoding = outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING);
+				}
+				if (mSourceEncoding != AudioFormat.ENCODING_PCM_16BIT &&
+						mSourceEncoding != AudioFormat.ENCODING_PCM_FLOAT) {
+					throw new IllegalStateException("Unsupported PCM encoding " + mSourceEncoding); // item is skipped
+				}
+			} else if (outputIndex >= 0) {
+				ByteBuffer outputBuffer = mCodec.getOutputBuffer(outputIndex);
+				if (outputBuffer != null && mBufferInfo.size > 0) {
+					outputBuffer.position(mBufferInfo.offset);
+					outputBuffer.limit(mBufferInfo.offset + mBufferInfo.size);
+					outputBuffer.order(ByteOrder.nativeOrder());
+					if (mSourceEncoding == AudioFormat.ENCODING_PCM_FLOAT) {
+						appendSamples(convertFloatSamples(outputBuffer.asFloatBuffer()), mBufferInfo.presentationTimeUs);
+					} else {
+						appendSamples(outputBuffer.asShortBuffer(), mBufferInfo.presentationTimeUs);
+					}
+				}
+				mCodec.releaseOutputBuffer(outputIndex, false);
+				if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+					mOutputEnded = true;
+				}
+			}
+		}
+
+		private ShortBuffer convertFloatSamples(FloatBuffer samples) {
+			final int sampleCount = samples.remaining();
+			if (mConversionBuffer.length < sampleCount) {
+				mConversionBuffer = new short[sampleCount];
+			}
+			for (int i = 0; i < sampleCount; i++) {
+				final float sample = Math.max(-1, Math.min(1, samples.get()));
+				mConversionBuffer[i] = (short) (sample * Short.MAX_VALUE);
+			}
+			return ShortBuffer.wrap(mConversionBuffer, 0, sampleCount);
+		}
+
+		private void appendSamples(ShortBuffer samples, long presentationTimeMicros) {
+			int frameCount = samples.remaining() / mSourceChannels;
+			if (mDiscardUntilMicros >= 0) { // drop audio before the seek target so that positioning is sample-accurate
+				int discardFrames = (int) Math.min(frameCount,
+						Math.max(0, (mDiscardUntilMicros - presentationTimeMicros) * mSourceSampleRate / 1000000L));
+				samples.position(discardFrames * mSourceChannels);
+				frameCount -= discardFrames;
+				if (frameCount > 0) {
+					mDiscardUntilMicros = -1;
+				}
+			}
+			if (frameCount <= 0) {
+				return;
+			}
+
+			final int requiredLength = (mSourceFrames + frameCount) * mSourceChannels;
+			if (mSourceBuffer.length < requiredLength) {
+				short[] newBuffer = new short[requiredLength];
+				System.arraycopy(mSourceBuffer, 0, newBuffer, 0, mSourceFrames * mSourceChannels);
+				mSourceBuffer = newBuffer;
+			}
+			samples.get(mSourceBuffer, mSourceFrames * mSourceChannels, frameCount * mSourceChannels);
+			mSourceFrames += frameCount;
+		}
+
+		private void release() {
+			try {
+				mCodec.stop();
+			} catch (IllegalStateException ignored) {
+			}
+			mCodec.release();
+			mExtractor.release();
+		}
+	}
+}
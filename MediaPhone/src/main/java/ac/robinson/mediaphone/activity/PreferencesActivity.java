@@ -63,18 +63,20 @@ import java.util.TimeZone;
 import ac.robinson.mediaphone.BuildConfig;
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.R;
+import ac.robinson.mediaphone.StartupTimings;
+import ac.robinson.mediaphone.provider.FrameIconCache;
 import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
 import ac.robinson.mediaphone.provider.UpgradeManager;
 import ac.robinson.mediautilities.SelectDirectoryActivity;
 import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.IOUtilities;
-import ac.robinson.util.ImageCacheUtilities;
 import ac.robinson.util.UIUtilities;
 import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -406,7 +408,7 @@ public class PreferencesActivity extends PreferenceActivity implements Preferenc
 		if (NarrativesManager.findNarrativeByInternalId(getContentResolver(), NarrativeItem.HELPER_NARRATIVE_ID) == null) {
 			installHelperPreference.setOnPreferenceClickListener(preference -> {
 				preference.setOnPreferenceClickListener(null); // so they can't click twice
-				UpgradeManager.installHelperNarrative(PreferencesActivity.this);
+				UpgradeManager.queueNarrativeInstall(PreferencesActivity.this, NarrativeItem.HELPER_NARRATIVE_ID);
 				UIUtilities.showToast(PreferencesActivity.this, R.string.preferences_install_helper_narrative_success);
 				PreferenceCategory aboutCategory = (PreferenceCategory) getPreferenceScreen().findPreference(
 						getString(R.string.key_about_category));
@@ -499,6 +501,28 @@ public class PreferencesActivity extends PreferenceActivity implements Preferenc
 					getString(R.string.key_about_category));
 			aboutCategory.removePreference(aboutPreference);
 		}
+
+		// add startup profiling information (debug builds only)
+		Preference startupTimingsPreference = preferenceScreen.findPreference(getString(R.string.key_startup_timings));
+		if (MediaPhone.DEBUG) {
+			final long firstDrawTime = StartupTimings.getFirstDrawTime();
+			startupTimingsPreference.setSummary(firstDrawTime >= 0 ?
+					getString(R.string.preferences_startup_timings_summary, firstDrawTime) :
+					getString(R.string.preferences_startup_timings_none));
+			startupTimingsPreference.setOnPreferenceClickListener(preference -> {
+				String timings = StartupTimings.getSummary();
+				AlertDialog.Builder builder = new AlertDialog.Builder(PreferencesActivity.this);
+				builder.setTitle(R.string.preferences_startup_timings_title);
+				builder.setMessage(TextUtils.isEmpty(timings) ? getString(R.string.preferences_startup_timings_none) : timings);
+				builder.setPositiveButton(android.R.string.ok, null);
+				builder.show();
+				return true;
+			});
+		} else {
+			PreferenceCategory aboutCategory = (PreferenceCategory) preferenceScreen.findPreference(
+					getString(R.string.key_about_category));
+			aboutCategory.removePreference(startupTimingsPreference);
+		}
 	}
 
 	/**
@@ -541,7 +565,7 @@ public class PreferencesActivity extends PreferenceActivity implements Preferenc
 		} else if (getString(R.string.key_timing_editor).equals(key) && (Boolean) value) {
 			if (NarrativesManager.findNarrativeByInternalId(getContentResolver(), NarrativeItem.TIMING_EDITOR_NARRATIVE_ID) ==
 					null) {
-				UpgradeManager.installTimingEditorNarrative(PreferencesActivity.this);
+				UpgradeManager.queueNarrativeInstall(PreferencesActivity.this, NarrativeItem.TIMING_EDITOR_NARRATIVE_ID);
 				UIUtilities.showToast(PreferencesActivity.this, R.string.preferences_install_timing_editor_narrative_success);
 			}
 
@@ -562,11 +586,11 @@ public class PreferencesActivity extends PreferenceActivity implements Preferenc
 				editor.remove(getString(R.string.key_custom_font_display_name));
 				editor.apply();
 
-				// if we were using a custom font, regenerate narrative thumbnails with the default font
-				if (new File(MediaPhone.DIRECTORY_THUMBS, getString(R.string.key_custom_font)).exists()) {
-					IOUtilities.deleteRecursive(MediaPhone.DIRECTORY_THUMBS);
-					MediaPhone.DIRECTORY_THUMBS.mkdirs();
-					ImageCacheUtilities.cleanupCache();
+				// if we were using a custom font, regenerate narrative thumbnails (in the background) with the default font
+				File fontCacheFile = new File(MediaPhone.DIRECTORY_THUMBS, getString(R.string.key_custom_font));
+				if (fontCacheFile.exists()) {
+					fontCacheFile.delete();
+					FrameIconCache.updateGeneration(PreferencesActivity.this);
 				}
 			}
 
@@ -636,16 +660,12 @@ public class PreferencesActivity extends PreferenceActivity implements Preferenc
 						ContentResolver contentResolver = getContentResolver();
 						InputStream inputStream = null;
 						try {
-							// remove existing thumbnails so we regenerate them with the new font
-							IOUtilities.deleteRecursive(MediaPhone.DIRECTORY_THUMBS);
-							MediaPhone.DIRECTORY_THUMBS.mkdirs();
-							ImageCacheUtilities.cleanupCache();
-
 							// copy to an internal location so we can actually use in exported narratives (always the same name)
 							inputStream = contentResolver.openInputStream(fontUri);
 							File fontCacheFile = new File(MediaPhone.DIRECTORY_THUMBS, getString(R.string.key_custom_font));
 							IOUtilities.copyFile(inputStream, fontCacheFile);
 							if (fontCacheFile.length() > 0) {
+								FrameIconCache.updateGeneration(PreferencesActivity.this); // re-render with the new font
 								fontPreference.setSummaryOn(getString(R.string.preferences_custom_font_summary_on, fontFileName));
 
 								SharedPreferences mediaPhoneSettings = PreferenceManager.getDefaultSharedPreferences(
@@ -32,6 +32,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.provider.OpenableColumns;
 import android.text.InputFilter;
@@ -45,12 +46,21 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.MediaPhoneActivity;
@@ -73,6 +83,9 @@ public class SaveNarrativeActivity extends MediaPhoneActivity {
 
 	private static final int PERMISSION_SD_STORAGE = 104;
 
+	private static final int MAX_PARALLEL_SAVES = 3; // for multi-file exports - more just contend for the same storage
+	private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024; // bytes per FileChannel.transferTo call
+
 	private File mOutputDirectory;
 	private Uri mOutputUri;
 	private boolean mUsingDefaultOutputDirectory;
@@ -355,117 +368,184 @@ public class SaveNarrativeActivity extends MediaPhoneActivity {
 
 			@Override
 			public void run() {
-				boolean failure = false;
-				int uriCount = mFileUris.size();
-				for (Uri mediaUri : mFileUris) {
-					if ("content".equals(mediaUri.getScheme())) {
-						// before SDK 29 movies special cases - their uri is in the media database (to help with YouTube export)
-						ContentResolver contentResolver = getContentResolver();
-						Cursor movieCursor = contentResolver.query(mediaUri, new String[]{ MediaStore.Video.Media.DATA }, null,
-								null, null);
-						if (movieCursor != null) {
-							if (movieCursor.moveToFirst()) {
-								File movieFile = new File(
-										movieCursor.getString(movieCursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA)));
-								File newMovieFile = new File(outputDirectory, chosenName == null ? movieFile.getName() :
-										chosenName + "." + IOUtilities.getFileExtension(movieFile.getName()));
-								if (uriCount == 1 && newMovieFile.exists()) { // only relevant for single file exports
-									mTaskResult = R.id.export_save_sd_file_exists;
-									movieCursor.close();
-									return;
-								}
-								if (IOUtilities.moveFile(movieFile, newMovieFile)) {
-									contentResolver.delete(mediaUri, null, null); // no longer here, so delete
-								} else {
-									failure = true;
-								}
-							}
-							movieCursor.close();
-						}
-					} else {
-						String mediaUriPath = mediaUri.getPath();
-						if (mediaUriPath == null) {
-							failure = true;
-							break;
-						}
-						File mediaFile = new File(mediaUriPath);
-						String fileName = chosenName == null ? mediaFile.getName() :
-								chosenName + "." + IOUtilities.getFileExtension(mediaFile.getName());
-
-						// from SDK 29 we are not allowed to access files except through the slow, convoluted (and not at all
-						// backwards-compatible) Storage Access Framework
-						if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-							Uri outputUri;
-							ContentResolver contentResolver = getContentResolver();
-							if (!mUsingDefaultOutputDirectory) {
-								if (outputDocumentFile.findFile(fileName) != null) {
-									mTaskResult = R.id.export_save_sd_file_exists;
-									return;
-								}
-								DocumentFile file = outputDocumentFile.createFile(getString(R.string.export_mime_type), fileName);
-								outputUri = file.getUri();
-							} else {
-								ContentValues contentValues = new ContentValues();
-								contentValues.put(MediaStore.Downloads.DISPLAY_NAME, fileName);
-								contentValues.put(MediaStore.Downloads.MIME_TYPE, getString(R.string.export_mime_type));
-								contentValues.put(MediaStore.Downloads.RELATIVE_PATH,
-										Environment.DIRECTORY_DOWNLOADS + File.separator +
-												getString(R.string.export_local_directory) +
-												(uriCount > 1 ? File.separator + outputDirectory.getName() : ""));
-								contentValues.put(MediaStore.Downloads.IS_PENDING, 1);
-								outputUri = contentResolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, contentValues);
-							}
-							if (outputUri != null) {
-								OutputStream outputStream = null;
-								try {
-									outputStream = contentResolver.openOutputStream(outputUri);
-									IOUtilities.copyFile(mediaFile, outputStream);
-									if (mUsingDefaultOutputDirectory) { // record that the file is no-longer pending
-										ContentValues contentValues = new ContentValues();
-										contentValues.put(MediaStore.Downloads.IS_PENDING, 0);
-										contentResolver.update(outputUri, contentValues, null, null);
-									}
-								} catch (IOException e) {
-									failure = true;
-								} finally {
-									IOUtilities.closeStream(outputStream);
-								}
-							} else {
-								failure = true;
-							}
+				// listing a SAF directory is slow, so we do it once and then track the names we create ourselves (a
+				// directory created for a multi-file export is new, so cannot contain anything yet)
+				final Set<String> existingNames = Collections.synchronizedSet(new HashSet<>());
+				if (outputDocumentFile != null && uriCount == 1) {
+					for (DocumentFile existingFile : outputDocumentFile.listFiles()) {
+						existingNames.add(existingFile.getName());
+					}
+				}
 
-						} else {
-							// otherwise, we can save normally - move files if they're in temp; if we have the actual media path
-							// (e.g., SMIL content) we must copy to ensure we don't break the narrative by removing the originals
-							File newMediaFile = new File(outputDirectory, fileName);
-							if (uriCount == 1 && newMediaFile.exists()) { // only relevant for single file exports
-								mTaskResult = R.id.export_save_sd_file_exists;
-								return;
-							}
+				// multi-file exports (e.g., SMIL media) are written in parallel; the result is the first error, if any
+				if (uriCount == 1) {
+					mTaskResult = saveFile(mFileUris.get(0), uriCount, outputDirectory, chosenName, outputDocumentFile,
+							existingNames);
+					return;
+				}
+				ExecutorService saveExecutor = Executors.newFixedThreadPool(Math.min(uriCount, MAX_PARALLEL_SAVES));
+				ArrayList<Future<Integer>> saveResults = new ArrayList<>(uriCount);
+				for (final Uri mediaUri : mFileUris) {
+					saveResults.add(saveExecutor.submit(
+							() -> saveFile(mediaUri, uriCount, outputDirectory, chosenName, outputDocumentFile,
+									existingNames)));
+				}
+				saveExecutor.shutdown();
+				for (Future<Integer> saveResult : saveResults) {
+					int result;
+					try {
+						result = saveResult.get();
+					} catch (InterruptedException | ExecutionException e) {
+						result = R.id.export_save_sd_failed;
+					}
+					if (result != R.id.export_save_sd_succeeded && mTaskResult == R.id.export_save_sd_succeeded) {
+						mTaskResult = result;
+					}
+				}
+			}
+		});
+	}
 
-							if (mediaFile.getAbsolutePath().startsWith(MediaPhone.DIRECTORY_TEMP.getAbsolutePath())) {
-								if (!IOUtilities.moveFile(mediaFile, newMediaFile)) {
-									failure = true;
-								}
-							} else {
-								try {
-									IOUtilities.copyFile(mediaFile, newMediaFile);
-								} catch (IOException e) {
-									failure = true;
-								}
-							}
-						}
+	/**
+	 * Save a single exported file - may be run in parallel with other files from the same export
+	 *
+	 * @return R.id.export_save_sd_succeeded, R.id.export_save_sd_file_exists or R.id.export_save_sd_failed
+	 */
+	private int saveFile(Uri mediaUri, int uriCount, File outputDirectory, String chosenName,
+						 DocumentFile outputDocumentFile, Set<String> existingNames) {
+		if ("content".equals(mediaUri.getScheme())) {
+			// before SDK 29 movies special cases - their uri is in the media database (to help with YouTube export)
+			ContentResolver contentResolver = getContentResolver();
+			boolean failure = false;
+			Cursor movieCursor = contentResolver.query(mediaUri, new String[]{ MediaStore.Video.Media.DATA }, null, null,
+					null);
+			if (movieCursor != null) {
+				if (movieCursor.moveToFirst()) {
+					File movieFile = new File(
+							movieCursor.getString(movieCursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA)));
+					File newMovieFile = new File(outputDirectory, chosenName == null ? movieFile.getName() :
+							chosenName + "." + IOUtilities.getFileExtension(movieFile.getName()));
+					if (uriCount == 1 && newMovieFile.exists()) { // only relevant for single file exports
+						movieCursor.close();
+						return R.id.export_save_sd_file_exists;
 					}
-					if (failure) {
-						break;
+					if (IOUtilities.moveFile(movieFile, newMovieFile)) {
+						contentResolver.delete(mediaUri, null, null); // no longer here, so delete
+					} else {
+						failure = true;
 					}
 				}
+				movieCursor.close();
+			}
+			return failure ? R.id.export_save_sd_failed : R.id.export_save_sd_succeeded;
+		}
 
-				if (failure) {
-					mTaskResult = R.id.export_save_sd_failed;
+		String mediaUriPath = mediaUri.getPath();
+		if (mediaUriPath == null) {
+			return R.id.export_save_sd_failed;
+		}
+		File mediaFile = new File(mediaUriPath);
+		String fileName = chosenName == null ? mediaFile.getName() :
+				chosenName + "." + IOUtilities.getFileExtension(mediaFile.getName());
+
+		// from SDK 29 we are not allowed to access files except through the slow, convoluted (and not at all
+		// backwards-compatible) Storage Access Framework
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+			Uri outputUri;
+			ContentResolver contentResolver = getContentResolver();
+			if (!mUsingDefaultOutputDirectory) {
+				if (!existingNames.add(fileName)) {
+					return R.id.export_save_sd_file_exists;
 				}
+				DocumentFile file = outputDocumentFile.createFile(getString(R.string.export_mime_type), fileName);
+				outputUri = file != null ? file.getUri() : null;
+			} else {
+				ContentValues contentValues = new ContentValues();
+				contentValues.put(MediaStore.Downloads.DISPLAY_NAME, fileName);
+				contentValues.put(MediaStore.Downloads.MIME_TYPE, getString(R.string.export_mime_type));
+				contentValues.put(MediaStore.Downloads.RELATIVE_PATH,
+						Environment.DIRECTORY_DOWNLOADS + File.separator + getString(R.string.export_local_directory) +
+								(uriCount > 1 ? File.separator + outputDirectory.getName() : ""));
+				contentValues.put(MediaStore.Downloads.IS_PENDING, 1);
+				outputUri = contentResolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, contentValues);
 			}
-		});
+			if (outputUri == null) {
+				return R.id.export_save_sd_failed;
+			}
+
+			// write via a file descriptor so that we can copy with channels rather than streaming through a buffer
+			ParcelFileDescriptor outputDescriptor = null;
+			FileOutputStream outputStream = null;
+			try {
+				outputDescriptor = contentResolver.openFileDescriptor(outputUri, "w");
+				if (outputDescriptor == null) {
+					return R.id.export_save_sd_failed;
+				}
+				outputStream = new FileOutputStream(outputDescriptor.getFileDescriptor());
+				transferFile(mediaFile, outputStream);
+			} catch (IOException e) {
+				return R.id.export_save_sd_failed;
+			} finally {
+				IOUtilities.closeStream(outputStream);
+				IOUtilities.closeStream(outputDescriptor);
+			}
+			if (mUsingDefaultOutputDirectory) { // record that the file is no-longer pending
+				ContentValues contentValues = new ContentValues();
+				contentValues.put(MediaStore.Downloads.IS_PENDING, 0);
+				contentResolver.update(outputUri, contentValues, null, null);
+			}
+			return R.id.export_save_sd_succeeded;
+		}
+
+		// otherwise, we can save normally - move files if they're in temp (a rename if on the same filesystem); if we have
+		// the actual media path (e.g., SMIL content) we must copy to ensure we don't break the narrative by removing the
+		// originals
+		File newMediaFile = new File(outputDirectory, fileName);
+		if (uriCount == 1 && newMediaFile.exists()) { // only relevant for single file exports
+			return R.id.export_save_sd_file_exists;
+		}
+
+		if (mediaFile.getAbsolutePath().startsWith(MediaPhone.DIRECTORY_TEMP.getAbsolutePath())) {
+			if (!IOUtilities.moveFile(mediaFile, newMediaFile)) {
+				return R.id.export_save_sd_failed;
+			}
+		} else {
+			FileOutputStream outputStream = null;
+			try {
+				outputStream = new FileOutputStream(newMediaFile);
+				transferFile(mediaFile, outputStream);
+			} catch (IOException e) {
+				return R.id.export_save_sd_failed;
+			} finally {
+				IOUtilities.closeStream(outputStream);
+			}
+		}
+		return R.id.export_save_sd_succeeded;
+	}
+
+	/**
+	 * Copy a file to an output stream using channels, so that (where the platform supports it) the data is transferred
+	 * by the kernel in large chunks rather than passing through a buffer in our process
+	 */
+	private static void transferFile(File sourceFile, FileOutputStream outputStream) throws IOException {
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(sourceFile);
+			FileChannel sourceChannel = inputStream.getChannel();
+			FileChannel outputChannel = outputStream.getChannel();
+			final long size = sourceChannel.size();
+			long position = 0;
+			while (position < size) {
+				long transferred = sourceChannel.transferTo(position, Math.min(size - position, TRANSFER_CHUNK_SIZE),
+						outputChannel);
+				if (transferred <= 0) {
+					throw new IOException("Unable to transfer " + sourceFile.getName() + " at position " + position);
+				}
+				position += transferred;
+			}
+		} finally {
+			IOUtilities.closeStream(inputStream);
+		}
 	}
 
 	private void successMessage() {
@@ -146,14 +146,7 @@ public class TextActivity extends MediaPhoneActivity {
 			if (!TextUtils.isEmpty(mediaText)) {
 				if (mHasEditedMedia) {
 					final String mediaTextString = mediaText.toString();
-
-					// update the new word count if different
-					int wordCount = StringUtilities.wordCount(mediaTextString);
-					if (textMediaItem.getExtra() != wordCount) {
-						textMediaItem.setExtra(wordCount);
-						MediaManager.updateMedia(getContentResolver(), textMediaItem);
-					}
-
+					final ContentResolver contentResolver = getContentResolver();
 					Runnable textUpdateRunnable = () -> {
 						// save the current text
 						FileOutputStream fileOutputStream = null;
@@ -162,10 +155,18 @@ public class TextActivity extends MediaPhoneActivity {
 							fileOutputStream.write(mediaTextString.getBytes());
 							// fileOutputStream.flush(); // does nothing in FileOutputStream
 						} catch (Throwable t) {
-							// no need to update the icon - nothing has changed
+							return; // no need to update the database or icon - nothing has changed
 						} finally {
 							IOUtilities.closeStream(fileOutputStream);
 						}
+
+						// only once the file is saved, so that the database copy of the text never differs from it
+						textMediaItem.setExtra(StringUtilities.wordCount(mediaTextString));
+						textMediaItem.setTextContent(mediaTextString);
+						MediaManager.updateMedia(contentResolver, textMediaItem);
+
+						// keep the search index in sync with the saved text
+						MediaManager.updateTextIndex(contentResolver, textMediaItem.getInternalId(), mediaTextString);
 					};
 
 					// update this frame's icon with the new text; propagate to following frames if applicable
@@ -231,9 +232,11 @@ public class TextActivity extends MediaPhoneActivity {
 			final MediaItem textMediaItem = MediaManager.findMediaByInternalId(getContentResolver(), mMediaItemInternalId);
 			if (textMediaItem != null && !TextUtils.isEmpty(mEditText.getText())) {
 				final String newFrameId = insertFrameAfterMedia(textMediaItem);
-				final Intent addTextIntent = new Intent(TextActivity.this, TextActivity.class);
-				addTextIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
-				startActivity(addTextIntent);
+				if (newFrameId != null) {
+					final Intent addTextIntent = new Intent(TextActivity.this, TextActivity.class);
+					addTextIntent.putExtra(getString(R.string.extra_parent_id), newFrameId);
+					startActivity(addTextIntent);
+				}
 
 				onBackPressed();
 			} else {
@@ -332,7 +335,7 @@ public class TextActivity extends MediaPhoneActivity {
 			updateSpanFramesButtonIcon(R.id.button_toggle_mode_text, textMediaItem.getSpanFrames(), false);
 
 			if (TextUtils.isEmpty(mEditText.getText())) { // don't delete existing (i.e. changed) content
-				mEditText.setText(IOUtilities.getFileContents(textMediaItem.getFile().getAbsolutePath()));
+				mEditText.setText(textMediaItem.getTextContent());
 			}
 			// show the keyboard as a further hint (below Honeycomb it is automatic)
 			// TODO: improve/remove these keyboard manipulations
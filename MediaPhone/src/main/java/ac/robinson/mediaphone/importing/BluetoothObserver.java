@@ -27,15 +27,18 @@ import android.os.Message;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediautilities.MediaUtilities;
@@ -46,17 +49,29 @@ import ac.robinson.util.IOUtilities;
 /**
  * Monitors files in the target directory, sending messages via the Handler the parent when an HTML story, MOV video or
  * the complete contents of a SMIL story are received. Sends an initial (progress) message when any other file is
- * received.
+ * received. Files are identified and parsed on a separate I/O thread, so only the resulting messages reach the parent.
  *
  * @author Simon Robinson
  */
 @SuppressWarnings({ "unused", "RedundantSuppression" }) // used via reflection
 public class BluetoothObserver extends FileObserver {
 
-	// synchronized because onEvent() runs on a separate thread
+	// events are debounced: a file is only processed once there have been no further events for it for this long
+	private static final int EVENT_DEBOUNCE_DELAY = 500; // milliseconds
+
+	// the number of bytes read from the start of a file to check its type (much faster than reading whole lines/files)
+	private static final int HEADER_SNIFF_LENGTH = 64;
+	private static final String HTML5_DOCTYPE = "<!DOCTYPE html>";
+	private static final String[] QUICKTIME_ATOM_TYPES = { "ftyp", "moov", "mdat", "wide", "free", "skip", "pnot" };
+
+	// received files are processed on this thread, rather than onEvent()'s, so we don't hold up further events
+	private ScheduledExecutorService mIOExecutor; // created on first use; shut down when we stop watching
+	private final HashMap<String, ScheduledFuture<?>> mPendingEvents = new HashMap<>(); // synchronize on this
+
+	// synchronized because stopWatching() can be called from a separate thread
 	private final Map<String, Map<String, Boolean>> mSMILContents = Collections.synchronizedMap(new HashMap<>());
 	private final List<String> mIgnoredFiles = Collections.synchronizedList(new ArrayList<>());
-	private String mPreviousExport = null; // for tracking duplicates
+	private volatile String mPreviousExport = null; // for tracking duplicates
 
 	private final Handler mHandler;
 	private final String mBluetoothDirectoryPath;
@@ -87,6 +102,15 @@ public class BluetoothObserver extends FileObserver {
 	}
 
 	private void sendMessage(int messageId, String storyFilePath) {
+		// check here rather than on the UI thread when the message is received
+		File storyFile = new File(storyFilePath);
+		if (!storyFile.canRead() || !storyFile.canWrite()) {
+			if (MediaPhone.IMPORT_DELETE_AFTER_IMPORTING) {
+				storyFile.delete(); // error - probably won't work, but might as well try; doesn't throw, so is okay
+			}
+			return;
+		}
+
 		Message msg = mHandler.obtainMessage(messageId);
 		Bundle bundle = new Bundle();
 		bundle.putString(MediaUtilities.KEY_FILE_NAME, storyFilePath);
@@ -157,201 +181,269 @@ public class BluetoothObserver extends FileObserver {
 		// see: http://developer.android.com/reference/android/os/FileObserver.html
 		switch (event) {
 			case CLOSE_WRITE:
+				scheduleReceivedFile(path); // processed on the I/O thread once any burst of events has finished
+				break;
 
-				File receivedFile = new File(mBluetoothDirectoryPath, path);
-				if (receivedFile.length() <= 0) { // on some platforms the file is created before permission is granted
-					break;
+			case ACCESS:
+			case ATTRIB:
+			case CLOSE_NOWRITE:
+			case CREATE:
+			case DELETE:
+			case DELETE_SELF:
+			case MODIFY:
+			case MOVED_FROM:
+			case MOVED_TO:
+			case MOVE_SELF:
+			case OPEN:
+			default:
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(this), "Other event: " + event);
 				}
+				break;
+		}
+	}
 
-				// handle key files - html, mov and smil
-				String fileAbsolutePath = receivedFile.getAbsolutePath();
-				if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.HTML_FILE_EXTENSION)) {
-
-					// html is a simple single-file import, but an html file is also sent for smil - need to ignore it
-					if (fileIsRequiredForSMIL(fileAbsolutePath) == null) {
-						FileReader fileReader = null;
-						LineNumberReader lineNumberReader = null;
-						try {
-							fileReader = new FileReader(receivedFile);
-							lineNumberReader = new LineNumberReader(fileReader);
-
-							// only send if it's an html5 player file
-							String firstLine = lineNumberReader.readLine();
-							if ("<!DOCTYPE html>".equals(firstLine)) { // hack!
-								sendMessage(MediaUtilities.MSG_RECEIVED_HTML_FILE, fileAbsolutePath);
-								if (MediaPhone.DEBUG) {
-									Log.d(DebugUtilities.getLogTag(this), "Sending HTML: " + receivedFile.getName());
-								}
-								break;
-							}
-						} catch (FileNotFoundException ignored) {
-						} catch (IOException ignored) {
-						} finally {
-							IOUtilities.closeStream(lineNumberReader);
-							IOUtilities.closeStream(fileReader);
-						}
-					}
+	/**
+	 * Queue a received file to be processed on the I/O thread. Transfers (and some platforms) can produce several events
+	 * for the same file in quick succession, so each new event for a file restarts its delay; it is processed just once.
+	 */
+	private void scheduleReceivedFile(final String path) {
+		synchronized (mPendingEvents) {
+			if (mIOExecutor == null) {
+				mIOExecutor = Executors.newSingleThreadScheduledExecutor(); // e.g., a file hint received before watching
+			}
+			ScheduledFuture<?> pendingEvent = mPendingEvents.get(path);
+			if (pendingEvent != null) {
+				pendingEvent.cancel(false);
+			}
+			mPendingEvents.put(path, mIOExecutor.schedule(() -> {
+				synchronized (mPendingEvents) {
+					mPendingEvents.remove(path);
+				}
+				handleReceivedFile(path);
+			}, EVENT_DEBOUNCE_DELAY, TimeUnit.MILLISECONDS));
+		}
+	}
 
-				} else if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.MOV_FILE_EXTENSION)) {
+	/**
+	 * @return Up to the first {@link #HEADER_SNIFF_LENGTH} bytes of the file, as ISO-8859-1 so that each byte is one
+	 * char; or an empty string if the file can't be read
+	 */
+	private static String readFileHeader(File file) {
+		byte[] header = new byte[HEADER_SNIFF_LENGTH];
+		int headerLength = 0;
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(file);
+			int bytesRead;
+			while (headerLength < header.length &&
+					(bytesRead = inputStream.read(header, headerLength, header.length - headerLength)) > 0) {
+				headerLength += bytesRead;
+			}
+		} catch (IOException ignored) {
+		} finally {
+			IOUtilities.closeStream(inputStream);
+		}
+		return new String(header, 0, headerLength, StandardCharsets.ISO_8859_1);
+	}
 
-					// this will be shown as a single frame in the narrative
-					// browser, so isn't as good, but might as well support it
-					if (fileIsRequiredForSMIL(fileAbsolutePath) == null) {
-						// ignore files that are components of other stories
-						sendMessage(MediaUtilities.MSG_RECEIVED_MOV_FILE, fileAbsolutePath);
-						if (MediaPhone.DEBUG) {
-							Log.d(DebugUtilities.getLogTag(this), "Sending MOV: " + receivedFile.getName());
-						}
-						break;
-					}
+	private static boolean isHTML5PlayerFile(String header) {
+		// the first line of our exported html files is always the html5 doctype (hack!)
+		if (!header.startsWith(HTML5_DOCTYPE)) {
+			return false;
+		}
+		return header.length() == HTML5_DOCTYPE.length() || header.charAt(HTML5_DOCTYPE.length()) == '\n' ||
+				header.charAt(HTML5_DOCTYPE.length()) == '\r';
+	}
 
-				} else if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.SMIL_FILE_EXTENSION) ||
-						IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.SYNC_FILE_EXTENSION)) {
-					// need to deal with some devices automatically deleting anything with a .smil extension - .sync.jpg
-					// is the same as the .smil contents, but with a .jpg file extension
+	private static boolean isQuickTimeFile(String header) {
+		// QuickTime (and MP4) files are a series of atoms; the first one's type is always at bytes 4-7
+		if (header.length() < 8) {
+			return false;
+		}
+		String atomType = header.substring(4, 8);
+		for (String type : QUICKTIME_ATOM_TYPES) {
+			if (type.equals(atomType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isMarkupFile(String header) {
+		// SMIL files (and .sync.jpg copies of them) are xml - skip any byte order mark and whitespace first
+		String trimmedHeader = header.startsWith("\u00EF\u00BB\u00BF") ? header.substring(3) : header;
+		return trimmedHeader.trim().startsWith("<");
+	}
+
+	/**
+	 * Process a file once it has been completely received. Always runs on the I/O thread, so the (synchronized)
+	 * collections used here are only ever modified by one thread at a time.
+	 */
+	private void handleReceivedFile(String path) {
+		File receivedFile = new File(mBluetoothDirectoryPath, path);
+		if (receivedFile.length() <= 0) { // on some platforms the file is created before permission is granted
+			return;
+		}
 
+		// handle key files - html, mov and smil
+		String fileAbsolutePath = receivedFile.getAbsolutePath();
+		if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.HTML_FILE_EXTENSION)) {
+
+			// html is a simple single-file import, but an html file is also sent for smil - need to ignore it
+			if (fileIsRequiredForSMIL(fileAbsolutePath) == null) {
+				// only send if it's an html5 player file
+				if (isHTML5PlayerFile(readFileHeader(receivedFile))) {
+					sendMessage(MediaUtilities.MSG_RECEIVED_HTML_FILE, fileAbsolutePath);
 					if (MediaPhone.DEBUG) {
-						Log.d(DebugUtilities.getLogTag(this), "Starting to parse SMIL: " + receivedFile.getName());
+						Log.d(DebugUtilities.getLogTag(this), "Sending HTML: " + receivedFile.getName());
 					}
+					return;
+				}
+			}
 
-					// don't add the same key twice - could confuse things a lot
-					if (!mSMILContents.containsKey(fileAbsolutePath)) {
-
-						// we've parsed the .smil and now have the .sync.jpg, or vice-versa - need to deal with this
-						String previousFile = null;
-						if (fileAbsolutePath.endsWith(MediaUtilities.SYNC_FILE_EXTENSION)) {
-							previousFile = fileAbsolutePath.replace(MediaUtilities.SYNC_FILE_EXTENSION,
-									MediaUtilities.SMIL_FILE_EXTENSION);
-						} else if (fileAbsolutePath.endsWith(MediaUtilities.SMIL_FILE_EXTENSION)) {
-							previousFile = fileAbsolutePath.replace(MediaUtilities.SMIL_FILE_EXTENSION,
-									MediaUtilities.SYNC_FILE_EXTENSION);
-						}
-						if (previousFile != null // the file could exist if we're still processing it from this import
-								&& (mSMILContents.containsKey(previousFile) || previousFile.equals(mPreviousExport))) {
-							mPreviousExport = null;
-							receivedFile.delete(); // because otherwise we'll miss it, regardless of deletion prefs
-							if (MediaPhone.DEBUG) {
-								Log.d(DebugUtilities.getLogTag(this),
-										"Found duplicate SMIL/sync file - deleting: " + receivedFile.getName());
-							}
-							break;
-						}
+		} else if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.MOV_FILE_EXTENSION)) {
 
-						Map<String, Boolean> smilContents = Collections.synchronizedMap(new HashMap<>());
-
-						// TODO: we include non-media elements so we can delete them;
-						// but importing successfully is more important than deleting all files...
-						ArrayList<String> smilUnparsedContents = SMILUtilities.getSimpleSMILFileList(receivedFile, true);
-
-						if (smilUnparsedContents != null) {
-							for (String mediaFile : smilUnparsedContents) {
-								File smilMediaFile = new File(receivedFile.getParent(), mediaFile);
-								String smilMediaPath = smilMediaFile.getAbsolutePath();
-
-								// in case the file has already been received
-								if (mIgnoredFiles.contains(smilMediaPath)) {
-									mIgnoredFiles.remove(smilMediaPath);
-									smilContents.put(smilMediaPath, true);
-									if (MediaPhone.DEBUG) {
-										Log.d(DebugUtilities.getLogTag(this),
-												"SMIL component found (previously recorded): " + smilMediaPath);
-									}
-								} else if (smilMediaFile.exists()) {
-									smilContents.put(smilMediaPath, true);
-									if (MediaPhone.DEBUG) {
-										Log.d(DebugUtilities.getLogTag(this),
-												"SMIL component found (file exists): " + smilMediaPath);
-									}
-								} else {
-									if (!smilMediaPath.endsWith(MediaUtilities.SYNC_FILE_EXTENSION)) {
-										smilContents.put(smilMediaPath, false);
-										if (MediaPhone.DEBUG) {
-											Log.d(DebugUtilities.getLogTag(this),
-													"SMIL component not yet sent: " + smilMediaPath);
-										}
-									} else {
-										Log.d(DebugUtilities.getLogTag(this),
-												"SMIL sync component found (ignoring): " + smilMediaPath);
-									}
-								}
-							}
+			// this will be shown as a single frame in the narrative
+			// browser, so isn't as good, but might as well support it
+			if (fileIsRequiredForSMIL(fileAbsolutePath) == null && isQuickTimeFile(readFileHeader(receivedFile))) {
+				// ignore files that are components of other stories (or that aren't really videos)
+				sendMessage(MediaUtilities.MSG_RECEIVED_MOV_FILE, fileAbsolutePath);
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(this), "Sending MOV: " + receivedFile.getName());
+				}
+				return;
+			}
 
-							if (mSMILContents.isEmpty()) {
-								// notify the activity we're starting an import (purely to show a Toast hint) - because with more
-								// recent Android versions and the Storage Access Framework the only realistic way to import is
-								// manually, we can rely on mSMILContents being empty each time, and can therefore use this to
-								// avoid showing repeated toasts if multiple narratives are being imported at once - on older
-								// Android versions the only impact will be repeated Toasts if importing multiple narratives
-								sendMessage(MediaUtilities.MSG_RECEIVED_PARTIAL_SMIL_FILE, fileAbsolutePath);
-							}
-							mSMILContents.put(fileAbsolutePath, smilContents);
-						} else {
-							// error - couldn't parse the smil file
-							if (MediaPhone.DEBUG) {
-								Log.d(DebugUtilities.getLogTag(this), "SMIL parse error: " + receivedFile.getName());
-							}
-						}
+		} else if (IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.SMIL_FILE_EXTENSION) ||
+				IOUtilities.fileExtensionIs(fileAbsolutePath, MediaUtilities.SYNC_FILE_EXTENSION)) {
+			// need to deal with some devices automatically deleting anything with a .smil extension - .sync.jpg
+			// is the same as the .smil contents, but with a .jpg file extension
 
-						checkAndSendSMILContents(fileAbsolutePath, smilContents);
-						break;
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(this), "Starting to parse SMIL: " + receivedFile.getName());
+			}
 
-					} else {
-						// error - tried to import the same file twice; ignored
-						if (MediaPhone.DEBUG) {
-							Log.d(DebugUtilities.getLogTag(this), "SMIL already parsed - ignoring: " + receivedFile.getName());
-						}
+			// don't add the same key twice - could confuse things a lot; also check that this actually is a SMIL file,
+			// so that we don't attempt to parse a large binary file that just happens to have the same extension
+			if (!mSMILContents.containsKey(fileAbsolutePath) && isMarkupFile(readFileHeader(receivedFile))) {
+
+				// we've parsed the .smil and now have the .sync.jpg, or vice-versa - need to deal with this
+				String previousFile = null;
+				if (fileAbsolutePath.endsWith(MediaUtilities.SYNC_FILE_EXTENSION)) {
+					previousFile = fileAbsolutePath.replace(MediaUtilities.SYNC_FILE_EXTENSION,
+							MediaUtilities.SMIL_FILE_EXTENSION);
+				} else if (fileAbsolutePath.endsWith(MediaUtilities.SMIL_FILE_EXTENSION)) {
+					previousFile = fileAbsolutePath.replace(MediaUtilities.SMIL_FILE_EXTENSION,
+							MediaUtilities.SYNC_FILE_EXTENSION);
+				}
+				if (previousFile != null // the file could exist if we're still processing it from this import
+						&& (mSMILContents.containsKey(previousFile) || previousFile.equals(mPreviousExport))) {
+					mPreviousExport = null;
+					receivedFile.delete(); // because otherwise we'll miss it, regardless of deletion prefs
+					if (MediaPhone.DEBUG) {
+						Log.d(DebugUtilities.getLogTag(this),
+								"Found duplicate SMIL/sync file - deleting: " + receivedFile.getName());
 					}
+					return;
 				}
 
-				// handle any other files
-				String smilParent = fileIsRequiredForSMIL(fileAbsolutePath);
-				if (smilParent != null) {
-					Map<String, Boolean> smilContents = mSMILContents.get(smilParent);
+				Map<String, Boolean> smilContents = Collections.synchronizedMap(new HashMap<>());
 
-					if (MediaPhone.DEBUG) {
-						Log.d(DebugUtilities.getLogTag(this), "SMIL component received: " + fileAbsolutePath);
-					}
+				// TODO: we include non-media elements so we can delete them;
+				// but importing successfully is more important than deleting all files...
+				ArrayList<String> smilUnparsedContents = SMILUtilities.getSimpleSMILFileList(receivedFile, true);
 
-					// update the list - we now have this file
-					smilContents.remove(fileAbsolutePath);
-					smilContents.put(fileAbsolutePath, true);
+				if (smilUnparsedContents != null) {
+					for (String mediaFile : smilUnparsedContents) {
+						File smilMediaFile = new File(receivedFile.getParent(), mediaFile);
+						String smilMediaPath = smilMediaFile.getAbsolutePath();
 
-					checkAndSendSMILContents(smilParent, smilContents);
-				} else {
-					// notify the user (probably unreliable but not critical)
-					if (mIgnoredFiles.isEmpty()) {
-						sendMessage(MediaUtilities.MSG_RECEIVED_IMPORT_FILE, fileAbsolutePath);
+						// in case the file has already been received
+						if (mIgnoredFiles.contains(smilMediaPath)) {
+							mIgnoredFiles.remove(smilMediaPath);
+							smilContents.put(smilMediaPath, true);
+							if (MediaPhone.DEBUG) {
+								Log.d(DebugUtilities.getLogTag(this),
+										"SMIL component found (previously recorded): " + smilMediaPath);
+							}
+						} else if (smilMediaFile.exists()) {
+							smilContents.put(smilMediaPath, true);
+							if (MediaPhone.DEBUG) {
+								Log.d(DebugUtilities.getLogTag(this),
+										"SMIL component found (file exists): " + smilMediaPath);
+							}
+						} else {
+							if (!smilMediaPath.endsWith(MediaUtilities.SYNC_FILE_EXTENSION)) {
+								smilContents.put(smilMediaPath, false);
+								if (MediaPhone.DEBUG) {
+									Log.d(DebugUtilities.getLogTag(this),
+											"SMIL component not yet sent: " + smilMediaPath);
+								}
+							} else {
+								Log.d(DebugUtilities.getLogTag(this),
+										"SMIL sync component found (ignoring): " + smilMediaPath);
+							}
+						}
 					}
 
-					if (MediaPhone.DEBUG) {
-						Log.d(DebugUtilities.getLogTag(this), "Saving potential SMIL component: " + fileAbsolutePath);
+					if (mSMILContents.isEmpty()) {
+						// notify the activity we're starting an import (purely to show a Toast hint) - because with more
+						// recent Android versions and the Storage Access Framework the only realistic way to import is
+						// manually, we can rely on mSMILContents being empty each time, and can therefore use this to
+						// avoid showing repeated toasts if multiple narratives are being imported at once - on older
+						// Android versions the only impact will be repeated Toasts if importing multiple narratives
+						sendMessage(MediaUtilities.MSG_RECEIVED_PARTIAL_SMIL_FILE, fileAbsolutePath);
 					}
-
-					// a file sent via bluetooth, but not one we need - ignore
-					// but save path in case files were sent in the wrong order
-					if (!mIgnoredFiles.contains(fileAbsolutePath)) {
-						mIgnoredFiles.add(fileAbsolutePath);
+					mSMILContents.put(fileAbsolutePath, smilContents);
+				} else {
+					// error - couldn't parse the smil file
+					if (MediaPhone.DEBUG) {
+						Log.d(DebugUtilities.getLogTag(this), "SMIL parse error: " + receivedFile.getName());
 					}
 				}
 
-				break;
+				checkAndSendSMILContents(fileAbsolutePath, smilContents);
+				return;
 
-			case ACCESS:
-			case ATTRIB:
-			case CLOSE_NOWRITE:
-			case CREATE:
-			case DELETE:
-			case DELETE_SELF:
-			case MODIFY:
-			case MOVED_FROM:
-			case MOVED_TO:
-			case MOVE_SELF:
-			case OPEN:
-			default:
+			} else {
+				// error - tried to import the same file twice (or not a SMIL file); ignored
 				if (MediaPhone.DEBUG) {
-					Log.d(DebugUtilities.getLogTag(this), "Other event: " + event);
+					Log.d(DebugUtilities.getLogTag(this),
+							"SMIL already parsed or invalid - ignoring: " + receivedFile.getName());
 				}
-				break;
+			}
+		}
+
+		// handle any other files
+		String smilParent = fileIsRequiredForSMIL(fileAbsolutePath);
+		if (smilParent != null) {
+			Map<String, Boolean> smilContents = mSMILContents.get(smilParent);
+
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(this), "SMIL component received: " + fileAbsolutePath);
+			}
+
+			// update the list - we now have this file
+			smilContents.remove(fileAbsolutePath);
+			smilContents.put(fileAbsolutePath, true);
+
+			checkAndSendSMILContents(smilParent, smilContents);
+		} else {
+			// notify the user (probably unreliable but not critical)
+			if (mIgnoredFiles.isEmpty()) {
+				sendMessage(MediaUtilities.MSG_RECEIVED_IMPORT_FILE, fileAbsolutePath);
+			}
+
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(this), "Saving potential SMIL component: " + fileAbsolutePath);
+			}
+
+			// a file sent via bluetooth, but not one we need - ignore
+			// but save path in case files were sent in the wrong order
+			if (!mIgnoredFiles.contains(fileAbsolutePath)) {
+				mIgnoredFiles.add(fileAbsolutePath);
+			}
 		}
 	}
 
@@ -366,6 +458,13 @@ public class BluetoothObserver extends FileObserver {
 	@Override
 	public void stopWatching() {
 		super.stopWatching();
+		synchronized (mPendingEvents) {
+			if (mIOExecutor != null) {
+				mIOExecutor.shutdownNow(); // abandon any files that haven't been processed yet
+				mIOExecutor = null;
+			}
+			mPendingEvents.clear();
+		}
 		mSMILContents.clear();
 		mIgnoredFiles.clear();
 		mPreviousExport = null;
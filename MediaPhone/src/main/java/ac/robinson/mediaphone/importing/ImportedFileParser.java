@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.provider.FrameItem;
@@ -39,6 +40,7 @@ import ac.robinson.mediaphone.provider.MediaManager;
 import ac.robinson.mediaphone.provider.MediaPhoneProvider;
 import ac.robinson.mediaphone.provider.NarrativeItem;
 import ac.robinson.mediaphone.provider.NarrativesManager;
+import ac.robinson.mediaphone.provider.ScreenImageDecoder;
 import ac.robinson.mediautilities.FrameMediaContainer;
 import ac.robinson.mediautilities.FrameMediaContainer.SpanType;
 import ac.robinson.mediautilities.HTMLUtilities;
@@ -46,6 +48,7 @@ import ac.robinson.mediautilities.MediaUtilities;
 import ac.robinson.mediautilities.SMILUtilities;
 import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.IOUtilities;
+import ac.robinson.util.ImageCacheUtilities;
 import ac.robinson.util.StringUtilities;
 
 public class ImportedFileParser {
@@ -118,20 +121,21 @@ public class ImportedFileParser {
 		String newFrameId = newFrame.getInternalId();
 		File parentDirectory = null;
 
-		// get and update any inherited media
+		// get any inherited media (the span of each item is extended to this frame once all media has been added)
 		String insertAfterId = FramesManager.findLastFrameByParentId(contentResolver, frame.mParentId);
-		ArrayList<MediaItem> inheritedMedia;
+		ArrayList<MediaItem> inheritedMedia = new ArrayList<>();
 		if (insertAfterId != null) {
-			inheritedMedia = MediaManager.findMediaByParentId(contentResolver, insertAfterId);
-			for (final MediaItem media : inheritedMedia) {
+			for (final MediaItem media : MediaManager.findMediaByParentId(contentResolver, insertAfterId)) {
 				if (media.getSpanFrames()) {
-					MediaManager.addMediaLink(contentResolver, newFrameId, media.getInternalId());
+					inheritedMedia.add(media);
 				}
 			}
-		} else {
-			inheritedMedia = new ArrayList<>();
 		}
 
+		// spans are resolved by frame position, so the frame must be added before its inherited media can be extended
+		ImageCacheUtilities.setLoadingIcon(newFrame.getCacheId());
+		FramesManager.addFrame(res, contentResolver, newFrame, false);
+
 		// add content provided by this frame
 		if (!TextUtils.isEmpty(frame.mTextContent)) {
 			String textUUID = MediaPhoneProvider.getNewInternalId();
@@ -147,11 +151,7 @@ public class ImportedFileParser {
 
 			if (textContentFile.exists()) {
 				// end any inherited media; the new text item replaces it
-				for (MediaItem inheritedItem : inheritedMedia) {
-					if (inheritedItem.getType() == MediaPhoneProvider.TYPE_TEXT) {
-						MediaManager.deleteMediaLink(contentResolver, newFrameId, inheritedItem.getInternalId());
-					}
-				}
+				endInheritedMedia(inheritedMedia, MediaPhoneProvider.TYPE_TEXT, MediaPhoneProvider.TYPE_TEXT);
 
 				MediaItem textMediaItem = new MediaItem(textUUID, newFrameId, MediaPhone.EXTENSION_TEXT_FILE,
 						MediaPhoneProvider.TYPE_TEXT);
@@ -159,7 +159,9 @@ public class ImportedFileParser {
 					textMediaItem.setSpanFrames(true);
 				}
 				textMediaItem.setExtra(StringUtilities.wordCount(frame.mTextContent));
+				textMediaItem.setTextContent(frame.mTextContent);
 				MediaManager.addMedia(contentResolver, textMediaItem);
+				MediaManager.updateTextIndex(contentResolver, textUUID, frame.mTextContent);
 			}
 		}
 
@@ -183,13 +185,7 @@ public class ImportedFileParser {
 
 			if (imageContentFile.exists()) {
 				// end any inherited media; the new image item replaces it
-				for (MediaItem inheritedItem : inheritedMedia) {
-					final int inheritedType = inheritedItem.getType();
-					if (inheritedType == MediaPhoneProvider.TYPE_IMAGE_FRONT ||
-							inheritedType == MediaPhoneProvider.TYPE_IMAGE_BACK) {
-						MediaManager.deleteMediaLink(contentResolver, newFrameId, inheritedItem.getInternalId());
-					}
-				}
+				endInheritedMedia(inheritedMedia, MediaPhoneProvider.TYPE_IMAGE_FRONT, MediaPhoneProvider.TYPE_IMAGE_BACK);
 
 				MediaItem imageMediaItem = new MediaItem(imageUUID, newFrameId, existingFileExtension,
 						(frame.mImageIsFrontCamera ? MediaPhoneProvider.TYPE_IMAGE_FRONT : MediaPhoneProvider.TYPE_IMAGE_BACK));
@@ -197,6 +193,8 @@ public class ImportedFileParser {
 					imageMediaItem.setSpanFrames(true);
 				}
 				MediaManager.addMedia(contentResolver, imageMediaItem);
+				MediaManager.updateMediaMetadata(contentResolver, imageMediaItem);
+				ScreenImageDecoder.createScreenDerivative(res, contentResolver, imageMediaItem);
 				// TODO: add to media library?
 			}
 		}
@@ -222,11 +220,7 @@ public class ImportedFileParser {
 				if (audioContentFile.exists()) {
 					// if requested, end any inherited media; the new audio item replaces it
 					if (frame.mEndsPreviousSpanningAudio) {
-						for (MediaItem inheritedItem : inheritedMedia) {
-							if (inheritedItem.getType() == MediaPhoneProvider.TYPE_AUDIO) {
-								MediaManager.deleteMediaLink(contentResolver, newFrameId, inheritedItem.getInternalId());
-							}
-						}
+						endInheritedMedia(inheritedMedia, MediaPhoneProvider.TYPE_AUDIO, MediaPhoneProvider.TYPE_AUDIO);
 					}
 
 					MediaItem audioMediaItem = new MediaItem(audioUUID, newFrameId, existingFileExtension,
@@ -251,6 +245,19 @@ public class ImportedFileParser {
 			}
 		}
 
-		FramesManager.addFrameAndPreloadIcon(res, contentResolver, newFrame);
+		// extend any media that is still inherited, then load the icon (we set a loading icon when adding the frame)
+		for (MediaItem inheritedItem : inheritedMedia) {
+			MediaManager.extendMediaSpan(contentResolver, inheritedItem.getInternalId(), newFrameId);
+		}
+		FramesManager.reloadFrameIcon(res, contentResolver, newFrame, true);
+	}
+
+	private static void endInheritedMedia(ArrayList<MediaItem> inheritedMedia, int type1, int type2) {
+		for (Iterator<MediaItem> iterator = inheritedMedia.iterator(); iterator.hasNext(); ) {
+			final int inheritedType = iterator.next().getType();
+			if (inheritedType == type1 || inheritedType == type2) {
+				iterator.remove();
+			}
+		}
 	}
 }
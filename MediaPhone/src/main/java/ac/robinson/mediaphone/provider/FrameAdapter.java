@@ -190,6 +190,7 @@ public class FrameAdapter extends CursorAdapter implements FilterQueryProvider {
 		final FrameViewHolder holder = (FrameViewHolder) view.getTag();
 
 		holder.frameInternalId = cursor.getString(mInternalIdIndex);
+		holder.previousIcon = false;
 
 		String mediaCacheId = FrameItem.getCacheId(holder.frameInternalId);
 
@@ -231,6 +232,16 @@ public class FrameAdapter extends CursorAdapter implements FilterQueryProvider {
 					holder.queryIcon = true;
 					return; // this icon hasn't yet been updated
 				} else if (ImageCacheUtilities.NULL_DRAWABLE.equals(cachedIcon)) {
+					// after the icon settings change, show the old icon until its replacement is rendered in the background
+					FastBitmapDrawable previousIcon = FrameIconCache.getPreviousIcon(holder.frameInternalId);
+					if (previousIcon != null) {
+						FrameIconCache.requestIcon(holder.frameInternalId, mParentView::postUpdateFrameIcons);
+						holder.display.setImageDrawable(previousIcon);
+						holder.loader.setVisibility(View.GONE);
+						holder.queryIcon = true;
+						holder.previousIcon = true;
+						return;
+					}
 					FramesManager.reloadFrameIcon(mActivity.getResources(), mActivity.getContentResolver(),
 							holder.frameInternalId);
 					cachedIcon = ImageCacheUtilities.getCachedIcon(MediaPhone.DIRECTORY_THUMBS, mediaCacheId, mDefaultIcon);
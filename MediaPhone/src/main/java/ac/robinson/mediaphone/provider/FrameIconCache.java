@@ -0,0 +1,345 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.ImageCacheUtilities;
+import ac.robinson.view.FastBitmapDrawable;
+
+/**
+ * Keys cached frame icons by the generation of renderer settings (custom font, colours and sizes) that produced them, so
+ * that changing any of these settings does not require deleting every icon and re-rendering them all on the UI thread.
+ * Instead, icons from the previous generation are shown until their replacements have been rendered in the background
+ * (frames that are currently visible first), and each old icon is removed as soon as its replacement is in the cache.
+ */
+public final class FrameIconCache {
+
+	// increment whenever FrameItem.loadIcon changes the way icons look, so that existing icons are replaced
+	private static final int RENDERER_VERSION = 2;
+
+	private static final String GENERATION_SEPARATOR = "_g";
+	private static final String LEGACY_GENERATION = ""; // icons cached before generations existed are keyed by frame id
+
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	private static final Object sLock = new Object();
+	private static Context sApplicationContext;
+	private static String sGeneration; // null until first calculated
+	private static String sPreviousGeneration; // the last generation whose icons were all rendered; null if current
+	private static final HashSet<String> sAbandonedGenerations = new HashSet<>(); // replaced before they were completed
+
+	private static final LinkedHashMap<String, Runnable> sRequestedFrames = new LinkedHashMap<>(); // visible; first
+	private static final ArrayDeque<String> sRemainingFrames = new ArrayDeque<>(); // every other frame, newest first
+	private static final HashSet<String> sRenderedFrames = new HashSet<>(); // already rendered in this generation
+	private static boolean sLoadRemainingFrames; // whether we still need to query for the full list of frames
+	private static boolean sRemainingFramesLoaded; // whether the generation is complete once the queues are empty
+	private static boolean sRendering;
+
+	private FrameIconCache() {
+	}
+
+	/**
+	 * Must be called before any icons are loaded (i.e., in Application.onCreate). The current generation is calculated
+	 * when first needed; call {@link #updateGeneration(Context)} after startup to begin replacing any outdated icons.
+	 */
+	public static void initialise(Context context) {
+		synchronized (sLock) {
+			sApplicationContext = context.getApplicationContext();
+		}
+	}
+
+	/**
+	 * @return The id under which the icon of the given frame is cached in the current generation
+	 */
+	public static String getCacheId(String frameInternalId) {
+		return getCacheId(frameInternalId, getGeneration());
+	}
+
+	/**
+	 * @return The cached icon of the given frame from the previous generation, or null if there is no such icon (or no
+	 * previous generation). Callers showing this icon should use {@link #requestIcon} to get the current version.
+	 */
+	public static FastBitmapDrawable getPreviousIcon(String frameInternalId) {
+		final String previousGeneration;
+		synchronized (sLock) {
+			getGeneration();
+			previousGeneration = sPreviousGeneration;
+		}
+		if (previousGeneration == null) {
+			return null;
+		}
+		FastBitmapDrawable previousIcon = ImageCacheUtilities.getCachedIcon(MediaPhone.DIRECTORY_THUMBS,
+				getCacheId(frameInternalId, previousGeneration), ImageCacheUtilities.NULL_DRAWABLE);
+		if (ImageCacheUtilities.NULL_DRAWABLE.equals(previousIcon) ||
+				ImageCacheUtilities.LOADING_DRAWABLE.equals(previousIcon)) {
+			return null;
+		}
+		return previousIcon;
+	}
+
+	/**
+	 * Remove every cached version of the given frame's icon - the current generation, the previous one, any that were
+	 * abandoned before being completed, and the legacy icon from before generations existed. Used when a frame is
+	 * permanently deleted, as its old icons would otherwise never be replaced (and so never removed).
+	 */
+	public static void deleteIcons(String frameInternalId) {
+		final ArrayList<String> generations = new ArrayList<>();
+		synchronized (sLock) {
+			generations.add(getGeneration());
+			if (sPreviousGeneration != null) {
+				generations.add(sPreviousGeneration);
+			}
+			generations.addAll(sAbandonedGenerations);
+			sRenderedFrames.remove(frameInternalId);
+		}
+		if (!generations.contains(LEGACY_GENERATION)) {
+			generations.add(LEGACY_GENERATION);
+		}
+		for (String generation : generations) {
+			ImageCacheUtilities.deleteCachedIcon(getCacheId(frameInternalId, generation));
+		}
+	}
+
+	/**
+	 * Render the current version of the given frame's icon in the background, ahead of any other outdated icons.
+	 *
+	 * @param onRendered Run on the UI thread once the icon is in the cache (may be null)
+	 */
+	public static void requestIcon(String frameInternalId, Runnable onRendered) {
+		synchronized (sLock) {
+			sRequestedFrames.put(frameInternalId, onRendered);
+			startRendering();
+		}
+	}
+
+	/**
+	 * Recalculate the current generation (e.g., after the custom font has changed), and start replacing all icons from
+	 * earlier generations in the background if it is different to the generation whose icons were last completed.
+	 */
+	public static void updateGeneration(Context context) {
+		final String newGeneration = calculateGeneration(context.getApplicationContext());
+		final String completedGeneration = getSettings(context).getString(
+				context.getString(R.string.key_icon_cache_generation), LEGACY_GENERATION);
+
+		synchronized (sLock) {
+			if (sGeneration != null && !sGeneration.equals(newGeneration)) {
+				if (!sGeneration.equals(completedGeneration)) {
+					sAbandonedGenerations.add(sGeneration); // partly rendered - remove these icons too when replacing
+				}
+				sRenderedFrames.clear();
+			}
+			sGeneration = newGeneration;
+			sPreviousGeneration = newGeneration.equals(completedGeneration) ? null : completedGeneration;
+			if (sPreviousGeneration == null && sAbandonedGenerations.isEmpty()) {
+				return; // nothing to do
+			}
+
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(sLock), "Replacing icons from generation \"" + completedGeneration +
+						"\" with generation " + newGeneration);
+			}
+			sRemainingFrames.clear();
+			sLoadRemainingFrames = true;
+			sRemainingFramesLoaded = false;
+			startRendering();
+		}
+	}
+
+	private static String getCacheId(String frameInternalId, String generation) {
+		return LEGACY_GENERATION.equals(generation) ? frameInternalId : frameInternalId + GENERATION_SEPARATOR + generation;
+	}
+
+	private static String getGeneration() {
+		synchronized (sLock) {
+			if (sGeneration == null) {
+				if (sApplicationContext == null) {
+					return LEGACY_GENERATION; // not initialised (should not happen)
+				}
+				sGeneration = calculateGeneration(sApplicationContext);
+				String completedGeneration = getSettings(sApplicationContext).getString(
+						sApplicationContext.getString(R.string.key_icon_cache_generation), LEGACY_GENERATION);
+				sPreviousGeneration = sGeneration.equals(completedGeneration) ? null : completedGeneration;
+			}
+			return sGeneration;
+		}
+	}
+
+	/**
+	 * @return A short key that changes whenever anything that affects the appearance of frame icons changes
+	 */
+	@SuppressWarnings("deprecation")
+	private static String calculateGeneration(Context context) {
+		Resources res = context.getResources();
+		File customFontFile = new File(MediaPhone.DIRECTORY_THUMBS, res.getString(R.string.key_custom_font));
+		boolean hasCustomFont = customFontFile.exists();
+
+		int hash = RENDERER_VERSION;
+		final long[] generationValues = {
+				hasCustomFont ? customFontFile.length() : 0, hasCustomFont ? customFontFile.lastModified() : 0,
+				res.getColor(R.color.frame_icon_background), res.getColor(R.color.frame_icon_border),
+				res.getColor(R.color.frame_icon_indicator), res.getColor(R.color.frame_icon_indicator_text),
+				res.getColor(R.color.frame_icon_text_background), res.getColor(R.color.frame_icon_text_no_image),
+				res.getColor(R.color.frame_icon_text_with_image), res.getDimensionPixelSize(R.dimen.frame_icon_width),
+				res.getDimensionPixelSize(R.dimen.frame_icon_height),
+				res.getDimensionPixelSize(R.dimen.frame_icon_maximum_text_size),
+				res.getDimensionPixelSize(R.dimen.frame_icon_border_width)
+		};
+		for (long value : generationValues) {
+			hash = 31 * hash + (int) (value ^ (value >>> 32));
+		}
+		return Integer.toHexString(hash);
+	}
+
+	private static SharedPreferences getSettings(Context context) {
+		return context.getSharedPreferences(MediaPhone.APPLICATION_NAME, Context.MODE_PRIVATE);
+	}
+
+	// must be called while holding sLock
+	private static void startRendering() {
+		if (!sRendering && sApplicationContext != null) {
+			sRendering = true;
+			sExecutor.execute(FrameIconCache::renderQueuedIcons);
+		}
+	}
+
+	private static void renderQueuedIcons() {
+		final Context context;
+		synchronized (sLock) {
+			context = sApplicationContext;
+		}
+		final Resources resources = context.getResources();
+		final ContentResolver contentResolver = context.getContentResolver();
+
+		while (true) {
+			String frameId = null;
+			Runnable onRendered = null;
+			boolean loadRemainingFrames = false;
+			final String generation;
+			synchronized (sLock) {
+				generation = getGeneration();
+				if (!sRequestedFrames.isEmpty()) {
+					Iterator<Map.Entry<String, Runnable>> iterator = sRequestedFrames.entrySet().iterator();
+					Map.Entry<String, Runnable> entry = iterator.next();
+					frameId = entry.getKey();
+					onRendered = entry.getValue();
+					iterator.remove();
+				} else if (sLoadRemainingFrames) {
+					sLoadRemainingFrames = false;
+					loadRemainingFrames = true;
+				} else if (!sRemainingFrames.isEmpty()) {
+					frameId = sRemainingFrames.poll();
+				} else {
+					if (sRemainingFramesLoaded) {
+						completeGeneration(context, generation); // every icon is now from the current generation
+					}
+					sRendering = false;
+					return;
+				}
+			}
+
+			if (loadRemainingFrames) {
+				// frames that are deleted but not yet removed are not re-rendered, so their old icons must be swept here:
+				// by the time they are removed, the generations their icons were cached under may have been forgotten
+				for (String deletedFrameId : FramesManager.findDeletedFrames(contentResolver)) {
+					deleteReplacedIcons(deletedFrameId, generation);
+				}
+				ArrayList<String> frameIds = FramesManager.findAllFrameIds(contentResolver);
+				synchronized (sLock) {
+					if (generation.equals(sGeneration)) {
+						sRemainingFrames.addAll(frameIds);
+						sRemainingFramesLoaded = true;
+					} // otherwise the generation has changed while loading, and sLoadRemainingFrames is set again
+				}
+				continue;
+			}
+
+			renderIcon(resources, contentResolver, frameId, generation);
+			if (onRendered != null) {
+				sMainHandler.post(onRendered);
+			}
+		}
+	}
+
+	private static void renderIcon(Resources resources, ContentResolver contentResolver, String frameId,
+								   String generation) {
+		synchronized (sLock) {
+			if (!sRenderedFrames.add(frameId)) {
+				return; // already rendered in this generation (e.g., requested while visible)
+			}
+		}
+
+		String currentCacheId = getCacheId(frameId, generation);
+		FastBitmapDrawable currentIcon = ImageCacheUtilities.getCachedIcon(MediaPhone.DIRECTORY_THUMBS, currentCacheId,
+				ImageCacheUtilities.NULL_DRAWABLE);
+		if (ImageCacheUtilities.NULL_DRAWABLE.equals(currentIcon)) {
+			FramesManager.reloadFrameIcon(resources, contentResolver, frameId); // may already exist (e.g., if edited)
+		}
+
+		// swap: the current version is now in the cache, so the old versions can be removed
+		deleteReplacedIcons(frameId, generation);
+	}
+
+	private static void deleteReplacedIcons(String frameId, String generation) {
+		final ArrayList<String> replacedGenerations = new ArrayList<>();
+		synchronized (sLock) {
+			if (sPreviousGeneration != null) {
+				replacedGenerations.add(sPreviousGeneration);
+			}
+			replacedGenerations.addAll(sAbandonedGenerations);
+		}
+		for (String replacedGeneration : replacedGenerations) {
+			if (!replacedGeneration.equals(generation)) {
+				ImageCacheUtilities.deleteCachedIcon(getCacheId(frameId, replacedGeneration));
+			}
+		}
+	}
+
+	// must be called while holding sLock
+	private static void completeGeneration(Context context, String generation) {
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(sLock), "Completed replacing icons with generation " + generation);
+		}
+		getSettings(context).edit().putString(context.getString(R.string.key_icon_cache_generation), generation).apply();
+		sPreviousGeneration = null;
+		sRemainingFramesLoaded = false;
+		sAbandonedGenerations.clear();
+		sRenderedFrames.clear();
+	}
+}
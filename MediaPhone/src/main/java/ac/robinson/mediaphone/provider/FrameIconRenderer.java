@@ -0,0 +1,674 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.TypedValue;
+
+import com.larvalabs.svgandroid.SVGParser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.IOUtilities;
+import ac.robinson.util.ImageCacheUtilities;
+import androidx.exifinterface.media.ExifInterface;
+
+/**
+ * Draws frame icons (see {@link FrameItem#loadIcon}). Images are decoded straight to (roughly) icon size by decoding only
+ * the part of the image that will be visible, with sampling, so there is never a full resolution image in memory. The
+ * oriented and cropped result is drawn into an icon-sized copy, which is saved so that later renders can skip decoding
+ * altogether. Each thread that renders icons has its own renderer, so the paints, typefaces, audio overlay and decoding
+ * buffer are created once and reused for every icon.
+ */
+final class FrameIconRenderer {
+
+	private static final ThreadLocal<FrameIconRenderer> sRenderers = new ThreadLocal<>();
+
+	// EXIF thumbnails are often slightly smaller than icons on high density screens; a small amount of scaling is not
+	// noticeable at icon size, but beyond this we use the image itself
+	private static final float EXIF_THUMBNAIL_MAXIMUM_SCALE = 1.25f;
+	private static final float EXIF_THUMBNAIL_ASPECT_TOLERANCE = 0.02f; // relative difference from the image's aspect
+
+	// icon-sized copies of images and video frames are saved alongside the media item (so they are deleted with it)
+	private static final String ICON_SOURCE_SUFFIX = "_icon";
+	private static final int ICON_SOURCE_QUALITY = 90; // applies to JPEG only
+
+	private enum IconSource {
+		EXIF_THUMBNAIL, ICON_SOURCE, DECODED_IMAGE, VIDEO_FRAME, NONE
+	}
+
+	private static final int[] sIconSourceCounts = new int[IconSource.values().length]; // for debugging
+
+	private final Bitmap.Config mBitmapConfig = ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig;
+	private final BitmapFactory.Options mDecodeOptions = new BitmapFactory.Options();
+	private final byte[] mDecodeStorage = new byte[16 * 1024]; // otherwise BitmapFactory allocates this on every decode
+	private Bitmap mDecodeBuffer; // the latest decoded bitmap, reused where possible (API 19+); never kept by callers
+	private final Rect mDecodeBufferRegion = new Rect(); // the region mDecodeBuffer was decoded from; empty if whole file
+	private int mDecodeBufferSampleSize;
+
+	private final Paint mBasePaint = BitmapUtilities.getPaint(0, 1);
+	private final Paint mPaint = new Paint();
+	private final Paint mImagePaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+	private final Typeface mTextTypeface = Typeface.create(Typeface.DEFAULT, Typeface.NORMAL);
+	private final Typeface mIndicatorTypeface = Typeface.create(Typeface.DEFAULT, Typeface.BOLD);
+	private Typeface mCustomTypeface;
+	private long mCustomTypefaceModified; // so we can detect when the custom font has been replaced
+	private Picture mAudioOverlay;
+	private IconSource mLastIconSource; // the source of the most recent icon's image (for debugging)
+
+	private final Matrix mMatrix = new Matrix();
+	private final Rect mRect = new Rect();
+	private final RectF mRectF = new RectF();
+	private final TypedValue mResourceValue = new TypedValue();
+
+	private FrameIconRenderer() {
+		mDecodeOptions.inTempStorage = mDecodeStorage;
+		mDecodeOptions.inPreferredConfig = mBitmapConfig;
+		mDecodeOptions.inMutable = true; // required for reuse
+	}
+
+	/**
+	 * @return The renderer for the current thread
+	 */
+	static FrameIconRenderer getInstance() {
+		FrameIconRenderer renderer = sRenderers.get();
+		if (renderer == null) {
+			renderer = new FrameIconRenderer();
+			sRenderers.set(renderer);
+		}
+		return renderer;
+	}
+
+	/**
+	 * Draw an icon for a frame with the given media.
+	 *
+	 * @param indicatorText The text of the indicator shown on a narrative's first frame, or null if this is not the first
+	 * @return A new bitmap (never reused, as the icon cache keeps a reference to the icons it is given)
+	 */
+	@SuppressWarnings("deprecation")
+	Bitmap renderIcon(Resources res, ContentResolver contentResolver, ArrayList<MediaItem> frameComponents,
+					  String indicatorText, BitmapUtilities.CacheTypeContainer cacheTypeContainer) {
+		final long startTime = MediaPhone.DEBUG ? SystemClock.elapsedRealtime() : 0;
+		final int iconWidth = res.getDimensionPixelSize(R.dimen.frame_icon_width);
+		final int iconHeight = res.getDimensionPixelSize(R.dimen.frame_icon_height);
+
+		// the background also removes any transparency from PNG images, so they can be drawn directly over it
+		Bitmap frameBitmap = Bitmap.createBitmap(iconWidth, iconHeight, mBitmapConfig);
+		frameBitmap.eraseColor(res.getColor(R.color.frame_icon_background));
+		Canvas frameBitmapCanvas = new Canvas(frameBitmap);
+
+		mLastIconSource = null;
+		boolean imageLoaded = false;
+		boolean textLoaded = false;
+		boolean audioLoaded = false;
+		boolean imageIsPng = false;
+		String textString = "";
+		for (MediaItem currentItem : frameComponents) {
+			int currentType = currentItem.getType();
+
+			if (!imageLoaded &&
+					(currentType == MediaPhoneProvider.TYPE_IMAGE_BACK || currentType == MediaPhoneProvider.TYPE_IMAGE_FRONT ||
+							currentType == MediaPhoneProvider.TYPE_VIDEO)) {
+				imageLoaded = drawImage(frameBitmapCanvas, contentResolver, currentItem, iconWidth, iconHeight);
+				imageIsPng = imageLoaded && "png".equalsIgnoreCase(currentItem.getFileExtension());
+
+			} else if (currentType == MediaPhoneProvider.TYPE_AUDIO) {
+				audioLoaded = true;
+
+			} else if (!textLoaded && currentType == MediaPhoneProvider.TYPE_TEXT) {
+				textString = currentItem.getTextContent();
+				textLoaded = true;
+			}
+		}
+
+		int textColour = (imageLoaded ? res.getColor(R.color.frame_icon_text_with_image) :
+				res.getColor(R.color.frame_icon_text_no_image));
+		Paint frameBitmapPaint = mPaint;
+		frameBitmapPaint.set(mBasePaint);
+		frameBitmapPaint.setColor(textColour);
+		final int borderWidth = res.getDimensionPixelSize(R.dimen.frame_icon_border_width);
+		res.getValue(R.dimen.frame_icon_indicator_width_factor, mResourceValue, true);
+		float indicatorWidth = iconWidth * mResourceValue.getFloat();
+
+		// add the text overlay
+		if (textLoaded) {
+			frameBitmapPaint.setTypeface(mTextTypeface);
+
+			int textPadding = res.getDimensionPixelSize(R.dimen.frame_icon_text_padding);
+			int textCornerRadius = res.getDimensionPixelSize(R.dimen.frame_icon_text_corner_radius);
+			int textBackgroundColour = imageLoaded ? res.getColor(R.color.frame_icon_text_background) : 0;
+			float leftOffset = indicatorText != null ? indicatorWidth : 0;
+			int maxTextHeight = (imageLoaded ?
+					(iconHeight * res.getInteger(R.integer.frame_icon_maximum_text_percentage_height_with_image) / 100) :
+					iconHeight);
+
+			BitmapUtilities.drawScaledText(textString, frameBitmapCanvas, frameBitmapPaint, textColour, textBackgroundColour,
+					textPadding, textCornerRadius, imageLoaded, leftOffset, true, maxTextHeight,
+					res.getDimensionPixelSize(R.dimen.frame_icon_maximum_text_size), getCustomTypeface(res));
+
+			// add border if there's no image (looks much tidier)
+			if (!imageLoaded) {
+				BitmapUtilities.addBorder(frameBitmapCanvas, frameBitmapPaint, borderWidth,
+						res.getColor(R.color.frame_icon_border));
+			}
+		}
+
+		// add the audio overlay
+		if (audioLoaded) {
+			if (!imageLoaded && !textLoaded) {
+				BitmapUtilities.addBorder(frameBitmapCanvas, frameBitmapPaint, borderWidth,
+						res.getColor(R.color.frame_icon_border));
+
+				res.getValue(R.dimen.frame_icon_scale_factor, mResourceValue, true);
+				float scaleFactor = mResourceValue.getFloat();
+				int iconLeft = Math.round((iconWidth - (iconWidth * scaleFactor)) / 2);
+				int iconTop = Math.round((iconHeight - (iconHeight * scaleFactor)) / 2);
+				mRect.set(iconLeft, iconTop, iconWidth - iconLeft, iconHeight - iconTop);
+			} else {
+				res.getValue(R.dimen.frame_icon_overlay_scale_factor, mResourceValue, true);
+				float scaleFactor = mResourceValue.getFloat();
+				res.getValue(R.dimen.frame_icon_overlay_spacing_factor, mResourceValue, true);
+				float spacingFactor = mResourceValue.getFloat();
+				int iconSpacingRight = Math.round(iconWidth * spacingFactor);
+				int iconSpacingTop = Math.round(iconHeight * spacingFactor);
+				mRect.set(iconWidth - Math.round(iconWidth * scaleFactor) - iconSpacingRight, iconSpacingTop,
+						iconWidth - iconSpacingRight, iconSpacingTop + Math.round(iconHeight * scaleFactor));
+			}
+
+			// using SVG so that we don't need resolution-specific icons
+			if (mAudioOverlay == null) {
+				mAudioOverlay = SVGParser.getSVGFromResource(res, ac.robinson.mediautilities.R.raw.overlay_audio).getPicture();
+			}
+			frameBitmapCanvas.drawPicture(mAudioOverlay, mRect);
+		}
+
+		// add an indicator to the narrative's first frame
+		if (indicatorText != null) {
+			res.getValue(R.dimen.frame_icon_indicator_text_maximum_width_factor, mResourceValue, true);
+			float textWidth = iconWidth * mResourceValue.getFloat();
+
+			frameBitmapPaint.setColor(res.getColor(R.color.frame_icon_indicator));
+			frameBitmapPaint.setStrokeWidth(1);
+			frameBitmapPaint.setStyle(Paint.Style.FILL);
+			frameBitmapPaint.setTextAlign(Align.LEFT);
+			frameBitmapPaint.setTypeface(mIndicatorTypeface);
+			frameBitmapPaint = BitmapUtilities.adjustTextSize(frameBitmapPaint, indicatorText.length(), 1, textWidth,
+					iconHeight, res.getDimensionPixelSize(R.dimen.frame_icon_indicator_maximum_text_size));
+
+			// the background line
+			mRect.set(0, 0, Math.round(indicatorWidth), iconHeight);
+			frameBitmapCanvas.drawRect(mRect, frameBitmapPaint);
+
+			// the background box
+			frameBitmapPaint.getTextBounds(indicatorText, 0, indicatorText.length(), mRect);
+			final int textBoundsWidth = mRect.width();
+			final int textBoundsHeight = mRect.height();
+			res.getValue(R.dimen.frame_icon_indicator_corner_radius, mResourceValue, true);
+			float cornerRadius = textBoundsHeight * mResourceValue.getFloat();
+			res.getValue(R.dimen.frame_icon_indicator_text_left_spacing_factor, mResourceValue, true);
+			float textLeft = indicatorWidth * mResourceValue.getFloat();
+			mRectF.set(0, 0, textLeft + textBoundsWidth + (textBoundsHeight / 2f), textBoundsHeight * 2);
+			frameBitmapCanvas.drawRoundRect(mRectF, cornerRadius, cornerRadius, frameBitmapPaint);
+
+			// the actual text
+			frameBitmapPaint.setColor(res.getColor(R.color.frame_icon_indicator_text));
+			frameBitmapCanvas.drawText(indicatorText, textLeft, textBoundsHeight + (textBoundsHeight / 2f),
+					frameBitmapPaint);
+		}
+
+		// PNG is much better for non-photo icons
+		if (!imageLoaded || imageIsPng) {
+			cacheTypeContainer.type = Bitmap.CompressFormat.PNG;
+		}
+
+		if (MediaPhone.DEBUG) {
+			String sourceCounts;
+			synchronized (sIconSourceCounts) {
+				sourceCounts = Arrays.toString(sIconSourceCounts);
+			}
+			Log.d(DebugUtilities.getLogTag(this), "Rendered frame icon in " + (SystemClock.elapsedRealtime() - startTime) +
+					" ms (image: " + (mLastIconSource != null ? mLastIconSource : "none") + ", text: " + textLoaded +
+					", audio: " + audioLoaded + "); images so far " + Arrays.toString(IconSource.values()) + ": " +
+					sourceCounts);
+		}
+		return frameBitmap;
+	}
+
+	/**
+	 * Draw a centre-cropped version of the given image or video item to fill the icon. Sources are tried in order of
+	 * cost: the icon-sized copy of the item saved the last time it was rendered, the photo's embedded EXIF thumbnail (if
+	 * it is large enough), and finally a sampled decode of the image (or extraction of a video frame). The image's size
+	 * and orientation come from its stored metadata (see {@link MediaManager#getMediaMetadata}).
+	 *
+	 * @return Whether the item could be loaded
+	 */
+	private boolean drawImage(Canvas canvas, ContentResolver contentResolver, MediaItem mediaItem, int iconWidth,
+							  int iconHeight) {
+		final File mediaFile = mediaItem.getFile();
+		final String mediaPath = mediaFile.getAbsolutePath();
+		final boolean isVideo = mediaItem.getType() == MediaPhoneProvider.TYPE_VIDEO;
+		final boolean isPng = "png".equalsIgnoreCase(mediaItem.getFileExtension());
+
+		// the intermediate is oriented and cropped, but has no background (to keep the transparency of PNG images)
+		final File iconSourceFile = new File(mediaFile.getParentFile(),
+				mediaItem.getInternalId() + ICON_SOURCE_SUFFIX + (isPng ? ".png" : ".jpg"));
+		if (drawIconSource(canvas, iconSourceFile, isPng, mediaFile.lastModified(), iconWidth, iconHeight)) {
+			countIconSource(IconSource.ICON_SOURCE);
+			return true;
+		}
+
+		int imageWidth = 0;
+		int imageHeight = 0;
+		int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+		if (!isVideo) {
+			// dimensions and orientation are normally already stored, so we don't need to decode the image's bounds
+			final MediaMetadata metadata = MediaManager.getMediaMetadata(contentResolver, mediaItem);
+			if (metadata == null) {
+				return false;
+			}
+			imageWidth = metadata.getWidth();
+			imageHeight = metadata.getHeight();
+			orientation = metadata.getOrientation();
+			if (imageWidth <= 0 || imageHeight <= 0) {
+				return false;
+			}
+
+			if ("image/jpeg".equals(metadata.getMimeType())) {
+				try {
+					ExifInterface exif = new ExifInterface(mediaPath);
+					if (drawExifThumbnail(canvas, exif, imageWidth, imageHeight, orientation, iconWidth, iconHeight)) {
+						countIconSource(IconSource.EXIF_THUMBNAIL);
+						return true;
+					}
+				} catch (IOException | RuntimeException ignored) {
+					// invalid or unreadable EXIF data - we can still decode the image itself
+				}
+			}
+		}
+
+		Bitmap iconSource = Bitmap.createBitmap(iconWidth, iconHeight, isPng ? Bitmap.Config.ARGB_8888 : mBitmapConfig);
+		Canvas iconSourceCanvas = new Canvas(iconSource);
+		final boolean loaded;
+		if (isVideo) {
+			loaded = drawVideoFrame(iconSourceCanvas, mediaPath, iconWidth, iconHeight);
+		} else {
+			loaded = drawDecodedImage(iconSourceCanvas, mediaPath, isPng, imageWidth, imageHeight, orientation,
+					iconWidth, iconHeight);
+		}
+		if (!loaded) {
+			iconSource.recycle();
+			countIconSource(IconSource.NONE);
+			return false;
+		}
+		countIconSource(isVideo ? IconSource.VIDEO_FRAME : IconSource.DECODED_IMAGE);
+
+		canvas.drawBitmap(iconSource, 0, 0, mImagePaint);
+		saveIconSource(iconSource, iconSourceFile, isPng);
+		iconSource.recycle();
+		return true;
+	}
+
+	/**
+	 * Draw the thumbnail embedded in a JPEG's EXIF data, if there is one, it is large enough to fill the icon, and it has
+	 * the same aspect ratio as the image (some cameras letterbox thumbnails, which would leave bars on the icon)
+	 */
+	private boolean drawExifThumbnail(Canvas canvas, ExifInterface exif, int imageWidth, int imageHeight,
+									  int orientation, int iconWidth, int iconHeight) {
+		if (!exif.hasThumbnail()) {
+			return false;
+		}
+		int[] thumbnailSize = getExifThumbnailSize(exif);
+		if (thumbnailSize != null) {
+			// check before decoding, where the size is known (it is not for thumbnails in some older formats)
+			if (!isUsableExifThumbnail(thumbnailSize[0], thumbnailSize[1], imageWidth, imageHeight, orientation,
+					iconWidth, iconHeight)) {
+				return false;
+			}
+		}
+
+		Bitmap thumbnail = exif.getThumbnailBitmap();
+		if (thumbnail == null) {
+			return false;
+		}
+		boolean usable = thumbnailSize != null ||
+				isUsableExifThumbnail(thumbnail.getWidth(), thumbnail.getHeight(), imageWidth, imageHeight, orientation,
+						iconWidth, iconHeight);
+		if (usable) {
+			drawCropped(canvas, thumbnail, getRotation(orientation), isMirrored(orientation), iconWidth, iconHeight);
+		}
+		thumbnail.recycle();
+		return usable;
+	}
+
+	private static int[] getExifThumbnailSize(ExifInterface exif) {
+		int width = exif.getAttributeInt(ExifInterface.TAG_THUMBNAIL_IMAGE_WIDTH, 0);
+		int height = exif.getAttributeInt(ExifInterface.TAG_THUMBNAIL_IMAGE_LENGTH, 0);
+		return width > 0 && height > 0 ? new int[]{ width, height } : null;
+	}
+
+	private static boolean isUsableExifThumbnail(int thumbnailWidth, int thumbnailHeight, int imageWidth,
+												 int imageHeight, int orientation, int iconWidth, int iconHeight) {
+		float imageAspect = imageWidth / (float) imageHeight;
+		float thumbnailAspect = thumbnailWidth / (float) thumbnailHeight;
+		if (Math.abs(thumbnailAspect - imageAspect) > EXIF_THUMBNAIL_ASPECT_TOLERANCE * imageAspect) {
+			return false;
+		}
+		final int rotation = getRotation(orientation);
+		final boolean rotated = rotation == 90 || rotation == 270;
+		final int targetWidth = rotated ? iconHeight : iconWidth;
+		final int targetHeight = rotated ? iconWidth : iconHeight;
+		float scale = Math.max(targetWidth / (float) thumbnailWidth, targetHeight / (float) thumbnailHeight);
+		return scale <= EXIF_THUMBNAIL_MAXIMUM_SCALE;
+	}
+
+	/**
+	 * Draw the icon-sized copy of an image that was saved when it was last rendered, if it is still up to date
+	 */
+	private boolean drawIconSource(Canvas canvas, File iconSourceFile, boolean isPng, long mediaModified, int iconWidth,
+								   int iconHeight) {
+		if (!iconSourceFile.exists() || iconSourceFile.lastModified() < mediaModified) {
+			return false; // never saved, or the media has been replaced since
+		}
+		mDecodeOptions.inSampleSize = 1;
+		final Bitmap iconSource = decodeFile(iconSourceFile.getAbsolutePath(), iconWidth, iconHeight,
+				isPng ? Bitmap.Config.ARGB_8888 : mBitmapConfig);
+		if (iconSource == null) {
+			return false;
+		}
+		final boolean usable = iconSource.getWidth() == iconWidth && iconSource.getHeight() == iconHeight;
+		if (usable) {
+			canvas.drawBitmap(iconSource, 0, 0, mImagePaint);
+		} // otherwise the icon size has changed - re-render (and replace the saved copy)
+		releaseDecodedBitmap(iconSource);
+		return usable;
+	}
+
+	private static void saveIconSource(Bitmap iconSource, File iconSourceFile, boolean isPng) {
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(iconSourceFile);
+			iconSource.compress(isPng ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, ICON_SOURCE_QUALITY,
+					outputStream);
+		} catch (IOException e) {
+			iconSourceFile.delete(); // not essential - we will just decode the image again next time
+		} finally {
+			IOUtilities.closeStream(outputStream);
+		}
+	}
+
+	/**
+	 * Delete any icon-sized copy of the given item. Only needed when an item's file is edited in place, because its
+	 * modification time may not change enough for the copy to be recognised as out of date.
+	 */
+	static void deleteIconSource(MediaItem mediaItem) {
+		final File mediaDirectory = mediaItem.getFile().getParentFile();
+		new File(mediaDirectory, mediaItem.getInternalId() + ICON_SOURCE_SUFFIX + ".jpg").delete();
+		new File(mediaDirectory, mediaItem.getInternalId() + ICON_SOURCE_SUFFIX + ".png").delete();
+	}
+
+	private boolean drawVideoFrame(Canvas canvas, String videoPath, int iconWidth, int iconHeight) {
+		// MINI_KIND: 512 x 384; MICRO_KIND: 96 x 96
+		Bitmap videoThumbnail = ThumbnailUtils.createVideoThumbnail(videoPath, MediaStore.Video.Thumbnails.MINI_KIND);
+		if (videoThumbnail == null) {
+			return false;
+		}
+		drawCropped(canvas, videoThumbnail, 0, false, iconWidth, iconHeight);
+		videoThumbnail.recycle();
+		return true;
+	}
+
+	private boolean drawDecodedImage(Canvas canvas, String imagePath, boolean isPng, int imageWidth, int imageHeight,
+									 int orientation, int iconWidth, int iconHeight) {
+		// work out the region of the (stored) image that will be visible once it is oriented and cropped to fill the icon
+		final int rotation = getRotation(orientation);
+		final boolean rotated = rotation == 90 || rotation == 270;
+		final int targetWidth = rotated ? iconHeight : iconWidth; // the icon's size in the stored image's orientation
+		final int targetHeight = rotated ? iconWidth : iconHeight;
+		final float scale = Math.max(targetWidth / (float) imageWidth, targetHeight / (float) imageHeight);
+		final int cropWidth = Math.min(imageWidth, Math.round(targetWidth / scale));
+		final int cropHeight = Math.min(imageHeight, Math.round(targetHeight / scale));
+		mRect.set((imageWidth - cropWidth) / 2, (imageHeight - cropHeight) / 2, 0, 0);
+		mRect.right = mRect.left + cropWidth;
+		mRect.bottom = mRect.top + cropHeight;
+
+		// sample down as far as possible without going below icon size
+		int sampleSize = 1;
+		while (cropWidth / (sampleSize * 2) >= targetWidth && cropHeight / (sampleSize * 2) >= targetHeight) {
+			sampleSize *= 2;
+		}
+		mDecodeOptions.inSampleSize = sampleSize;
+
+		// PNG images may be transparent, so must keep their alpha channel
+		Bitmap image = decodeRegion(imagePath, mRect, isPng ? Bitmap.Config.ARGB_8888 : mBitmapConfig);
+		if (image == null) {
+			return false;
+		}
+		drawCropped(canvas, image, rotation, isMirrored(orientation), iconWidth, iconHeight);
+		releaseDecodedBitmap(image);
+		return true;
+	}
+
+	static int getRotation(int orientation) {
+		switch (orientation) {
+			case ExifInterface.ORIENTATION_ROTATE_180:
+			case ExifInterface.ORIENTATION_FLIP_VERTICAL: // mirrored, then rotated 180
+				return 180;
+			case ExifInterface.ORIENTATION_ROTATE_90:
+			case ExifInterface.ORIENTATION_TRANSVERSE: // mirrored, then rotated 90
+				return 90;
+			case ExifInterface.ORIENTATION_ROTATE_270:
+			case ExifInterface.ORIENTATION_TRANSPOSE: // mirrored, then rotated 270
+				return 270;
+			default:
+				return 0;
+		}
+	}
+
+	static boolean isMirrored(int orientation) {
+		return orientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL ||
+				orientation == ExifInterface.ORIENTATION_FLIP_VERTICAL ||
+				orientation == ExifInterface.ORIENTATION_TRANSPOSE || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+	}
+
+	/**
+	 * Recycle a bitmap returned by {@link #decodeFile} or {@link #decodeRegion}, unless it is being kept for reuse
+	 */
+	private void releaseDecodedBitmap(Bitmap image) {
+		if (image != mDecodeBuffer) {
+			image.recycle();
+		}
+	}
+
+	/**
+	 * Keep a newly decoded bitmap so that it can be reused for subsequent decodes, replacing the previous buffer (which
+	 * is not in use: callers release each decoded bitmap before decoding the next)
+	 *
+	 * @param region The region the bitmap was decoded from, or null if it is (or may be) a whole-file decode
+	 */
+	private void keepDecodeBuffer(Bitmap image, Rect region) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || image == mDecodeBuffer) {
+			return;
+		}
+		if (mDecodeBuffer != null) {
+			mDecodeBuffer.recycle();
+		}
+		mDecodeBuffer = image;
+		if (region != null) {
+			mDecodeBufferRegion.set(region);
+		} else {
+			mDecodeBufferRegion.setEmpty();
+		}
+		mDecodeBufferSampleSize = mDecodeOptions.inSampleSize;
+	}
+
+	private void countIconSource(IconSource source) {
+		synchronized (sIconSourceCounts) {
+			sIconSourceCounts[source.ordinal()] += 1;
+		}
+		mLastIconSource = source;
+	}
+
+	/**
+	 * Decode a whole image at the sample size already set in mDecodeOptions, reusing mDecodeBuffer when it is large
+	 * enough and has the same config (BitmapFactory resizes a reused bitmap to the size it actually decodes)
+	 *
+	 * @param expectedWidth  The expected width of the decoded bitmap (used to check whether the buffer is large enough)
+	 * @param expectedHeight The expected height of the decoded bitmap
+	 */
+	private Bitmap decodeFile(String imagePath, int expectedWidth, int expectedHeight, Bitmap.Config config) {
+		mDecodeOptions.inPreferredConfig = config;
+		Bitmap image = null;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && mDecodeBuffer != null &&
+				mDecodeBuffer.getConfig() == config) {
+			final int bytesPerPixel = config == Bitmap.Config.RGB_565 ? 2 : 4;
+			if (mDecodeBuffer.getAllocationByteCount() >= (long) expectedWidth * expectedHeight * bytesPerPixel) {
+				mDecodeOptions.inBitmap = mDecodeBuffer;
+				try {
+					image = BitmapFactory.decodeFile(imagePath, mDecodeOptions);
+				} catch (IllegalArgumentException ignored) {
+					// the buffer could not be used for this image - try without it
+				}
+				mDecodeOptions.inBitmap = null;
+				if (image == mDecodeBuffer) {
+					mDecodeBufferRegion.setEmpty(); // now reconfigured to this image's size
+					mDecodeBufferSampleSize = mDecodeOptions.inSampleSize;
+					return image;
+				}
+			}
+		}
+		image = BitmapFactory.decodeFile(imagePath, mDecodeOptions);
+		if (image != null) {
+			keepDecodeBuffer(image, null);
+		}
+		return image;
+	}
+
+	/**
+	 * Decode the given region of an image at the sample size already set in mDecodeOptions, or the whole image if its
+	 * format does not support region decoding (drawCropped then crops it). Unlike BitmapFactory, the region decoder
+	 * never resizes or reconfigures a reused bitmap, and leaves any part of it that the region does not cover untouched,
+	 * so mDecodeBuffer is only reused when it was decoded from a region of exactly the same size, at the same sample
+	 * size and config, and the new region lies entirely within the image - the decoded bitmap then always fills it.
+	 */
+	private Bitmap decodeRegion(String imagePath, Rect region, Bitmap.Config config) {
+		mDecodeOptions.inPreferredConfig = config;
+		BitmapRegionDecoder regionDecoder = null;
+		try {
+			regionDecoder = BitmapRegionDecoder.newInstance(imagePath, false);
+			Bitmap image = null;
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && mDecodeBuffer != null &&
+					mDecodeBuffer.getConfig() == config && mDecodeBufferSampleSize == mDecodeOptions.inSampleSize &&
+					!mDecodeBufferRegion.isEmpty() && mDecodeBufferRegion.width() == region.width() &&
+					mDecodeBufferRegion.height() == region.height() && region.left >= 0 && region.top >= 0 &&
+					region.right <= regionDecoder.getWidth() && region.bottom <= regionDecoder.getHeight()) {
+				mDecodeOptions.inBitmap = mDecodeBuffer;
+				try {
+					image = regionDecoder.decodeRegion(region, mDecodeOptions);
+				} catch (IllegalArgumentException ignored) {
+					// the buffer could not be used for this image - try without it
+				}
+				mDecodeOptions.inBitmap = null;
+			}
+			if (image == null) {
+				image = regionDecoder.decodeRegion(region, mDecodeOptions);
+				if (image != null) {
+					keepDecodeBuffer(image, region);
+				}
+			}
+			return image;
+		} catch (IOException e) {
+			// not a format that supports region decoding - decode the whole (sampled) image, without reusing the buffer,
+			// as we don't know the image's size in advance
+			mDecodeOptions.inBitmap = null;
+			try {
+				return BitmapFactory.decodeFile(imagePath, mDecodeOptions);
+			} catch (IllegalArgumentException ignored) {
+				return null;
+			}
+		} catch (IllegalArgumentException e) {
+			return null; // the region is outside the image (e.g., outdated metadata)
+		} finally {
+			if (regionDecoder != null) {
+				regionDecoder.recycle();
+			}
+		}
+	}
+
+	/**
+	 * Draw the given bitmap, oriented, scaled and centred so that it fills the icon, cropping any excess
+	 */
+	private void drawCropped(Canvas canvas, Bitmap image, int rotation, boolean mirror, int iconWidth, int iconHeight) {
+		final boolean rotated = rotation == 90 || rotation == 270;
+		final float orientedWidth = rotated ? image.getHeight() : image.getWidth();
+		final float orientedHeight = rotated ? image.getWidth() : image.getHeight();
+		final float scale = Math.max(iconWidth / orientedWidth, iconHeight / orientedHeight);
+
+		mMatrix.setTranslate(-image.getWidth() / 2f, -image.getHeight() / 2f);
+		if (mirror) {
+			mMatrix.postScale(-1, 1);
+		}
+		mMatrix.postRotate(rotation);
+		mMatrix.postScale(scale, scale);
+		mMatrix.postTranslate(iconWidth / 2f, iconHeight / 2f);
+		canvas.drawBitmap(image, mMatrix, mImagePaint);
+	}
+
+	// TODO: note that this does not actually check the setting (because we have no context), but relies on whether the
+	//  custom font file exists. Can this be improved?
+	private Typeface getCustomTypeface(Resources res) {
+		File customFontFile = new File(MediaPhone.DIRECTORY_THUMBS, res.getString(R.string.key_custom_font));
+		final long fontModified = customFontFile.lastModified(); // 0 if the file does not exist
+		if (fontModified == 0) {
+			mCustomTypeface = null;
+		} else if (mCustomTypeface == null || fontModified != mCustomTypefaceModified) {
+			try {
+				mCustomTypeface = Typeface.createFromFile(customFontFile);
+			} catch (RuntimeException e) {
+				mCustomTypeface = null; // invalid font file - use the default
+			}
+		}
+		mCustomTypefaceModified = fontModified;
+		return mCustomTypeface;
+	}
+}
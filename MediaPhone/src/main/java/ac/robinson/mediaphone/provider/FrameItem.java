@@ -27,16 +27,8 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Paint.Align;
-import android.graphics.Rect;
-import android.graphics.RectF;
-import android.graphics.Typeface;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.util.TypedValue;
-
-import com.larvalabs.svgandroid.SVG;
-import com.larvalabs.svgandroid.SVGParser;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -44,7 +36,6 @@ import java.util.ArrayList;
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.R;
 import ac.robinson.util.BitmapUtilities;
-import ac.robinson.util.IOUtilities;
 import ac.robinson.util.ImageCacheUtilities;
 import androidx.annotation.NonNull;
 
@@ -141,7 +132,7 @@ public class FrameItem implements BaseColumns {
 	}
 
 	public static String getCacheId(String internalId) {
-		return internalId;
+		return FrameIconCache.getCacheId(internalId); // icons are versioned by the settings used to render them
 	}
 
 	public File getStorageDirectory() {
@@ -201,66 +192,6 @@ public class FrameItem implements BaseColumns {
 			return null;
 		}
 
-		Bitmap frameBitmap = null;
-		boolean imageLoaded = false;
-		boolean textLoaded = false;
-		boolean audioLoaded = false;
-		boolean imageIsPng = false;
-		String textString = "";
-		int iconWidth = res.getDimensionPixelSize(R.dimen.frame_icon_width);
-		int iconHeight = res.getDimensionPixelSize(R.dimen.frame_icon_height);
-
-		// load the image icon and prepare the other media items
-		for (MediaItem currentItem : frameComponents) {
-			int currentType = currentItem.getType();
-
-			if (!imageLoaded &&
-					(currentType == MediaPhoneProvider.TYPE_IMAGE_BACK || currentType == MediaPhoneProvider.TYPE_IMAGE_FRONT ||
-							currentType == MediaPhoneProvider.TYPE_VIDEO)) {
-
-				frameBitmap = currentItem.loadIcon(iconWidth, iconHeight);
-
-				if ("png".equalsIgnoreCase(currentItem.getFileExtension()) && frameBitmap != null) {
-					imageIsPng = true; // so we can use a PNG icon with PNG image content
-
-					// must remove transparency so the background doesn't show through the icon
-					Bitmap backgroundBitmap = Bitmap.createBitmap(iconWidth, iconHeight,
-							ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig);
-					backgroundBitmap.eraseColor(res.getColor(R.color.frame_icon_background));
-					Canvas backgroundCanvas = new Canvas(backgroundBitmap);
-					backgroundCanvas.drawBitmap(frameBitmap, 0, 0, new Paint());
-					backgroundCanvas = null;
-					frameBitmap = backgroundBitmap;
-				}
-				if (frameBitmap != null) {
-					imageLoaded = true;
-				}
-
-			} else if (currentType == MediaPhoneProvider.TYPE_AUDIO) {
-				audioLoaded = true;
-
-			} else if (!textLoaded && currentType == MediaPhoneProvider.TYPE_TEXT) {
-				textString = IOUtilities.getFileContents(currentItem.getFile().getAbsolutePath());
-				textLoaded = true;
-			}
-		}
-
-		// make sure we always have an icon, regardless of media
-		if (frameBitmap == null) {
-			frameBitmap = Bitmap.createBitmap(iconWidth, iconHeight, ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig);
-			frameBitmap.eraseColor(res.getColor(R.color.frame_icon_background));
-		}
-		TypedValue resourceValue = new TypedValue();
-		Canvas frameBitmapCanvas = new Canvas(frameBitmap);
-		int textColour = (imageLoaded ? res.getColor(R.color.frame_icon_text_with_image) :
-				res.getColor(R.color.frame_icon_text_no_image));
-		Paint frameBitmapPaint = BitmapUtilities.getPaint(textColour, 1);
-		final int bitmapWidth = frameBitmap.getWidth();
-		final int bitmapHeight = frameBitmap.getHeight();
-		final int borderWidth = res.getDimensionPixelSize(R.dimen.frame_icon_border_width);
-		res.getValue(R.dimen.frame_icon_indicator_width_factor, resourceValue, true);
-		float indicatorWidth = bitmapWidth * resourceValue.getFloat();
-
 		boolean isFirstFrame = false;
 		if (mNarrativeSequenceId == 0) {
 			isFirstFrame = true;
@@ -271,65 +202,8 @@ public class FrameItem implements BaseColumns {
 			}
 		}
 
-		// add the text overlay
-		if (textLoaded) {
-			frameBitmapPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.NORMAL));
-
-			int textPadding = res.getDimensionPixelSize(R.dimen.frame_icon_text_padding);
-			int textCornerRadius = res.getDimensionPixelSize(R.dimen.frame_icon_text_corner_radius);
-			int textBackgroundColour = imageLoaded ? res.getColor(R.color.frame_icon_text_background) : 0;
-			float leftOffset = isFirstFrame ? indicatorWidth : 0;
-			int maxTextHeight = (imageLoaded ?
-					(bitmapHeight * res.getInteger(R.integer.frame_icon_maximum_text_percentage_height_with_image) / 100) :
-					bitmapHeight);
-
-			// TODO: note that this does not actually check the setting (because we have no context), but relies on whether the
-			//  custom font file exists. Can this be improved?
-			File customFontFile = new File(MediaPhone.DIRECTORY_THUMBS, res.getString(R.string.key_custom_font));
-			Typeface textTypeface = null;
-			if (customFontFile.exists()) {
-				textTypeface = Typeface.createFromFile(customFontFile);
-			}
-			BitmapUtilities.drawScaledText(textString, frameBitmapCanvas, frameBitmapPaint, textColour, textBackgroundColour,
-					textPadding, textCornerRadius, imageLoaded, leftOffset, true, maxTextHeight,
-					res.getDimensionPixelSize(R.dimen.frame_icon_maximum_text_size), textTypeface);
-
-			// add border if there's no image (looks much tidier)
-			if (!imageLoaded) {
-				BitmapUtilities.addBorder(frameBitmapCanvas, frameBitmapPaint, borderWidth,
-						res.getColor(R.color.frame_icon_border));
-			}
-		}
-
-		// add the audio overlay
-		if (audioLoaded) {
-			Rect drawRect;
-			if (!imageLoaded && !textLoaded) {
-				BitmapUtilities.addBorder(frameBitmapCanvas, frameBitmapPaint, borderWidth,
-						res.getColor(R.color.frame_icon_border));
-
-				res.getValue(R.dimen.frame_icon_scale_factor, resourceValue, true);
-				float scaleFactor = resourceValue.getFloat();
-				int iconLeft = Math.round((bitmapWidth - (bitmapWidth * scaleFactor)) / 2);
-				int iconTop = Math.round((bitmapHeight - (bitmapHeight * scaleFactor)) / 2);
-				drawRect = new Rect(iconLeft, iconTop, bitmapWidth - iconLeft, bitmapHeight - iconTop);
-			} else {
-				res.getValue(R.dimen.frame_icon_overlay_scale_factor, resourceValue, true);
-				float scaleFactor = resourceValue.getFloat();
-				res.getValue(R.dimen.frame_icon_overlay_spacing_factor, resourceValue, true);
-				float spacingFactor = resourceValue.getFloat();
-				int iconSpacingRight = Math.round(bitmapWidth * spacingFactor);
-				int iconSpacingTop = Math.round(bitmapHeight * spacingFactor);
-				drawRect = new Rect(bitmapWidth - Math.round(bitmapWidth * scaleFactor) - iconSpacingRight, iconSpacingTop,
-						bitmapWidth - iconSpacingRight, iconSpacingTop + Math.round(bitmapHeight * scaleFactor));
-			}
-
-			// using SVG so that we don't need resolution-specific icons
-			SVG audioSVG = SVGParser.getSVGFromResource(res, ac.robinson.mediautilities.R.raw.overlay_audio);
-			frameBitmapCanvas.drawPicture(audioSVG.getPicture(), drawRect);
-		}
-
 		// so we can add an indicator to the frame at position 0
+		String narrativeSequenceNumber = null;
 		if (isFirstFrame) {
 			// must deal with both narratives and templates
 			NarrativeItem parentNarrative = NarrativesManager.findNarrativeByInternalId(contentResolver, mParentId);
@@ -342,46 +216,13 @@ public class FrameItem implements BaseColumns {
 					isTemplate = false;
 				}
 			}
-			String narrativeSequenceNumber = res.getString(
+			narrativeSequenceNumber = res.getString(
 					isTemplate ? R.string.template_browser_list_item : R.string.narrative_browser_list_item,
 					parentNarrative.getSequenceId());
-			res.getValue(R.dimen.frame_icon_indicator_text_maximum_width_factor, resourceValue, true);
-			float textWidth = bitmapWidth * resourceValue.getFloat();
-
-			frameBitmapPaint.setColor(res.getColor(R.color.frame_icon_indicator));
-			frameBitmapPaint.setStrokeWidth(1);
-			frameBitmapPaint.setStyle(Paint.Style.FILL);
-			frameBitmapPaint.setTextAlign(Align.LEFT);
-			frameBitmapPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
-			frameBitmapPaint = BitmapUtilities.adjustTextSize(frameBitmapPaint, narrativeSequenceNumber.length(), 1, textWidth,
-					bitmapHeight, res.getDimensionPixelSize(R.dimen.frame_icon_indicator_maximum_text_size));
-
-			// the background line
-			frameBitmapCanvas.drawRect(new Rect(0, 0, Math.round(indicatorWidth), frameBitmap.getHeight()), frameBitmapPaint);
-
-			// the background box
-			Rect textBounds = new Rect();
-			frameBitmapPaint.getTextBounds(narrativeSequenceNumber, 0, narrativeSequenceNumber.length(), textBounds);
-			res.getValue(R.dimen.frame_icon_indicator_corner_radius, resourceValue, true);
-			float cornerRadius = textBounds.height() * resourceValue.getFloat();
-			res.getValue(R.dimen.frame_icon_indicator_text_left_spacing_factor, resourceValue, true);
-			float textLeft = indicatorWidth * resourceValue.getFloat();
-			frameBitmapCanvas.drawRoundRect(
-					new RectF(0, 0, textLeft + textBounds.width() + (textBounds.height() / 2f), textBounds.height() * 2),
-					cornerRadius, cornerRadius, frameBitmapPaint);
-
-			// the actual text
-			frameBitmapPaint.setColor(res.getColor(R.color.frame_icon_indicator_text));
-			frameBitmapCanvas.drawText(narrativeSequenceNumber, textLeft, textBounds.height() + (textBounds.height() / 2f),
-					frameBitmapPaint);
-		}
-
-		// PNG is much better for non-photo icons
-		if (!imageLoaded || (imageLoaded && imageIsPng)) {
-			cacheTypeContainer.type = Bitmap.CompressFormat.PNG;
 		}
 
-		return frameBitmap;
+		return FrameIconRenderer.getInstance().renderIcon(res, contentResolver, frameComponents,
+				narrativeSequenceNumber, cacheTypeContainer);
 	}
 
 	public static Bitmap loadTemporaryIcon(Resources res, boolean addBorder) {
@@ -406,25 +247,15 @@ public class FrameItem implements BaseColumns {
 		if (frame != null) {
 			String parentId = frame.getParentId();
 			if (parentId != null) {
-				ArrayList<String> frameIds = FramesManager.findFrameIdsByParentId(contentResolver, parentId);
-				int framesSize = frameIds.size() - 1;
-				if (framesSize > 0) {
-					int i = 0;
-					for (String id : frameIds) {
-						if (frameId.equals(id)) {
-							if (i > 0) {
-								if (i < framesSize) {
-									return NavigationMode.BOTH;
-								} else {
-									return NavigationMode.PREVIOUS;
-								}
-							} else {
-								return NavigationMode.NEXT;
-							}
-						}
-						i += 1;
-					}
-					return NavigationMode.BOTH; // somehow we didn't find the right frame - allow both ways
+				// only the immediate neighbours are needed, so there's no need to load the whole narrative
+				final boolean hasPrevious = FramesManager.findPreviousFrameId(contentResolver, frame) != null;
+				final boolean hasNext = FramesManager.findNextFrameId(contentResolver, frame) != null;
+				if (hasPrevious && hasNext) {
+					return NavigationMode.BOTH;
+				} else if (hasPrevious) {
+					return NavigationMode.PREVIOUS;
+				} else if (hasNext) {
+					return NavigationMode.NEXT;
 				}
 				return NavigationMode.NONE;
 			}
@@ -20,26 +20,44 @@
 
 package ac.robinson.mediaphone.provider;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
 
 import java.util.ArrayList;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.R;
 import ac.robinson.util.BitmapUtilities.CacheTypeContainer;
+import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.ImageCacheUtilities;
 
 public class FramesManager {
 
-	private static final String[] mArguments1 = new String[1];
+	private static final String MIN_SEQUENCE_ID = "min_sequence_id";
+	private static final String[] PROJECTION_MIN_SEQUENCE_ID = new String[]{
+			"MIN(" + FrameItem.SEQUENCE_ID + ") as " + MIN_SEQUENCE_ID
+	};
+	private static final String[] PROJECTION_INTERNAL_AND_SEQUENCE_ID = new String[]{
+			FrameItem.INTERNAL_ID, FrameItem.SEQUENCE_ID
+	};
 
 	private static final String mFrameInternalIdSelection;
 	private static final String mFrameParentIdSelection;
+	private static final String mFrameParentIdAndSequenceIdSelection;
+	private static final String mFrameParentIdAndPreviousSequenceIdSelection;
 	private static final String mDeletedSelection;
+	private static final String mNotDeletedSelection;
+
+	private static final String PREVIOUS_FRAME_SORT_ORDER = FrameItem.SEQUENCE_ID + " DESC";
 
 	static {
 		StringBuilder selection = new StringBuilder();
@@ -56,10 +74,37 @@ public class FramesManager {
 		selection.append(')');
 		mFrameParentIdSelection = selection.toString();
 
+		selection.setLength(0);
+		selection.append('(');
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append("=? AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append(">?");
+		selection.append(')');
+		mFrameParentIdAndSequenceIdSelection = selection.toString();
+
+		selection.setLength(0);
+		selection.append('(');
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append("=? AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append("<?");
+		selection.append(')');
+		mFrameParentIdAndPreviousSequenceIdSelection = selection.toString();
+
 		selection.setLength(0);
 		selection.append(FrameItem.DELETED);
 		selection.append("!=0");
 		mDeletedSelection = selection.toString();
+
+		selection.setLength(0);
+		selection.append(FrameItem.DELETED);
+		selection.append("=0");
+		mNotDeletedSelection = selection.toString();
 	}
 
 	/**
@@ -130,10 +175,10 @@ public class FramesManager {
 	 * approach speeds up interaction and means that we only need one background thread semi-regularly for deletion
 	 */
 	public static boolean deleteFrameFromBackgroundTask(ContentResolver contentResolver, String frameId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = frameId;
-		int count = contentResolver.delete(FrameItem.CONTENT_URI, mFrameInternalIdSelection, mArguments1);
-		ImageCacheUtilities.deleteCachedIcon(FrameItem.getCacheId(frameId));
+		int count = contentResolver.delete(FrameItem.CONTENT_URI, mFrameInternalIdSelection, arguments1);
+		FrameIconCache.deleteIcons(frameId); // all generations - deleted frames' old icons are never replaced
 		return count > 0;
 	}
 
@@ -142,11 +187,15 @@ public class FramesManager {
 	}
 
 	public static boolean updateFrame(Resources resources, ContentResolver contentResolver, FrameItem frame, boolean reloadIcon) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = frame.getInternalId();
 		int count = contentResolver.update(FrameItem.CONTENT_URI, frame.getContentValues(), mFrameInternalIdSelection,
 				arguments1);
 		if (count == 1) {
+			if (frame.getDeleted()) {
+				// deleted frames are not renumbered, so any spanning media must not end at this frame's position any more
+				MediaManager.removeFrameFromMediaSpans(contentResolver, frame.getInternalId());
+			}
 			if (reloadIcon) {
 				ImageCacheUtilities.deleteCachedIcon(frame.getCacheId());
 				reloadFrameIcon(resources, contentResolver, frame, true);
@@ -157,7 +206,7 @@ public class FramesManager {
 	}
 
 	public static FrameItem findFrameByInternalId(ContentResolver contentResolver, String internalId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = internalId;
 		return findFrame(contentResolver, mFrameInternalIdSelection, arguments1);
 	}
@@ -173,7 +222,7 @@ public class FramesManager {
 	}
 
 	public static ArrayList<FrameItem> findFramesByParentId(ContentResolver contentResolver, String parentId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = parentId;
 		final ArrayList<FrameItem> frames = new ArrayList<>();
 		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_ALL, mFrameParentIdSelection,
@@ -192,7 +241,7 @@ public class FramesManager {
 
 	public static ArrayList<String> findFrameIdsByParentId(ContentResolver contentResolver, String parentId) {
 		final String[] arguments;
-		arguments = mArguments1;
+		arguments = new String[1];
 		arguments[0] = parentId;
 		final ArrayList<String> frameIds = new ArrayList<>();
 		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, mFrameParentIdSelection,
@@ -210,7 +259,7 @@ public class FramesManager {
 	}
 
 	public static FrameItem findFirstFrameByParentId(ContentResolver contentResolver, String parentId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = parentId;
 		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_ALL, mFrameParentIdSelection,
 				arguments1,
@@ -223,7 +272,7 @@ public class FramesManager {
 	}
 
 	public static String findLastFrameByParentId(ContentResolver contentResolver, String parentId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = parentId;
 		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, mFrameParentIdSelection,
 				arguments1, FrameItem.DEFAULT_SORT_ORDER)) {
@@ -236,7 +285,7 @@ public class FramesManager {
 	}
 
 	public static int countFramesByParentId(ContentResolver contentResolver, String parentId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = parentId;
 		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, mFrameParentIdSelection,
 				arguments1, FrameItem.DEFAULT_SORT_ORDER)) {
@@ -263,103 +312,355 @@ public class FramesManager {
 	}
 
 	/**
-	 * Returns a list of the frame ids following the given frame id. If includePrevious is set then the frame before the
-	 * given frame will also be included. If not then the list will start from one after the current frame. If
-	 * includePrevious is true, the first element of the returned list may be null (as the start frame could be the
-	 * first frame of the narrative).
+	 * @return The ids of every frame that has not been deleted, most recently created first
+	 */
+	public static ArrayList<String> findAllFrameIds(ContentResolver contentResolver) {
+		final ArrayList<String> frameIds = new ArrayList<>();
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, mNotDeletedSelection,
+				null, FrameItem.DATE_CREATED + " DESC")) {
+			assert c != null;
+			if (c.getCount() > 0) {
+				final int columnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
+				while (c.moveToNext()) {
+					frameIds.add(c.getString(columnIndex));
+				}
+			}
+		}
+		return frameIds;
+	}
+
+	/**
+	 * Returns a list of the frame ids following (and not including) the given frame id, in narrative order.
 	 *
-	 * @param includeCurrentAndPrevious Whether to include the previous frame in the list as well
+	 * @return The following frame ids, or null if the given frame does not exist
 	 */
-	public static ArrayList<String> getFollowingFrameIds(ContentResolver contentResolver, String frameId,
-														 boolean includeCurrentAndPrevious) {
+	public static ArrayList<String> getFollowingFrameIds(ContentResolver contentResolver, String frameId) {
 		if (frameId == null) {
 			return null;
 		}
 		FrameItem parentFrame = findFrameByInternalId(contentResolver, frameId);
-		return getFollowingFrameIds(contentResolver, parentFrame, includeCurrentAndPrevious);
+		return getFollowingFrameIds(contentResolver, parentFrame);
 	}
 
-	public static ArrayList<String> getFollowingFrameIds(ContentResolver contentResolver, FrameItem parentFrame,
-														 boolean includePrevious) {
+	public static ArrayList<String> getFollowingFrameIds(ContentResolver contentResolver, FrameItem parentFrame) {
 		if (parentFrame == null) {
 			return null;
 		}
 
-		final String parentFrameId = parentFrame.getInternalId();
-		ArrayList<String> narrativeFrameIds = findFrameIdsByParentId(contentResolver, parentFrame.getParentId());
-		ArrayList<String> idsToRemove = new ArrayList<>();
-
-		// used to use an iterator here, but it turns out that remove() can fail silently (!)
-		String previousFrameId = null;
-		for (final String frameId : narrativeFrameIds) {
-			idsToRemove.add(frameId);
-			if (parentFrameId.equals(frameId)) {
-				break;
+		final ArrayList<String> frameIds = new ArrayList<>();
+		try (Cursor c = getFollowingFramesCursor(contentResolver, parentFrame)) {
+			if (c != null && c.getCount() > 0) {
+				final int columnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
+				while (c.moveToNext()) {
+					frameIds.add(c.getString(columnIndex));
+				}
 			}
-			previousFrameId = frameId;
 		}
+		return frameIds;
+	}
+
+	/**
+	 * Gets a cursor over the ids of the frames following (and not including) the given frame, in narrative order. Useful
+	 * when the caller is likely to stop before the end of the narrative, as only the rows that are read are loaded. The
+	 * caller is responsible for closing the cursor.
+	 */
+	public static Cursor getFollowingFramesCursor(ContentResolver contentResolver, FrameItem parentFrame) {
+		final String[] arguments2 = new String[]{
+				parentFrame.getParentId(), Integer.toString(parentFrame.getNarrativeSequenceId())
+		};
+		return contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID,
+				mFrameParentIdAndSequenceIdSelection, arguments2, FrameItem.DEFAULT_SORT_ORDER);
+	}
+
+	/**
+	 * @return The id of the frame immediately before the given frame in its narrative, or null if it is the first frame
+	 */
+	public static String findPreviousFrameId(ContentResolver contentResolver, FrameItem frame) {
+		return findAdjacentFrameId(contentResolver, frame, mFrameParentIdAndPreviousSequenceIdSelection,
+				PREVIOUS_FRAME_SORT_ORDER);
+	}
 
-		// remove irrelevant frames; preserve previous if necessary
-		if (includePrevious) {
-			idsToRemove.remove(previousFrameId);
+	/**
+	 * @return The id of the frame immediately after the given frame in its narrative, or null if it is the last frame
+	 */
+	public static String findNextFrameId(ContentResolver contentResolver, FrameItem frame) {
+		return findAdjacentFrameId(contentResolver, frame, mFrameParentIdAndSequenceIdSelection,
+				FrameItem.DEFAULT_SORT_ORDER);
+	}
+
+	private static String findAdjacentFrameId(ContentResolver contentResolver, FrameItem frame, String clause,
+											  String sortOrder) {
+		if (frame == null) {
+			return null;
 		}
-		narrativeFrameIds.removeAll(idsToRemove);
-		if (includePrevious && previousFrameId == null) {
-			narrativeFrameIds.add(0, null); // need this null to show that no previous frame is present
+		final String[] arguments2 = new String[2];
+		arguments2[0] = frame.getParentId();
+		arguments2[1] = Integer.toString(frame.getNarrativeSequenceId());
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, clause, arguments2,
+				sortOrder)) {
+			if (c != null && c.moveToFirst()) {
+				return c.getString(c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID));
+			}
 		}
-		return narrativeFrameIds;
+		return null;
 	}
 
 	/**
-	 * Used for inserting a new frame - given the narrative id and the desired before or after frame id (not both) this
-	 * function will adjust existing frames and return the new frame sequence id, which must be updated into the frame
-	 * by the caller. Note: the new frame must have already been added to the database.
+	 * Used for inserting a new frame - given the narrative id and the frame id to insert after (or
+	 * {@link FrameItem#KEY_FRAME_ID_START} to insert at the start), this function will return the new frame sequence id,
+	 * which must be updated into the frame by the caller. Note: if the new frame has already been added to the database it
+	 * must have a negative sequence id, so that it is ignored here.
+	 * <p>
+	 * Sequence ids are sparse (frame_narrative_sequence_increment apart when created), so in the usual case the new frame
+	 * is given an id between those of its neighbours and no other frames are changed. When inserting at the start, the
+	 * previous first frame is moved towards its next neighbour to make space. Only when there is no space left between
+	 * the neighbouring frames are the narrative's frames renumbered, which is done in a single transaction.
 	 *
-	 * @return The sequence id that should be used for the new frame
+	 * @return The sequence id that should be used for the new frame, or -1 if no position could be allocated (in which
+	 * case the new frame must not be inserted, as it would share a position with an existing frame)
 	 */
 	public static int adjustNarrativeSequenceIds(Resources res, ContentResolver contentResolver, String narrativeId,
 												 String insertAfterId) {
-		// note: not a background task any more, because it causes concurrency problems with deleting after back press
-		int narrativeSequenceIdIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
-		int narrativeSequenceId = 0;
-
-		// insert new frame - increment necessary frames after the new frame's position
-		boolean insertAtStart = FrameItem.KEY_FRAME_ID_START.equals(insertAfterId);
-		ArrayList<FrameItem> narrativeFrames = FramesManager.findFramesByParentId(contentResolver, narrativeId);
-		narrativeFrames.remove(0); // don't edit the newly inserted frame yet
-
-		int previousNarrativeSequenceId = -1;
-		boolean frameFound = false;
-		for (FrameItem frame : narrativeFrames) {
-			if (!frameFound && insertAtStart) {
-				frameFound = true;
-				narrativeSequenceId = frame.getNarrativeSequenceId();
+		final int[] narrativeSequenceIds = allocateNarrativeSequenceIds(res, contentResolver, narrativeId,
+				insertAfterId, 1);
+		return narrativeSequenceIds == null ? -1 : narrativeSequenceIds[0];
+	}
+
+	/**
+	 * As {@link #adjustNarrativeSequenceIds}, but for inserting a run of frameCount consecutive new frames at once
+	 *
+	 * @return The sequence ids that should be used for the new frames, in order, or null if no positions could be
+	 * allocated
+	 */
+	public static int[] allocateNarrativeSequenceIds(Resources res, ContentResolver contentResolver, String narrativeId,
+													 String insertAfterId, int frameCount) {
+		// note: not a background task, because it causes concurrency problems with deleting after back press
+		final int narrativeSequenceIdIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
+
+		// the first frame is the only one that may have a sequence id of 0 (see FrameItem.loadIcon), so -1 is the lower bound
+		int previousSequenceId = -1;
+		String previousFirstFrameId = null;
+		if (!FrameItem.KEY_FRAME_ID_START.equals(insertAfterId)) {
+			FrameItem previousFrame = findFrameByInternalId(contentResolver, insertAfterId);
+			if (previousFrame != null && previousFrame.getNarrativeSequenceId() >= 0) {
+				previousSequenceId = previousFrame.getNarrativeSequenceId();
 			}
-			if (frameFound) {
-				int currentNarrativeSequenceId = frame.getNarrativeSequenceId();
-				if (currentNarrativeSequenceId <= narrativeSequenceId ||
-						currentNarrativeSequenceId <= previousNarrativeSequenceId) {
-
-					frame.setNarrativeSequenceId(currentNarrativeSequenceId +
-							Math.max(narrativeSequenceId - currentNarrativeSequenceId,
-									previousNarrativeSequenceId - currentNarrativeSequenceId) + 1);
-					if (insertAtStart) {
-						FramesManager.updateFrame(res, contentResolver, frame, true); // TODO: background task?
-						insertAtStart = false;
-					} else {
-						FramesManager.updateFrame(contentResolver, frame);
+		}
+		if (previousSequenceId < 0) {
+			previousFirstFrameId = findFirstPositionedFrameId(contentResolver, narrativeId);
+		}
+
+		final int[] narrativeSequenceIds = new int[frameCount];
+		final String[] arguments2 = new String[2];
+		arguments2[0] = narrativeId;
+		arguments2[1] = Integer.toString(previousSequenceId);
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, PROJECTION_MIN_SEQUENCE_ID,
+				mFrameParentIdAndSequenceIdSelection, arguments2, null)) {
+			if (c != null && c.moveToFirst() && !c.isNull(0)) {
+				final int nextSequenceId = c.getInt(c.getColumnIndexOrThrow(MIN_SEQUENCE_ID));
+				if (nextSequenceId - previousSequenceId > frameCount) {
+					// spread the new frames evenly between their neighbours
+					final int step = (nextSequenceId - previousSequenceId) / (frameCount + 1);
+					for (int i = 0; i < frameCount; i++) {
+						narrativeSequenceIds[i] = previousSequenceId + (step * (i + 1));
+					}
+				} else if (previousSequenceId < 0 && previousFirstFrameId != null &&
+						moveFirstFrameSequenceId(contentResolver, narrativeId, previousFirstFrameId, nextSequenceId,
+								frameCount, narrativeSequenceIdIncrement, narrativeSequenceIds)) {
+					if (MediaPhone.DEBUG) {
+						Log.d(DebugUtilities.getLogTag(narrativeId), "Moved first frame to make space at start");
 					}
-					previousNarrativeSequenceId = frame.getNarrativeSequenceId();
 				} else {
-					break;
+					final int firstSequenceId = renumberNarrativeSequenceIds(contentResolver, narrativeId, previousSequenceId,
+							frameCount, narrativeSequenceIdIncrement);
+					if (firstSequenceId < 0) {
+						return null; // the icon of the previous first frame has not changed, as nothing was inserted
+					}
+					for (int i = 0; i < frameCount; i++) {
+						narrativeSequenceIds[i] = firstSequenceId + (i * narrativeSequenceIdIncrement);
+					}
+				}
+			} else {
+				// inserting at the end (or into an empty narrative)
+				final int firstSequenceId = previousSequenceId < 0 ? 0 :
+						previousSequenceId + narrativeSequenceIdIncrement;
+				for (int i = 0; i < frameCount; i++) {
+					narrativeSequenceIds[i] = firstSequenceId + (i * narrativeSequenceIdIncrement);
+				}
+			}
+		}
+
+		// the previous first frame's icon includes the narrative number, but that frame is no longer first
+		if (previousFirstFrameId != null) {
+			ImageCacheUtilities.deleteCachedIcon(FrameItem.getCacheId(previousFirstFrameId));
+			reloadFrameIcon(res, contentResolver, previousFirstFrameId); // TODO: background task?
+		}
+
+		return narrativeSequenceIds;
+	}
+
+	/**
+	 * Make space at the start of a narrative by moving only its first frame towards the second (rather than renumbering
+	 * every frame), so that the new frames can take over the first frame's position. Negative ids are not an option
+	 * here, as they are used for frames that have not yet been positioned.
+	 *
+	 * @param narrativeSequenceIds Filled with the sequence ids that should be used for the new frames, in order
+	 * @return true if the first frame was moved; false if there was not enough space to do so
+	 */
+	private static boolean moveFirstFrameSequenceId(ContentResolver contentResolver, String narrativeId,
+													String firstFrameId, int firstSequenceId, int frameCount,
+													int narrativeSequenceIdIncrement, int[] narrativeSequenceIds) {
+		int secondSequenceId = firstSequenceId + ((frameCount + 1) * narrativeSequenceIdIncrement); // if only one frame
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, PROJECTION_MIN_SEQUENCE_ID,
+				mFrameParentIdAndSequenceIdSelection, new String[]{ narrativeId, Integer.toString(firstSequenceId) },
+				null)) {
+			if (c != null && c.moveToFirst() && !c.isNull(0)) {
+				secondSequenceId = c.getInt(c.getColumnIndexOrThrow(MIN_SEQUENCE_ID));
+			}
+		}
+		if (secondSequenceId - firstSequenceId <= frameCount) {
+			return false;
+		}
+
+		final int step = (secondSequenceId - firstSequenceId) / (frameCount + 1);
+		final ContentValues values = new ContentValues();
+		values.put(FrameItem.SEQUENCE_ID, firstSequenceId + (step * frameCount));
+		if (contentResolver.update(FrameItem.CONTENT_URI, values, mFrameInternalIdSelection,
+				new String[]{ firstFrameId }) != 1) {
+			return false;
+		}
+		for (int i = 0; i < frameCount; i++) {
+			narrativeSequenceIds[i] = firstSequenceId + (step * i);
+		}
+		return true;
+	}
+
+	private static String findFirstPositionedFrameId(ContentResolver contentResolver, String narrativeId) {
+		final String[] arguments2 = new String[2];
+		arguments2[0] = narrativeId;
+		arguments2[1] = "-1"; // ignore any new frames
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID,
+				mFrameParentIdAndSequenceIdSelection, arguments2, FrameItem.DEFAULT_SORT_ORDER)) {
+			if (c != null && c.moveToFirst()) {
+				return c.getString(c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Space out the sequence ids of a narrative's frames by the given increment, leaving a gap after previousSequenceId
+	 * for frameCount new frames. All updates are applied in a single transaction. Frames do not change order, so icons
+	 * are not affected.
+	 *
+	 * @return The sequence id that should be used for the first new frame (subsequent frames follow at the same
+	 * increment), or -1 if renumbering failed
+	 */
+	private static int renumberNarrativeSequenceIds(ContentResolver contentResolver, String narrativeId,
+													int previousSequenceId, int frameCount,
+													int narrativeSequenceIdIncrement) {
+		final String[] arguments2 = new String[2];
+		arguments2[0] = narrativeId;
+		arguments2[1] = "-1"; // ignore any new frames
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		int newFrameSequenceId = -1;
+		int currentSequenceId = 0;
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, PROJECTION_INTERNAL_AND_SEQUENCE_ID,
+				mFrameParentIdAndSequenceIdSelection, arguments2, FrameItem.DEFAULT_SORT_ORDER)) {
+			if (c != null) {
+				final int idColumnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
+				final int sequenceColumnIndex = c.getColumnIndexOrThrow(FrameItem.SEQUENCE_ID);
+				while (c.moveToNext()) {
+					final int existingSequenceId = c.getInt(sequenceColumnIndex);
+					if (newFrameSequenceId < 0 && existingSequenceId > previousSequenceId) {
+						newFrameSequenceId = currentSequenceId; // reserve these positions for the new frames
+						currentSequenceId += frameCount * narrativeSequenceIdIncrement;
+					}
+					if (existingSequenceId != currentSequenceId) {
+						operations.add(ContentProviderOperation.newUpdate(FrameItem.CONTENT_URI)
+								.withSelection(mFrameInternalIdSelection, new String[]{ c.getString(idColumnIndex) })
+								.withValue(FrameItem.SEQUENCE_ID, currentSequenceId)
+								.build());
+					}
+					currentSequenceId += narrativeSequenceIdIncrement;
 				}
 			}
-			if (!frameFound && frame.getInternalId().equals(insertAfterId)) {
-				frameFound = true;
-				narrativeSequenceId = frame.getNarrativeSequenceId() + narrativeSequenceIdIncrement;
+		}
+		if (newFrameSequenceId < 0) {
+			newFrameSequenceId = currentSequenceId; // nothing after the new frames - only possible if frames changed meanwhile
+		}
+
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(narrativeId), "Renumbering " + operations.size() + " frame sequence ids");
+		}
+		try {
+			contentResolver.applyBatch(MediaPhoneProvider.URI_AUTHORITY, operations);
+		} catch (RemoteException | OperationApplicationException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(narrativeId), "Unable to renumber frames: " + e.getLocalizedMessage());
 			}
+			return -1; // the new frames would share positions with existing frames, so they must not be inserted
 		}
+		return newFrameSequenceId;
+	}
 
-		return narrativeSequenceId;
+	/**
+	 * After inserting frames (e.g., via addFramesWithMedia) part-way through a narrative, end any spanning media that
+	 * they inherit but replace with their own media - see {@link MediaManager#endInheritedMediaSpans}
+	 *
+	 * @return The ids of the existing frames that no longer inherit media, and whose icons should be reloaded
+	 */
+	public static ArrayList<String> endReplacedMediaSpans(ContentResolver contentResolver,
+														  ArrayList<FrameItem> newFrames) {
+		final ArrayList<String> changedFrameIds = new ArrayList<>();
+		for (FrameItem frame : newFrames) {
+			changedFrameIds.addAll(MediaManager.endInheritedMediaSpans(contentResolver, frame.getInternalId()));
+		}
+		for (FrameItem frame : newFrames) {
+			changedFrameIds.remove(frame.getInternalId()); // new frames' icons are loaded by the caller
+		}
+		return changedFrameIds;
+	}
+
+	/**
+	 * Insert a set of new frames and their media in a single transaction; icons are not loaded
+	 *
+	 * @return true if all items were inserted, false otherwise (in which case none were)
+	 */
+	public static boolean addFramesWithMedia(ContentResolver contentResolver, ArrayList<FrameItem> frames,
+											 ArrayList<MediaItem> media) {
+		return addFramesWithMedia(contentResolver, frames, media, null);
+	}
+
+	/**
+	 * Insert a set of new frames and their media, followed by their (new) parent narrative, in a single transaction
+	 *
+	 * @param narrative The narrative to add after the frames and media, or null if the frames are part of an existing one
+	 * @return true if all items were inserted, false otherwise (in which case none were)
+	 */
+	public static boolean addFramesWithMedia(ContentResolver contentResolver, ArrayList<FrameItem> frames,
+											 ArrayList<MediaItem> media, NarrativeItem narrative) {
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<>(frames.size() + media.size() + 1);
+		for (FrameItem frame : frames) {
+			operations.add(ContentProviderOperation.newInsert(FrameItem.CONTENT_URI)
+					.withValues(frame.getContentValues())
+					.build());
+		}
+		for (MediaItem mediaItem : media) {
+			operations.add(ContentProviderOperation.newInsert(MediaItem.CONTENT_URI)
+					.withValues(mediaItem.getContentValues())
+					.build());
+		}
+		if (narrative != null) {
+			operations.add(ContentProviderOperation.newInsert(NarrativeItem.NARRATIVE_CONTENT_URI)
+					.withValues(narrative.getContentValues())
+					.build());
+		}
+		try {
+			contentResolver.applyBatch(MediaPhoneProvider.URI_AUTHORITY, operations);
+			return true;
+		} catch (RemoteException | OperationApplicationException | SQLException e) {
+			return false;
+		}
 	}
 }
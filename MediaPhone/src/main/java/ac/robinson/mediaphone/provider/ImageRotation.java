@@ -0,0 +1,299 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.IOUtilities;
+import androidx.exifinterface.media.ExifInterface;
+
+/**
+ * Rotates image media items by 90 degrees. JPEG images are rotated losslessly by updating their EXIF orientation, which
+ * takes a few milliseconds regardless of the image's size. Other images are decoded one horizontal strip at a time and
+ * drawn into the rotated image, so that only one full-sized bitmap is ever in memory; if even that would not fit, the
+ * image is reduced in size until it does, rather than failing. Because this means an image's orientation may only be
+ * recorded in its EXIF data, exports use {@link #createOrientedCopy} to give viewers that ignore EXIF an upright image.
+ */
+public final class ImageRotation {
+
+	private static final String JPEG_MIME_TYPE = "image/jpeg";
+	private static final int STRIP_PIXELS = 512 * 1024; // the maximum size of each strip that is decoded
+	private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+	private ImageRotation() {
+	}
+
+	/**
+	 * Rotate an image item's file in place, then remove anything that was derived from the previous version of the
+	 * file (the item's icon-sized and screen-sized copies, and its metadata). This reads and writes the whole file, so
+	 * should not be run on the UI thread. The item's frame icon is not updated - callers should do that once they have
+	 * finished editing.
+	 *
+	 * @return Whether the image was rotated
+	 */
+	public static boolean rotate(ContentResolver contentResolver, MediaItem imageItem, boolean antiClockwise,
+								 int jpegQuality) {
+		final long startTime = MediaPhone.DEBUG ? SystemClock.elapsedRealtime() : 0;
+		final File imageFile = imageItem.getFile();
+		final MediaMetadata metadata = MediaManager.getMediaMetadata(contentResolver, imageItem);
+		if (metadata == null) {
+			return false; // the file does not exist
+		}
+
+		String method = "EXIF";
+		boolean rotated = false;
+		if (JPEG_MIME_TYPE.equals(metadata.getMimeType())) {
+			rotated = rotateExifOrientation(imageFile, antiClockwise);
+		}
+		if (!rotated) {
+			// the decoded pixels do not have the image's orientation applied, so we can only use our own path when the
+			// image does not have one; otherwise, fall back to the library version, which handles this itself
+			final int orientation = metadata.getOrientation();
+			if (orientation == ExifInterface.ORIENTATION_UNDEFINED || orientation == ExifInterface.ORIENTATION_NORMAL) {
+				method = "strips";
+				rotated = rotateByStrips(imageFile, metadata, antiClockwise, jpegQuality);
+			}
+			if (!rotated) {
+				method = "full decode";
+				BitmapUtilities.rotateImage(imageFile.getAbsolutePath(), antiClockwise);
+				rotated = true; // as before, we have no way of knowing whether this succeeded
+			}
+		}
+
+		if (rotated) {
+			FrameIconRenderer.deleteIconSource(imageItem);
+			ScreenImageDecoder.deleteScreenDerivative(imageItem);
+			MediaManager.updateMediaMetadata(contentResolver, imageItem);
+		}
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(imageFile), "Rotation " + (rotated ? "succeeded" : "failed") + " via " +
+					method + " in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+		}
+		return rotated;
+	}
+
+	/**
+	 * @return Whether the image described by the given metadata needs its orientation applied to display correctly
+	 */
+	public static boolean hasOrientation(MediaMetadata metadata) {
+		final int orientation = metadata.getOrientation();
+		return orientation != ExifInterface.ORIENTATION_UNDEFINED && orientation != ExifInterface.ORIENTATION_NORMAL;
+	}
+
+	/**
+	 * Write a copy of an image with its orientation applied to its pixels (and no EXIF orientation), for exports, which
+	 * copy image files as they are. This decodes the whole image, so should not be run on the UI thread. If there is
+	 * not enough memory for the image and its oriented copy, the copy is reduced in size until there is.
+	 *
+	 * @return Whether the copy was written
+	 */
+	public static boolean createOrientedCopy(File imageFile, MediaMetadata metadata, File outputFile, int jpegQuality) {
+		final int sourceWidth = metadata.getWidth();
+		final int sourceHeight = metadata.getHeight();
+		if (sourceWidth <= 0 || sourceHeight <= 0) {
+			return false;
+		}
+
+		// the decoded image and its oriented copy are both in memory while drawing
+		final long memoryBudget = ScreenImageDecoder.getMemoryBudget();
+		int sampleSize = 1;
+		while ((long) (sourceWidth / sampleSize) * (sourceHeight / sampleSize) * 4 * 2 > memoryBudget) {
+			sampleSize *= 2;
+		}
+
+		Bitmap image = null;
+		Bitmap orientedImage = null;
+		try {
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+			image = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+			if (image == null) {
+				return false;
+			}
+
+			final int orientation = metadata.getOrientation();
+			final Matrix matrix = new Matrix();
+			if (FrameIconRenderer.isMirrored(orientation)) {
+				matrix.postScale(-1, 1);
+			}
+			matrix.postRotate(FrameIconRenderer.getRotation(orientation));
+			orientedImage = Bitmap.createBitmap(image, 0, 0, image.getWidth(), image.getHeight(), matrix, true);
+			if (orientedImage != image) {
+				image.recycle();
+			}
+			image = null;
+
+			final boolean isPng = "png".equalsIgnoreCase(IOUtilities.getFileExtension(imageFile.getName()));
+			if (!writeBitmap(orientedImage, outputFile, isPng, jpegQuality)) {
+				outputFile.delete();
+				return false;
+			}
+			return true;
+
+		} catch (OutOfMemoryError e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(imageFile), "Unable to create oriented copy: " +
+						e.getLocalizedMessage());
+			}
+			return false;
+		} finally {
+			if (image != null) {
+				image.recycle();
+			}
+			if (orientedImage != null) {
+				orientedImage.recycle();
+			}
+		}
+	}
+
+	private static boolean rotateExifOrientation(File imageFile, boolean antiClockwise) {
+		try {
+			final ExifInterface exif = new ExifInterface(imageFile.getAbsolutePath());
+			exif.rotate(antiClockwise ? 270 : 90); // combines with any existing orientation (including mirroring)
+			exif.saveAttributes();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(imageFile),
+						"Unable to update EXIF orientation: " + e.getLocalizedMessage());
+			}
+			return false; // the original file is not changed if saving fails
+		}
+	}
+
+	private static boolean rotateByStrips(File imageFile, MediaMetadata metadata, boolean antiClockwise,
+										  int jpegQuality) {
+		final boolean isPng = "png".equalsIgnoreCase(IOUtilities.getFileExtension(imageFile.getName()));
+		final int sourceWidth = metadata.getWidth();
+		final int sourceHeight = metadata.getHeight();
+		if (sourceWidth <= 0 || sourceHeight <= 0) {
+			return false;
+		}
+
+		// the rotated bitmap is the only full-sized allocation - reduce its size if there isn't enough memory for it
+		final long memoryBudget = ScreenImageDecoder.getMemoryBudget();
+		int sampleSize = 1;
+		while ((long) (sourceWidth / sampleSize) * (sourceHeight / sampleSize) * 4 > memoryBudget) {
+			sampleSize *= 2;
+		}
+		if (MediaPhone.DEBUG && sampleSize > 1) {
+			Log.d(DebugUtilities.getLogTag(imageFile), "Reducing " + sourceWidth + "x" + sourceHeight + " image by " +
+					sampleSize + " to fit in available memory");
+		}
+		final int sampledWidth = (sourceWidth + sampleSize - 1) / sampleSize;
+		final int sampledHeight = (sourceHeight + sampleSize - 1) / sampleSize;
+		final int stripHeight = Math.max(1, STRIP_PIXELS / sampledWidth) * sampleSize; // in source pixels
+
+		BitmapRegionDecoder decoder = null;
+		Bitmap rotatedBitmap = null;
+		try {
+			decoder = BitmapRegionDecoder.newInstance(imageFile.getAbsolutePath(), false);
+			rotatedBitmap = Bitmap.createBitmap(sampledHeight, sampledWidth, Bitmap.Config.ARGB_8888);
+			final Canvas canvas = new Canvas(rotatedBitmap);
+			final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+			final Matrix matrix = new Matrix();
+			final Rect region = new Rect();
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+			for (int top = 0; top < sourceHeight; top += stripHeight) {
+				region.set(0, top, sourceWidth, Math.min(top + stripHeight, sourceHeight));
+				final Bitmap strip = decoder.decodeRegion(region, options);
+				if (strip == null) {
+					return false;
+				}
+
+				// strip row y is source row (top + y): clockwise, this is column (rotated width - top - y);
+				// anticlockwise it is column (top + y), with the strip's columns reversed from the bottom upwards
+				final int sampledTop = top / sampleSize;
+				if (antiClockwise) {
+					matrix.setRotate(-90);
+					matrix.postTranslate(sampledTop, sampledWidth);
+				} else {
+					matrix.setRotate(90);
+					matrix.postTranslate(sampledHeight - sampledTop, 0);
+				}
+				canvas.drawBitmap(strip, matrix, paint);
+				strip.recycle();
+			}
+			decoder.recycle();
+			decoder = null;
+
+			// write to a temporary file first, so that a failure part-way through does not lose the original
+			final File temporaryFile = new File(imageFile.getParentFile(), imageFile.getName() + TEMPORARY_FILE_SUFFIX);
+			if (!writeBitmap(rotatedBitmap, temporaryFile, isPng, jpegQuality)) {
+				temporaryFile.delete();
+				return false;
+			}
+			if (!temporaryFile.renameTo(imageFile)) {
+				temporaryFile.delete();
+				return false;
+			}
+			return true;
+
+		} catch (IOException | OutOfMemoryError e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(imageFile), "Unable to rotate by strips: " + e.getLocalizedMessage());
+			}
+			return false; // e.g., an unsupported format for region decoding (GIF, BMP) - use the full decoding fallback
+		} finally {
+			if (decoder != null) {
+				decoder.recycle();
+			}
+			if (rotatedBitmap != null) {
+				rotatedBitmap.recycle();
+			}
+		}
+	}
+
+	private static boolean writeBitmap(Bitmap bitmap, File outputFile, boolean isPng, int jpegQuality) {
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(outputFile);
+			return bitmap.compress(isPng ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, jpegQuality,
+					outputStream);
+		} catch (IOException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(outputFile), "Unable to write rotated image: " +
+						e.getLocalizedMessage());
+			}
+			return false;
+		} finally {
+			IOUtilities.closeStream(outputStream);
+		}
+	}
+}
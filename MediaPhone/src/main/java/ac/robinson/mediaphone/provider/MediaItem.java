@@ -22,16 +22,13 @@ package ac.robinson.mediaphone.provider;
 
 import android.content.ContentValues;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.provider.MediaStore;
 
 import java.io.File;
 import java.util.Locale;
 
-import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.IOUtilities;
 import androidx.annotation.NonNull;
 
 public class MediaItem implements BaseColumns {
@@ -40,9 +37,15 @@ public class MediaItem implements BaseColumns {
 			MediaPhoneProvider.URI_PREFIX + MediaPhoneProvider.URI_AUTHORITY + MediaPhoneProvider.URI_SEPARATOR +
 					MediaPhoneProvider.MEDIA_LOCATION);
 
-	public static final Uri CONTENT_URI_LINK = Uri.parse(
+	// the full-text index of text media content - see MediaManager.searchTextMedia
+	public static final Uri TEXT_INDEX_CONTENT_URI = Uri.parse(
 			MediaPhoneProvider.URI_PREFIX + MediaPhoneProvider.URI_AUTHORITY + MediaPhoneProvider.URI_SEPARATOR +
-					MediaPhoneProvider.MEDIA_LINKS_LOCATION);
+					MediaPhoneProvider.TEXT_INDEX_LOCATION);
+
+	// spanning media still to be copied after upgrading - see MediaManager.copyPendingSpanMedia
+	public static final Uri SPAN_COPIES_CONTENT_URI = Uri.parse(
+			MediaPhoneProvider.URI_PREFIX + MediaPhoneProvider.URI_AUTHORITY + MediaPhoneProvider.URI_SEPARATOR +
+					MediaPhoneProvider.MEDIA_SPAN_COPIES_LOCATION);
 
 	public static final String INTERNAL_ID = "internal_id";
 	public static final String PARENT_ID = "parent_id";
@@ -52,18 +55,29 @@ public class MediaItem implements BaseColumns {
 	public static final String EXTRA = "extra";
 	public static final String TYPE = "type";
 	public static final String SPAN_FRAMES = "span_frames";
+	public static final String SPAN_END_ID = "span_end_id"; // the last frame a spanning item applies to; managed separately
+	public static final String INLINE_TEXT = "inline_text"; // a copy of a (short) text item's file content; null otherwise
 	public static final String DELETED = "deleted";
 
+	public static final String TEXT_INDEX_MEDIA_ID = "media_id"; // text index inserts only: the id of the indexed item
+	public static final String TEXT_INDEX_CONTENT = "text_content"; // text index only: the item's text
+
 	public static final String[] PROJECTION_ALL = new String[]{
-			MediaItem._ID, INTERNAL_ID, PARENT_ID, DATE_CREATED, FILE_EXTENSION, DURATION, TYPE, EXTRA, SPAN_FRAMES, DELETED
+			MediaItem._ID, INTERNAL_ID, PARENT_ID, DATE_CREATED, FILE_EXTENSION, DURATION, TYPE, EXTRA, SPAN_FRAMES, DELETED,
+			INLINE_TEXT
 	};
 
 	public static final String[] PROJECTION_INTERNAL_ID = new String[]{ INTERNAL_ID };
 
 	public static final String[] PROJECTION_PARENT_ID = new String[]{ PARENT_ID };
 
+	public static final String[] PROJECTION_INTERNAL_AND_PARENT_ID = new String[]{ INTERNAL_ID, PARENT_ID };
+
 	public static final String DEFAULT_SORT_ORDER = TYPE + " ASC, " + DATE_CREATED + " ASC";
 
+	// longer text is only read from its file - it is rare in practice, and would make every media query slower
+	public static final int MAX_INLINE_TEXT_LENGTH = 2048;
+
 	private String mInternalId;
 	private String mParentId;
 	private long mCreationDate;
@@ -73,6 +87,7 @@ public class MediaItem implements BaseColumns {
 	private int mExtra;
 	private int mSpanFrames;
 	private int mDeleted;
+	private String mInlineText;
 
 	public MediaItem(String internalId, String parentId, String fileExtension, int type) {
 		mInternalId = internalId;
@@ -84,6 +99,7 @@ public class MediaItem implements BaseColumns {
 		mExtra = 0;
 		mSpanFrames = 0;
 		mDeleted = 0;
+		mInlineText = null;
 	}
 
 	public MediaItem(String parentId, String fileExtension, int type) {
@@ -141,6 +157,26 @@ public class MediaItem implements BaseColumns {
 		return new File(FrameItem.getStorageDirectory(mediaParentId), mediaInternalId + "." + mediaFileExtension);
 	}
 
+	/**
+	 * Get the content of a text media item: from the database when it is short enough to have been stored there (see
+	 * {@link #setTextContent(String)}), so that loading a narrative's text does not need a file read per frame; otherwise,
+	 * from the item's file
+	 */
+	public String getTextContent() {
+		if (mInlineText != null) {
+			return mInlineText;
+		}
+		return IOUtilities.getFileContents(getFile().getAbsolutePath());
+	}
+
+	/**
+	 * Record the content of a text media item in the database (when it is no longer than MAX_INLINE_TEXT_LENGTH). This
+	 * does not write the item's file, which must always be updated as well (it is the version used for export).
+	 */
+	public void setTextContent(String text) {
+		mInlineText = text != null && text.length() <= MAX_INLINE_TEXT_LENGTH ? text : null;
+	}
+
 	/**
 	 * Set the duration of this media item.
 	 *
@@ -179,35 +215,6 @@ public class MediaItem implements BaseColumns {
 		mDeleted = deleted ? 1 : 0;
 	}
 
-	/**
-	 * @return The bitmap representing this media item, or null if it is not an image or video
-	 */
-	public Bitmap loadIcon(int width, int height) {
-
-		Bitmap mediaBitmap = null;
-
-		// only image/video; audio and text are generated in frame
-		switch (mType) {
-			case MediaPhoneProvider.TYPE_IMAGE_BACK:
-			case MediaPhoneProvider.TYPE_IMAGE_FRONT:
-				mediaBitmap = BitmapUtilities.loadAndCreateScaledBitmap(getFile().getAbsolutePath(), width, height,
-						BitmapUtilities.ScalingLogic.CROP, true);
-				break;
-
-			case MediaPhoneProvider.TYPE_VIDEO:
-				// MINI_KIND: 512 x 384; MICRO_KIND: 96 x 96
-				mediaBitmap = BitmapUtilities.scaleBitmap(
-						ThumbnailUtils.createVideoThumbnail(getFile().getAbsolutePath(), MediaStore.Video.Thumbnails.MINI_KIND),
-						width, height, BitmapUtilities.ScalingLogic.CROP);
-				break;
-
-			default:
-				break;
-		}
-
-		return mediaBitmap;
-	}
-
 	public ContentValues getContentValues() {
 		final ContentValues values = new ContentValues();
 		values.put(INTERNAL_ID, mInternalId);
@@ -219,14 +226,7 @@ public class MediaItem implements BaseColumns {
 		values.put(EXTRA, mExtra);
 		values.put(SPAN_FRAMES, mSpanFrames);
 		values.put(DELETED, mDeleted);
-		return values;
-	}
-
-	public static ContentValues getLinkContentValues(String frameId, String mediaId) {
-		final ContentValues values = new ContentValues();
-		values.put(INTERNAL_ID, mediaId);
-		values.put(PARENT_ID, frameId);
-		values.put(DELETED, 0);
+		values.put(INLINE_TEXT, mInlineText);
 		return values;
 	}
 
@@ -241,6 +241,7 @@ public class MediaItem implements BaseColumns {
 		media.mExtra = existing.mExtra;
 		media.mSpanFrames = existing.mSpanFrames;
 		media.mDeleted = existing.mDeleted;
+		media.mInlineText = existing.mInlineText;
 		return media;
 	}
 
@@ -255,6 +256,8 @@ public class MediaItem implements BaseColumns {
 		media.mExtra = c.getInt(c.getColumnIndexOrThrow(EXTRA));
 		media.mSpanFrames = c.getInt(c.getColumnIndexOrThrow(SPAN_FRAMES));
 		media.mDeleted = c.getInt(c.getColumnIndexOrThrow(DELETED));
+		final int inlineTextIndex = c.getColumnIndex(INLINE_TEXT);
+		media.mInlineText = inlineTextIndex >= 0 && !c.isNull(inlineTextIndex) ? c.getString(inlineTextIndex) : null;
 		return media;
 	}
 
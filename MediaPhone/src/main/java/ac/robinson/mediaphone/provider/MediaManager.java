@@ -20,24 +20,63 @@
 
 package ac.robinson.mediaphone.provider;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
+import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
-public class MediaManager {
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.IOUtilities;
 
-	private static final String[] mArguments1 = new String[1];
-	private static final String[] mArguments2 = new String[2];
+public class MediaManager {
 
 	private static final String mMediaInternalIdSelection;
-	private static final String mMediaInternalIdNotDeletedSelection;
-	private static final String mMediaInternalIdAndParentIdSelection;
 	private static final String mMediaParentIdSelection;
 	private static final String mDeletedSelection;
 	private static final String mTextTypeSelection; // currently only used for upgrade to version 38+
+	private static final String mNarrativeMediaSelection;
+	private static final String mSpanningMediaByParentIdSelection;
+	private static final String mMediaAndSpanningMediaByParentIdSelection;
+	private static final String mSpannedFramesByMediaIdSelection;
+	private static final String mPreviousFrameSelection;
+	private static final String mSpanEndIdSelection;
+	private static final String mExtendSpanSelection;
+	private static final String mEndSpanSelection;
+	private static final String mUnindexedTextSelection;
+	private static final String mTextSearchSelection;
+	private static final String mNarrativeInlineTextSelection;
+	private static final String mMetadataMediaIdSelection;
+	private static final String mNarrativeMetadataSelection;
+
+	private static final String[] PROJECTION_ALL_AND_SPAN_END_ID;
+	private static final String[] PROJECTION_INTERNAL_ID_AND_INLINE_TEXT = new String[]{
+			MediaItem.INTERNAL_ID, MediaItem.INLINE_TEXT
+	};
+	private static final String[] PROJECTION_SPAN_COPY = new String[]{
+			MediaItem._ID, MediaItem.INTERNAL_ID, MediaItem.PARENT_ID, MediaItem.SPAN_END_ID
+	};
+
+	// text search results are queried from the index joined with its media, frames and narratives (see MediaPhoneProvider)
+	private static final String TEXT_SEARCH_MEDIA_ID = "search_media_id";
+	private static final String TEXT_SEARCH_FRAME_ID = "search_frame_id";
+	private static final String TEXT_SEARCH_NARRATIVE_ID = "search_narrative_id";
+	private static final String TEXT_SEARCH_NARRATIVE_SEQUENCE_ID = "search_narrative_sequence_id";
+	private static final String TEXT_SEARCH_SNIPPET = "search_snippet";
+	private static final String[] PROJECTION_TEXT_SEARCH;
+	private static final String TEXT_SEARCH_SORT_ORDER;
+	private static final int TEXT_SEARCH_SNIPPET_TOKENS = 10; // the approximate number of words to show around a match
 
 	static {
 		StringBuilder selection = new StringBuilder();
@@ -49,41 +88,246 @@ public class MediaManager {
 		selection.append('(');
 		selection.append(MediaItem.DELETED);
 		selection.append("=0 AND ");
-		selection.append(MediaItem.INTERNAL_ID);
+		selection.append(MediaItem.PARENT_ID);
 		selection.append("=?");
 		selection.append(')');
-		mMediaInternalIdNotDeletedSelection = selection.toString();
+		mMediaParentIdSelection = selection.toString();
+
+		selection.setLength(0); // clears
+		selection.append(MediaItem.DELETED);
+		selection.append("!=0");
+		mDeletedSelection = selection.toString();
+
+		selection.setLength(0); // clears
+		selection.append(MediaItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(MediaItem.TYPE);
+		selection.append("=");
+		selection.append(MediaPhoneProvider.TYPE_TEXT);
+		mTextTypeSelection = selection.toString();
 
+		// the (non-deleted) frames of a narrative, used as a sub-query so that we can load a whole narrative's media at once
 		selection.setLength(0); // clears
 		selection.append('(');
-		selection.append(MediaItem.INTERNAL_ID);
-		selection.append("=? AND ");
+		selection.append(MediaItem.DELETED);
+		selection.append("=0 AND ");
 		selection.append(MediaItem.PARENT_ID);
-		selection.append("=?");
+		selection.append(" IN (SELECT ");
+		selection.append(FrameItem.INTERNAL_ID);
+		selection.append(" FROM ");
+		selection.append(MediaPhoneProvider.FRAMES_LOCATION);
+		selection.append(" WHERE ");
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append("=?))");
+		mNarrativeMediaSelection = selection.toString();
+
+		selection.setLength(0); // clears
+		selection.append(mNarrativeMediaSelection);
+		selection.append(" AND ");
+		selection.append(MediaItem.TYPE);
+		selection.append("=");
+		selection.append(MediaPhoneProvider.TYPE_TEXT);
+		selection.append(" AND ");
+		selection.append(MediaItem.INLINE_TEXT);
+		selection.append(" IS NOT NULL");
+		mNarrativeInlineTextSelection = selection.toString();
+
+		// spanning media is stored as a range: from the frame it belongs to (exclusive) to its span end frame (inclusive),
+		// resolved through the frames' sequence ids - a frame inherits any media whose range includes its position
+		final String mediaTable = MediaPhoneProvider.MEDIA_LOCATION + ".";
+		selection.setLength(0); // clears
+		selection.append(MediaItem.SPAN_END_ID);
+		selection.append(" IS NOT NULL AND ");
+		selection.append(MediaItem.PARENT_ID);
+		selection.append(" IN (SELECT ");
+		selection.append(FrameItem.INTERNAL_ID);
+		selection.append(" FROM ");
+		selection.append(MediaPhoneProvider.FRAMES_LOCATION);
+		selection.append(" WHERE ");
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append('=');
+		selection.append(getFrameColumnQuery(FrameItem.PARENT_ID, "?"));
+		selection.append(" AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append('<');
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		selection.append(") AND ");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, mediaTable + MediaItem.SPAN_END_ID));
+		selection.append(">=");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		final String spanningMediaClause = selection.toString(); // 3 arguments: the frame id
+
+		selection.setLength(0); // clears
+		selection.append('(');
+		selection.append(MediaItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(spanningMediaClause);
 		selection.append(')');
-		mMediaInternalIdAndParentIdSelection = selection.toString(); // intentionally don't filter out deleted items
+		mSpanningMediaByParentIdSelection = selection.toString();
 
 		selection.setLength(0); // clears
 		selection.append('(');
 		selection.append(MediaItem.DELETED);
 		selection.append("=0 AND (");
 		selection.append(MediaItem.PARENT_ID);
-		selection.append("=?");
-		selection.append("))"); // extra ) is to contain OR for multiple parent selections
-		mMediaParentIdSelection = selection.toString();
+		selection.append("=? OR (");
+		selection.append(spanningMediaClause);
+		selection.append(")))");
+		mMediaAndSpanningMediaByParentIdSelection = selection.toString();
+
+		// the frames (after the first) that a media item spans, queried from the frames table
+		final String mediaParentQuery = "(SELECT " + MediaItem.PARENT_ID + " FROM " + MediaPhoneProvider.MEDIA_LOCATION +
+				" WHERE " + MediaItem.INTERNAL_ID + "=?)";
+		selection.setLength(0); // clears
+		selection.append('(');
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append('=');
+		selection.append(getFrameColumnQuery(FrameItem.PARENT_ID, mediaParentQuery));
+		selection.append(" AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append('>');
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, mediaParentQuery));
+		selection.append(" AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append("<=");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID,
+				"(SELECT " + MediaItem.SPAN_END_ID + " FROM " + MediaPhoneProvider.MEDIA_LOCATION + " WHERE " +
+						MediaItem.DELETED + "=0 AND " + MediaItem.INTERNAL_ID + "=?)"));
+		selection.append(')');
+		mSpannedFramesByMediaIdSelection = selection.toString(); // 3 arguments: the media id
 
 		selection.setLength(0); // clears
+		selection.append('(');
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(FrameItem.PARENT_ID);
+		selection.append('=');
+		selection.append(getFrameColumnQuery(FrameItem.PARENT_ID, "?"));
+		selection.append(" AND ");
+		selection.append(FrameItem.SEQUENCE_ID);
+		selection.append('<');
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		selection.append(')');
+		mPreviousFrameSelection = selection.toString(); // 2 arguments: the frame id
+
+		selection.setLength(0); // clears
+		selection.append('(');
 		selection.append(MediaItem.DELETED);
-		selection.append("!=0");
-		mDeletedSelection = selection.toString();
+		selection.append("=0 AND ");
+		selection.append(MediaItem.SPAN_END_ID);
+		selection.append("=?)");
+		mSpanEndIdSelection = selection.toString();
 
+		// only ever extend a span forwards, and never to (or before) the media item's own frame
 		selection.setLength(0); // clears
+		selection.append('(');
 		selection.append(MediaItem.DELETED);
 		selection.append("=0 AND ");
-		selection.append(MediaItem.TYPE);
-		selection.append("=");
-		selection.append(MediaPhoneProvider.TYPE_TEXT);
-		mTextTypeSelection = selection.toString();
+		selection.append(MediaItem.INTERNAL_ID);
+		selection.append("=? AND ");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		selection.append('>');
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, mediaTable + MediaItem.PARENT_ID));
+		selection.append(" AND (");
+		selection.append(MediaItem.SPAN_END_ID);
+		selection.append(" IS NULL OR ");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, mediaTable + MediaItem.SPAN_END_ID));
+		selection.append('<');
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		selection.append("))");
+		mExtendSpanSelection = selection.toString(); // 3 arguments: media id, frame id, frame id
+
+		// only ever shorten a span, never extend it
+		selection.setLength(0); // clears
+		selection.append('(');
+		selection.append(MediaItem.INTERNAL_ID);
+		selection.append("=? AND ");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, mediaTable + MediaItem.SPAN_END_ID));
+		selection.append(">=");
+		selection.append(getFrameColumnQuery(FrameItem.SEQUENCE_ID, "?"));
+		selection.append(')');
+		mEndSpanSelection = selection.toString(); // 2 arguments: media id, frame id
+
+		// text items that have never been indexed (e.g., those created before the index existed)
+		selection.setLength(0); // clears
+		selection.append(mTextTypeSelection);
+		selection.append(" AND NOT EXISTS (SELECT 1 FROM ");
+		selection.append(MediaPhoneProvider.TEXT_INDEX_LOCATION);
+		selection.append(" WHERE ");
+		selection.append(MediaPhoneProvider.TEXT_INDEX_ROW_ID);
+		selection.append('=');
+		selection.append(mediaTable);
+		selection.append(MediaItem._ID);
+		selection.append(')'); // a row id lookup per item, rather than a scan of the index
+		mUnindexedTextSelection = selection.toString();
+
+		// deleted items may still be in the index until they are cleaned up, so must be excluded here
+		final String indexTable = MediaPhoneProvider.TEXT_INDEX_LOCATION + ".";
+		final String framesTable = MediaPhoneProvider.FRAMES_LOCATION + ".";
+		final String narrativesTable = MediaPhoneProvider.NARRATIVES_LOCATION + ".";
+		selection.setLength(0); // clears
+		selection.append(indexTable);
+		selection.append(MediaItem.TEXT_INDEX_CONTENT);
+		selection.append(" MATCH ? AND ");
+		selection.append(mediaTable);
+		selection.append(MediaItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(framesTable);
+		selection.append(FrameItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(narrativesTable);
+		selection.append(NarrativeItem.DELETED);
+		selection.append("=0");
+		mTextSearchSelection = selection.toString();
+
+		PROJECTION_TEXT_SEARCH = new String[]{
+				mediaTable + MediaItem.INTERNAL_ID + " AS " + TEXT_SEARCH_MEDIA_ID,
+				framesTable + FrameItem.INTERNAL_ID + " AS " + TEXT_SEARCH_FRAME_ID,
+				narrativesTable + NarrativeItem.INTERNAL_ID + " AS " + TEXT_SEARCH_NARRATIVE_ID,
+				narrativesTable + NarrativeItem.SEQUENCE_ID + " AS " + TEXT_SEARCH_NARRATIVE_SEQUENCE_ID,
+				"snippet(" + MediaPhoneProvider.TEXT_INDEX_LOCATION + ", '', '', '\u2026', 0, " +
+						TEXT_SEARCH_SNIPPET_TOKENS + ") AS " + TEXT_SEARCH_SNIPPET
+		};
+		TEXT_SEARCH_SORT_ORDER = narrativesTable + NarrativeItem.SEQUENCE_ID + " DESC, " + framesTable +
+				FrameItem.SEQUENCE_ID + " ASC"; // the same order as the narrative browser
+
+		// metadata is queried joined with its media and frames (see MediaPhoneProvider), so columns must be qualified
+		final String metadataTable = MediaPhoneProvider.MEDIA_METADATA_LOCATION + ".";
+		selection.setLength(0); // clears
+		selection.append(metadataTable);
+		selection.append(MediaMetadata.MEDIA_ID);
+		selection.append("=?");
+		mMetadataMediaIdSelection = selection.toString();
+
+		selection.setLength(0); // clears
+		selection.append(framesTable);
+		selection.append(FrameItem.PARENT_ID);
+		selection.append("=? AND ");
+		selection.append(mediaTable);
+		selection.append(MediaItem.DELETED);
+		selection.append("=0 AND ");
+		selection.append(framesTable);
+		selection.append(FrameItem.DELETED);
+		selection.append("=0");
+		mNarrativeMetadataSelection = selection.toString();
+
+		PROJECTION_ALL_AND_SPAN_END_ID = new String[MediaItem.PROJECTION_ALL.length + 1];
+		System.arraycopy(MediaItem.PROJECTION_ALL, 0, PROJECTION_ALL_AND_SPAN_END_ID, 0, MediaItem.PROJECTION_ALL.length);
+		PROJECTION_ALL_AND_SPAN_END_ID[MediaItem.PROJECTION_ALL.length] = MediaItem.SPAN_END_ID;
+	}
+
+	/**
+	 * @return A sub-query selecting the given column of the frame whose internal id is frameIdExpression
+	 */
+	private static String getFrameColumnQuery(String column, String frameIdExpression) {
+		return "(SELECT " + column + " FROM " + MediaPhoneProvider.FRAMES_LOCATION + " WHERE " + FrameItem.INTERNAL_ID + "=" +
+				frameIdExpression + ")";
 	}
 
 	public static MediaItem addMedia(ContentResolver contentResolver, MediaItem media) {
@@ -100,71 +344,148 @@ public class MediaManager {
 	 * to speed up interaction and so that we only need to run one background thread semi-regularly for deletion
 	 */
 	public static boolean deleteMediaFromBackgroundTask(ContentResolver contentResolver, String internalId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = internalId;
 		int count = contentResolver.delete(MediaItem.CONTENT_URI, mMediaInternalIdSelection, arguments1);
 		return count > 0;
 	}
 
-	public static boolean addMediaLink(ContentResolver contentResolver, String frameId, String mediaId) {
-		final Uri uri = contentResolver.insert(MediaItem.CONTENT_URI_LINK, MediaItem.getLinkContentValues(frameId, mediaId));
-		return uri != null;
-	}
-
 	/**
-	 * For deleting all media links to an item when the entire spanning media has been removed (ie. from its first
-	 * frame)
-	 *
-	 * @return The number of links deleted
+	 * Extend a spanning media item so that it applies to all frames up to and including frameId. Spans are only ever
+	 * extended (never shortened) by this method, so it is safe to call for a frame that is already covered.
 	 */
-	public static int deleteMediaLinks(ContentResolver contentResolver, String mediaId) {
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = mediaId;
+	public static boolean extendMediaSpan(ContentResolver contentResolver, String mediaId, String frameId) {
+		final String[] arguments3 = new String[]{ mediaId, frameId, frameId };
 		final ContentValues contentValues = new ContentValues();
-		contentValues.put(MediaItem.DELETED, 1);
-		return contentResolver.update(MediaItem.CONTENT_URI_LINK, contentValues, mMediaInternalIdNotDeletedSelection, arguments1);
+		contentValues.put(MediaItem.SPAN_END_ID, frameId);
+		return contentResolver.update(MediaItem.CONTENT_URI, contentValues, mExtendSpanSelection, arguments3) == 1;
 	}
 
 	/**
-	 * For deleting a media link when only the current media item has been removed (i.e. when replacing a long running
-	 * media item with another in the current frame)
+	 * End a spanning media item's range immediately before frameId (i.e., remove it from frameId and all following
+	 * frames). Used when replacing a long running media item with another in frameId. Has no effect if the media item
+	 * does not currently span as far as frameId.
 	 */
-	public static boolean deleteMediaLink(ContentResolver contentResolver, String frameId, String mediaId) {
-		final String[] arguments2 = mArguments2;
-		arguments2[0] = mediaId;
+	public static boolean endMediaSpanBefore(ContentResolver contentResolver, String mediaId, String frameId) {
+		MediaItem mediaItem = findMediaByInternalId(contentResolver, mediaId);
+		if (mediaItem == null) {
+			return false;
+		}
+
+		// the new end is the frame before this one - unless that is the media item's own frame, in which case it no longer spans
+		String previousFrameId = null;
+		final String[] arguments2 = new String[2];
+		arguments2[0] = frameId;
 		arguments2[1] = frameId;
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID, mPreviousFrameSelection,
+				arguments2, FrameItem.SEQUENCE_ID + " DESC")) {
+			if (c != null && c.moveToFirst()) {
+				previousFrameId = c.getString(c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID));
+			}
+		}
+
 		final ContentValues contentValues = new ContentValues();
-		contentValues.put(MediaItem.DELETED, 1);
-		int count = contentResolver.update(MediaItem.CONTENT_URI_LINK, contentValues, mMediaInternalIdAndParentIdSelection,
-				arguments2);
-		return count == 1;
+		if (previousFrameId == null || previousFrameId.equals(mediaItem.getParentId())) {
+			contentValues.putNull(MediaItem.SPAN_END_ID);
+		} else {
+			contentValues.put(MediaItem.SPAN_END_ID, previousFrameId);
+		}
+		arguments2[0] = mediaId;
+		arguments2[1] = frameId;
+		return contentResolver.update(MediaItem.CONTENT_URI, contentValues, mEndSpanSelection, arguments2) == 1;
 	}
 
 	/**
-	 * Delete all links by their parent frame ID
+	 * End any spanning media that a newly inserted frame inherits (because of its position) but that the frame
+	 * replaces with its own media (see {@link #frameMediaEndsSpan}) - i.e., as if the frame's media had been added in
+	 * the frame editor.
+	 *
+	 * @return The ids of the frames after frameId that no longer inherit media, and whose icons should be updated
 	 */
-	public static boolean deleteMediaLinksByParent(ContentResolver contentResolver, String frameId) {
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = frameId;
+	public static ArrayList<String> endInheritedMediaSpans(ContentResolver contentResolver, String frameId) {
+		final ArrayList<String> changedFrameIds = new ArrayList<>();
+		final ArrayList<MediaItem> frameMedia = findMediaByParentId(contentResolver, frameId, true);
+		for (MediaItem media : frameMedia) {
+			if (!frameId.equals(media.getParentId()) && frameMediaEndsSpan(frameMedia, frameId, media.getType())) {
+				final ArrayList<String> linkedFrameIds = findLinkedParentIdsByMediaId(contentResolver,
+						media.getInternalId());
+				final int startIndex = linkedFrameIds.indexOf(frameId);
+				if (endMediaSpanBefore(contentResolver, media.getInternalId(), frameId) && startIndex >= 0) {
+					changedFrameIds.addAll(linkedFrameIds.subList(startIndex + 1, linkedFrameIds.size()));
+				}
+			}
+		}
+		return changedFrameIds;
+	}
+
+	/**
+	 * Check whether a frame's own media prevents a spanning item of mediaType from continuing into that frame. Any other
+	 * media of the same type always overrides spanning media; for audio, we allow only one spanning audio item per frame
+	 * (to avoid overcomplexity), and spanning stops if the frame already has the maximum number of audio items.
+	 *
+	 * @param frameMedia all of a frame's media, as returned by {@link #findMediaByNarrativeId} (may be null)
+	 */
+	public static boolean frameMediaEndsSpan(ArrayList<MediaItem> frameMedia, String frameId, int mediaType) {
+		if (frameMedia == null) {
+			return false;
+		}
+		int audioCount = 0;
+		for (MediaItem existingMedia : frameMedia) {
+			if (!frameId.equals(existingMedia.getParentId())) {
+				continue; // inherited items don't affect spanning
+			}
+			if (mediaType == MediaPhoneProvider.TYPE_AUDIO) {
+				if (existingMedia.getType() == MediaPhoneProvider.TYPE_AUDIO) {
+					audioCount += 1;
+					if (existingMedia.getSpanFrames() || audioCount >= MediaPhone.MAX_AUDIO_ITEMS) {
+						return true;
+					}
+				}
+			} else if (existingMedia.getType() == mediaType) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * For removing a spanning media item from all frames it is inherited by (i.e., when the entire spanning media has been
+	 * removed, or it is no longer frame-spanning)
+	 *
+	 * @return The number of media items changed (0 or 1)
+	 */
+	public static int clearMediaSpan(ContentResolver contentResolver, String mediaId) {
+		final String[] arguments1 = new String[1];
+		arguments1[0] = mediaId;
 		final ContentValues contentValues = new ContentValues();
-		contentValues.put(MediaItem.DELETED, 1);
-		int count = contentResolver.update(MediaItem.CONTENT_URI_LINK, contentValues, mMediaParentIdSelection, arguments1);
-		return count > 0;
+		contentValues.putNull(MediaItem.SPAN_END_ID);
+		return contentResolver.update(MediaItem.CONTENT_URI, contentValues, mMediaInternalIdSelection, arguments1);
 	}
 
 	/**
-	 * Removes from the database any media links whose deleted column is not 0. Note: to delete a media link, use
-	 * deleteMediaLink to set deleted, rather than actually removing. On the next application exit, the link will be deleted
-	 * (via this function) and the database entry will be cleaned up. This approach is used to speed up interaction and so that
-	 * we only need to run one background thread semi-regularly for deletion
+	 * Make sure that no spanning media ends at frameId - used when a frame is deleted, so that spans never refer to
+	 * frames that will later be removed from the database
 	 */
-	public static boolean removeDeletedMediaLinks(ContentResolver contentResolver) {
-		int count = contentResolver.delete(MediaItem.CONTENT_URI_LINK, mDeletedSelection, null);
-		return count > 0;
+	public static void removeFrameFromMediaSpans(ContentResolver contentResolver, String frameId) {
+		final ArrayList<String> mediaIds = new ArrayList<>();
+		final String[] arguments1 = new String[1];
+		arguments1[0] = frameId;
+		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_INTERNAL_ID, mSpanEndIdSelection,
+				arguments1, null)) {
+			if (c != null && c.getCount() > 0) {
+				final int columnIndex = c.getColumnIndexOrThrow(MediaItem.INTERNAL_ID);
+				while (c.moveToNext()) {
+					mediaIds.add(c.getString(columnIndex));
+				}
+			}
+		}
+		for (String mediaId : mediaIds) {
+			endMediaSpanBefore(contentResolver, mediaId, frameId);
+		}
 	}
 
 	public static boolean updateMedia(ContentResolver contentResolver, MediaItem media) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = media.getInternalId();
 		int count = contentResolver.update(MediaItem.CONTENT_URI, media.getContentValues(), mMediaInternalIdSelection,
 				arguments1);
@@ -172,7 +493,7 @@ public class MediaManager {
 	}
 
 	public static MediaItem findMediaByInternalId(ContentResolver contentResolver, String internalId) {
-		final String[] arguments1 = mArguments1;
+		final String[] arguments1 = new String[1];
 		arguments1[0] = internalId;
 		return findMedia(contentResolver, mMediaInternalIdSelection, arguments1);
 	}
@@ -189,39 +510,18 @@ public class MediaManager {
 	}
 
 	/**
-	 * Add '?' placeholders to mMediaParentIdSelection to deal with linked media items
-	 */
-	private static String addPlaceholders(int numPlaceholders) {
-		if (numPlaceholders > 0) {
-			StringBuilder selection = new StringBuilder(mMediaParentIdSelection);
-			selection.setLength(selection.length() - 2); // delete the ending ))
-			selection.append(" OR ");
-			selection.append(MediaItem.INTERNAL_ID);
-			selection.append(" IN (?");
-			for (int i = 1; i < numPlaceholders; i++) {
-				selection.append(",?");
-			}
-			selection.append(")))");
-			return selection.toString();
-		}
-		return mMediaParentIdSelection;
-	}
-
-	/**
-	 * Get all frames that link to a specific media item (not including the first frame, to which the media actually belongs).
+	 * Get all frames that inherit a specific spanning media item (not including the first frame, to which the media
+	 * actually belongs), in narrative order
 	 */
 	public static ArrayList<String> findLinkedParentIdsByMediaId(ContentResolver contentResolver, String mediaId) {
 		final ArrayList<String> parentIds = new ArrayList<>();
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = mediaId;
-		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI_LINK, MediaItem.PROJECTION_PARENT_ID,
-				mMediaInternalIdNotDeletedSelection, arguments1, null)) {
-
+		final String[] arguments3 = new String[]{ mediaId, mediaId, mediaId };
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID,
+				mSpannedFramesByMediaIdSelection, arguments3, FrameItem.DEFAULT_SORT_ORDER)) {
 			if (c != null && c.getCount() > 0) {
-				final int columnIndex = c.getColumnIndexOrThrow(MediaItem.PARENT_ID);
+				final int columnIndex = c.getColumnIndexOrThrow(FrameItem.INTERNAL_ID);
 				while (c.moveToNext()) {
-					final String linkId = c.getString(columnIndex);
-					parentIds.add(linkId);
+					parentIds.add(c.getString(columnIndex));
 				}
 			}
 		}
@@ -229,13 +529,12 @@ public class MediaManager {
 	}
 
 	/**
-	 * Get the number of frames that link to a specific media item.
+	 * Get the number of frames that inherit a specific spanning media item.
 	 */
 	public static int countLinkedParentIdsByMediaId(ContentResolver contentResolver, String mediaId) {
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = mediaId;
-		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI_LINK, MediaItem.PROJECTION_PARENT_ID,
-				mMediaInternalIdNotDeletedSelection, arguments1, null)) {
+		final String[] arguments3 = new String[]{ mediaId, mediaId, mediaId };
+		try (Cursor c = contentResolver.query(FrameItem.CONTENT_URI, FrameItem.PROJECTION_INTERNAL_ID,
+				mSpannedFramesByMediaIdSelection, arguments3, null)) {
 			if (c != null) {
 				return c.getCount();
 			}
@@ -244,14 +543,13 @@ public class MediaManager {
 	}
 
 	/**
-	 * Get all media items that are linked to a specific frame. Note: *only* includes links; not normal items
+	 * Get all media items that are inherited by a specific frame. Note: *only* includes inherited items; not normal items
 	 */
 	public static ArrayList<String> findLinkedMediaIdsByParentId(ContentResolver contentResolver, String parentId) {
 		final ArrayList<String> subIds = new ArrayList<>();
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = parentId;
-		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI_LINK, MediaItem.PROJECTION_INTERNAL_ID,
-				mMediaParentIdSelection, arguments1, null)) {
+		final String[] arguments3 = new String[]{ parentId, parentId, parentId };
+		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_INTERNAL_ID,
+				mSpanningMediaByParentIdSelection, arguments3, null)) {
 
 			if (c != null && c.getCount() > 0) {
 				final int columnIndex = c.getColumnIndexOrThrow(MediaItem.INTERNAL_ID);
@@ -265,31 +563,15 @@ public class MediaManager {
 	}
 
 	/**
-	 * Gets a cursor that includes any media linked to this frame id, following the same pattern as
+	 * Gets a cursor that includes any media inherited by this frame id, following the same pattern as
 	 * ContentResolver.query(). Media that isn't actually owned by this frame but is included in the query will have a
 	 * different parentId
 	 */
 	private static Cursor getLinkedParentIdMediaCursor(ContentResolver contentResolver, String[] projection, String parentId,
 													   String sortOrder) {
-
-		final String[] arguments1 = mArguments1;
-		arguments1[0] = parentId;
-
-		// first resolve links to other media items from the MediaLinks table
-		ArrayList<String> subIds = findLinkedMediaIdsByParentId(contentResolver, parentId);
-
-		// if there are links then we need to add the other media ids to the current query
-		if (!subIds.isEmpty()) {
-			subIds.add(0, parentId); // make sure we include the requested parent at the start of the WHERE clause
-
-			// note: more than 999 placeholders is not supported in SQLite, but we shouldn't have more than 1 photo,
-			// 3 audio and 1 text items linked at most
-			return contentResolver.query(MediaItem.CONTENT_URI, projection, addPlaceholders(subIds.size() - 1),
-					subIds.toArray(new String[0]), sortOrder);
-		} else {
-			// otherwise we just perform the normal query
-			return contentResolver.query(MediaItem.CONTENT_URI, projection, mMediaParentIdSelection, arguments1, sortOrder);
-		}
+		final String[] arguments4 = new String[]{ parentId, parentId, parentId, parentId };
+		return contentResolver.query(MediaItem.CONTENT_URI, projection, mMediaAndSpanningMediaByParentIdSelection, arguments4,
+				sortOrder);
 	}
 
 	public static ArrayList<MediaItem> findMediaByParentId(ContentResolver contentResolver, String parentId) {
@@ -305,7 +587,7 @@ public class MediaManager {
 				c = getLinkedParentIdMediaCursor(contentResolver, MediaItem.PROJECTION_ALL, parentId,
 						MediaItem.DEFAULT_SORT_ORDER);
 			} else {
-				final String[] arguments1 = mArguments1;
+				final String[] arguments1 = new String[1];
 				arguments1[0] = parentId;
 				c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_ALL, mMediaParentIdSelection, arguments1,
 						MediaItem.DEFAULT_SORT_ORDER);
@@ -324,6 +606,65 @@ public class MediaManager {
 		return medias;
 	}
 
+	/**
+	 * Get the media of every frame in a narrative in two queries, rather than one or more per frame as when calling
+	 * findMediaByParentId for each frame. Items in each frame's list are in the same order (and include the same inherited
+	 * media) as findMediaByParentId would return for that frame. Frames that have no media are not included in the map.
+	 *
+	 * @param linkedParentIds if not null, will be filled with the ids of the frames that inherit each spanning media item
+	 *                        (not including the frame the media actually belongs to), in narrative order
+	 * @return A map of frame internal id to that frame's media
+	 */
+	public static HashMap<String, ArrayList<MediaItem>> findMediaByNarrativeId(ContentResolver contentResolver,
+																			   String narrativeId,
+																			   HashMap<String, ArrayList<String>> linkedParentIds) {
+		// spans are resolved by each frame's position, so we need the narrative's frame order
+		final ArrayList<String> frameIds = FramesManager.findFrameIdsByParentId(contentResolver, narrativeId);
+		final HashMap<String, Integer> framePositions = new HashMap<>();
+		for (int i = 0, n = frameIds.size(); i < n; i++) {
+			framePositions.put(frameIds.get(i), i);
+		}
+
+		// results are in the default sort order, so adding to each frame in turn preserves the per-frame ordering
+		final HashMap<String, ArrayList<MediaItem>> frameMedia = new HashMap<>();
+		final String[] arguments1 = new String[1];
+		arguments1[0] = narrativeId;
+		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI, PROJECTION_ALL_AND_SPAN_END_ID, mNarrativeMediaSelection,
+				arguments1, MediaItem.DEFAULT_SORT_ORDER)) {
+			if (c != null && c.getCount() > 0) {
+				final int spanEndIndex = c.getColumnIndexOrThrow(MediaItem.SPAN_END_ID);
+				while (c.moveToNext()) {
+					final MediaItem media = MediaItem.fromCursor(c);
+					final String parentId = media.getParentId();
+					addFrameMedia(frameMedia, parentId, media);
+
+					final Integer startPosition = framePositions.get(parentId);
+					final Integer endPosition = c.isNull(spanEndIndex) ? null : framePositions.get(c.getString(spanEndIndex));
+					if (startPosition != null && endPosition != null && endPosition > startPosition) {
+						final ArrayList<String> linkedFrameIds = new ArrayList<>(frameIds.subList(startPosition + 1,
+								endPosition + 1));
+						for (String frameId : linkedFrameIds) {
+							addFrameMedia(frameMedia, frameId, media);
+						}
+						if (linkedParentIds != null) {
+							linkedParentIds.put(media.getInternalId(), linkedFrameIds);
+						}
+					}
+				}
+			}
+		}
+		return frameMedia;
+	}
+
+	private static void addFrameMedia(HashMap<String, ArrayList<MediaItem>> frameMedia, String frameId, MediaItem media) {
+		ArrayList<MediaItem> mediaList = frameMedia.get(frameId);
+		if (mediaList == null) {
+			mediaList = new ArrayList<>();
+			frameMedia.put(frameId, mediaList);
+		}
+		mediaList.add(media);
+	}
+
 	public static ArrayList<String> findMediaIdsByParentId(ContentResolver contentResolver, String parentId,
 														   boolean includeLinks) {
 		final ArrayList<String> mediaIds = new ArrayList<>();
@@ -332,7 +673,7 @@ public class MediaManager {
 			if (includeLinks) {
 				c = getLinkedParentIdMediaCursor(contentResolver, MediaItem.PROJECTION_INTERNAL_ID, parentId, null);
 			} else {
-				final String[] arguments1 = mArguments1;
+				final String[] arguments1 = new String[1];
 				arguments1[0] = parentId;
 				c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_INTERNAL_ID, mMediaParentIdSelection,
 						arguments1, MediaItem.DEFAULT_SORT_ORDER);
@@ -363,7 +704,7 @@ public class MediaManager {
 			if (includeLinks) {
 				c = getLinkedParentIdMediaCursor(contentResolver, MediaItem.PROJECTION_INTERNAL_ID, parentId, null);
 			} else {
-				final String[] arguments1 = mArguments1;
+				final String[] arguments1 = new String[1];
 				arguments1[0] = parentId;
 				c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_INTERNAL_ID, mMediaParentIdSelection,
 						arguments1, null);
@@ -383,10 +724,6 @@ public class MediaManager {
 		return findDeletedMedia(contentResolver, MediaItem.CONTENT_URI);
 	}
 
-	public static ArrayList<String> findDeletedMediaLinks(ContentResolver contentResolver) {
-		return findDeletedMedia(contentResolver, MediaItem.CONTENT_URI_LINK);
-	}
-
 	private static ArrayList<String> findDeletedMedia(ContentResolver contentResolver, Uri contentUri) {
 		final ArrayList<String> mediaIds = new ArrayList<>();
 		try (Cursor c = contentResolver.query(contentUri, MediaItem.PROJECTION_INTERNAL_ID, mDeletedSelection, null, null)) {
@@ -400,6 +737,291 @@ public class MediaManager {
 		return mediaIds;
 	}
 
+	/**
+	 * Replace the text index entry of a text media item. Call from a background thread whenever a text item's content
+	 * is saved; deleted items are removed from the index automatically when they are cleaned up.
+	 *
+	 * @return true if the index was updated
+	 */
+	public static boolean updateTextIndex(ContentResolver contentResolver, String mediaId, String text) {
+		return applyTextIndexOperations(contentResolver, mediaId, getTextIndexOperations(mediaId, text));
+	}
+
+	private static ArrayList<ContentProviderOperation> getTextIndexOperations(String mediaId, String text) {
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<>(2);
+		// inserting replaces any existing entry for this item (see MediaPhoneProvider.replaceTextIndexEntry)
+		operations.add(ContentProviderOperation.newInsert(MediaItem.TEXT_INDEX_CONTENT_URI)
+				.withValue(MediaItem.TEXT_INDEX_MEDIA_ID, mediaId)
+				.withValue(MediaItem.TEXT_INDEX_CONTENT, text == null ? "" : text)
+				.build());
+		return operations;
+	}
+
+	private static boolean applyTextIndexOperations(ContentResolver contentResolver, String mediaId,
+													ArrayList<ContentProviderOperation> operations) {
+		try {
+			contentResolver.applyBatch(MediaPhoneProvider.URI_AUTHORITY, operations);
+			return true;
+		} catch (RemoteException | OperationApplicationException | SQLException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(mediaId), "Unable to index text of " + mediaId + ": " + e.getLocalizedMessage());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Add the copies of spanning media that were recorded (but not copied) when upgrading the database from links to
+	 * spans (see MediaPhoneProvider) - copying files would make the upgrade itself too slow. Each copy is added only
+	 * once its file has been copied; any that fail (e.g., when storage is unavailable) are retried on the next call.
+	 * Copies files, so must be called from a background thread.
+	 *
+	 * @return The ids of the frames that were given a copy, and whose icons should be updated
+	 */
+	public static ArrayList<String> copyPendingSpanMedia(ContentResolver contentResolver) {
+		final ArrayList<String> copiedFrameIds = new ArrayList<>();
+		if (MediaPhone.DIRECTORY_STORAGE == null) {
+			return copiedFrameIds; // we can't copy the media files
+		}
+
+		final ArrayList<String[]> pendingCopies = new ArrayList<>(); // row id, media id, first and last frame id
+		try (Cursor c = contentResolver.query(MediaItem.SPAN_COPIES_CONTENT_URI, PROJECTION_SPAN_COPY, null, null,
+				null)) {
+			if (c != null && c.getCount() > 0) {
+				while (c.moveToNext()) {
+					pendingCopies.add(new String[]{ c.getString(0), c.getString(1), c.getString(2), c.getString(3) });
+				}
+			}
+		}
+
+		for (String[] pendingCopy : pendingCopies) {
+			final ArrayList<ContentProviderOperation> operations = new ArrayList<>(2);
+			operations.add(ContentProviderOperation.newDelete(MediaItem.SPAN_COPIES_CONTENT_URI)
+					.withSelection(MediaItem._ID + "=?", new String[]{ pendingCopy[0] })
+					.build());
+
+			// if the item or its file has since been removed there is nothing to copy, and the entry is just deleted
+			File copyFile = null;
+			final String frameId = pendingCopy[2];
+			final MediaItem media = findMediaByInternalId(contentResolver, pendingCopy[1]);
+			if (media != null && !media.getDeleted() && media.getFile().exists()) {
+				final MediaItem copy = MediaItem.fromExisting(media, MediaPhoneProvider.getNewInternalId(), frameId,
+						System.currentTimeMillis());
+				copyFile = copy.getFile();
+				try {
+					copyFile.getParentFile().mkdirs();
+					IOUtilities.copyFile(media.getFile(), copyFile);
+				} catch (IOException e) {
+					copyFile.delete();
+					continue;
+				}
+				final ContentValues copyValues = copy.getContentValues();
+				copyValues.put(MediaItem.SPAN_END_ID, frameId.equals(pendingCopy[3]) ? null : pendingCopy[3]);
+				operations.add(0, ContentProviderOperation.newInsert(MediaItem.CONTENT_URI).withValues(copyValues).build());
+			}
+
+			try {
+				contentResolver.applyBatch(MediaPhoneProvider.URI_AUTHORITY, operations);
+				if (copyFile != null) {
+					copiedFrameIds.add(frameId);
+				}
+			} catch (RemoteException | OperationApplicationException | SQLException e) {
+				if (copyFile != null) {
+					copyFile.delete();
+				}
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(frameId), "Unable to add copied span media: " + e.getLocalizedMessage());
+				}
+			}
+		}
+		return copiedFrameIds;
+	}
+
+	/**
+	 * Add any text media items that are not yet in the text index (e.g., after upgrading, or after importing or copying
+	 * media without indexing it). Reads every unindexed text file, so must be called from a background thread; items
+	 * whose text can't be read are indexed as empty so that they are not retried on every launch. As each file is read
+	 * anyway, short text is also copied into the media table at the same time (see {@link MediaItem#getTextContent()}).
+	 *
+	 * @return The number of items that were added to the index
+	 */
+	public static int updateMissingTextIndexEntries(ContentResolver contentResolver) {
+		final ArrayList<MediaItem> unindexedMedia = new ArrayList<>();
+		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI, MediaItem.PROJECTION_ALL, mUnindexedTextSelection, null,
+				null)) {
+			if (c != null && c.getCount() > 0) {
+				while (c.moveToNext()) {
+					unindexedMedia.add(MediaItem.fromCursor(c));
+				}
+			}
+		}
+
+		int indexedCount = 0;
+		for (MediaItem media : unindexedMedia) {
+			File textFile = media.getFile();
+			String textContents = textFile.exists() ? IOUtilities.getFileContents(textFile.getAbsolutePath()) : null;
+			final String mediaId = media.getInternalId();
+			final ArrayList<ContentProviderOperation> operations = getTextIndexOperations(mediaId, textContents);
+			if (textContents != null && textContents.length() <= MediaItem.MAX_INLINE_TEXT_LENGTH) {
+				operations.add(ContentProviderOperation.newUpdate(MediaItem.CONTENT_URI)
+						.withSelection(mMediaInternalIdSelection, new String[]{ mediaId })
+						.withValue(MediaItem.INLINE_TEXT, textContents)
+						.build());
+			}
+			if (applyTextIndexOperations(contentResolver, mediaId, operations)) {
+				indexedCount += 1;
+			}
+		}
+		return indexedCount;
+	}
+
+	/**
+	 * Find the (non-deleted) text media items whose content contains all of the words in query. The final word may be
+	 * incomplete (so that, e.g., "harb" finds "harbour"). Results are ordered in the same way as the narrative browser.
+	 *
+	 * @return The matching items, or an empty list if there are none (or if query contains no words)
+	 */
+	public static ArrayList<TextSearchResult> searchTextMedia(ContentResolver contentResolver, String query) {
+		final ArrayList<TextSearchResult> results = new ArrayList<>();
+		final String matchQuery = getTextMatchQuery(query);
+		if (matchQuery == null) {
+			return results;
+		}
+		try (Cursor c = contentResolver.query(MediaItem.TEXT_INDEX_CONTENT_URI, PROJECTION_TEXT_SEARCH, mTextSearchSelection,
+				new String[]{ matchQuery }, TEXT_SEARCH_SORT_ORDER)) {
+			if (c != null && c.getCount() > 0) {
+				final int mediaIdIndex = c.getColumnIndexOrThrow(TEXT_SEARCH_MEDIA_ID);
+				final int frameIdIndex = c.getColumnIndexOrThrow(TEXT_SEARCH_FRAME_ID);
+				final int narrativeIdIndex = c.getColumnIndexOrThrow(TEXT_SEARCH_NARRATIVE_ID);
+				final int narrativeSequenceIdIndex = c.getColumnIndexOrThrow(TEXT_SEARCH_NARRATIVE_SEQUENCE_ID);
+				final int snippetIndex = c.getColumnIndexOrThrow(TEXT_SEARCH_SNIPPET);
+				while (c.moveToNext()) {
+					results.add(new TextSearchResult(c.getString(mediaIdIndex), c.getString(frameIdIndex),
+							c.getString(narrativeIdIndex), c.getInt(narrativeSequenceIdIndex), c.getString(snippetIndex)));
+				}
+			}
+		} catch (SQLException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(query), "Text search failed: " + e.getLocalizedMessage());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Convert user input into an FTS query: each word is quoted (so that operators and punctuation in the input are not
+	 * interpreted), and all words must match; the last is treated as a prefix, as the user may not have finished typing
+	 *
+	 * @return The query, or null if the input contains no words
+	 */
+	private static String getTextMatchQuery(String query) {
+		if (TextUtils.isEmpty(query)) {
+			return null;
+		}
+		StringBuilder matchQuery = new StringBuilder();
+		for (String word : query.trim().split("\\s+")) {
+			word = word.replace("\"", "").replace("*", "");
+			if (!TextUtils.isEmpty(word)) {
+				if (matchQuery.length() > 0) {
+					matchQuery.append(' ');
+				}
+				matchQuery.append('"');
+				matchQuery.append(word);
+				matchQuery.append('"');
+			}
+		}
+		if (matchQuery.length() == 0) {
+			return null;
+		}
+		matchQuery.insert(matchQuery.length() - 1, '*'); // prefix match for the last word: "word*"
+		return matchQuery.toString();
+	}
+
+	/**
+	 * Get the text of every text item in a narrative that is short enough to be stored in the database, in one query
+	 *
+	 * @return A map of media internal id to text content; items not in the map must be read from their files instead
+	 */
+	public static HashMap<String, String> findInlineTextByNarrativeId(ContentResolver contentResolver, String narrativeId) {
+		final HashMap<String, String> textContent = new HashMap<>();
+		final String[] arguments1 = new String[1];
+		arguments1[0] = narrativeId;
+		try (Cursor c = contentResolver.query(MediaItem.CONTENT_URI, PROJECTION_INTERNAL_ID_AND_INLINE_TEXT,
+				mNarrativeInlineTextSelection, arguments1, null)) {
+			if (c != null && c.getCount() > 0) {
+				final int idIndex = c.getColumnIndexOrThrow(MediaItem.INTERNAL_ID);
+				final int textIndex = c.getColumnIndexOrThrow(MediaItem.INLINE_TEXT);
+				while (c.moveToNext()) {
+					textContent.put(c.getString(idIndex), c.getString(textIndex));
+				}
+			}
+		}
+		return textContent;
+	}
+
+	/**
+	 * Get the metadata of a media item, reading it from the item's file (and storing it for next time) if it has not yet
+	 * been recorded, or if the file has changed since it was. May read the file, so call from a background thread.
+	 *
+	 * @return The item's metadata, or null if its file does not exist
+	 */
+	public static MediaMetadata getMediaMetadata(ContentResolver contentResolver, MediaItem mediaItem) {
+		final File mediaFile = mediaItem.getFile();
+		final String[] arguments1 = new String[]{ mediaItem.getInternalId() };
+		try (Cursor c = contentResolver.query(MediaMetadata.CONTENT_URI, MediaMetadata.PROJECTION_ALL,
+				mMetadataMediaIdSelection, arguments1, null)) {
+			if (c != null && c.moveToFirst()) {
+				final MediaMetadata metadata = MediaMetadata.fromCursor(c);
+				if (metadata.isCurrent(mediaFile)) {
+					return metadata;
+				}
+			}
+		}
+		return updateMediaMetadata(contentResolver, mediaItem);
+	}
+
+	/**
+	 * Read and store the metadata of a media item from its file - call from a background thread after creating or
+	 * importing media so that its metadata is available without needing to read the file again later
+	 *
+	 * @return The item's metadata, or null if its file does not exist
+	 */
+	public static MediaMetadata updateMediaMetadata(ContentResolver contentResolver, MediaItem mediaItem) {
+		final MediaMetadata metadata = MediaMetadata.fromFile(mediaItem);
+		if (metadata != null) {
+			try {
+				contentResolver.insert(MediaMetadata.CONTENT_URI, metadata.getContentValues()); // replaces any old entry
+			} catch (SQLException e) {
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(metadata), "Unable to store metadata: " + e.getLocalizedMessage());
+				}
+			}
+		}
+		return metadata;
+	}
+
+	/**
+	 * Get the stored metadata of every media item in a narrative, in one query. Entries may be missing or out of date
+	 * (see {@link MediaMetadata#isCurrent}) - use {@link #getMediaMetadata} to fill in any gaps.
+	 *
+	 * @return A map of media internal id to metadata
+	 */
+	public static HashMap<String, MediaMetadata> findMediaMetadataByNarrativeId(ContentResolver contentResolver,
+																				String narrativeId) {
+		final HashMap<String, MediaMetadata> metadata = new HashMap<>();
+		final String[] arguments1 = new String[]{ narrativeId };
+		try (Cursor c = contentResolver.query(MediaMetadata.CONTENT_URI, MediaMetadata.PROJECTION_ALL,
+				mNarrativeMetadataSelection, arguments1, null)) {
+			if (c != null && c.getCount() > 0) {
+				while (c.moveToNext()) {
+					final MediaMetadata entry = MediaMetadata.fromCursor(c);
+					metadata.put(entry.getMediaId(), entry);
+				}
+			}
+		}
+		return metadata;
+	}
+
 	// currently only used for upgrade to version 38+
 	public static ArrayList<MediaItem> findAllTextMedia(ContentResolver contentResolver) {
 		final ArrayList<MediaItem> medias = new ArrayList<>();
@@ -0,0 +1,263 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.io.File;
+
+import ac.robinson.util.BitmapUtilities;
+import androidx.annotation.NonNull;
+import androidx.exifinterface.media.ExifInterface;
+
+/**
+ * Facts about a media item's file that are expensive to read (they need the file's headers or EXIF data to be parsed),
+ * recorded when the file is created or imported, or otherwise the first time they are needed - see
+ * {@link MediaManager#getMediaMetadata}. Entries are checked against the file's size and modification time (a single
+ * stat) before being used, so replacing a media item's file does not need to update its metadata explicitly.
+ */
+public class MediaMetadata implements BaseColumns {
+
+	public static final Uri CONTENT_URI = Uri.parse(
+			MediaPhoneProvider.URI_PREFIX + MediaPhoneProvider.URI_AUTHORITY + MediaPhoneProvider.URI_SEPARATOR +
+					MediaPhoneProvider.MEDIA_METADATA_LOCATION);
+
+	public static final String MEDIA_ID = "media_id"; // the internal id of the media item this entry describes
+	public static final String WIDTH = "width"; // as stored (i.e., before orientation is applied); 0 if not visual media
+	public static final String HEIGHT = "height";
+	public static final String ORIENTATION = "orientation"; // an ExifInterface orientation constant
+	public static final String MIME_TYPE = "mime_type";
+	public static final String DURATION = "duration"; // milliseconds; 0 if not time-based media
+	public static final String BYTE_SIZE = "byte_size";
+	public static final String FILE_MODIFIED = "file_modified";
+
+	// queries are joined with the media and frames tables, so columns must be qualified
+	public static final String[] PROJECTION_ALL = new String[]{
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + MEDIA_ID,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + WIDTH,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + HEIGHT,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + ORIENTATION,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + MIME_TYPE,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + DURATION,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + BYTE_SIZE,
+			MediaPhoneProvider.MEDIA_METADATA_LOCATION + "." + FILE_MODIFIED
+	};
+
+	private String mMediaId;
+	private int mWidth;
+	private int mHeight;
+	private int mOrientation;
+	private String mMimeType;
+	private long mDuration;
+	private long mByteSize;
+	private long mFileModified;
+
+	private MediaMetadata() {
+	}
+
+	public String getMediaId() {
+		return mMediaId;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * @return The width of the media once its orientation has been applied (i.e., as it should be displayed)
+	 */
+	public int getOrientedWidth() {
+		return isRotated() ? mHeight : mWidth;
+	}
+
+	/**
+	 * @return The height of the media once its orientation has been applied (i.e., as it should be displayed)
+	 */
+	public int getOrientedHeight() {
+		return isRotated() ? mWidth : mHeight;
+	}
+
+	public int getOrientation() {
+		return mOrientation;
+	}
+
+	public String getMimeType() {
+		return mMimeType;
+	}
+
+	public long getDuration() {
+		return mDuration;
+	}
+
+	public long getByteSize() {
+		return mByteSize;
+	}
+
+	/**
+	 * @return Whether this entry still describes the given file (i.e., it has not been replaced since the entry was made)
+	 */
+	public boolean isCurrent(File mediaFile) {
+		return mediaFile.length() == mByteSize && mediaFile.lastModified() == mFileModified;
+	}
+
+	private boolean isRotated() {
+		switch (mOrientation) { // notes below are from ExifInterface source
+			// flipped about top-left <--> bottom-right axis
+			case ExifInterface.ORIENTATION_TRANSPOSE:
+			case ExifInterface.ORIENTATION_ROTATE_90: // rotate 90 cw to right it
+				// flipped about top-right <--> bottom-left axis
+			case ExifInterface.ORIENTATION_TRANSVERSE:
+			case ExifInterface.ORIENTATION_ROTATE_270: // rotate 270 to right it
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	public ContentValues getContentValues() {
+		final ContentValues values = new ContentValues();
+		values.put(MEDIA_ID, mMediaId);
+		values.put(WIDTH, mWidth);
+		values.put(HEIGHT, mHeight);
+		values.put(ORIENTATION, mOrientation);
+		values.put(MIME_TYPE, mMimeType);
+		values.put(DURATION, mDuration);
+		values.put(BYTE_SIZE, mByteSize);
+		values.put(FILE_MODIFIED, mFileModified);
+		return values;
+	}
+
+	public static MediaMetadata fromCursor(Cursor c) {
+		final MediaMetadata metadata = new MediaMetadata();
+		metadata.mMediaId = c.getString(c.getColumnIndexOrThrow(MEDIA_ID));
+		metadata.mWidth = c.getInt(c.getColumnIndexOrThrow(WIDTH));
+		metadata.mHeight = c.getInt(c.getColumnIndexOrThrow(HEIGHT));
+		metadata.mOrientation = c.getInt(c.getColumnIndexOrThrow(ORIENTATION));
+		metadata.mMimeType = c.getString(c.getColumnIndexOrThrow(MIME_TYPE));
+		metadata.mDuration = c.getLong(c.getColumnIndexOrThrow(DURATION));
+		metadata.mByteSize = c.getLong(c.getColumnIndexOrThrow(BYTE_SIZE));
+		metadata.mFileModified = c.getLong(c.getColumnIndexOrThrow(FILE_MODIFIED));
+		return metadata;
+	}
+
+	/**
+	 * Read the metadata of a media item from its file. This parses the file's headers, so should not be run on the UI
+	 * thread; use {@link MediaManager#getMediaMetadata} to avoid repeating this unnecessarily.
+	 *
+	 * @return The item's metadata, or null if its file does not exist
+	 */
+	public static MediaMetadata fromFile(MediaItem mediaItem) {
+		final File mediaFile = mediaItem.getFile();
+		if (!mediaFile.exists()) {
+			return null;
+		}
+
+		final MediaMetadata metadata = new MediaMetadata();
+		metadata.mMediaId = mediaItem.getInternalId();
+		metadata.mByteSize = mediaFile.length();
+		metadata.mFileModified = mediaFile.lastModified();
+		metadata.mOrientation = ExifInterface.ORIENTATION_UNDEFINED;
+		final String mediaPath = mediaFile.getAbsolutePath();
+
+		switch (mediaItem.getType()) {
+			case MediaPhoneProvider.TYPE_IMAGE_BACK:
+			case MediaPhoneProvider.TYPE_IMAGE_FRONT:
+				BitmapFactory.Options imageDimensions = BitmapUtilities.getImageDimensions(mediaPath);
+				metadata.mWidth = Math.max(imageDimensions.outWidth, 0);
+				metadata.mHeight = Math.max(imageDimensions.outHeight, 0);
+				metadata.mMimeType = imageDimensions.outMimeType;
+				metadata.mOrientation = BitmapUtilities.getImageOrientation(mediaPath);
+				break;
+
+			case MediaPhoneProvider.TYPE_VIDEO:
+			case MediaPhoneProvider.TYPE_AUDIO:
+				MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+				try {
+					retriever.setDataSource(mediaPath);
+					metadata.mMimeType = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
+					metadata.mDuration = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+					if (mediaItem.getType() == MediaPhoneProvider.TYPE_VIDEO) {
+						metadata.mWidth = (int) parseLong(
+								retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+						metadata.mHeight = (int) parseLong(
+								retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+						if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+							metadata.mOrientation = getRotationOrientation((int) parseLong(
+									retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION)));
+						}
+					}
+				} catch (RuntimeException ignored) {
+					// unreadable file - record what we know, so that we don't repeatedly try to read it
+				} finally {
+					try {
+						retriever.release();
+					} catch (Exception ignored) {
+					}
+				}
+				break;
+
+			default:
+				metadata.mMimeType = mediaItem.getType() == MediaPhoneProvider.TYPE_TEXT ? "text/plain" : null;
+				break;
+		}
+		return metadata;
+	}
+
+	private static long parseLong(String value) {
+		if (TextUtils.isEmpty(value)) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static int getRotationOrientation(int rotation) {
+		switch (rotation) {
+			case 90:
+				return ExifInterface.ORIENTATION_ROTATE_90;
+			case 180:
+				return ExifInterface.ORIENTATION_ROTATE_180;
+			case 270:
+				return ExifInterface.ORIENTATION_ROTATE_270;
+			default:
+				return ExifInterface.ORIENTATION_NORMAL;
+		}
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "[" + mMediaId + "," + mWidth + "," + mHeight + "," + mOrientation + "," +
+				mMimeType + "," + mDuration + "," + mByteSize + "," + mFileModified + "]";
+	}
+}
@@ -21,9 +21,12 @@
 package ac.robinson.mediaphone.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -32,11 +35,17 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.R;
@@ -47,7 +56,7 @@ public class MediaPhoneProvider extends ContentProvider {
 
 	public static final String URI_AUTHORITY = MediaPhone.APPLICATION_NAME;
 	private static final String DATABASE_NAME = URI_AUTHORITY + ".db";
-	private static final int DATABASE_VERSION = 4;
+	private static final int DATABASE_VERSION = 10;
 
 	public static final String URI_PREFIX = "content://";
 	public static final String URI_SEPARATOR = File.separator;
@@ -56,8 +65,21 @@ public class MediaPhoneProvider extends ContentProvider {
 	public static final String NARRATIVES_LOCATION = "narratives";
 	public static final String FRAMES_LOCATION = "frames";
 	public static final String MEDIA_LOCATION = "media";
-	public static final String MEDIA_LINKS_LOCATION = "media_links";
+	private static final String MEDIA_LINKS_LOCATION = "media_links"; // not updated since version 6 (see onUpgrade)
 	public static final String TEMPLATES_LOCATION = "templates";
+	public static final String TEXT_INDEX_LOCATION = "text_index"; // full-text (FTS) index of text media content
+	static final String TEXT_INDEX_ROW_ID = "docid"; // the FTS row id of each index entry: its media item's row id
+	public static final String MEDIA_METADATA_LOCATION = "media_metadata"; // dimensions etc. of media files
+	public static final String MEDIA_SPAN_COPIES_LOCATION = "media_span_copies"; // still to be copied (see onUpgrade)
+
+	// the columns that affect a narrative's content (and so its revision) - e.g., not creation dates
+	private static final String[] FRAME_CONTENT_COLUMNS = new String[]{
+			FrameItem.PARENT_ID, FrameItem.SEQUENCE_ID, FrameItem.DELETED
+	};
+	private static final String[] MEDIA_CONTENT_COLUMNS = new String[]{
+			MediaItem.PARENT_ID, MediaItem.FILE_EXTENSION, MediaItem.DURATION, MediaItem.TYPE, MediaItem.EXTRA,
+			MediaItem.SPAN_FRAMES, MediaItem.SPAN_END_ID, MediaItem.INLINE_TEXT, MediaItem.DELETED
+	};
 
 	// NOTE: these are *not* the same as the MediaTablet type classifiers
 	public static final int TYPE_IMAGE_BACK = 1; // normal (rear) camera
@@ -68,17 +90,32 @@ public class MediaPhoneProvider extends ContentProvider {
 
 	private static final UriMatcher URI_MATCHER;
 
+	// incremented after any narrative's content changes, so that caches read on the UI thread can check that nothing has
+	// changed without a query (this provider is not exported, so all changes are made in the application's own process)
+	private static final AtomicInteger sContentVersion = new AtomicInteger();
+
 	static {
 		URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
 		URI_MATCHER.addURI(URI_AUTHORITY, NARRATIVES_LOCATION, R.id.uri_narratives);
 		URI_MATCHER.addURI(URI_AUTHORITY, FRAMES_LOCATION, R.id.uri_frames);
 		URI_MATCHER.addURI(URI_AUTHORITY, MEDIA_LOCATION, R.id.uri_media);
-		URI_MATCHER.addURI(URI_AUTHORITY, MEDIA_LINKS_LOCATION, R.id.uri_media_links);
 		URI_MATCHER.addURI(URI_AUTHORITY, TEMPLATES_LOCATION, R.id.uri_templates);
+		URI_MATCHER.addURI(URI_AUTHORITY, TEXT_INDEX_LOCATION, R.id.uri_text_index);
+		URI_MATCHER.addURI(URI_AUTHORITY, MEDIA_METADATA_LOCATION, R.id.uri_media_metadata);
+		URI_MATCHER.addURI(URI_AUTHORITY, MEDIA_SPAN_COPIES_LOCATION, R.id.uri_media_span_copies);
 	}
 
 	private SQLiteOpenHelper mOpenHelper;
 
+	// while a batch is applied, the narratives that it changes are collected so that each revision is incremented only
+	// once, as the batch completes - the known parents of frames inserted by the batch are also kept, to save lookups
+	private final ThreadLocal<BatchChanges> mBatchChanges = new ThreadLocal<>();
+
+	private static final class BatchChanges {
+		final LinkedHashSet<String> mNarrativeIds = new LinkedHashSet<>();
+		final HashMap<String, String> mFrameParentIds = new HashMap<>();
+	}
+
 	@Override
 	public boolean onCreate() {
 		mOpenHelper = new DatabaseHelper(getContext());
@@ -89,6 +126,14 @@ public class MediaPhoneProvider extends ContentProvider {
 		return UUID.randomUUID().toString();
 	}
 
+	/**
+	 * @return A number that changes whenever the content of any narrative or template changes (i.e., whenever a revision
+	 * would be incremented) - read it <i>before</i> loading content, so that any change made while loading is detected
+	 */
+	public static int getContentVersion() {
+		return sContentVersion.get();
+	}
+
 	public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
 
 		SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
@@ -100,10 +145,23 @@ public class MediaPhoneProvider extends ContentProvider {
 			qb.setTables(FRAMES_LOCATION);
 		} else if (match == R.id.uri_media) {
 			qb.setTables(MEDIA_LOCATION);
-		} else if (match == R.id.uri_media_links) {
-			qb.setTables(MEDIA_LINKS_LOCATION);
 		} else if (match == R.id.uri_templates) {
 			qb.setTables(TEMPLATES_LOCATION);
+		} else if (match == R.id.uri_text_index) {
+			// index entries are only useful alongside the media, frame and narrative they belong to, so we always join
+			qb.setTables(TEXT_INDEX_LOCATION + " JOIN " + MEDIA_LOCATION + " ON " + MEDIA_LOCATION + "." +
+					MediaItem._ID + "=" + TEXT_INDEX_LOCATION + "." + TEXT_INDEX_ROW_ID + " JOIN " +
+					FRAMES_LOCATION + " ON " + FRAMES_LOCATION + "." + FrameItem.INTERNAL_ID + "=" + MEDIA_LOCATION + "." +
+					MediaItem.PARENT_ID + " JOIN " + NARRATIVES_LOCATION + " ON " + NARRATIVES_LOCATION + "." +
+					NarrativeItem.INTERNAL_ID + "=" + FRAMES_LOCATION + "." + FrameItem.PARENT_ID);
+		} else if (match == R.id.uri_media_metadata) {
+			// joined so that the metadata of a whole narrative's media can be loaded at once
+			qb.setTables(MEDIA_METADATA_LOCATION + " JOIN " + MEDIA_LOCATION + " ON " + MEDIA_LOCATION + "." +
+					MediaItem.INTERNAL_ID + "=" + MEDIA_METADATA_LOCATION + "." + MediaMetadata.MEDIA_ID + " JOIN " +
+					FRAMES_LOCATION + " ON " + FRAMES_LOCATION + "." + FrameItem.INTERNAL_ID + "=" + MEDIA_LOCATION + "." +
+					MediaItem.PARENT_ID);
+		} else if (match == R.id.uri_media_span_copies) {
+			qb.setTables(MEDIA_SPAN_COPIES_LOCATION);
 		} else {
 			throw new IllegalArgumentException("Unknown URI " + uri);
 		}
@@ -125,8 +183,9 @@ public class MediaPhoneProvider extends ContentProvider {
 
 	public String getType(@NonNull Uri uri) {
 		int match = URI_MATCHER.match(uri);
-		if (match == R.id.uri_narratives || match == R.id.uri_frames || match == R.id.uri_media || match == R.id.uri_media_links ||
-				match == R.id.uri_templates) {
+		if (match == R.id.uri_narratives || match == R.id.uri_frames || match == R.id.uri_media ||
+				match == R.id.uri_templates || match == R.id.uri_text_index || match == R.id.uri_media_metadata ||
+				match == R.id.uri_media_span_copies) {
 			return "vnd.android.cursor.dir/vnd." + URI_PACKAGE; // do these need to be unique?
 		}
 		throw new IllegalArgumentException("Unknown URI " + uri);
@@ -156,15 +215,20 @@ public class MediaPhoneProvider extends ContentProvider {
 		} else if (match == R.id.uri_media) {
 			rowId = db.insert(MEDIA_LOCATION, null, values);
 			contentUri = MediaItem.CONTENT_URI;
-		} else if (match == R.id.uri_media_links) {
-			rowId = db.insert(MEDIA_LINKS_LOCATION, null, values);
-			contentUri = MediaItem.CONTENT_URI_LINK;
 		} else if (match == R.id.uri_templates) {
 			rowId = db.insert(TEMPLATES_LOCATION, null, values);
 			contentUri = NarrativeItem.TEMPLATE_CONTENT_URI;
+		} else if (match == R.id.uri_text_index) {
+			rowId = replaceTextIndexEntry(db, values);
+			contentUri = MediaItem.TEXT_INDEX_CONTENT_URI;
+		} else if (match == R.id.uri_media_metadata) {
+			// there is only ever one entry per media item, so inserting replaces any existing (outdated) entry
+			rowId = db.insertWithOnConflict(MEDIA_METADATA_LOCATION, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+			contentUri = MediaMetadata.CONTENT_URI;
 		}
 
 		if (rowId > 0) {
+			recordChangedNarratives(db, findInsertedNarratives(db, match, values));
 			Uri insertUri = ContentUris.withAppendedId(contentUri, rowId);
 			getContext().getContentResolver().notifyChange(uri, null);
 			return insertUri;
@@ -178,21 +242,33 @@ public class MediaPhoneProvider extends ContentProvider {
 
 		int count;
 		int match = URI_MATCHER.match(uri);
+		// before deleting, or we can't find the items' parents
+		ArrayList<String> changedNarratives = findChangedNarratives(db, match, null, selectionClause, selectionArgs);
 		if (match == R.id.uri_narratives) {
 			count = db.delete(NARRATIVES_LOCATION, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_frames) {
 			count = db.delete(FRAMES_LOCATION, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_media) {
+			// FTS tables can't be kept in sync by triggers; for consistency, metadata is removed in the same way
+			deleteMediaEntries(db, TEXT_INDEX_LOCATION, TEXT_INDEX_ROW_ID, MediaItem._ID, selectionClause,
+					selectionArgs);
+			deleteMediaEntries(db, MEDIA_METADATA_LOCATION, MediaMetadata.MEDIA_ID, MediaItem.INTERNAL_ID,
+					selectionClause, selectionArgs);
 			count = db.delete(MEDIA_LOCATION, selectionClause, selectionArgs);
-		} else if (match == R.id.uri_media_links) {
-			count = db.delete(MEDIA_LINKS_LOCATION, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_templates) {
 			count = db.delete(TEMPLATES_LOCATION, selectionClause, selectionArgs);
+		} else if (match == R.id.uri_text_index) {
+			count = db.delete(TEXT_INDEX_LOCATION, selectionClause, selectionArgs);
+		} else if (match == R.id.uri_media_metadata) {
+			count = db.delete(MEDIA_METADATA_LOCATION, selectionClause, selectionArgs);
+		} else if (match == R.id.uri_media_span_copies) {
+			count = db.delete(MEDIA_SPAN_COPIES_LOCATION, selectionClause, selectionArgs);
 		} else {
 			throw new IllegalArgumentException("Unknown URI " + uri);
 		}
 
 		if (count > 0) {
+			recordChangedNarratives(db, changedNarratives);
 			getContext().getContentResolver().notifyChange(uri, null);
 		}
 		return count;
@@ -212,24 +288,276 @@ public class MediaPhoneProvider extends ContentProvider {
 
 		int rowsAffected = 0;
 		int match = URI_MATCHER.match(uri);
+		// before updating, as selections (e.g., when extending a media span) may no longer match once the update is applied
+		ArrayList<String> changedNarratives = findChangedNarratives(db, match, values, selectionClause, selectionArgs);
 		if (match == R.id.uri_narratives) {
 			rowsAffected = db.update(NARRATIVES_LOCATION, values, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_frames) {
 			rowsAffected = db.update(FRAMES_LOCATION, values, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_media) {
 			rowsAffected = db.update(MEDIA_LOCATION, values, selectionClause, selectionArgs);
-		} else if (match == R.id.uri_media_links) {
-			rowsAffected = db.update(MEDIA_LINKS_LOCATION, values, selectionClause, selectionArgs);
 		} else if (match == R.id.uri_templates) {
 			rowsAffected = db.update(TEMPLATES_LOCATION, values, selectionClause, selectionArgs);
 		}
 
 		if (rowsAffected > 0) {
+			recordChangedNarratives(db, changedNarratives);
 			getContext().getContentResolver().notifyChange(uri, null);
 		}
 		return rowsAffected;
 	}
 
+	/**
+	 * Apply a batch of operations in a single transaction, so that (for example) renumbering a narrative's frames is both
+	 * fast and atomic. The revision of each narrative that the batch changes is incremented once, at the end.
+	 */
+	@NonNull
+	@Override
+	public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		final int initialContentVersion = sContentVersion.get();
+		final BatchChanges batchChanges = new BatchChanges();
+		mBatchChanges.set(batchChanges);
+		db.beginTransaction();
+		try {
+			ContentProviderResult[] results = super.applyBatch(operations);
+			incrementNarrativeRevisions(db, new ArrayList<>(batchChanges.mNarrativeIds));
+			db.setTransactionSuccessful();
+			return results;
+		} finally {
+			mBatchChanges.remove();
+			db.endTransaction();
+			if (sContentVersion.get() != initialContentVersion) {
+				sContentVersion.incrementAndGet(); // again, as the batch's changes were not visible until now
+			}
+		}
+	}
+
+	/**
+	 * Find the narratives whose content is changed by inserting a frame or media item with the given values - unlike
+	 * updates and deletions, these are known from the values themselves (for media, via the parent frame), so no query of
+	 * the inserted item is needed
+	 *
+	 * @return The internal ids of the affected narratives, or an empty list if there are none
+	 */
+	private ArrayList<String> findInsertedNarratives(SQLiteDatabase db, int match, ContentValues values) {
+		final ArrayList<String> narrativeIds = new ArrayList<>(1);
+		final BatchChanges batchChanges = mBatchChanges.get();
+		String narrativeId = null;
+		if (match == R.id.uri_frames) {
+			narrativeId = values.getAsString(FrameItem.PARENT_ID);
+			if (batchChanges != null && narrativeId != null) {
+				batchChanges.mFrameParentIds.put(values.getAsString(FrameItem.INTERNAL_ID), narrativeId);
+			}
+		} else if (match == R.id.uri_media) {
+			final String frameId = values.getAsString(MediaItem.PARENT_ID);
+			narrativeId = batchChanges != null ? batchChanges.mFrameParentIds.get(frameId) : null;
+			if (narrativeId == null && frameId != null) {
+				try (Cursor c = db.rawQuery("SELECT " + FrameItem.PARENT_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+						FrameItem.INTERNAL_ID + "=?", new String[]{ frameId })) {
+					if (c.moveToFirst()) {
+						narrativeId = c.getString(0);
+					}
+				}
+				if (batchChanges != null && narrativeId != null) {
+					batchChanges.mFrameParentIds.put(frameId, narrativeId);
+				}
+			}
+		}
+		if (narrativeId != null) {
+			narrativeIds.add(narrativeId);
+		}
+		return narrativeIds;
+	}
+
+	/**
+	 * Find the narratives whose content would be changed by writing to the frames or media that match the given
+	 * selection. Changes to narratives and templates themselves are ignored, as are updates that only set columns that
+	 * do not affect a narrative's content (such as creation dates), or that set content columns to their existing values
+	 * (such as when an item is saved again after its icon is updated).
+	 *
+	 * @param values The values being updated, or null when deleting (in which case any match is a change)
+	 * @return The internal ids of the affected narratives, or an empty list if there are none
+	 */
+	private static ArrayList<String> findChangedNarratives(SQLiteDatabase db, int match, ContentValues values,
+														   String selectionClause, String[] selectionArgs) {
+		final String[] contentColumns;
+		final String newParentId; // when moving items, their new parent is changed as well as their old one
+		if (match == R.id.uri_frames) {
+			contentColumns = FRAME_CONTENT_COLUMNS;
+			newParentId = values != null ? values.getAsString(FrameItem.PARENT_ID) : null;
+		} else if (match == R.id.uri_media) {
+			contentColumns = MEDIA_CONTENT_COLUMNS;
+			newParentId = values != null ? values.getAsString(MediaItem.PARENT_ID) : null;
+		} else {
+			return new ArrayList<>();
+		}
+
+		final ArrayList<String> queryArgs = new ArrayList<>();
+		if (selectionArgs != null) {
+			queryArgs.addAll(Arrays.asList(selectionArgs));
+		}
+		final StringBuilder itemSelection = new StringBuilder("(");
+		itemSelection.append(TextUtils.isEmpty(selectionClause) ? "1" : selectionClause);
+		itemSelection.append(')');
+		if (values != null) {
+			// only rows where at least one of the content columns being updated would actually change
+			final StringBuilder changedSelection = new StringBuilder();
+			for (String column : contentColumns) {
+				if (!values.containsKey(column)) {
+					continue;
+				}
+				changedSelection.append(changedSelection.length() > 0 ? " OR " : "");
+				changedSelection.append(column);
+				final Object value = values.get(column);
+				if (value == null) {
+					changedSelection.append(" IS NOT NULL");
+				} else {
+					changedSelection.append(" IS NOT ?");
+					queryArgs.add(value instanceof Boolean ? ((Boolean) value ? "1" : "0") : value.toString());
+				}
+			}
+			if (changedSelection.length() <= 0) {
+				return new ArrayList<>(); // no content columns are being updated
+			}
+			itemSelection.append(" AND (");
+			itemSelection.append(changedSelection);
+			itemSelection.append(')');
+		}
+
+		final String narrativeQuery;
+		if (match == R.id.uri_frames) {
+			narrativeQuery = "SELECT DISTINCT " + FrameItem.PARENT_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+					itemSelection;
+		} else {
+			narrativeQuery = "SELECT DISTINCT " + FrameItem.PARENT_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+					FrameItem.INTERNAL_ID + " IN (SELECT " + MediaItem.PARENT_ID + " FROM " + MEDIA_LOCATION + " WHERE " +
+					itemSelection + ")";
+		}
+
+		final ArrayList<String> narrativeIds = new ArrayList<>();
+		Cursor c = null;
+		try {
+			c = db.rawQuery(narrativeQuery, queryArgs.toArray(new String[0]));
+			while (c.moveToNext()) {
+				narrativeIds.add(c.getString(0));
+			}
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+		}
+
+		if (newParentId != null && !narrativeIds.isEmpty()) {
+			if (match == R.id.uri_frames) {
+				if (!narrativeIds.contains(newParentId)) {
+					narrativeIds.add(newParentId);
+				}
+			} else {
+				try {
+					c = db.rawQuery("SELECT " + FrameItem.PARENT_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+							FrameItem.INTERNAL_ID + "=?", new String[]{ newParentId });
+					if (c.moveToFirst() && !narrativeIds.contains(c.getString(0))) {
+						narrativeIds.add(c.getString(0));
+					}
+				} finally {
+					if (c != null) {
+						c.close();
+					}
+				}
+			}
+		}
+		return narrativeIds;
+	}
+
+	/**
+	 * Increment the revision of the given narratives now or, if a batch is being applied on this thread, when it completes
+	 */
+	private void recordChangedNarratives(SQLiteDatabase db, ArrayList<String> narrativeIds) {
+		final BatchChanges batchChanges = mBatchChanges.get();
+		if (batchChanges != null) {
+			batchChanges.mNarrativeIds.addAll(narrativeIds);
+		} else {
+			incrementNarrativeRevisions(db, narrativeIds);
+		}
+	}
+
+	/**
+	 * Increment the revision of the given narratives, so that cached playback plans (see {@link PlaybackPlanCache}) are
+	 * rebuilt
+	 */
+	private static void incrementNarrativeRevisions(SQLiteDatabase db, ArrayList<String> narrativeIds) {
+		if (narrativeIds.isEmpty()) {
+			return;
+		}
+		sContentVersion.incrementAndGet(); // also covers templates, which don't have revisions
+		final StringBuilder revisionUpdate = new StringBuilder("UPDATE ");
+		revisionUpdate.append(NARRATIVES_LOCATION);
+		revisionUpdate.append(" SET ");
+		revisionUpdate.append(NarrativeItem.REVISION);
+		revisionUpdate.append(" = ");
+		revisionUpdate.append(NarrativeItem.REVISION);
+		revisionUpdate.append(" + 1 WHERE ");
+		revisionUpdate.append(NarrativeItem.INTERNAL_ID);
+		revisionUpdate.append(" IN (");
+		for (int i = 0, n = narrativeIds.size(); i < n; i++) {
+			revisionUpdate.append(i > 0 ? ",?" : "?");
+		}
+		revisionUpdate.append(");");
+		db.execSQL(revisionUpdate.toString(), narrativeIds.toArray());
+	}
+
+	/**
+	 * Replace the text index entry of a media item. Entries are keyed by the media item's row id (the FTS docid), so
+	 * that they can be found without a full scan of the index - values must contain the item's internal id (which is
+	 * not itself stored in the index) and its text.
+	 *
+	 * @return The row id of the entry, or 0 if the media item does not exist
+	 */
+	private static long replaceTextIndexEntry(SQLiteDatabase db, ContentValues values) {
+		long mediaRowId = 0;
+		try (Cursor c = db.rawQuery("SELECT " + MediaItem._ID + " FROM " + MEDIA_LOCATION + " WHERE " +
+				MediaItem.INTERNAL_ID + "=?", new String[]{ values.getAsString(MediaItem.TEXT_INDEX_MEDIA_ID) })) {
+			if (c.moveToFirst()) {
+				mediaRowId = c.getLong(0);
+			}
+		}
+		if (mediaRowId <= 0) {
+			return 0;
+		}
+
+		final String[] rowIdArguments = new String[]{ Long.toString(mediaRowId) };
+		final ContentValues indexValues = new ContentValues();
+		indexValues.put(TEXT_INDEX_ROW_ID, mediaRowId);
+		indexValues.put(MediaItem.TEXT_INDEX_CONTENT, values.getAsString(MediaItem.TEXT_INDEX_CONTENT));
+		db.beginTransaction();
+		try {
+			db.delete(TEXT_INDEX_LOCATION, TEXT_INDEX_ROW_ID + "=?", rowIdArguments);
+			final long rowId = db.insert(TEXT_INDEX_LOCATION, null, indexValues);
+			db.setTransactionSuccessful();
+			return rowId;
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Remove the entries in the given table (i.e., the text index or metadata) of any media items that match the given
+	 * selection, where the table's entryColumn refers to the media table's mediaColumn
+	 */
+	private static void deleteMediaEntries(SQLiteDatabase db, String table, String entryColumn, String mediaColumn,
+										   String selectionClause, String[] selectionArgs) {
+		String indexDelete = "DELETE FROM " + table + " WHERE " + entryColumn +
+				" IN (SELECT " + mediaColumn + " FROM " + MEDIA_LOCATION +
+				(TextUtils.isEmpty(selectionClause) ? "" : " WHERE " + selectionClause) + ");";
+		if (selectionArgs != null && selectionArgs.length > 0) {
+			db.execSQL(indexDelete, selectionArgs);
+		} else {
+			db.execSQL(indexDelete);
+		}
+	}
+
 	private static class DatabaseHelper extends SQLiteOpenHelper {
 		public DatabaseHelper(Context context) {
 			super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -241,12 +569,16 @@ public class MediaPhoneProvider extends ContentProvider {
 			db.execSQL("DROP TABLE IF EXISTS " + FRAMES_LOCATION + ";");
 			db.execSQL("DROP TABLE IF EXISTS " + MEDIA_LOCATION + ";");
 			db.execSQL("DROP TABLE IF EXISTS " + TEMPLATES_LOCATION + ";");
+			db.execSQL("DROP TABLE IF EXISTS " + TEXT_INDEX_LOCATION + ";");
+			db.execSQL("DROP TABLE IF EXISTS " + MEDIA_METADATA_LOCATION + ";");
+			db.execSQL("DROP TABLE IF EXISTS " + MEDIA_SPAN_COPIES_LOCATION + ";");
 
 			db.execSQL("CREATE TABLE " + NARRATIVES_LOCATION + " (" + NarrativeItem._ID + " INTEGER PRIMARY KEY, "
 					// required for Android Adapters
 					+ NarrativeItem.INTERNAL_ID + " TEXT, " // the GUID of this narrative item
 					+ NarrativeItem.SEQUENCE_ID + " INTEGER, " // the displayed ID of this narrative item
 					+ NarrativeItem.DATE_CREATED + " INTEGER, " // the timestamp when this narrative was created
+					+ NarrativeItem.REVISION + " INTEGER DEFAULT 0, " // incremented whenever this narrative's content changes
 					+ NarrativeItem.DELETED + " INTEGER);"); // whether this narrative has been deleted
 			db.execSQL("CREATE INDEX " + NARRATIVES_LOCATION + "Index" + NarrativeItem.INTERNAL_ID + " ON " + NARRATIVES_LOCATION +
 					"(" + NarrativeItem.INTERNAL_ID + ");");
@@ -281,25 +613,53 @@ public class MediaPhoneProvider extends ContentProvider {
 					+ MediaItem.EXTRA + " INTEGER, " // an extra integer property (primarily used for text word count)
 					+ MediaItem.DATE_CREATED + " INTEGER, " // the timestamp when this media item was created
 					+ MediaItem.SPAN_FRAMES + " INTEGER, " // whether this media item spans multiple frames
+					+ MediaItem.SPAN_END_ID + " TEXT, " // the GUID of the last frame this spanning media item applies to
+					+ MediaItem.INLINE_TEXT + " TEXT, " // the content of this item, for short text items (otherwise null)
 					+ MediaItem.DELETED + " INTEGER);"); // whether this media item has been deleted
 			db.execSQL("CREATE INDEX " + MEDIA_LOCATION + "Index" + MediaItem.INTERNAL_ID + " ON " + MEDIA_LOCATION + "(" +
 					MediaItem.INTERNAL_ID + ");");
 			db.execSQL("CREATE INDEX " + MEDIA_LOCATION + "Index" + MediaItem.PARENT_ID + " ON " + MEDIA_LOCATION + "(" +
 					MediaItem.PARENT_ID + ");");
 
-			createMediaLinksTable(db);
-
 			db.execSQL("CREATE TABLE " + TEMPLATES_LOCATION + " (" + NarrativeItem._ID + " INTEGER PRIMARY KEY, "
 					// required for Android Adapters
 					+ NarrativeItem.INTERNAL_ID + " TEXT, " // the GUID of this template item
 					+ NarrativeItem.SEQUENCE_ID + " INTEGER, " // the displayed ID of this template item
 					+ NarrativeItem.DATE_CREATED + " INTEGER, " // the timestamp when this template was created
+					+ NarrativeItem.REVISION + " INTEGER DEFAULT 0, " // unused for templates; required for NarrativeItem
 					+ NarrativeItem.DELETED + " INTEGER);"); // whether this template has been deleted
 			db.execSQL("CREATE INDEX " + TEMPLATES_LOCATION + "Index" + NarrativeItem.INTERNAL_ID + " ON " + TEMPLATES_LOCATION +
 					"(" + NarrativeItem.INTERNAL_ID + ");");
+
+			createTextIndexTable(db);
+			createMediaMetadataTable(db);
+			createMediaSpanCopiesTable(db);
+		}
+
+		// the text of each text media item, so that narratives can be searched without opening every text file - each
+		// entry's docid is its media item's row id, as FTS columns can only be searched with MATCH (or a full scan)
+		private void createTextIndexTable(SQLiteDatabase db) {
+			// unicode61 (API 21+) case-folds non-ASCII text; the default (simple) tokenizer only handles ASCII
+			db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TEXT_INDEX_LOCATION + " USING fts4(" +
+					MediaItem.TEXT_INDEX_CONTENT +
+					(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? ", tokenize=unicode61" : "") + ");");
 		}
 
-		// in a separate function as it's used in both upgrade and creation
+		// facts about media files that are expensive to read (e.g., image dimensions and orientation) - see MediaMetadata
+		private void createMediaMetadataTable(SQLiteDatabase db) {
+			db.execSQL("CREATE TABLE IF NOT EXISTS " + MEDIA_METADATA_LOCATION + " (" + MediaMetadata._ID +
+					" INTEGER PRIMARY KEY, " // required for Android Adapters
+					+ MediaMetadata.MEDIA_ID + " TEXT UNIQUE, " // the GUID of the media item this entry describes
+					+ MediaMetadata.WIDTH + " INTEGER, " // the stored width of the image or video
+					+ MediaMetadata.HEIGHT + " INTEGER, " // the stored height of the image or video
+					+ MediaMetadata.ORIENTATION + " INTEGER, " // the orientation to apply when displaying (ExifInterface)
+					+ MediaMetadata.MIME_TYPE + " TEXT, " // the type of the file's content
+					+ MediaMetadata.DURATION + " INTEGER, " // the duration of audio or video
+					+ MediaMetadata.BYTE_SIZE + " INTEGER, " // the size of the file when this entry was made
+					+ MediaMetadata.FILE_MODIFIED + " INTEGER);"); // the file modification time when this entry was made
+		}
+
+		// media links were replaced by span ranges in version 6, but are still needed so that older databases can be upgraded
 		private void createMediaLinksTable(SQLiteDatabase db) {
 			db.execSQL("CREATE TABLE IF NOT EXISTS " + MEDIA_LINKS_LOCATION + " (" + MediaItem._ID + " INTEGER PRIMARY KEY, "
 					// required for Android Adapters
@@ -312,6 +672,17 @@ public class MediaPhoneProvider extends ContentProvider {
 					MEDIA_LINKS_LOCATION + "(" + MediaItem.PARENT_ID + ");");
 		}
 
+		// the runs of linked frames that became separate copies of their media item when converting links to spans in
+		// version 6 - copying files is too slow to do while upgrading, so they are copied afterwards, in the background
+		// (see MediaManager.copyPendingSpanMedia), and each entry is removed once its copy has been added
+		private void createMediaSpanCopiesTable(SQLiteDatabase db) {
+			db.execSQL("CREATE TABLE IF NOT EXISTS " + MEDIA_SPAN_COPIES_LOCATION + " (" + MediaItem._ID +
+					" INTEGER PRIMARY KEY, " // required for Android Adapters
+					+ MediaItem.INTERNAL_ID + " TEXT, " // the GUID of the media item to copy
+					+ MediaItem.PARENT_ID + " TEXT, " // the GUID of the first frame of the run (i.e., the copy's parent)
+					+ MediaItem.SPAN_END_ID + " TEXT);"); // the GUID of the last frame of the run
+		}
+
 		private void fixVersion1To3UpgradeBug(SQLiteDatabase db) {
 			try (Cursor c = db.rawQuery("SELECT * FROM " + MEDIA_LOCATION + " LIMIT 0,1", null)) {
 				if (c.getColumnIndex(MediaItem.SPAN_FRAMES) < 0) {
@@ -356,6 +727,140 @@ public class MediaPhoneProvider extends ContentProvider {
 				} catch (SQLiteException ignored) {
 				}
 			}
+
+			if (oldVersion < 5) { // version 5 added narrative revisions (for caching playback plans)
+				addRevisionColumn(db, NARRATIVES_LOCATION);
+				addRevisionColumn(db, TEMPLATES_LOCATION);
+			}
+
+			if (oldVersion < 6) { // version 6 replaced per-frame media links with a span range stored on the media item
+				try (Cursor c = db.rawQuery("SELECT * FROM " + MEDIA_LOCATION + " LIMIT 0,1", null)) {
+					if (c.getColumnIndex(MediaItem.SPAN_END_ID) < 0) {
+						db.execSQL("ALTER TABLE " + MEDIA_LOCATION + " ADD COLUMN " + MediaItem.SPAN_END_ID + " TEXT;");
+					}
+				}
+
+				// the links table is not dropped (older versions expect it), but it is no longer updated - downgrading to a
+				// version before 6 loses any span changes made after this upgrade
+				createMediaLinksTable(db); // in case of previous upgrade failures - we need the table in order to query it
+				createMediaSpanCopiesTable(db);
+				convertMediaLinksToSpans(db);
+			}
+
+			if (oldVersion < 7) { // version 7 added a full-text index of text media (populated in the background)
+				createTextIndexTable(db);
+			}
+
+			if (oldVersion < 8) { // version 8 stores the content of short text items in the media table
+				try (Cursor c = db.rawQuery("SELECT * FROM " + MEDIA_LOCATION + " LIMIT 0,1", null)) {
+					if (c.getColumnIndex(MediaItem.INLINE_TEXT) < 0) {
+						db.execSQL("ALTER TABLE " + MEDIA_LOCATION + " ADD COLUMN " + MediaItem.INLINE_TEXT + " TEXT;");
+					}
+				}
+
+				// existing text is copied by the background indexer (see MediaManager.updateMissingTextIndexEntries), which
+				// already reads every unindexed item's file - clearing the index means it will revisit them all, just once
+				db.execSQL("DELETE FROM " + TEXT_INDEX_LOCATION + ";");
+			}
+
+			if (oldVersion < 9) { // version 9 added a cache of media file metadata (populated when first needed)
+				createMediaMetadataTable(db);
+			}
+
+			if (oldVersion < 10) { // version 10 keys the text index by media row id rather than an (unindexed) column
+				// the index is rebuilt by the background indexer, as in version 8
+				db.execSQL("DROP TABLE IF EXISTS " + TEXT_INDEX_LOCATION + ";");
+				createTextIndexTable(db);
+			}
+		}
+
+		private void addRevisionColumn(SQLiteDatabase db, String table) {
+			try (Cursor c = db.rawQuery("SELECT * FROM " + table + " LIMIT 0,1", null)) {
+				if (c.getColumnIndex(NarrativeItem.REVISION) < 0) {
+					db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + NarrativeItem.REVISION + " INTEGER DEFAULT 0;");
+				}
+			}
+		}
+
+		/**
+		 * Convert each media item's per-frame links to a span range. A span always starts directly after the item's own
+		 * frame, but links did not have to be contiguous - any later run of linked frames (i.e., after a frame that did
+		 * not link to the item) becomes a copy of the item, owned by the first frame of that run and spanning the rest
+		 * of it, so that every frame keeps exactly the media it had before. Copies are only recorded here, and are added
+		 * once their files have been copied (see {@link #createMediaSpanCopiesTable}).
+		 */
+		private void convertMediaLinksToSpans(SQLiteDatabase db) {
+			final ArrayList<String[]> linkedMedia = new ArrayList<>(); // media id, parent id, narrative id
+			try (Cursor c = db.rawQuery("SELECT DISTINCT m." + MediaItem.INTERNAL_ID + ", m." + MediaItem.PARENT_ID +
+					", f." + FrameItem.PARENT_ID + " FROM " + MEDIA_LOCATION + " m JOIN " +
+					MEDIA_LINKS_LOCATION + " l ON l." + MediaItem.INTERNAL_ID + " = m." + MediaItem.INTERNAL_ID + " JOIN " +
+					FRAMES_LOCATION + " f ON f." + FrameItem.INTERNAL_ID + " = m." + MediaItem.PARENT_ID + " WHERE m." +
+					MediaItem.DELETED + " = 0 AND l." + MediaItem.DELETED + " = 0 AND f." + FrameItem.DELETED + " = 0;",
+					null)) {
+				while (c.moveToNext()) {
+					linkedMedia.add(new String[]{ c.getString(0), c.getString(1), c.getString(2) });
+				}
+			}
+
+			int separateRuns = 0;
+			for (String[] media : linkedMedia) {
+				final String mediaId = media[0];
+				final String ownerFrameId = media[1];
+				final ArrayList<String> linkedFrameIds = new ArrayList<>();
+				try (Cursor c = db.rawQuery("SELECT " + MediaItem.PARENT_ID + " FROM " + MEDIA_LINKS_LOCATION + " WHERE " +
+						MediaItem.INTERNAL_ID + " = ? AND " + MediaItem.DELETED + " = 0;", new String[]{ mediaId })) {
+					while (c.moveToNext()) {
+						linkedFrameIds.add(c.getString(0));
+					}
+				}
+
+				// walk the frames after the item's own frame, in narrative order, finding each run of linked frames
+				final ArrayList<String[]> runs = new ArrayList<>(); // first and last frame id of each run
+				boolean firstRunIsAdjacent = false;
+				String runStart = null;
+				String runEnd = null;
+				boolean adjacent = true;
+				try (Cursor c = db.rawQuery("SELECT " + FrameItem.INTERNAL_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+						FrameItem.DELETED + " = 0 AND " + FrameItem.PARENT_ID + " = ? AND " + FrameItem.SEQUENCE_ID +
+						" > (SELECT " + FrameItem.SEQUENCE_ID + " FROM " + FRAMES_LOCATION + " WHERE " +
+						FrameItem.INTERNAL_ID + " = ?) ORDER BY " + FrameItem.SEQUENCE_ID + " ASC;",
+						new String[]{ media[2], ownerFrameId })) {
+					while (c.moveToNext()) {
+						final String frameId = c.getString(0);
+						if (linkedFrameIds.contains(frameId)) {
+							if (runStart == null) {
+								runStart = frameId;
+								firstRunIsAdjacent |= adjacent;
+							}
+							runEnd = frameId;
+						} else {
+							if (runStart != null) {
+								runs.add(new String[]{ runStart, runEnd });
+								runStart = null;
+							}
+							adjacent = false;
+						}
+					}
+				}
+				if (runStart != null) {
+					runs.add(new String[]{ runStart, runEnd });
+				}
+
+				for (int i = 0; i < runs.size(); i++) {
+					final String[] run = runs.get(i);
+					if (i == 0 && firstRunIsAdjacent) {
+						db.execSQL("UPDATE " + MEDIA_LOCATION + " SET " + MediaItem.SPAN_END_ID + " = ? WHERE " +
+								MediaItem.INTERNAL_ID + " = ?;", new String[]{ run[1], mediaId });
+					} else {
+						db.execSQL("INSERT INTO " + MEDIA_SPAN_COPIES_LOCATION + " (" + MediaItem.INTERNAL_ID + ", " +
+								MediaItem.PARENT_ID + ", " + MediaItem.SPAN_END_ID + ") VALUES (?, ?, ?);",
+								new String[]{ mediaId, run[0], run[1] });
+						separateRuns += 1;
+					}
+				}
+			}
+			Log.i(DebugUtilities.getLogTag(this), "Converted " + linkedMedia.size() + " linked media items to spans (" +
+					separateRuns + " separate runs to be copied)");
 		}
 
 		@Override
@@ -34,7 +34,6 @@ import java.util.LinkedHashMap;
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediautilities.FrameMediaContainer;
 import ac.robinson.mediautilities.FrameMediaContainer.SpanType;
-import ac.robinson.util.IOUtilities;
 import androidx.annotation.NonNull;
 
 public class NarrativeItem implements BaseColumns {
@@ -52,6 +51,7 @@ public class NarrativeItem implements BaseColumns {
 			NarrativeItem.INTERNAL_ID,
 			NarrativeItem.DATE_CREATED,
 			NarrativeItem.SEQUENCE_ID,
+			NarrativeItem.REVISION,
 			NarrativeItem.DELETED
 	};
 
@@ -69,6 +69,7 @@ public class NarrativeItem implements BaseColumns {
 	public static final String INTERNAL_ID = "internal_id";
 	public static final String DATE_CREATED = "date_created";
 	public static final String SEQUENCE_ID = "sequence_id";
+	public static final String REVISION = "revision"; // incremented by MediaPhoneProvider; never set from here
 	public static final String DELETED = "deleted";
 
 	public static final String SELECTION_NOT_DELETED = DELETED + "=0";
@@ -78,6 +79,7 @@ public class NarrativeItem implements BaseColumns {
 	private String mInternalId;
 	private long mCreationDate;
 	private int mSequenceId;
+	private int mRevision;
 	private int mDeleted;
 
 	public NarrativeItem(String internalId, int externalId) {
@@ -107,6 +109,14 @@ public class NarrativeItem implements BaseColumns {
 		return mSequenceId;
 	}
 
+	/**
+	 * @return the revision of this narrative's content when it was loaded - incremented by the database on every change to
+	 * the narrative's frames or media (but not the narrative itself), and used to validate cached playback plans
+	 */
+	public int getRevision() {
+		return mRevision;
+	}
+
 	public boolean getDeleted() {
 		return mDeleted != 0;
 	}
@@ -124,14 +134,29 @@ public class NarrativeItem implements BaseColumns {
 	 * one frame are simply repeated on the subsequent frames.
 	 */
 	public ArrayList<FrameMediaContainer> getContentList(ContentResolver contentResolver) {
+		ArrayList<FrameItem> narrativeFrames = FramesManager.findFramesByParentId(contentResolver, mInternalId);
+		HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+				mInternalId, null);
+		return getContentList(narrativeFrames, narrativeMedia, true);
+	}
 
-		ArrayList<FrameMediaContainer> exportedContent = new ArrayList<>();
+	/**
+	 * Build the export content list from frames and media that have already been loaded (see
+	 * {@link MediaManager#findMediaByNarrativeId(ContentResolver, String, HashMap)}), so that playback can reuse the same
+	 * database results to calculate durations.
+	 *
+	 * @param loadTextContent whether to read text items' file contents into each container (not needed for durations)
+	 */
+	private ArrayList<FrameMediaContainer> getContentList(ArrayList<FrameItem> narrativeFrames,
+														  HashMap<String, ArrayList<MediaItem>> narrativeMedia,
+														  boolean loadTextContent) {
+
+		ArrayList<FrameMediaContainer> exportedContent = new ArrayList<>(narrativeFrames.size());
 		HashMap<String, Point> spanningAudioFrames = new HashMap<>(); // so we can adjust durations
 
-		ArrayList<FrameItem> narrativeFrames = FramesManager.findFramesByParentId(contentResolver, mInternalId);
 		for (FrameItem frame : narrativeFrames) {
 			final String frameId = frame.getInternalId();
-			ArrayList<MediaItem> frameComponents = MediaManager.findMediaByParentId(contentResolver, frameId);
+			ArrayList<MediaItem> frameComponents = getFrameMedia(narrativeMedia, frameId);
 
 			final FrameMediaContainer currentContainer = new FrameMediaContainer(frameId, frame.getNarrativeSequenceId());
 
@@ -163,7 +188,9 @@ public class NarrativeItem implements BaseColumns {
 						break;
 
 					case MediaPhoneProvider.TYPE_TEXT:
-						currentContainer.mTextContent = IOUtilities.getFileContents(mediaPath);
+						if (loadTextContent) {
+							currentContainer.mTextContent = media.getTextContent(); // usually from the database
+						}
 						if (mediaDuration > 0) {
 							// retain user-set durations (note: *not* per-media; always displayed for max length of whole frame)
 							currentContainer.updateFrameMaxDuration(mediaDuration);
@@ -270,11 +297,26 @@ public class NarrativeItem implements BaseColumns {
 	 * Parse this narrative's content for in-app playback, returning a list of media items and the times at which they should
 	 * start and end. Unlike {@link #getContentList(ContentResolver)}, this method properly handles spanning media as individual
 	 * items, rather than duplicating to simulate this. As a result, the returned media list has no frame structure, and is just
-	 * a set of media at specific times and durations.
+	 * a set of media at specific times and durations. If the narrative has not changed since this method was last called
+	 * (see {@link #getRevision()}), the previously calculated content is loaded from {@link PlaybackPlanCache} instead.
 	 */
 	public ArrayList<PlaybackMediaHolder> getPlaybackContent(ContentResolver contentResolver, String startingFrame,
 															 PlaybackNarrativeDescriptor narrativeDescriptor) {
 
+		ArrayList<PlaybackMediaHolder> cachedContent = PlaybackPlanCache.loadPlan(mInternalId, mRevision, startingFrame,
+				narrativeDescriptor);
+		if (cachedContent != null) {
+			return cachedContent;
+		}
+
+		// load all frames and media once, then use the exported content list as a source for frame durations - this means that
+		// there is no risk of calculating frame durations incorrectly (or differently) here as we rely on one method only
+		ArrayList<FrameItem> narrativeFrames = FramesManager.findFramesByParentId(contentResolver, mInternalId);
+		HashMap<String, ArrayList<String>> linkedParentIds = new HashMap<>();
+		HashMap<String, ArrayList<MediaItem>> narrativeMedia = MediaManager.findMediaByNarrativeId(contentResolver,
+				mInternalId, linkedParentIds);
+		ArrayList<FrameMediaContainer> timedFrameMedia = getContentList(narrativeFrames, narrativeMedia, false);
+
 		final ArrayList<PlaybackMediaHolder> narrativeContent = new ArrayList<>();
 		final LinkedHashMap<Integer, String> mTimeToFrameMap = narrativeDescriptor.mTimeToFrameMap; // to track frames (for skip)
 
@@ -282,22 +324,24 @@ public class NarrativeItem implements BaseColumns {
 		int narrativeDuration = 0;
 		boolean frameFound = startingFrame == null;
 
+		// items are replaced (rather than edited) when extending or adjusting them, so we track their positions in the list
 		PlaybackMediaHolder previousFrameImage = null;
+		int previousFrameImageIndex = -1;
 		PlaybackMediaHolder previousFrameText = null;
+		int previousFrameTextIndex = -1;
 		PlaybackMediaHolder lastAudioItem = null; // the last audio item in the narrative
+		int lastAudioItemIndex = -1;
 
-		// use the exported content list as a source for frame durations
-		// this is inefficient (we retrieve the frames and their media from the database twice), but it means that there is no
-		// risk of calculating frame durations incorrectly (or differently) here as we rely on one method only
-		ArrayList<FrameMediaContainer> timedFrameMedia = getContentList(contentResolver);
-
-		ArrayList<FrameItem> narrativeFrames = FramesManager.findFramesByParentId(contentResolver, mInternalId);
 		int currentFrame = 0;
 		int lastFrame = narrativeFrames.size() - 1;
+		final ArrayList<String> frameIds = new ArrayList<>(narrativeFrames.size()); // for saving the plan (map may lose frames)
+		final int[] frameStartTimes = new int[narrativeFrames.size()];
 		for (FrameItem frame : narrativeFrames) {
 			final String frameId = frame.getInternalId();
 			mTimeToFrameMap.put(narrativeTime, frameId); // store the frame's start time
-			ArrayList<MediaItem> frameComponents = MediaManager.findMediaByParentId(contentResolver, frameId);
+			frameIds.add(frameId);
+			frameStartTimes[currentFrame] = narrativeTime;
+			ArrayList<MediaItem> frameComponents = getFrameMedia(narrativeMedia, frameId);
 
 			FrameMediaContainer currentFrameTimedMedia = timedFrameMedia.get(currentFrame);
 			final int frameDuration = currentFrameTimedMedia.mFrameMaxDuration; // we rely totally on the duration calculated
@@ -325,11 +369,13 @@ public class NarrativeItem implements BaseColumns {
 
 					// spanning audio needs to be evenly distributed over frames, but *also* take into account user-set durations
 					if (media.getSpanFrames()) {
-						// this is the actual parent frame of a long-running item - count how many items link here
-						// (+1 to count this frame as well), then add to the playback list
+						// this is the actual parent frame of a long-running item - get the frames that link here, then add to
+						// the playback list (copied, as the holder adds this frame to the start of the list)
 						// note: inherited items don't need to be edited; they are already in the list with the correct duration
 						if (frameId.equals(media.getParentId())) {
-							ArrayList<String> linkedMedia = MediaManager.findLinkedParentIdsByMediaId(contentResolver, mediaId);
+							ArrayList<String> linkedFrames = linkedParentIds.get(mediaId);
+							ArrayList<String> linkedMedia = linkedFrames != null ? new ArrayList<>(linkedFrames) :
+									new ArrayList<>();
 							audioItem = new PlaybackMediaHolder(frameId, mediaId, mediaPath, MediaPhoneProvider.TYPE_AUDIO,
 									narrativeTime, audioEndTime, 0, 0, linkedMedia);
 							narrativeContent.add(audioItem);
@@ -343,10 +389,9 @@ public class NarrativeItem implements BaseColumns {
 
 					// store the last audio item for displaying it at the end of playback when no other items are present
 					if (audioItem != null) {
-						if (lastAudioItem == null) {
-							lastAudioItem = audioItem;
-						} else if (audioEndTime > lastAudioItem.getEndTime(false)) {
+						if (lastAudioItem == null || audioEndTime > lastAudioItem.getEndTime(false)) {
 							lastAudioItem = audioItem;
+							lastAudioItemIndex = narrativeContent.size() - 1;
 						}
 					}
 				}
@@ -358,6 +403,7 @@ public class NarrativeItem implements BaseColumns {
 			// if this is the last item we add 1ms to the end of the item so it stays visible after playback completes
 			// TODO: spread the crossfade over the beginning and the end of the image so that timings are more accurate?
 			PlaybackMediaHolder frameImage = null;
+			int frameImageIndex = -1;
 			int imageEndAdjustment = lastFrameAdjustments ? -1 : narrativeDescriptor.mNarrativeImageAdjustment;
 			for (MediaItem media : frameComponents) {
 				final int mediaType = media.getType();
@@ -367,25 +413,25 @@ public class NarrativeItem implements BaseColumns {
 
 					// check whether this is a duplicate of the previous item - if so, just extend that item's duration
 					if (media.getSpanFrames() && previousFrameImage != null && mediaId.equals(previousFrameImage.mMediaItemId)) {
-						int replacementPosition = narrativeContent.indexOf(previousFrameImage);
 						frameImage = new PlaybackMediaHolder(previousFrameImage, frameId, mediaEndTime, imageEndAdjustment);
-						narrativeContent.set(replacementPosition, frameImage);
+						frameImageIndex = previousFrameImageIndex;
+						narrativeContent.set(frameImageIndex, frameImage);
 						previousFrameImage = frameImage; // we've replaced the old item (need for comparison later in text item)
 
 					} else {
 						frameImage = new PlaybackMediaHolder(frameId, mediaId, media.getFile().getAbsolutePath(), mediaType,
 								narrativeTime, mediaEndTime, narrativeDescriptor.mNarrativeImageAdjustment, imageEndAdjustment);
 						narrativeContent.add(frameImage);
+						frameImageIndex = narrativeContent.size() - 1;
 					}
 
 					// if we're coming to an image-only frame from a text-only one, tweak its start time to align (avoid
 					// unsightly flash of text at the start of the image display)
 					if (narrativeDescriptor.mNarrativeImageAdjustment > 0 && previousFrameImage == null &&
 							previousFrameText != null) {
-						int replacementPosition = narrativeContent.indexOf(frameImage);
 						frameImage = new PlaybackMediaHolder(frameImage, null, frameImage.getEndTime(false), 0,
 								imageEndAdjustment);
-						narrativeContent.set(replacementPosition, frameImage);
+						narrativeContent.set(frameImageIndex, frameImage);
 					}
 					break;
 				}
@@ -394,6 +440,7 @@ public class NarrativeItem implements BaseColumns {
 			// finally, add the text (only one item of this type per frame)
 			// if this is the last item we add 1ms to the end of the item so it stays visible after playback completes
 			PlaybackMediaHolder frameText = null;
+			int frameTextIndex = -1;
 			int textEndAdjustment = lastFrameAdjustments ? -1 : 0;
 			for (MediaItem media : frameComponents) {
 				if (media.getType() == MediaPhoneProvider.TYPE_TEXT) {
@@ -401,23 +448,23 @@ public class NarrativeItem implements BaseColumns {
 
 					// check whether this is a duplicate of the previous item - if so, just extend that item's duration
 					if (media.getSpanFrames() && previousFrameText != null && mediaId.equals(previousFrameText.mMediaItemId)) {
-						int replacementPosition = narrativeContent.indexOf(previousFrameText);
 						frameText = new PlaybackMediaHolder(previousFrameText, frameId, mediaEndTime, textEndAdjustment);
-						narrativeContent.set(replacementPosition, frameText);
+						frameTextIndex = previousFrameTextIndex;
+						narrativeContent.set(frameTextIndex, frameText);
 
 					} else {
 						frameText = new PlaybackMediaHolder(frameId, mediaId, media.getFile().getAbsolutePath(),
 								MediaPhoneProvider.TYPE_TEXT, narrativeTime, mediaEndTime, 0, textEndAdjustment);
 						narrativeContent.add(frameText);
+						frameTextIndex = narrativeContent.size() - 1;
 					}
 
 					// if we're coming to a text-only frame from an image, we tweak its end time to align with the text
 					if (narrativeDescriptor.mNarrativeImageAdjustment > 0 && frameImage == null && previousFrameImage != null) {
 						// no need to deal with lastFrameAdjustments as the image we are editing will never be the last item
-						int replacementPosition = narrativeContent.indexOf(previousFrameImage);
 						previousFrameImage = new PlaybackMediaHolder(previousFrameImage, null,
 								previousFrameImage.getEndTime(false), narrativeDescriptor.mNarrativeImageAdjustment, 0);
-						narrativeContent.set(replacementPosition, previousFrameImage);
+						narrativeContent.set(previousFrameImageIndex, previousFrameImage);
 					}
 					break;
 				}
@@ -426,22 +473,29 @@ public class NarrativeItem implements BaseColumns {
 			// if we've got just audio on a frame and we're the last frame, we need to adjust the last audio item to add
 			// an extra 1ms so that it (i.e., the audio icon) remains in view when playback stops
 			if (lastFrameAdjustments && frameImage == null && frameText == null && lastAudioItem != null) {
-				int replacementPosition = narrativeContent.indexOf(lastAudioItem);
 				lastAudioItem = new PlaybackMediaHolder(lastAudioItem, null, lastAudioItem.getEndTime(false), 0, -1);
-				narrativeContent.set(replacementPosition, lastAudioItem);
+				narrativeContent.set(lastAudioItemIndex, lastAudioItem);
 			}
 
 			narrativeTime += frameDuration;
 			narrativeDuration = Math.max(narrativeDuration, mediaEndTime);
 			currentFrame += 1;
 			previousFrameImage = frameImage;
+			previousFrameImageIndex = frameImageIndex;
 			previousFrameText = frameText;
+			previousFrameTextIndex = frameTextIndex;
 		}
 
 		narrativeDescriptor.mNarrativeDuration = narrativeDuration;
+		PlaybackPlanCache.savePlan(mInternalId, mRevision, frameIds, frameStartTimes, narrativeContent, narrativeDescriptor);
 		return narrativeContent;
 	}
 
+	private static ArrayList<MediaItem> getFrameMedia(HashMap<String, ArrayList<MediaItem>> narrativeMedia, String frameId) {
+		ArrayList<MediaItem> frameMedia = narrativeMedia.get(frameId);
+		return frameMedia != null ? frameMedia : new ArrayList<>();
+	}
+
 	public ContentValues getContentValues() {
 		final ContentValues values = new ContentValues();
 		values.put(INTERNAL_ID, mInternalId);
@@ -456,6 +510,7 @@ public class NarrativeItem implements BaseColumns {
 		narrative.mInternalId = c.getString(c.getColumnIndexOrThrow(INTERNAL_ID));
 		narrative.mCreationDate = c.getLong(c.getColumnIndexOrThrow(DATE_CREATED));
 		narrative.mSequenceId = c.getInt(c.getColumnIndexOrThrow(SEQUENCE_ID));
+		narrative.mRevision = c.getInt(c.getColumnIndexOrThrow(REVISION));
 		narrative.mDeleted = c.getInt(c.getColumnIndexOrThrow(DELETED));
 		return narrative;
 	}
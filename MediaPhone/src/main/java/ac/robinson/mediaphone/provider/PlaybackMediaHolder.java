@@ -30,11 +30,12 @@ public class PlaybackMediaHolder {
 	public final String mMediaPath;
 	public final int mMediaType;
 
-	private int mMediaStartTime;
-	private int mMediaEndTime;
+	// volatile because the timing editor changes these on the UI thread while the audio engine reads them on its own
+	private volatile int mMediaStartTime;
+	private volatile int mMediaEndTime;
 
-	private int mPlaybackOffsetStart;
-	private int mPlaybackOffsetEnd;
+	private volatile int mPlaybackOffsetStart;
+	private volatile int mPlaybackOffsetEnd;
 
 	private int mOriginalDuration;
 
@@ -83,6 +84,21 @@ public class PlaybackMediaHolder {
 		}
 	}
 
+	// restores a holder exactly as it was saved in a playback plan (see PlaybackPlanCache) - no adjustments are made
+	PlaybackMediaHolder(String parentId, ArrayList<String> spanningFrameIds, String mediaId, String mediaPath, int mediaType,
+						int startTime, int endTime, int playbackOffsetStart, int playbackOffsetEnd, int originalDuration) {
+		mParentFrameId = parentId;
+		mSpanningFrameIds = spanningFrameIds;
+		mMediaItemId = mediaId;
+		mMediaPath = mediaPath;
+		mMediaType = mediaType;
+		mMediaStartTime = startTime;
+		mMediaEndTime = endTime;
+		mPlaybackOffsetStart = playbackOffsetStart;
+		mPlaybackOffsetEnd = playbackOffsetEnd;
+		mOriginalDuration = originalDuration;
+	}
+
 	public void setStartTime(int startTime) {
 		mMediaStartTime = startTime;
 	}
@@ -105,6 +121,18 @@ public class PlaybackMediaHolder {
 		mPlaybackOffsetEnd = Math.abs(mPlaybackOffsetEnd) == 1 ? mPlaybackOffsetEnd : 0;
 	}
 
+	int getPlaybackOffsetStart() {
+		return mPlaybackOffsetStart;
+	}
+
+	int getPlaybackOffsetEnd() {
+		return mPlaybackOffsetEnd;
+	}
+
+	int getOriginalDuration() {
+		return mOriginalDuration;
+	}
+
 	public int getDuration() {
 		return mMediaEndTime - mMediaStartTime;
 	}
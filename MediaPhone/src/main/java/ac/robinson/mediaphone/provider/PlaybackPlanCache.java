@@ -0,0 +1,211 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.util.DebugUtilities;
+
+/**
+ * Stores the timeline calculated by {@link NarrativeItem#getPlaybackContent} so that reopening playback of an unchanged
+ * narrative does not need to query and recalculate every frame. Each plan is stamped with the narrative's revision (which
+ * {@link MediaPhoneProvider} increments whenever the narrative's frames or media change) and the playback settings
+ * that affect timings; the size and modification time of each media file is also recorded so that content replaced on disk
+ * without a database change is detected. Any mismatch means the plan is ignored and rebuilt.
+ */
+public class PlaybackPlanCache {
+
+	private static final int PLAN_FORMAT_VERSION = 1; // increment if the stored format (or the timeline calculation) changes
+	private static final String PLAN_FILE_EXTENSION = ".plan";
+
+	private static File getPlanFile(String narrativeId) {
+		if (MediaPhone.DIRECTORY_THUMBS == null) {
+			return null;
+		}
+		return new File(MediaPhone.DIRECTORY_THUMBS, narrativeId + PLAN_FILE_EXTENSION);
+	}
+
+	/**
+	 * Load a previously saved playback plan, filling in the descriptor's start time, duration and frame map on success.
+	 *
+	 * @return the narrative's playback content, or null if there is no valid plan for this revision and these settings
+	 */
+	static ArrayList<PlaybackMediaHolder> loadPlan(String narrativeId, int narrativeRevision, String startingFrame,
+												   PlaybackNarrativeDescriptor narrativeDescriptor) {
+		File planFile = getPlanFile(narrativeId);
+		if (planFile == null || !planFile.exists()) {
+			return null;
+		}
+
+		try (DataInputStream planStream = new DataInputStream(new BufferedInputStream(new FileInputStream(planFile)))) {
+			if (planStream.readInt() != PLAN_FORMAT_VERSION || planStream.readInt() != narrativeRevision ||
+					planStream.readInt() != narrativeDescriptor.mNarrativeImageAdjustment ||
+					planStream.readInt() != MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION ||
+					planStream.readInt() != MediaPhone.PLAYBACK_EXPORT_WORD_DURATION) {
+				return null;
+			}
+			final int narrativeDuration = planStream.readInt();
+
+			final int frameCount = planStream.readInt();
+			final String[] frameIds = new String[frameCount];
+			final int[] frameStartTimes = new int[frameCount];
+			for (int i = 0; i < frameCount; i++) {
+				frameIds[i] = planStream.readUTF();
+				frameStartTimes[i] = planStream.readInt();
+			}
+
+			final int itemCount = planStream.readInt();
+			final ArrayList<PlaybackMediaHolder> narrativeContent = new ArrayList<>(itemCount);
+			for (int i = 0; i < itemCount; i++) {
+				final String parentFrameId = planStream.readUTF();
+				final String mediaItemId = planStream.readUTF();
+				final String mediaPath = planStream.readUTF();
+				final long mediaLength = planStream.readLong();
+				final long mediaModified = planStream.readLong();
+				final int mediaType = planStream.readInt();
+				final int startTime = planStream.readInt();
+				final int endTime = planStream.readInt();
+				final int playbackOffsetStart = planStream.readInt();
+				final int playbackOffsetEnd = planStream.readInt();
+				final int originalDuration = planStream.readInt();
+				final int spanningFrameCount = planStream.readInt();
+				final ArrayList<String> spanningFrameIds = new ArrayList<>(spanningFrameCount);
+				for (int j = 0; j < spanningFrameCount; j++) {
+					spanningFrameIds.add(planStream.readUTF());
+				}
+
+				// media files can be replaced without a database change (e.g., template copies are completed in the
+				// background), so the plan is only valid if every file is exactly as it was when the plan was saved
+				final File mediaFile = new File(mediaPath);
+				if (mediaFile.length() != mediaLength || mediaFile.lastModified() != mediaModified) {
+					if (MediaPhone.DEBUG) {
+						Log.d(DebugUtilities.getLogTag(narrativeId), "Playback plan out of date - media changed: " + mediaPath);
+					}
+					return null;
+				}
+
+				narrativeContent.add(new PlaybackMediaHolder(parentFrameId, spanningFrameIds, mediaItemId, mediaPath,
+						mediaType, startTime, endTime, playbackOffsetStart, playbackOffsetEnd, originalDuration));
+			}
+
+			// only update the descriptor once the whole plan has been read successfully
+			final LinkedHashMap<Integer, String> timeToFrameMap = narrativeDescriptor.mTimeToFrameMap;
+			boolean frameFound = startingFrame == null;
+			for (int i = 0; i < frameCount; i++) {
+				timeToFrameMap.put(frameStartTimes[i], frameIds[i]);
+				if (!frameFound && frameIds[i].equals(startingFrame)) {
+					narrativeDescriptor.mNarrativeStartTime = frameStartTimes[i];
+					frameFound = true;
+				}
+			}
+			narrativeDescriptor.mNarrativeDuration = narrativeDuration;
+			return narrativeContent;
+
+		} catch (IOException | RuntimeException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(narrativeId), "Unable to load playback plan: " + e.getLocalizedMessage());
+			}
+			deletePlan(narrativeId); // corrupt or truncated - will be rebuilt and saved next time
+		}
+		return null;
+	}
+
+	/**
+	 * Save a calculated playback plan. Failure is not an error - the plan will simply be recalculated next time.
+	 *
+	 * @param frameIds        the narrative's frames, in order
+	 * @param frameStartTimes the start time of each frame in frameIds
+	 */
+	static void savePlan(String narrativeId, int narrativeRevision, ArrayList<String> frameIds, int[] frameStartTimes,
+						 ArrayList<PlaybackMediaHolder> narrativeContent, PlaybackNarrativeDescriptor narrativeDescriptor) {
+		File planFile = getPlanFile(narrativeId);
+		if (planFile == null) {
+			return;
+		}
+
+		// write to a temporary file first so that a partially written plan is never loaded
+		File tempFile = new File(planFile.getParent(), planFile.getName() + ".tmp");
+		try (DataOutputStream planStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			planStream.writeInt(PLAN_FORMAT_VERSION);
+			planStream.writeInt(narrativeRevision);
+			planStream.writeInt(narrativeDescriptor.mNarrativeImageAdjustment);
+			planStream.writeInt(MediaPhone.PLAYBACK_EXPORT_MINIMUM_FRAME_DURATION);
+			planStream.writeInt(MediaPhone.PLAYBACK_EXPORT_WORD_DURATION);
+			planStream.writeInt(narrativeDescriptor.mNarrativeDuration);
+
+			planStream.writeInt(frameIds.size());
+			for (int i = 0, n = frameIds.size(); i < n; i++) {
+				planStream.writeUTF(frameIds.get(i));
+				planStream.writeInt(frameStartTimes[i]);
+			}
+
+			planStream.writeInt(narrativeContent.size());
+			for (PlaybackMediaHolder holder : narrativeContent) {
+				final File mediaFile = new File(holder.mMediaPath);
+				planStream.writeUTF(holder.mParentFrameId);
+				planStream.writeUTF(holder.mMediaItemId);
+				planStream.writeUTF(holder.mMediaPath);
+				planStream.writeLong(mediaFile.length());
+				planStream.writeLong(mediaFile.lastModified());
+				planStream.writeInt(holder.mMediaType);
+				planStream.writeInt(holder.getStartTime(false));
+				planStream.writeInt(holder.getEndTime(false));
+				planStream.writeInt(holder.getPlaybackOffsetStart());
+				planStream.writeInt(holder.getPlaybackOffsetEnd());
+				planStream.writeInt(holder.getOriginalDuration());
+				planStream.writeInt(holder.mSpanningFrameIds.size());
+				for (String frameId : holder.mSpanningFrameIds) {
+					planStream.writeUTF(frameId);
+				}
+			}
+		} catch (IOException e) {
+			if (MediaPhone.DEBUG) {
+				Log.d(DebugUtilities.getLogTag(narrativeId), "Unable to save playback plan: " + e.getLocalizedMessage());
+			}
+			tempFile.delete();
+			return;
+		}
+
+		if (!tempFile.renameTo(planFile)) {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Remove the stored playback plan for the given narrative (if any) - used when narratives are permanently deleted
+	 */
+	public static void deletePlan(String narrativeId) {
+		File planFile = getPlanFile(narrativeId);
+		if (planFile != null && planFile.exists()) {
+			planFile.delete();
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+import ac.robinson.util.IOUtilities;
+
+/**
+ * Decodes images at the size they are to be displayed. Most images are loaded as before, but very large images (e.g.,
+ * imported panoramas and scans) can exhaust memory if decoded that way, so are sampled down while decoding to fit
+ * within a memory budget, and, when cropping, only the visible region is decoded. Large images are also given a
+ * screen-resolution copy when they are imported (see {@link #createScreenDerivative}), saved alongside the media item
+ * (so it is deleted with it), which is used in preference to the original whenever it is up to date.
+ * <p>
+ * Every decode is counted by its outcome, and failures are always logged, so that we can see how often images fail to
+ * load (previously these were discarded, and the frame was just left blank).
+ */
+public final class ScreenImageDecoder {
+
+	// images with more than this many times the pixels of the area they are shown in are treated as large images
+	private static final int LARGE_IMAGE_SCALE = 4;
+	private static final float MEMORY_BUDGET = 0.25f; // the proportion of free memory that a single image may use
+
+	private static final String SCREEN_DERIVATIVE_SUFFIX = "_screen";
+	private static final int SCREEN_DERIVATIVE_QUALITY = 90; // applies to JPEG only
+
+	private enum DecodeResult {
+		SCREEN_DERIVATIVE, STANDARD, LARGE_IMAGE, FAILED_OUT_OF_MEMORY, FAILED_UNREADABLE
+	}
+
+	private static final int[] sDecodeCounts = new int[DecodeResult.values().length]; // lock on itself
+
+	private ScreenImageDecoder() {
+	}
+
+	/**
+	 * Load an image scaled to the given size, using its screen-resolution copy if there is one. This reads the image's
+	 * file, so should not be run on the UI thread.
+	 *
+	 * @return The scaled and oriented image, or null if it could not be loaded
+	 */
+	public static Bitmap decode(String imagePath, int width, int height, BitmapUtilities.ScalingLogic scalingLogic) {
+		String imageSize = null;
+		Bitmap image;
+		DecodeResult result;
+		try {
+			final File imageFile = new File(imagePath);
+			final File derivativeFile = getScreenDerivativeFile(imageFile);
+			if (derivativeFile.exists()) {
+				if (derivativeFile.lastModified() >= imageFile.lastModified()) {
+					image = loadStandard(derivativeFile.getAbsolutePath(), width, height, scalingLogic);
+					if (image != null) {
+						recordResult(DecodeResult.SCREEN_DERIVATIVE, imagePath, null);
+						return image;
+					}
+				} else {
+					derivativeFile.delete(); // the image has been replaced since the copy was made
+				}
+			}
+
+			// a bounds decode only reads the image's header; if it fails, we leave the file to the standard loader
+			final BitmapFactory.Options imageDimensions = BitmapUtilities.getImageDimensions(imagePath);
+			final int imageWidth = imageDimensions.outWidth;
+			final int imageHeight = imageDimensions.outHeight;
+			imageSize = imageWidth + "x" + imageHeight;
+			final boolean hasBounds = imageWidth > 0 && imageHeight > 0;
+
+			// the standard loader catches OutOfMemoryError and returns null, so we can't tell why it failed -
+			// images that would not fit in the memory budget that way are sampled down by the large image decoder
+			final long standardBytes = hasBounds ? getStandardDecodeBytes(imageWidth, imageHeight, width, height) : 0;
+			if (hasBounds &&
+					(isLargeImage(imageWidth, imageHeight, width, height) || standardBytes > getMemoryBudget())) {
+				image = decodeLargeImage(imagePath, imageWidth, imageHeight,
+						BitmapUtilities.getImageOrientation(imagePath), width, height, scalingLogic);
+				result = image != null ? DecodeResult.LARGE_IMAGE : DecodeResult.FAILED_UNREADABLE;
+			} else {
+				image = loadStandard(imagePath, width, height, scalingLogic);
+				if (image != null) {
+					result = DecodeResult.STANDARD;
+				} else if (standardBytes > getAvailableMemory()) {
+					result = DecodeResult.FAILED_OUT_OF_MEMORY; // memory was used up elsewhere after our check
+				} else {
+					result = DecodeResult.FAILED_UNREADABLE;
+				}
+			}
+		} catch (OutOfMemoryError e) {
+			image = null;
+			result = DecodeResult.FAILED_OUT_OF_MEMORY;
+		} catch (RuntimeException e) {
+			image = null;
+			result = DecodeResult.FAILED_UNREADABLE;
+		}
+		recordResult(result, imagePath, imageSize);
+		return image;
+	}
+
+	/**
+	 * Save a screen-resolution copy of an imported image if it is large enough to need one. This decodes the whole
+	 * image, so should be run on the import task's thread, after the item's metadata has been recorded.
+	 */
+	public static void createScreenDerivative(Resources res, ContentResolver contentResolver, MediaItem mediaItem) {
+		final int type = mediaItem.getType();
+		if (type != MediaPhoneProvider.TYPE_IMAGE_BACK && type != MediaPhoneProvider.TYPE_IMAGE_FRONT) {
+			return;
+		}
+		final MediaMetadata metadata = MediaManager.getMediaMetadata(contentResolver, mediaItem);
+		if (metadata == null) {
+			return;
+		}
+
+		// fit the copy within a square of the screen's longest side, so it suits either screen orientation
+		final DisplayMetrics displayMetrics = res.getDisplayMetrics();
+		final int screenSize = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+		if (!isLargeImage(metadata.getWidth(), metadata.getHeight(), displayMetrics.widthPixels,
+				displayMetrics.heightPixels)) {
+			return; // small enough to be decoded directly
+		}
+
+		final File mediaFile = mediaItem.getFile();
+		final Bitmap derivative;
+		try {
+			derivative = decodeLargeImage(mediaFile.getAbsolutePath(), metadata.getWidth(), metadata.getHeight(),
+					metadata.getOrientation(), screenSize, screenSize, BitmapUtilities.ScalingLogic.FIT);
+		} catch (OutOfMemoryError e) {
+			recordResult(DecodeResult.FAILED_OUT_OF_MEMORY, mediaFile.getAbsolutePath(),
+					metadata.getWidth() + "x" + metadata.getHeight());
+			return;
+		}
+		if (derivative == null) {
+			return;
+		}
+
+		final File derivativeFile = getScreenDerivativeFile(mediaFile);
+		final boolean isPng = "png".equalsIgnoreCase(mediaItem.getFileExtension());
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(derivativeFile);
+			derivative.compress(isPng ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+					SCREEN_DERIVATIVE_QUALITY, outputStream);
+		} catch (IOException e) {
+			derivativeFile.delete(); // not essential - we will just decode the image itself
+		} finally {
+			IOUtilities.closeStream(outputStream);
+			derivative.recycle();
+		}
+		if (MediaPhone.DEBUG) {
+			Log.d(DebugUtilities.getLogTag(mediaItem), "Saved screen-sized copy of " + metadata.getWidth() + "x" +
+					metadata.getHeight() + " image " + mediaItem.getInternalId());
+		}
+	}
+
+	/**
+	 * Delete any screen-resolution copy of the given item. Only needed when an item's file is edited in place, because
+	 * its modification time may not change enough for the copy to be recognised as out of date.
+	 */
+	static void deleteScreenDerivative(MediaItem mediaItem) {
+		getScreenDerivativeFile(mediaItem.getFile()).delete();
+	}
+
+	/**
+	 * @return The number of bytes of memory that a single decoded image may use
+	 */
+	static long getMemoryBudget() {
+		return (long) (getAvailableMemory() * MEMORY_BUDGET);
+	}
+
+	private static long getAvailableMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	private static File getScreenDerivativeFile(File mediaFile) {
+		// files are named by media id; the copy is always PNG for PNG images (to keep transparency), and JPEG otherwise
+		final String mediaId = IOUtilities.removeExtension(mediaFile.getName());
+		final boolean isPng = "png".equalsIgnoreCase(IOUtilities.getFileExtension(mediaFile.getName()));
+		return new File(mediaFile.getParentFile(), mediaId + SCREEN_DERIVATIVE_SUFFIX + (isPng ? ".png" : ".jpg"));
+	}
+
+	private static boolean isLargeImage(int imageWidth, int imageHeight, int width, int height) {
+		return (long) imageWidth * imageHeight > (long) LARGE_IMAGE_SCALE * width * height;
+	}
+
+	/**
+	 * @return An upper bound on the memory the standard loader needs for an image: the whole image decoded without
+	 * sampling (which it may do for images close to the requested size), plus the scaled copy it returns
+	 */
+	private static long getStandardDecodeBytes(int imageWidth, int imageHeight, int width, int height) {
+		return ((long) imageWidth * imageHeight + (long) width * height) * 4;
+	}
+
+	private static Bitmap loadStandard(String imagePath, int width, int height,
+									   BitmapUtilities.ScalingLogic scalingLogic) {
+		return BitmapUtilities.loadAndCreateScaledBitmap(imagePath, width, height, scalingLogic, true);
+	}
+
+	/**
+	 * Decode a large image, sampling down as far as possible without going below the requested size (or further, if
+	 * there is not enough memory), and decoding only the visible region when cropping
+	 */
+	private static Bitmap decodeLargeImage(String imagePath, int imageWidth, int imageHeight, int orientation,
+										   int width, int height, BitmapUtilities.ScalingLogic scalingLogic) {
+		// work out the region of the (stored) image that will be visible once it is oriented and scaled
+		final int rotation = FrameIconRenderer.getRotation(orientation);
+		final boolean rotated = rotation == 90 || rotation == 270;
+		final int targetWidth = rotated ? height : width; // the requested size in the stored image's orientation
+		final int targetHeight = rotated ? width : height;
+		final boolean crop = scalingLogic == BitmapUtilities.ScalingLogic.CROP;
+		final float scale = crop ? Math.max(targetWidth / (float) imageWidth, targetHeight / (float) imageHeight) :
+				Math.min(targetWidth / (float) imageWidth, targetHeight / (float) imageHeight);
+		final int regionWidth = crop ? Math.min(imageWidth, Math.round(targetWidth / scale)) : imageWidth;
+		final int regionHeight = crop ? Math.min(imageHeight, Math.round(targetHeight / scale)) : imageHeight;
+		final Rect region = new Rect((imageWidth - regionWidth) / 2, (imageHeight - regionHeight) / 2, 0, 0);
+		region.right = region.left + regionWidth;
+		region.bottom = region.top + regionHeight;
+
+		final int scaledWidth = Math.max(1, Math.round(regionWidth * scale));
+		final int scaledHeight = Math.max(1, Math.round(regionHeight * scale));
+		int sampleSize = 1;
+		while (regionWidth / (sampleSize * 2) >= scaledWidth && regionHeight / (sampleSize * 2) >= scaledHeight) {
+			sampleSize *= 2;
+		}
+		final boolean fastDecode = scalingLogic == BitmapUtilities.ScalingLogic.DOWNSCALE;
+		if (fastDecode) {
+			sampleSize *= 2; // a lower quality version is fine - don't scale afterwards either
+		}
+		final long memoryBudget = getMemoryBudget();
+		while ((long) (regionWidth / sampleSize) * (regionHeight / sampleSize) * 4 > memoryBudget) {
+			sampleSize *= 2;
+		}
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		Bitmap decoded = null;
+		final Rect visibleArea = new Rect(); // the part of the decoded bitmap to keep
+		if (crop && (regionWidth < imageWidth || regionHeight < imageHeight)) {
+			BitmapRegionDecoder decoder = null;
+			try {
+				decoder = BitmapRegionDecoder.newInstance(imagePath, false);
+				decoded = decoder.decodeRegion(region, options);
+			} catch (IOException ignored) {
+				// e.g., an unsupported format for region decoding (GIF, BMP) - decode the whole image instead
+			} finally {
+				if (decoder != null) {
+					decoder.recycle();
+				}
+			}
+			if (decoded != null) {
+				visibleArea.set(0, 0, decoded.getWidth(), decoded.getHeight());
+			}
+		}
+		if (decoded == null) {
+			decoded = BitmapFactory.decodeFile(imagePath, options);
+			if (decoded == null) {
+				return null;
+			}
+			visibleArea.set(region.left / sampleSize, region.top / sampleSize,
+					Math.min(decoded.getWidth(), region.right / sampleSize),
+					Math.min(decoded.getHeight(), region.bottom / sampleSize));
+		}
+
+		// apply the image's orientation, and scale to the exact size requested
+		final Matrix matrix = new Matrix();
+		if (FrameIconRenderer.isMirrored(orientation)) {
+			matrix.postScale(-1, 1);
+		}
+		matrix.postRotate(rotation);
+		if (!fastDecode) {
+			final float remainingScale = scaledWidth / (float) visibleArea.width();
+			matrix.postScale(remainingScale, remainingScale);
+		}
+		final Bitmap image = Bitmap.createBitmap(decoded, visibleArea.left, visibleArea.top, visibleArea.width(),
+				visibleArea.height(), matrix, true);
+		if (image != decoded) {
+			decoded.recycle();
+		}
+		return image;
+	}
+
+	private static void recordResult(DecodeResult result, String imagePath, String imageSize) {
+		final String resultCounts;
+		synchronized (sDecodeCounts) {
+			sDecodeCounts[result.ordinal()] += 1;
+			resultCounts = Arrays.toString(sDecodeCounts);
+		}
+		final boolean failed = result == DecodeResult.FAILED_OUT_OF_MEMORY || result == DecodeResult.FAILED_UNREADABLE;
+		if (failed || MediaPhone.DEBUG) {
+			final String message = (failed ? "Unable to decode " : "Decoded ") + new File(imagePath).getName() +
+					(imageSize != null ? " (" + imageSize + ")" : "") + " as " + result + "; images so far " +
+					Arrays.toString(DecodeResult.values()) + ": " + resultCounts;
+			if (failed) {
+				Log.w(DebugUtilities.getLogTag(sDecodeCounts), message); // always logged, even in release builds
+			} else {
+				Log.d(DebugUtilities.getLogTag(sDecodeCounts), message);
+			}
+		}
+	}
+}
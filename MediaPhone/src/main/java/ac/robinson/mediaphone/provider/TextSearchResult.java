@@ -0,0 +1,38 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.provider;
+
+/**
+ * A text media item that matched a search - see {@link MediaManager#searchTextMedia}
+ */
+public class TextSearchResult {
+	public final String mMediaId;
+	public final String mFrameId; // the frame the text belongs to (the first frame, for spanning text)
+	public final String mNarrativeId;
+	public final int mNarrativeSequenceId; // for display - see R.string.narrative_browser_row_label
+	public final String mSnippet; // the matching part of the text
+
+	public TextSearchResult(String mediaId, String frameId, String narrativeId, int narrativeSequenceId, String snippet) {
+		mMediaId = mediaId;
+		mFrameId = frameId;
+		mNarrativeId = narrativeId;
+		mNarrativeSequenceId = narrativeSequenceId;
+		mSnippet = snippet;
+	}
+}
@@ -6,8 +6,6 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Environment;
 import android.preference.PreferenceManager;
@@ -16,19 +14,24 @@ import android.util.Log;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.MediaPhoneActivity;
 import ac.robinson.mediaphone.MediaPhoneApplication;
 import ac.robinson.mediaphone.R;
-import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.DebugUtilities;
 import ac.robinson.util.IOUtilities;
 import ac.robinson.util.StringUtilities;
 
 public class UpgradeManager {
 	public static void upgradeApplication(Context context) {
+		resumeNarrativeInstalls(context); // in case the app was closed before a previous install finished
+
 		SharedPreferences applicationVersionSettings = context.getSharedPreferences(MediaPhone.APPLICATION_NAME,
 				Context.MODE_PRIVATE);
 
@@ -81,7 +84,7 @@ public class UpgradeManager {
 			int narrativesCount = NarrativesManager.getNarrativesCount(context.getContentResolver());
 			if (narrativesCount <= 0) {
 				Log.i(DebugUtilities.getLogTag(context), "First install - not upgrading; installing helper narrative");
-				installHelperNarrative(context);
+				queueNarrativeInstall(context, NarrativeItem.HELPER_NARRATIVE_ID); // in the background, after first draw
 				return;
 			}
 		}
@@ -126,7 +129,7 @@ public class UpgradeManager {
 		if (currentAppVersion < 17) {
 			int narrativesCount = NarrativesManager.getNarrativesCount(context.getContentResolver());
 			if (narrativesCount <= 0) {
-				installHelperNarrative(context);
+				queueNarrativeInstall(context, NarrativeItem.HELPER_NARRATIVE_ID);
 			}
 		}
 
@@ -224,16 +227,78 @@ public class UpgradeManager {
 		prefsEditor.apply();
 	}
 
-	public static void installHelperNarrative(Context context) {
-		ContentResolver contentResolver = context.getContentResolver();
-		if (NarrativesManager.findNarrativeByInternalId(contentResolver, NarrativeItem.HELPER_NARRATIVE_ID) != null) {
-			return; // don't install if the helper narrative already exists
+	/**
+	 * Install the helper or timing editor narrative on a background thread once startup has finished. The request is saved
+	 * first, so an install that is interrupted (e.g., by the app being closed) is resumed on the next launch (see
+	 * {@link #upgradeApplication}). Must be called from the UI thread.
+	 *
+	 * @param narrativeId Either {@link NarrativeItem#HELPER_NARRATIVE_ID} or {@link NarrativeItem#TIMING_EDITOR_NARRATIVE_ID}
+	 */
+	public static void queueNarrativeInstall(Context context, String narrativeId) {
+		synchronized (UpgradeManager.class) {
+			SharedPreferences installSettings = context.getSharedPreferences(MediaPhone.APPLICATION_NAME, Context.MODE_PRIVATE);
+			final String pendingInstallsKey = context.getString(R.string.key_pending_narrative_installs);
+			HashSet<String> pendingInstalls = new HashSet<>(
+					installSettings.getStringSet(pendingInstallsKey, Collections.<String>emptySet()));
+			if (pendingInstalls.add(narrativeId)) {
+				SharedPreferences.Editor prefsEditor = installSettings.edit();
+				prefsEditor.putStringSet(pendingInstallsKey, pendingInstalls);
+				prefsEditor.apply();
+			}
 		}
+		runNarrativeInstall(context.getApplicationContext(), narrativeId);
+	}
 
-		Resources res = context.getResources();
-		final String narrativeId = NarrativeItem.HELPER_NARRATIVE_ID;
-		final int narrativeSequenceIdIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
+	private static void resumeNarrativeInstalls(Context context) {
+		final Set<String> pendingInstalls;
+		synchronized (UpgradeManager.class) {
+			SharedPreferences installSettings = context.getSharedPreferences(MediaPhone.APPLICATION_NAME, Context.MODE_PRIVATE);
+			pendingInstalls = installSettings.getStringSet(context.getString(R.string.key_pending_narrative_installs), null);
+		}
+		if (pendingInstalls != null) {
+			for (String narrativeId : new ArrayList<>(pendingInstalls)) {
+				Log.i(DebugUtilities.getLogTag(context), "Resuming interrupted install of narrative " + narrativeId);
+				runNarrativeInstall(context.getApplicationContext(), narrativeId);
+			}
+		}
+	}
 
+	private static void runNarrativeInstall(final Context applicationContext, final String narrativeId) {
+		final Runnable installer = () -> {
+			final boolean installed;
+			if (NarrativeItem.TIMING_EDITOR_NARRATIVE_ID.equals(narrativeId)) {
+				installed = installTimingEditorNarrative(applicationContext);
+			} else {
+				installed = installHelperNarrative(applicationContext);
+			}
+			if (installed) { // otherwise we leave the request in place and try again on the next launch
+				synchronized (UpgradeManager.class) {
+					SharedPreferences installSettings = applicationContext.getSharedPreferences(MediaPhone.APPLICATION_NAME,
+							Context.MODE_PRIVATE);
+					final String pendingInstallsKey = applicationContext.getString(R.string.key_pending_narrative_installs);
+					HashSet<String> pendingInstalls = new HashSet<>(
+							installSettings.getStringSet(pendingInstallsKey, Collections.<String>emptySet()));
+					pendingInstalls.remove(narrativeId);
+					SharedPreferences.Editor prefsEditor = installSettings.edit();
+					prefsEditor.putStringSet(pendingInstallsKey, pendingInstalls);
+					prefsEditor.apply();
+				}
+			}
+		};
+		if (applicationContext instanceof MediaPhoneApplication application) {
+			application.runAfterStartup("install narrative " + narrativeId, false, installer);
+		} else {
+			installer.run(); // see MediaPhoneActivity.configureBluetoothObserver
+		}
+	}
+
+	/**
+	 * Install the helper narrative, unless it already exists. Runs synchronously - on the UI thread, use
+	 * {@link #queueNarrativeInstall} instead.
+	 *
+	 * @return true if the narrative was installed (or already existed); false on error
+	 */
+	public static boolean installHelperNarrative(Context context) {
 		// add a narrative that gives a few tips on first use
 		// note: \u00A0 (non-breaking space) is used to force spacing in the frame icon after improvements to text drawing which
 		// mean the text maximum size/height is now properly used (rather than being overridden by the old maximum line width
@@ -248,62 +313,17 @@ public class UpgradeManager {
 		};
 		int[] frameImages = { 0, R.drawable.help_frame_editor, R.drawable.help_frame_export, 0 };
 
-		for (int i = 0, n = mediaStrings.length; i < n; i++) {
-			final FrameItem newFrame = new FrameItem(narrativeId, i * narrativeSequenceIdIncrement);
-
-			// add the text
-			final String textUUID = MediaPhoneProvider.getNewInternalId();
-			final File textContentFile = MediaItem.getFile(newFrame.getInternalId(), textUUID, MediaPhone.EXTENSION_TEXT_FILE);
-
-			try {
-				FileWriter fileWriter = new FileWriter(textContentFile);
-				BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-				bufferedWriter.write(mediaStrings[i]);
-				bufferedWriter.close();
-			} catch (Exception ignored) {
-			}
-
-			MediaItem textMediaItem = new MediaItem(textUUID, newFrame.getInternalId(), MediaPhone.EXTENSION_TEXT_FILE,
-					MediaPhoneProvider.TYPE_TEXT);
-			textMediaItem.setDurationMilliseconds(7500); // improve helper narrative playback legibility
-			textMediaItem.setExtra(StringUtilities.wordCount(mediaStrings[i]));
-			MediaManager.addMedia(contentResolver, textMediaItem);
-
-			// add the image, if applicable
-			if (frameImages[i] != 0) {
-				final String imageUUID = MediaPhoneProvider.getNewInternalId();
-				final String imageFileExtension = "png"; // all helper images are png format
-				File imageContentFile = MediaItem.getFile(newFrame.getInternalId(), imageUUID, imageFileExtension);
-				Bitmap rawBitmap = BitmapFactory.decodeResource(res, frameImages[i]);
-				if (rawBitmap != null) {
-					BitmapUtilities.saveBitmap(rawBitmap, Bitmap.CompressFormat.PNG, 100, imageContentFile);
-				}
-
-				if (imageContentFile.exists()) {
-					MediaItem imageMediaItem = new MediaItem(imageUUID, newFrame.getInternalId(), imageFileExtension,
-							MediaPhoneProvider.TYPE_IMAGE_BACK);
-					MediaManager.addMedia(contentResolver, imageMediaItem);
-				}
-			}
-
-			FramesManager.addFrameAndPreloadIcon(res, contentResolver, newFrame);
-		}
-
-		NarrativeItem newNarrative = new NarrativeItem(narrativeId,
-				NarrativesManager.getNextNarrativeExternalId(contentResolver));
-		NarrativesManager.addNarrative(contentResolver, newNarrative);
+		// 7500ms improves helper narrative playback legibility
+		return installNarrative(context, NarrativeItem.HELPER_NARRATIVE_ID, mediaStrings, frameImages, 7500);
 	}
 
-	public static void installTimingEditorNarrative(Context context) {
-		ContentResolver contentResolver = context.getContentResolver();
-		if (NarrativesManager.findNarrativeByInternalId(contentResolver, NarrativeItem.TIMING_EDITOR_NARRATIVE_ID) != null) {
-			return; // don't install if the helper narrative already exists
-		}
-
-		Resources res = context.getResources();
-		final String narrativeId = NarrativeItem.TIMING_EDITOR_NARRATIVE_ID;
-		final int narrativeSequenceIdIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
-
+	/**
+	 * Install the timing editor narrative, unless it already exists. Runs synchronously - on the UI thread, use
+	 * {@link #queueNarrativeInstall} instead.
+	 *
+	 * @return true if the narrative was installed (or already existed); false on error
+	 */
+	public static boolean installTimingEditorNarrative(Context context) {
 		// add a narrative that gives instructions for using the timing editor (\u00A0 used as above)
 		String[] mediaStrings = {
 				context.getString(R.string.timing_editor_narrative_frame_1),
@@ -317,8 +337,24 @@ public class UpgradeManager {
 						"\n\u00A0",
 		};
 
+		return installNarrative(context, NarrativeItem.TIMING_EDITOR_NARRATIVE_ID, mediaStrings, null, -1);
+	}
+
+	private static boolean installNarrative(Context context, String narrativeId, String[] mediaStrings, int[] frameImages,
+											int textDuration) {
+		ContentResolver contentResolver = context.getContentResolver();
+		if (NarrativesManager.findNarrativeByInternalId(contentResolver, narrativeId) != null) {
+			return true; // don't install if the narrative already exists
+		}
+
+		Resources res = context.getResources();
+		final int narrativeSequenceIdIncrement = res.getInteger(R.integer.frame_narrative_sequence_increment);
+
+		ArrayList<FrameItem> newFrames = new ArrayList<>(mediaStrings.length);
+		ArrayList<MediaItem> newMedia = new ArrayList<>();
 		for (int i = 0, n = mediaStrings.length; i < n; i++) {
 			final FrameItem newFrame = new FrameItem(narrativeId, i * narrativeSequenceIdIncrement);
+			newFrames.add(newFrame);
 
 			// add the text
 			final String textUUID = MediaPhoneProvider.getNewInternalId();
@@ -334,14 +370,47 @@ public class UpgradeManager {
 
 			MediaItem textMediaItem = new MediaItem(textUUID, newFrame.getInternalId(), MediaPhone.EXTENSION_TEXT_FILE,
 					MediaPhoneProvider.TYPE_TEXT);
+			if (textDuration > 0) {
+				textMediaItem.setDurationMilliseconds(textDuration);
+			}
 			textMediaItem.setExtra(StringUtilities.wordCount(mediaStrings[i]));
-			MediaManager.addMedia(contentResolver, textMediaItem);
+			textMediaItem.setTextContent(mediaStrings[i]);
+			newMedia.add(textMediaItem);
 
-			FramesManager.addFrameAndPreloadIcon(res, contentResolver, newFrame);
+			// add the image, if applicable - all helper images are nodpi png files, so can be copied without re-encoding
+			if (frameImages != null && frameImages[i] != 0) {
+				final String imageUUID = MediaPhoneProvider.getNewInternalId();
+				final String imageFileExtension = "png";
+				File imageContentFile = MediaItem.getFile(newFrame.getInternalId(), imageUUID, imageFileExtension);
+				InputStream imageStream = null;
+				try {
+					imageStream = res.openRawResource(frameImages[i]);
+					IOUtilities.copyFile(imageStream, imageContentFile);
+				} catch (Exception ignored) {
+				} finally {
+					IOUtilities.closeStream(imageStream);
+				}
+
+				if (imageContentFile.length() > 0) {
+					MediaItem imageMediaItem = new MediaItem(imageUUID, newFrame.getInternalId(), imageFileExtension,
+							MediaPhoneProvider.TYPE_IMAGE_BACK);
+					newMedia.add(imageMediaItem);
+				}
+			}
 		}
 
+		// add everything in one transaction so the narrative never appears partly installed; icons are not generated here -
+		// the browser creates any missing frame icons when they are first displayed
 		NarrativeItem newNarrative = new NarrativeItem(narrativeId,
 				NarrativesManager.getNextNarrativeExternalId(contentResolver));
-		NarrativesManager.addNarrative(contentResolver, newNarrative);
+		if (FramesManager.addFramesWithMedia(contentResolver, newFrames, newMedia, newNarrative)) {
+			return true;
+		}
+
+		Log.d(DebugUtilities.getLogTag(context), "Unable to install narrative " + narrativeId + " - will retry");
+		for (FrameItem frame : newFrames) {
+			IOUtilities.deleteRecursive(frame.getStorageDirectory());
+		}
+		return false;
 	}
 }
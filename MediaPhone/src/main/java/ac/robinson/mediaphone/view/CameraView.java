@@ -541,6 +541,34 @@ public class CameraView extends ViewGroup implements SurfaceHolder.Callback {
 		mCamera.setOneShotPreviewCallback(previewFrameCallback);
 	}
 
+	/**
+	 * Capture the next preview frame into the given buffer, rather than the camera allocating a new array each time.
+	 * If the buffer is null or smaller than {@link #getPreviewBufferSize()} this is the same as
+	 * {@link #capturePreviewFrame(Camera.PreviewCallback)}.
+	 */
+	public void capturePreviewFrame(final Camera.PreviewCallback previewFrameCallback, byte[] previewBuffer) {
+		if (previewBuffer == null || previewBuffer.length < getPreviewBufferSize()) {
+			capturePreviewFrame(previewFrameCallback);
+			return;
+		}
+		mCamera.addCallbackBuffer(previewBuffer);
+		mCamera.setPreviewCallbackWithBuffer((data, camera) -> {
+			camera.setPreviewCallbackWithBuffer(null); // one frame only, as with setOneShotPreviewCallback
+			previewFrameCallback.onPreviewFrame(data, camera);
+		});
+	}
+
+	/**
+	 * @return The number of bytes needed to hold a single preview frame, or 0 if this is not known
+	 */
+	public int getPreviewBufferSize() {
+		if (mCamera == null || mPreviewSize == null) {
+			return 0;
+		}
+		int bitsPerPixel = ImageFormat.getBitsPerPixel(mCamera.getParameters().getPreviewFormat());
+		return bitsPerPixel > 0 ? mPreviewSize.width * mPreviewSize.height * bitsPerPixel / 8 : 0;
+	}
+
 	private void playAutoFocusSound() {
 		if (mFocusSoundPlayer != null && mFocusSoundId >= 0) {
 			// volume is a percentage of *current*, rather than maximum
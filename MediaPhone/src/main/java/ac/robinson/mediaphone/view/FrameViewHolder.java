@@ -31,4 +31,5 @@ public class FrameViewHolder {
 	public ProgressBar loader; // the progress bar to show when loading
 	public CrossFadeDrawable transition; // redrawing when coming back into view
 	public boolean queryIcon; // if we're currently loading this item's icon
+	public boolean previousIcon; // if we're showing an outdated icon while the current version is rendered
 }
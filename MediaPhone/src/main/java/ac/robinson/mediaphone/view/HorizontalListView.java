@@ -55,6 +55,7 @@ import java.util.Queue;
 import ac.robinson.mediaphone.MediaPhone;
 import ac.robinson.mediaphone.R;
 import ac.robinson.mediaphone.provider.FrameAdapter;
+import ac.robinson.mediaphone.provider.FrameIconCache;
 import ac.robinson.mediaphone.provider.FrameItem;
 import ac.robinson.mediaphone.provider.FramesManager;
 import ac.robinson.util.ImageCacheUtilities;
@@ -970,12 +971,24 @@ public class HorizontalListView extends AdapterView<ListAdapter> {
 				FastBitmapDrawable cachedIcon = ImageCacheUtilities.getCachedIcon(MediaPhone.DIRECTORY_THUMBS,
 						FrameItem.getCacheId(holder.frameInternalId), ImageCacheUtilities.NULL_DRAWABLE);
 				if (ImageCacheUtilities.LOADING_DRAWABLE.equals(cachedIcon)) {
+					if (holder.previousIcon) {
+						continue; // being replaced in the background - keep showing the old icon until then
+					}
 					iconLoadingComplete = false;
 					holder.loader.setVisibility(View.VISIBLE);
 					holder.display.setImageDrawable(mAdapter.getLoadingIcon());
 					holder.queryIcon = true;
 					continue; // this icon hasn't yet been updated
 				} else if (ImageCacheUtilities.NULL_DRAWABLE.equals(cachedIcon)) {
+					// after the icon settings change, show the old icon until its replacement is rendered in the background
+					FastBitmapDrawable previousIcon = FrameIconCache.getPreviousIcon(holder.frameInternalId);
+					if (previousIcon != null) {
+						FrameIconCache.requestIcon(holder.frameInternalId, this::postUpdateFrameIcons);
+						holder.display.setImageDrawable(previousIcon);
+						holder.loader.setVisibility(View.GONE);
+						holder.previousIcon = true;
+						continue;
+					}
 					FramesManager.reloadFrameIcon(resources, contentResolver, holder.frameInternalId);
 					cachedIcon = ImageCacheUtilities.getCachedIcon(MediaPhone.DIRECTORY_THUMBS,
 							FrameItem.getCacheId(holder.frameInternalId), mAdapter.getDefaultIcon());
@@ -987,6 +1000,7 @@ public class HorizontalListView extends AdapterView<ListAdapter> {
 				holder.loader.setVisibility(View.GONE);
 				d.startTransition(MediaPhone.ANIMATION_FADE_TRANSITION_DURATION);
 				holder.queryIcon = false;
+				holder.previousIcon = false;
 			}
 		}
 
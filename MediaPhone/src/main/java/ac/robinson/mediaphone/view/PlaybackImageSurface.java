@@ -0,0 +1,335 @@
+/*
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediaphone.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ac.robinson.mediaphone.MediaPhone;
+import ac.robinson.mediaphone.R;
+import ac.robinson.mediaphone.provider.ScreenImageDecoder;
+import ac.robinson.util.BitmapUtilities;
+import ac.robinson.util.DebugUtilities;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+/**
+ * Displays playback images on a dedicated surface. Images are decoded on a render thread (and, on hardware canvases, prepared
+ * for upload before they are needed), and crossfades between them are drawn on that same thread, so transitions are not
+ * affected by work on the UI thread. Drawing uses a normal (software) Canvas where a hardware one is not available, so this
+ * view also works when hardware rendering is disabled. Frame times during each crossfade are recorded and logged in debug
+ * builds.
+ * <p>
+ * All public methods must be called from the UI thread; requests are processed in order, and any that have been superseded
+ * by a newer show/clear request before they are processed are skipped.
+ */
+public class PlaybackImageSurface extends SurfaceView implements SurfaceHolder.Callback {
+
+	private static final long FALLBACK_FRAME_INTERVAL_MILLIS = 16; // for devices without Choreographer
+	private static final long JANK_THRESHOLD_MILLIS = 33; // frame intervals longer than this (two frames at 60Hz) are dropped
+
+	private final Object mSurfaceLock = new Object();
+	private boolean mSurfaceValid = false; // guarded by mSurfaceLock
+	private volatile int mSurfaceWidth;
+	private volatile int mSurfaceHeight;
+
+	private final HandlerThread mRenderThread;
+	private final Handler mRenderHandler;
+	private final AtomicInteger mRequestGeneration = new AtomicInteger();
+	private final int mBackgroundColour;
+	private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private long mCrossFadeDuration = MediaPhone.ANIMATION_FADE_TRANSITION_DURATION;
+
+	// render thread state
+	private Bitmap mCurrentBitmap;
+	private Bitmap mPreviousBitmap; // the image being faded out, if any
+	private long mFadeStartTime;
+	private String mPreloadedPath;
+	private Bitmap mPreloadedBitmap;
+	private boolean mUseHardwareCanvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+	private Choreographer.FrameCallback mFrameCallback; // only used on SDK 16+
+
+	// frame time instrumentation (render thread)
+	private int mFadeFrameCount;
+	private int mFadeDroppedFrames;
+	private long mFadeMaxFrameInterval;
+	private long mFadeTotalDrawTime;
+	private long mLastFrameTime;
+
+	public PlaybackImageSurface(Context context) {
+		this(context, null);
+	}
+
+	public PlaybackImageSurface(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		mBackgroundColour = ContextCompat.getColor(context, R.color.playback_background);
+		getHolder().setFormat(PixelFormat.OPAQUE);
+		getHolder().addCallback(this);
+
+		mRenderThread = new HandlerThread("PlaybackImageSurface");
+		mRenderThread.start();
+		mRenderHandler = new Handler(mRenderThread.getLooper());
+	}
+
+	public void setCrossFadeDuration(long durationMillis) {
+		mCrossFadeDuration = durationMillis;
+	}
+
+	/**
+	 * Decode the given image in advance so that a subsequent {@link #showImage(String, boolean, boolean)} call for the same
+	 * path can be displayed immediately
+	 */
+	public void preloadImage(final String imagePath) {
+		final int generation = mRequestGeneration.get();
+		mRenderHandler.post(() -> {
+			if (imagePath.equals(mPreloadedPath) || generation != mRequestGeneration.get()) {
+				return;
+			}
+			Bitmap bitmap = decodeBitmap(imagePath, false);
+			if (bitmap != null && generation == mRequestGeneration.get()) {
+				bitmap.prepareToDraw(); // start the texture upload now, rather than when the transition begins
+				mPreloadedPath = imagePath;
+				mPreloadedBitmap = bitmap;
+			}
+		});
+	}
+
+	/**
+	 * Show the given image, replacing the current image either immediately or with a crossfade
+	 *
+	 * @param fastDecode whether to decode a lower quality version of the image (for example, when seeking rapidly)
+	 */
+	public void showImage(final String imagePath, final boolean crossFade, final boolean fastDecode) {
+		final int generation = mRequestGeneration.incrementAndGet();
+		mRenderHandler.post(() -> {
+			if (generation != mRequestGeneration.get()) {
+				return; // superseded - no need to decode
+			}
+			Bitmap bitmap;
+			if (imagePath.equals(mPreloadedPath)) {
+				bitmap = mPreloadedBitmap;
+				mPreloadedPath = null;
+				mPreloadedBitmap = null;
+			} else {
+				bitmap = decodeBitmap(imagePath, fastDecode);
+			}
+			if (generation == mRequestGeneration.get()) {
+				setCurrentBitmap(bitmap, crossFade);
+			}
+		});
+	}
+
+	/**
+	 * Show an already-loaded bitmap (which will not be recycled by this view)
+	 */
+	public void showBitmap(final Bitmap bitmap, final boolean crossFade) {
+		final int generation = mRequestGeneration.incrementAndGet();
+		mRenderHandler.post(() -> {
+			if (generation == mRequestGeneration.get()) {
+				setCurrentBitmap(bitmap, crossFade);
+			}
+		});
+	}
+
+	public void clearImage() {
+		showBitmap(null, false);
+	}
+
+	/**
+	 * Skip any show or preload requests that have not yet been processed, and discard any preloaded image
+	 */
+	public void cancelPendingImages() {
+		mRequestGeneration.incrementAndGet();
+		mRenderHandler.post(() -> {
+			mPreloadedPath = null;
+			mPreloadedBitmap = null;
+		});
+	}
+
+	/**
+	 * Stop the render thread - this view cannot be used after calling this method
+	 */
+	public void release() {
+		mRequestGeneration.incrementAndGet();
+		mRenderHandler.removeCallbacksAndMessages(null);
+		mRenderThread.quit();
+	}
+
+	@Override
+	public void surfaceCreated(@NonNull SurfaceHolder holder) {
+		synchronized (mSurfaceLock) {
+			mSurfaceValid = true;
+		}
+	}
+
+	@Override
+	public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
+		mSurfaceWidth = width;
+		mSurfaceHeight = height;
+		mRenderHandler.post(this::drawFrame);
+	}
+
+	@Override
+	public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+		synchronized (mSurfaceLock) {
+			mSurfaceValid = false; // the render thread must not draw after we return
+		}
+	}
+
+	private Bitmap decodeBitmap(String imagePath, boolean fastDecode) {
+		int width = mSurfaceWidth;
+		int height = mSurfaceHeight;
+		if (width <= 0 || height <= 0) {
+			DisplayMetrics metrics = getResources().getDisplayMetrics();
+			width = metrics.widthPixels;
+			height = metrics.heightPixels;
+		}
+		// failures (e.g., out of memory) are handled and recorded by the decoder
+		return ScreenImageDecoder.decode(imagePath, width, height,
+				fastDecode ? BitmapUtilities.ScalingLogic.DOWNSCALE : BitmapUtilities.ScalingLogic.FIT);
+	}
+
+	private void setCurrentBitmap(Bitmap bitmap, boolean crossFade) {
+		if (crossFade && mCurrentBitmap != null && bitmap != mCurrentBitmap && mCrossFadeDuration > 0) {
+			mPreviousBitmap = mCurrentBitmap; // if a fade is already running, it restarts from the most recent image
+			mFadeStartTime = SystemClock.uptimeMillis();
+			mFadeFrameCount = 0;
+			mFadeDroppedFrames = 0;
+			mFadeMaxFrameInterval = 0;
+			mFadeTotalDrawTime = 0;
+			mLastFrameTime = 0;
+		} else {
+			mPreviousBitmap = null;
+		}
+		mCurrentBitmap = bitmap;
+		drawFrame();
+	}
+
+	private void drawFrame() {
+		final long frameStartTime = SystemClock.uptimeMillis();
+		final float fadeProgress = mPreviousBitmap == null ? 1 :
+				Math.min(1, (frameStartTime - mFadeStartTime) / (float) mCrossFadeDuration);
+
+		synchronized (mSurfaceLock) {
+			if (!mSurfaceValid) {
+				return; // we will redraw when the surface is (re)created
+			}
+			SurfaceHolder holder = getHolder();
+			Canvas canvas = null;
+			try {
+				canvas = lockCanvas(holder);
+				if (canvas == null) {
+					return;
+				}
+				canvas.drawColor(mBackgroundColour);
+				drawCentredBitmap(canvas, mCurrentBitmap, 255);
+				if (mPreviousBitmap != null) {
+					drawCentredBitmap(canvas, mPreviousBitmap, Math.round(255 * (1 - fadeProgress)));
+				}
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				if (MediaPhone.DEBUG) {
+					Log.d(DebugUtilities.getLogTag(this), "Unable to draw playback frame: " + e.getLocalizedMessage());
+				}
+			} finally {
+				if (canvas != null) {
+					holder.unlockCanvasAndPost(canvas);
+				}
+			}
+		}
+
+		if (mPreviousBitmap != null) {
+			recordFadeFrame(frameStartTime);
+			if (fadeProgress < 1) {
+				scheduleNextFrame();
+			} else {
+				mPreviousBitmap = null;
+				logFadeStatistics();
+			}
+		}
+	}
+
+	private Canvas lockCanvas(SurfaceHolder holder) {
+		if (mUseHardwareCanvas && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			try {
+				return holder.lockHardwareCanvas();
+			} catch (IllegalStateException | UnsupportedOperationException e) {
+				mUseHardwareCanvas = false; // no hardware rendering available - use a software canvas from now on
+			}
+		}
+		return holder.lockCanvas();
+	}
+
+	private void drawCentredBitmap(Canvas canvas, Bitmap bitmap, int alpha) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		mBitmapPaint.setAlpha(alpha);
+		canvas.drawBitmap(bitmap, (canvas.getWidth() - bitmap.getWidth()) / 2f, (canvas.getHeight() - bitmap.getHeight()) / 2f,
+				mBitmapPaint);
+	}
+
+	private void scheduleNextFrame() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			if (mFrameCallback == null) {
+				mFrameCallback = frameTimeNanos -> drawFrame();
+			}
+			Choreographer.getInstance().postFrameCallback(mFrameCallback); // the render thread's own Choreographer
+		} else {
+			mRenderHandler.postDelayed(this::drawFrame, FALLBACK_FRAME_INTERVAL_MILLIS);
+		}
+	}
+
+	private void recordFadeFrame(long frameStartTime) {
+		final long currentTime = SystemClock.uptimeMillis();
+		mFadeTotalDrawTime += currentTime - frameStartTime;
+		if (mLastFrameTime > 0) {
+			final long frameInterval = frameStartTime - mLastFrameTime;
+			mFadeMaxFrameInterval = Math.max(mFadeMaxFrameInterval, frameInterval);
+			if (frameInterval > JANK_THRESHOLD_MILLIS) {
+				mFadeDroppedFrames += 1;
+			}
+		}
+		mLastFrameTime = frameStartTime;
+		mFadeFrameCount += 1;
+	}
+
+	private void logFadeStatistics() {
+		if (MediaPhone.DEBUG && mFadeFrameCount > 0) {
+			Log.d(DebugUtilities.getLogTag(this),
+					"Crossfade: " + mFadeFrameCount + " frames, " + mFadeDroppedFrames + " dropped, max interval " +
+							mFadeMaxFrameInterval + "ms, mean draw " + (mFadeTotalDrawTime / mFadeFrameCount) + "ms (" +
+							(mUseHardwareCanvas ? "hardware" : "software") + " canvas)");
+		}
+	}
+}